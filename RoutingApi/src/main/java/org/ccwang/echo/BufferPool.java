@@ -0,0 +1,38 @@
+package org.ccwang.echo;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Direct buffers of one size, handed out to a request at a time and kept for the next once it is
+ * done, so that requests allocate none in the steady state. Buffers are allocated as needed, and
+ * those released while the pool already holds as many as it keeps are left to the GC.
+ */
+class BufferPool {
+  private final int bufferSize;
+  private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+  /**
+   * @param bufferSize bytes in each buffer.
+   * @param maxPooled most buffers kept between requests.
+   */
+  BufferPool(int bufferSize, int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.buffers = new ArrayBlockingQueue<>(maxPooled);
+  }
+
+  /** Returns an empty buffer, which should be {@link #release}d once it is no longer used. */
+  ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+    return buffer == null ? ByteBuffer.allocateDirect(bufferSize) : buffer;
+  }
+
+  void release(ByteBuffer buffer) {
+    buffers.offer(buffer.clear());
+  }
+
+  /** Number of buffers kept for the next requests. */
+  int pooled() {
+    return buffers.size();
+  }
+}
@@ -1,15 +1,88 @@
 package org.ccwang.echo;
 
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentTooLargeResponse;
 import io.javalin.http.Context;
-import org.ccwang.routing.RequestDispatcher;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.ccwang.routing.batch.BatchCodec;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.HttpOutput;
 
 public class EchoController {
-  public static void get(Context context) {
-    Logger logger = LoggerFactory.getLogger(RequestDispatcher.class);
-    logger.info("Got echo request from" + context.url());
-    context.result(context.body()).contentType("application/json");
+  /** Bytes read from the request, and written back, at a time. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** As many as Jetty's platform thread pool serves requests at once. */
+  private static final int MAX_POOLED_BUFFERS = 256;
+
+  private static final BufferPool BUFFERS = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+  /**
+   * Answers with the request body. On Jetty, the body is streamed back through a pooled direct
+   * buffer, so that serving a request allocates nothing on top of what Jetty and Javalin do.
+   */
+  public static void get(Context context) throws IOException {
+    if (context.contentLength() > SimpleServiceApp.MAX_REQUEST_SIZE) {
+      throw new ContentTooLargeResponse();
+    }
+    context.status(200);
+    context.contentType("application/json");
+    InputStream body = context.bodyInputStream();
+    if (body instanceof HttpInput in
+        && context.res().getOutputStream() instanceof HttpOutput out) {
+      echo(in, out, context.contentLength(), context.res());
+    } else {
+      // Reads the stream itself, Javalin's body() reads under a monitor that would pin a virtual
+      // thread to its carrier until the whole body has arrived.
+      context.result(body.readAllBytes());
+    }
+  }
+
+  /** Copies the body from Jetty's input to its output, which both take byte buffers as they are. */
+  private static void echo(
+      HttpInput in, HttpOutput out, int contentLength, HttpServletResponse response)
+      throws IOException {
+    if (contentLength >= 0) {
+      // Lets Jetty send the body as is rather than in chunks.
+      response.setContentLength(contentLength);
+    }
+    ByteBuffer buffer = BUFFERS.acquire();
+    try {
+      boolean done = false;
+      while (!done) {
+        // Fills the buffer before writing it, as Jetty allocates for every write but reads the body
+        // in much smaller pieces.
+        done = in.read(buffer) == -1;
+        if (done || !buffer.hasRemaining()) {
+          out.write(buffer.flip());
+          buffer.clear();
+        }
+      }
+    } finally {
+      BUFFERS.release(buffer);
+    }
+  }
+
+  /**
+   * Answers each request of a batch, see {@link BatchCodec}, as {@link #get} would have answered it
+   * on its own.
+   */
+  public static void batch(Context context) throws IOException {
+    if (context.contentLength() > SimpleServiceApp.MAX_REQUEST_SIZE) {
+      throw new ContentTooLargeResponse();
+    }
+    List<byte[]> bodies;
+    try {
+      bodies = BatchCodec.decode(context.bodyInputStream().readAllBytes());
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse(e.getMessage());
+    }
+    context.contentType(BatchCodec.CONTENT_TYPE);
+    context.result(BatchCodec.encode(bodies));
     context.status(200);
   }
 }
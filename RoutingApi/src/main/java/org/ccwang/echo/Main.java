@@ -1,7 +1,16 @@
 package org.ccwang.echo;
 
+import org.ccwang.routing.ThreadingMode;
+
 public class Main {
+  private static final String THREADING_FLAG = "--threading=";
+
+  /** Usage: {@code Main <port> [--threading=platform|virtual]}. */
   public static void main(String[] args) {
-    new SimpleServiceApp().app().start(Integer.parseInt(args[0]));
+    ThreadingMode threading = ThreadingMode.PLATFORM;
+    if (args.length > 1 && args[1].startsWith(THREADING_FLAG)) {
+      threading = ThreadingMode.fromFlag(args[1].substring(THREADING_FLAG.length()));
+    }
+    new SimpleServiceApp(threading).app().start(Integer.parseInt(args[0]));
   }
 }
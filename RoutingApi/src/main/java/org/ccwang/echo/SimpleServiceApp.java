@@ -1,39 +1,43 @@
 package org.ccwang.echo;
 
 import io.javalin.Javalin;
-import org.ccwang.routing.RequestDispatcher;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.ccwang.routing.ThreadingMode;
+import org.ccwang.routing.batch.UpstreamBatcher;
+import org.eclipse.jetty.server.Server;
 
 import static io.javalin.apibuilder.ApiBuilder.get;
 import static io.javalin.apibuilder.ApiBuilder.post;
 
 public class SimpleServiceApp {
+  /** Large enough for the biggest payloads the router is benchmarked with. */
+  static final long MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
   private final Javalin app;
-  private final Logger logger;
 
   /**
-   * SimpleServiceApp provides 2 API endpoints: 1. /echo to accept HTTP POST and return the response
-   * identical to the request body. 2. /healthz to accept GET and return HTTP status code indicating
-   * service health status.
+   * SimpleServiceApp provides 3 API endpoints: 1. /echo to accept HTTP POST and return the response
+   * identical to the request body. 2. /echo/batch to do the same for each request in a batch. 3.
+   * /healthz to accept GET and return HTTP status code indicating service health status.
    */
   public SimpleServiceApp() {
-    logger = LoggerFactory.getLogger(RequestDispatcher.class);
+    this(ThreadingMode.PLATFORM);
+  }
+
+  /** @param threading threads the endpoints are served on. */
+  public SimpleServiceApp(ThreadingMode threading) {
     app =
         Javalin.create(
                 config -> {
                   config.http.defaultContentType = "application/json";
+                  config.http.maxRequestSize = MAX_REQUEST_SIZE;
+                  config.jetty.server(() -> new Server(threading.serverThreadPool("echo")));
                 })
             .routes(
                 () -> {
-                  get(
-                      "/healthz",
-                      ctx -> {
-                        // For now just returns 200 in all cases
-                        logger.info("Got health check request from" + ctx.url());
-                        ctx.status(200);
-                      });
+                  // For now just returns 200 in all cases, and logs nothing as it is probed often
+                  get("/healthz", ctx -> ctx.status(200));
                   post("/echo", EchoController::get);
+                  post(UpstreamBatcher.BATCH_PATH, EchoController::batch);
                 });
   }
 
@@ -0,0 +1,81 @@
+package org.ccwang.loadgen;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.javalin.Javalin;
+import io.javalin.http.InternalServerErrorResponse;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ccwang.echo.SimpleServiceApp;
+
+/**
+ * Local {@link SimpleServiceApp} backends for a load test, each on its own port. Counts the echo
+ * requests every backend receives and injects the given {@link Fault}s, timed from {@link
+ * #startClock()}.
+ */
+public class BackendFleet implements AutoCloseable {
+  private final ImmutableList<Javalin> backends;
+  private final ImmutableList<AtomicLong> echoRequests;
+  private final ImmutableList<URI> uris;
+  private volatile long startNanos;
+
+  public BackendFleet(int size, List<Fault> faults) {
+    ImmutableList.Builder<Javalin> backends = ImmutableList.builder();
+    ImmutableList.Builder<AtomicLong> echoRequests = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      int backend = i;
+      AtomicLong counter = new AtomicLong();
+      List<Fault> backendFaults = faults.stream().filter(f -> f.backend() == backend).toList();
+      Javalin app = new SimpleServiceApp().app();
+      app.before(
+          ctx -> {
+            if (ctx.path().startsWith("/echo")) {
+              counter.incrementAndGet();
+            }
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+            for (Fault fault : backendFaults) {
+              if (fault.appliesTo(ctx.path(), elapsed)) {
+                if (fault.kind() == Fault.Kind.FAIL) {
+                  throw new InternalServerErrorResponse("Injected fault");
+                }
+                Thread.sleep(fault.delay().toMillis());
+              }
+            }
+          });
+      backends.add(app.start(0));
+      echoRequests.add(counter);
+    }
+    this.backends = backends.build();
+    this.echoRequests = echoRequests.build();
+    this.uris =
+        this.backends.stream()
+            .map(backend -> URI.create("http://localhost:" + backend.port()))
+            .collect(ImmutableList.toImmutableList());
+    this.startNanos = System.nanoTime();
+  }
+
+  /** Starts timing the faults from now. */
+  public void startClock() {
+    startNanos = System.nanoTime();
+  }
+
+  public ImmutableList<URI> uris() {
+    return uris;
+  }
+
+  /** Echo requests each backend received so far, a batch counting as one, keyed by its URI. */
+  public ImmutableMap<String, Long> echoRequests() {
+    ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+    for (int i = 0; i < backends.size(); ++i) {
+      builder.put(uris.get(i).toString(), echoRequests.get(i).get());
+    }
+    return builder.buildOrThrow();
+  }
+
+  @Override
+  public void close() {
+    backends.forEach(Javalin::stop);
+  }
+}
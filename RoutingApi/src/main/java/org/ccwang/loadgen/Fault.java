@@ -0,0 +1,61 @@
+package org.ccwang.loadgen;
+
+import java.time.Duration;
+
+/**
+ * A fault injected into one backend for part of a run, written as {@code
+ * <backend>:<echo|healthz>:<slow=<ms>|fail>@<start-s>[-<end-s>]}. For example {@code
+ * 1:echo:fail@10-20} fails every {@code /echo} request to the second backend between 10 and 20
+ * seconds into the run, and {@code 0:healthz:slow=500@5} delays the first backend's health checks
+ * from 5 seconds on.
+ */
+public record Fault(
+    int backend, String endpoint, Kind kind, Duration delay, Duration start, Duration end) {
+  private static final Duration FOREVER = Duration.ofSeconds(Long.MAX_VALUE);
+
+  public enum Kind {
+    /** Delays the response. */
+    SLOW,
+    /** Responds with 500 without handling the request. */
+    FAIL
+  }
+
+  /**
+   * Parses a fault, e.g. {@code 1:echo:slow=200@5-15}.
+   *
+   * @throws IllegalArgumentException if the fault is malformed.
+   */
+  public static Fault parse(String value) {
+    String[] timing = value.split("@", 2);
+    String[] parts = timing[0].split(":", 3);
+    if (timing.length != 2 || parts.length != 3) {
+      throw new IllegalArgumentException("Malformed fault: " + value);
+    }
+    String endpoint = parts[1];
+    if (!endpoint.equals("echo") && !endpoint.equals("healthz")) {
+      throw new IllegalArgumentException("Unknown endpoint in fault: " + value);
+    }
+    Kind kind;
+    Duration delay = Duration.ZERO;
+    if (parts[2].equals("fail")) {
+      kind = Kind.FAIL;
+    } else if (parts[2].startsWith("slow=")) {
+      kind = Kind.SLOW;
+      delay = Duration.ofMillis(Long.parseLong(parts[2].substring("slow=".length())));
+    } else {
+      throw new IllegalArgumentException("Unknown kind of fault: " + value);
+    }
+    String[] window = timing[1].split("-", 2);
+    Duration start = Duration.ofSeconds(Long.parseLong(window[0]));
+    Duration end = window.length == 2 ? Duration.ofSeconds(Long.parseLong(window[1])) : FOREVER;
+    return new Fault(Integer.parseInt(parts[0]), endpoint, kind, delay, start, end);
+  }
+
+  /** Whether the fault applies to a request to the given path, the given time into the run. */
+  boolean appliesTo(String path, Duration elapsed) {
+    // Echo faults also apply to the batch endpoint, /echo/batch.
+    return (path.equals("/" + endpoint) || path.startsWith("/" + endpoint + "/"))
+        && elapsed.compareTo(start) >= 0
+        && elapsed.compareTo(end) < 0;
+  }
+}
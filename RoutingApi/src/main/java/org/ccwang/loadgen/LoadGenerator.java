@@ -0,0 +1,140 @@
+package org.ccwang.loadgen;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests to the router at a constant rate, whether or not earlier requests were answered,
+ * the way independent clients would. Each request's latency is measured from when it was scheduled
+ * to be sent rather than from when it actually was, so stalls in the router or in the generator
+ * itself show up in the percentiles instead of silently lowering the load (coordinated omission).
+ */
+public class LoadGenerator {
+  private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+  private final HttpClient client;
+  private final HttpRequest request;
+  private final int ratePerSecond;
+  private final Duration duration;
+
+  private final Recorder recorder = new Recorder(3);
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final AtomicLong intervalErrors = new AtomicLong();
+
+  public LoadGenerator(
+      URI target, String body, int ratePerSecond, Duration duration, Duration timeout) {
+    if (ratePerSecond <= 0) {
+      throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+    }
+    this.client = HttpClient.newHttpClient();
+    this.request =
+        HttpRequest.newBuilder(target)
+            .timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    this.ratePerSecond = ratePerSecond;
+    this.duration = duration;
+  }
+
+  /**
+   * Runs the load against the router in front of the given backends, starting the clock of their
+   * faults, and waits for every request to be answered or to time out.
+   */
+  public LoadReport run(BackendFleet fleet) throws InterruptedException {
+    long total = ratePerSecond * duration.toSeconds();
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+    CountDownLatch done = new CountDownLatch(Math.toIntExact(total));
+    Histogram overall = new Histogram(3);
+    ImmutableList.Builder<LoadReport.Interval> timeline = ImmutableList.builder();
+    ScheduledExecutorService ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("loadgen-ticker").setDaemon(true).build());
+    AtomicLong second = new AtomicLong();
+    Runnable tick =
+        () -> {
+          Histogram interval = recorder.getIntervalHistogram();
+          overall.add(interval);
+          timeline.add(
+              new LoadReport.Interval(
+                  second.incrementAndGet(),
+                  interval.getTotalCount(),
+                  intervalErrors.getAndSet(0),
+                  interval.getValueAtPercentile(99) / 1000.0,
+                  interval.getMaxValue() / 1000.0));
+        };
+
+    logger.info("Sending " + total + " requests at " + ratePerSecond + "/s");
+    fleet.startClock();
+    long start = System.nanoTime();
+    ticker.scheduleAtFixedRate(tick, 1, 1, TimeUnit.SECONDS);
+    for (long i = 0; i < total; ++i) {
+      long intended = start + i * intervalNanos;
+      for (long wait = intended - System.nanoTime(); wait > 0; ) {
+        LockSupport.parkNanos(wait);
+        wait = intended - System.nanoTime();
+      }
+      client
+          .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete(
+              (response, e) -> {
+                if (e != null) {
+                  Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                  recordError(cause.getClass().getSimpleName());
+                } else if (response.statusCode() != 200) {
+                  recordError(Integer.toString(response.statusCode()));
+                } else {
+                  recorder.recordValue((System.nanoTime() - intended) / 1000);
+                }
+                done.countDown();
+              });
+    }
+    done.await();
+    ticker.shutdown();
+    ticker.awaitTermination(1, TimeUnit.MINUTES);
+    // The last, partial second.
+    tick.run();
+
+    ImmutableMap.Builder<String, Long> errorCounts = ImmutableMap.builder();
+    long errorTotal = 0;
+    for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+      errorCounts.put(entry.getKey(), entry.getValue().sum());
+      errorTotal += entry.getValue().sum();
+    }
+    return new LoadReport(
+        ratePerSecond,
+        duration.toSeconds(),
+        total,
+        overall.getTotalCount(),
+        errorCounts.buildOrThrow(),
+        total == 0 ? 0 : (double) errorTotal / total,
+        LoadReport.Latency.of(overall),
+        fleet.echoRequests(),
+        timeline.build());
+  }
+
+  private void recordError(String cause) {
+    errors.computeIfAbsent(cause, unused -> new LongAdder()).increment();
+    intervalErrors.incrementAndGet();
+  }
+}
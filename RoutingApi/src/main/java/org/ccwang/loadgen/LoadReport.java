@@ -0,0 +1,52 @@
+package org.ccwang.loadgen;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.List;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Outcome of a load test run, written out as JSON. Latencies are in milliseconds and measured from
+ * when each request was scheduled to be sent, not from when it actually was.
+ *
+ * @param errors failed requests by cause, the HTTP status or the exception's name.
+ * @param backendRequests echo requests each backend received, retries and hedges included.
+ * @param timeline one entry per second of the run, to see how a fault moves the tail.
+ */
+public record LoadReport(
+    int ratePerSecond,
+    long durationSeconds,
+    long sent,
+    long succeeded,
+    Map<String, Long> errors,
+    double errorRate,
+    Latency latencyMs,
+    Map<String, Long> backendRequests,
+    List<Interval> timeline) {
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  public String toJson() {
+    return GSON.toJson(this);
+  }
+
+  /** Latency percentiles of successful requests. */
+  public record Latency(double p50, double p90, double p99, double p999, double max, double mean) {
+    static Latency of(Histogram histogram) {
+      return new Latency(
+          millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(90)),
+          millis(histogram.getValueAtPercentile(99)),
+          millis(histogram.getValueAtPercentile(99.9)),
+          millis(histogram.getMaxValue()),
+          histogram.getMean() / 1000);
+    }
+
+    private static double millis(long micros) {
+      return micros / 1000.0;
+    }
+  }
+
+  /** What happened during one second of the run. */
+  public record Interval(long second, long succeeded, long errors, double p99, double max) {}
+}
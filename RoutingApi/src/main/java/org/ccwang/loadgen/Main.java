@@ -0,0 +1,78 @@
+package org.ccwang.loadgen;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import io.javalin.Javalin;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.RouterConfig;
+import org.ccwang.routing.RoutingServiceApp;
+
+/**
+ * Starts local backends and a router in front of them, drives it with a {@link LoadGenerator} and
+ * prints the {@link LoadReport} as JSON. Flags the load generator does not know are router flags.
+ */
+public class Main {
+  private static final String PAYLOAD = new Gson().toJson(List.of("jason", "michael", "robert"));
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int rate = 1000;
+    Duration duration = Duration.ofSeconds(30);
+    int backends = 3;
+    Duration timeout = Duration.ofSeconds(5);
+    Optional<Path> reportPath = Optional.empty();
+    ImmutableList.Builder<Fault> faults = ImmutableList.builder();
+    RouterConfig.Builder configBuilder = RouterConfig.builder();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        printUsageAndExit();
+      }
+      int separator = arg.indexOf('=');
+      String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+      String value = separator < 0 ? "true" : arg.substring(separator + 1);
+      switch (name) {
+        case "rate" -> rate = Integer.parseInt(value);
+        case "duration-s" -> duration = Duration.ofSeconds(Long.parseLong(value));
+        case "backends" -> backends = Integer.parseInt(value);
+        case "timeout-ms" -> timeout = Duration.ofMillis(Long.parseLong(value));
+        case "report" -> reportPath = Optional.of(Path.of(value));
+        case "fault" -> faults.add(Fault.parse(value));
+        default -> configBuilder.setFlag(name, value);
+      }
+    }
+
+    LoadReport report;
+    try (BackendFleet fleet = new BackendFleet(backends, faults.build())) {
+      Javalin router =
+          new RoutingServiceApp(
+                  fleet.uris().stream().map(HostSpec::of).toList(), configBuilder.build())
+              .app()
+              .start(0);
+      try {
+        URI target = URI.create("http://localhost:" + router.port() + "/");
+        report = new LoadGenerator(target, PAYLOAD, rate, duration, timeout).run(fleet);
+      } finally {
+        router.stop();
+      }
+    }
+    String json = report.toJson();
+    if (reportPath.isPresent()) {
+      Files.writeString(reportPath.get(), json);
+    }
+    System.out.println(json);
+  }
+
+  private static void printUsageAndExit() {
+    System.out.println(
+        "Expecting argument list: [--rate=<per second>] [--duration-s=<n>] [--backends=<n>]"
+            + " [--timeout-ms=<n>] [--report=<path>] [--fault=<fault> ...]"
+            + " [--router-flag=value ...]");
+    System.exit(0);
+  }
+}
@@ -0,0 +1,72 @@
+package org.ccwang.routing;
+
+import com.google.gson.Gson;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+import java.net.URI;
+
+/**
+ * Endpoints to change the hosts of a {@link HostRegistry} at runtime. Hosts are given as a host
+ * spec in the body, e.g. {@code http://localhost:8083;weight=2}, or by URI in the {@code uri} query
+ * parameter.
+ */
+public class AdminController {
+  private static final Gson GSON = new Gson();
+
+  private final HostRegistry registry;
+
+  public AdminController(HostRegistry registry) {
+    this.registry = registry;
+  }
+
+  /** Lists every host with its weight, zone, priority and whether it is active or draining. */
+  public void listHosts(Context context) {
+    context.result(GSON.toJson(registry.members())).contentType("application/json");
+  }
+
+  public void addHost(Context context) {
+    HostSpec host;
+    try {
+      host = HostSpec.parse(context.body().trim());
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse(e.getMessage());
+    }
+    checkUri(host.uri());
+    registry.add(host);
+    context.status(204);
+  }
+
+  public void drainHost(Context context) {
+    if (!registry.drain(uri(context))) {
+      throw new NotFoundResponse("Unknown host");
+    }
+    context.status(202);
+  }
+
+  public void removeHost(Context context) {
+    if (!registry.remove(uri(context))) {
+      throw new NotFoundResponse("Unknown host");
+    }
+    context.status(204);
+  }
+
+  private static URI uri(Context context) {
+    String uri = context.queryParam("uri");
+    if (uri == null) {
+      throw new BadRequestResponse("Missing uri query parameter");
+    }
+    try {
+      return URI.create(uri);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse(e.getMessage());
+    }
+  }
+
+  private static void checkUri(URI uri) {
+    if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())
+        || uri.getHost() == null) {
+      throw new BadRequestResponse("Not an http(s) URI: " + uri);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.ccwang.routing;
+
+import io.javalin.http.Context;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.ccwang.routing.health.HealthChecker;
+import org.ccwang.routing.health.HealthListener;
+import org.ccwang.routing.health.OutlierDetector;
+import org.ccwang.routing.loadbalancing.LoadBalancingScheme;
+import org.ccwang.routing.loadbalancing.LocalityAwareScheme;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.trace.Tracer;
+
+/**
+ * A named group of hosts that routes send requests to, with a {@link LoadBalancingScheme}, health
+ * checks, outlier detection and a {@link RequestDispatcher} of its own. Every option in its {@link
+ * RouterConfig} that concerns dispatching, e.g. timeouts and retries, applies to this pool only.
+ *
+ * <p>Hosts are picked by a {@link LocalityAwareScheme}, which only makes a difference once they
+ * have zones or priorities.
+ */
+public class BackendPool implements AutoCloseable {
+  private final String name;
+  private final boolean asyncDispatch;
+  private final HealthChecker healthChecker;
+  private final OutlierDetector outlierDetector;
+  private final HostRegistry registry;
+  private final RequestDispatcher dispatcher;
+
+  public BackendPool(
+      String name,
+      List<HostSpec> hosts,
+      RouterConfig config,
+      UpstreamTransport transport,
+      RouterMetrics metrics) {
+    this(name, hosts, config, transport, metrics, Tracer.NONE);
+  }
+
+  /**
+   * @param transport shared by every pool, so that hosts in more than one pool share connections.
+   * @param metrics shared by every pool, hosts are told apart by their URI and gauges by the pool.
+   * @param tracer shared by every pool, spans name the host they went to.
+   */
+  public BackendPool(
+      String name,
+      List<HostSpec> hosts,
+      RouterConfig config,
+      UpstreamTransport transport,
+      RouterMetrics metrics,
+      Tracer tracer) {
+    this.name = name;
+    RouterMetrics poolMetrics = metrics.forPool(name);
+    this.asyncDispatch = config.asyncDispatch();
+    this.healthChecker =
+        new HealthChecker(
+            transport.httpClient(),
+            HostSpec.uris(hosts),
+            config.healthCheckInterval(),
+            config.healthCheckTimeout(),
+            config.healthyThreshold(),
+            config.unhealthyThreshold());
+    this.outlierDetector =
+        new OutlierDetector(
+            HostSpec.uris(hosts),
+            config.outlierConsecutiveFailures(),
+            config.outlierBaseEjection(),
+            config.outlierMaxEjection(),
+            config.outlierMaxEjectionPercent());
+    healthChecker.addListener(outlierDetector);
+    healthChecker.addProbeListener(poolMetrics);
+    outlierDetector.addListener(poolMetrics);
+    LoadBalancingScheme scheme =
+        new LocalityAwareScheme(
+            config.loadBalancing(), hosts, config.localZone(), config.overprovisioningFactor());
+    if (scheme instanceof HealthListener listener) {
+      // Hosts need to pass both the active probes and the passive outlier detection.
+      outlierDetector.addListener(listener);
+    }
+    // Allows every request sent to a draining host to time out before it is removed.
+    Duration drainPeriod =
+        config.drainPeriod().compareTo(config.upstreamTimeout()) >= 0
+            ? config.drainPeriod()
+            : config.upstreamTimeout();
+    this.registry = new HostRegistry(hosts, drainPeriod);
+    // Health state has to know about a host before the scheme may pick it.
+    registry.addListener(healthChecker);
+    registry.addListener(outlierDetector);
+    if (scheme instanceof MembershipListener listener) {
+      registry.addListener(listener);
+    }
+    this.dispatcher =
+        new RequestDispatcher(
+            scheme, config, outlierDetector, transport.httpClient(), poolMetrics, tracer);
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /** The pool's hosts, which can be changed at runtime. */
+  public HostRegistry registry() {
+    return registry;
+  }
+
+  /** Sends the request to one of the pool's hosts, in the pool's dispatch mode. */
+  public void dispatch(Context context, UpstreamTarget target) {
+    if (asyncDispatch) {
+      dispatcher.dispatchAsync(context, target);
+    } else {
+      dispatcher.dispatch(context, target);
+    }
+  }
+
+  /** Starts probing the hosts. */
+  public void start() {
+    healthChecker.start();
+  }
+
+  /**
+   * Settles the hosts' health from one round of probes, opening {@code connectionsPerHost}
+   * connections to each of them on the way.
+   */
+  public CompletableFuture<Void> warmUp(int connectionsPerHost, Duration timeout) {
+    return healthChecker.warmUp(connectionsPerHost, timeout);
+  }
+
+  @Override
+  public void close() {
+    registry.close();
+    healthChecker.close();
+    outlierDetector.close();
+  }
+}
@@ -0,0 +1,161 @@
+package org.ccwang.routing;
+
+import io.javalin.http.Context;
+import io.javalin.http.ContentTooLargeResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** How {@link RequestDispatcher} passes request and response bodies between client and upstream. */
+abstract class BodyMode<T> {
+  private static final String BODY_ATTRIBUTE = BodyMode.class.getName() + ".body";
+  private static final Logger logger = LoggerFactory.getLogger(BodyMode.class);
+
+  /** Decodes both bodies into Strings. Simple, but copies every payload several times. */
+  static final BodyMode<String> BUFFERED =
+      new BodyMode<>() {
+        @Override
+        HttpRequest.BodyPublisher requestBody(byte[] body) {
+          return HttpRequest.BodyPublishers.ofString(new String(body, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        HttpResponse.BodyHandler<String> responseBody() {
+          return HttpResponse.BodyHandlers.ofString();
+        }
+
+        @Override
+        String decode(byte[] body) {
+          return new String(body, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void sendToClient(Context context, HttpResponse<String> response) {
+          context.result(response.body());
+        }
+
+        @Override
+        void discard(HttpResponse<String> response) {}
+      };
+
+  /**
+   * Passes the bytes through without decoding. The request body is published straight from the
+   * bytes read from the client, which are kept in memory because a retry has to send them again.
+   * The response body is streamed from the upstream connection to the client as it arrives.
+   */
+  static final BodyMode<InputStream> STREAMING =
+      new BodyMode<>() {
+        @Override
+        HttpRequest.BodyPublisher requestBody(byte[] body) {
+          return HttpRequest.BodyPublishers.ofByteArray(body);
+        }
+
+        @Override
+        HttpResponse.BodyHandler<InputStream> responseBody() {
+          return HttpResponse.BodyHandlers.ofInputStream();
+        }
+
+        @Override
+        InputStream decode(byte[] body) {
+          return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        void sendToClient(Context context, HttpResponse<InputStream> response) {
+          // Javalin copies the stream to the client and closes it once the handler is done.
+          context.result(response.body());
+        }
+
+        @Override
+        void discard(HttpResponse<InputStream> response) {
+          try {
+            response.body().close();
+          } catch (IOException e) {
+            // The response is dropped either way, the caller only needs the connection back.
+            logger.warn("Could not close response body from " + response.uri() + ": " + e);
+          }
+        }
+      };
+
+  /**
+   * Reads the response body into bytes, which {@link org.ccwang.routing.cache.ResponseCache} can
+   * keep and send to any number of clients.
+   */
+  static final BodyMode<byte[]> BYTES =
+      new BodyMode<>() {
+        @Override
+        HttpRequest.BodyPublisher requestBody(byte[] body) {
+          return HttpRequest.BodyPublishers.ofByteArray(body);
+        }
+
+        @Override
+        HttpResponse.BodyHandler<byte[]> responseBody() {
+          return HttpResponse.BodyHandlers.ofByteArray();
+        }
+
+        @Override
+        byte[] decode(byte[] body) {
+          return body;
+        }
+
+        @Override
+        void sendToClient(Context context, HttpResponse<byte[]> response) {
+          context.result(response.body());
+        }
+
+        @Override
+        void discard(HttpResponse<byte[]> response) {}
+      };
+
+  /**
+   * Reads the request body on the request thread, so it can be sent to any number of hosts, and
+   * keeps it for {@link #bodyAsBytes}. Javalin's own {@link Context#bodyAsBytes} reads under a
+   * monitor, which would pin a virtual thread to its carrier for as long as the client takes to
+   * send the body. Later calls return the body the first one read.
+   *
+   * @throws ContentTooLargeResponse if the body is declared larger than {@code maxBytes}.
+   */
+  static byte[] readBody(Context context, long maxBytes) {
+    if (context.contentLength() > maxBytes) {
+      throw new ContentTooLargeResponse();
+    }
+    byte[] body = context.attribute(BODY_ATTRIBUTE);
+    if (body != null) {
+      return body;
+    }
+    try {
+      body = context.bodyInputStream().readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    context.attribute(BODY_ATTRIBUTE, body);
+    return body;
+  }
+
+  /** Returns the body {@link #readBody} read, or has Javalin read it if that was never called. */
+  static byte[] bodyAsBytes(Context context) {
+    byte[] body = context.attribute(BODY_ATTRIBUTE);
+    return body != null ? body : context.bodyAsBytes();
+  }
+
+  abstract HttpRequest.BodyPublisher requestBody(byte[] body);
+
+  abstract HttpResponse.BodyHandler<T> responseBody();
+
+  /** Turns a response body that has already been read, e.g. out of a batch, into a {@code T}. */
+  abstract T decode(byte[] body);
+
+  abstract void sendToClient(Context context, HttpResponse<T> response);
+
+  /**
+   * Releases the body of a response that is not going to be sent to the client. Never throws, as it
+   * runs in callbacks that still have to complete the request.
+   */
+  abstract void discard(HttpResponse<T> response);
+}
@@ -0,0 +1,89 @@
+package org.ccwang.routing;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.javalin.http.Context;
+import java.net.http.HttpHeaders;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.ccwang.routing.trace.TraceContext;
+
+/**
+ * Picks the headers passed on between client and host: the end-to-end ones. Hop-by-hop headers
+ * describe one connection rather than the message, so they are dropped along with any header the
+ * {@code Connection} header names, as RFC 9110 section 7.6.1 asks of a proxy.
+ */
+public final class ForwardedHeaders {
+  private static final ImmutableSet<String> HOP_BY_HOP =
+      ImmutableSet.of(
+          "connection",
+          "keep-alive",
+          "proxy-authenticate",
+          "proxy-authorization",
+          "proxy-connection",
+          "te",
+          "trailer",
+          "transfer-encoding",
+          "upgrade");
+
+  /** Set for each attempt by the dispatcher or its HTTP client, which refuses some of them. */
+  private static final ImmutableSet<String> SET_PER_ATTEMPT =
+      ImmutableSet.of("host", "content-length", "expect", TraceContext.HEADER);
+
+  private ForwardedHeaders() {}
+
+  /** The client's headers to send to the host, by name. */
+  static ImmutableMap<String, String> fromClient(Context context) {
+    Map<String, String> headers = context.headerMap();
+    Set<String> dropped = connectionTokens(List.of(headers.getOrDefault("Connection", "")));
+    return headers.entrySet().stream()
+        .filter(header -> forwarded(header.getKey(), dropped))
+        .filter(header -> !SET_PER_ATTEMPT.contains(header.getKey().toLowerCase(Locale.ROOT)))
+        .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  /** The host's response headers to send to the client, each name with all its values. */
+  static ImmutableListMultimap<String, String> fromHost(HttpHeaders headers) {
+    Set<String> dropped = connectionTokens(headers.allValues("Connection"));
+    ImmutableListMultimap.Builder<String, String> forwarded = ImmutableListMultimap.builder();
+    headers.map().forEach(
+        (name, values) -> {
+          // The HTTP/2 pseudo-headers, and the length of a body Jetty frames itself.
+          if (!name.startsWith(":")
+              && !name.equalsIgnoreCase("Content-Length")
+              && forwarded(name, dropped)) {
+            forwarded.putAll(name, values);
+          }
+        });
+    return forwarded.build();
+  }
+
+  /** Sets the host's headers on the client's response, replacing any default Javalin set. */
+  public static void sendToClient(ImmutableListMultimap<String, String> headers, Context context) {
+    for (var header : headers.asMap().entrySet()) {
+      var values = header.getValue().iterator();
+      context.header(header.getKey(), values.next());
+      while (values.hasNext()) {
+        context.res().addHeader(header.getKey(), values.next());
+      }
+    }
+  }
+
+  private static boolean forwarded(String name, Set<String> dropped) {
+    String lowerCase = name.toLowerCase(Locale.ROOT);
+    return !HOP_BY_HOP.contains(lowerCase) && !dropped.contains(lowerCase);
+  }
+
+  /** The header names listed in {@code Connection} values, in lower case. */
+  private static Set<String> connectionTokens(List<String> connection) {
+    return connection.stream()
+        .flatMap(value -> Arrays.stream(value.split(",")))
+        .map(token -> token.trim().toLowerCase(Locale.ROOT))
+        .collect(Collectors.toSet());
+  }
+}
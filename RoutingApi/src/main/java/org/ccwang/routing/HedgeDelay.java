@@ -0,0 +1,84 @@
+package org.ccwang.routing;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How long {@link RequestDispatcher} waits for an attempt before sending a speculative duplicate to
+ * another host. Written as a number of milliseconds, e.g. {@code 50}, or as a percentile of recent
+ * upstream latencies, e.g. {@code p95}.
+ */
+public interface HedgeDelay {
+  /** Returns the current delay, {@link Long#MAX_VALUE} means not to hedge. */
+  long delayNanos();
+
+  /** Records the latency of a successful attempt. */
+  default void record(long latencyNanos) {}
+
+  /**
+   * Parses a hedge delay, e.g. {@code p95} or {@code 50}.
+   *
+   * @throws IllegalArgumentException if the delay is malformed.
+   */
+  static HedgeDelay parse(String value) {
+    if (value.startsWith("p")) {
+      return percentile(Double.parseDouble(value.substring(1)));
+    }
+    return fixed(Duration.ofMillis(Long.parseLong(value)));
+  }
+
+  static HedgeDelay fixed(Duration delay) {
+    long delayNanos = delay.toNanos();
+    return () -> delayNanos;
+  }
+
+  static HedgeDelay percentile(double percentile) {
+    return new PercentileHedgeDelay(percentile);
+  }
+
+  /**
+   * Tracks the given percentile over a window of the most recent latencies. Recording is a single
+   * array write; the percentile is recomputed once every {@link #RECOMPUTE_EVERY} samples, so the
+   * sort stays off the request path most of the time. Does not hedge until the window has filled.
+   */
+  class PercentileHedgeDelay implements HedgeDelay {
+    private static final int WINDOW = 1024;
+    private static final int RECOMPUTE_EVERY = 128;
+
+    private final double percentile;
+    private final AtomicLongArray samples;
+    private final AtomicLong count;
+    private volatile long delayNanos;
+
+    private PercentileHedgeDelay(double percentile) {
+      if (percentile <= 0 || percentile >= 100) {
+        throw new IllegalArgumentException("Percentile must be within (0, 100): " + percentile);
+      }
+      this.percentile = percentile;
+      this.samples = new AtomicLongArray(WINDOW);
+      this.count = new AtomicLong();
+      this.delayNanos = Long.MAX_VALUE;
+    }
+
+    @Override
+    public long delayNanos() {
+      return delayNanos;
+    }
+
+    @Override
+    public void record(long latencyNanos) {
+      long n = count.getAndIncrement();
+      samples.set((int) (n % WINDOW), latencyNanos);
+      if (n + 1 >= WINDOW && (n + 1) % RECOMPUTE_EVERY == 0) {
+        long[] sorted = new long[WINDOW];
+        for (int i = 0; i < WINDOW; ++i) {
+          sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        delayNanos = sorted[(int) Math.ceil(percentile / 100 * WINDOW) - 1];
+      }
+    }
+  }
+}
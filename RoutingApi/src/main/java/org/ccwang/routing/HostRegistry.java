@@ -0,0 +1,203 @@
+package org.ccwang.routing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The upstream hosts that currently belong to the router, changeable at runtime through the admin
+ * API and the hosts file. Every change builds a new immutable list of the hosts in rotation and
+ * hands it to the {@link MembershipListener}s in the order they were added. Changes are applied one
+ * at a time; requests only read the snapshots the listeners built, so they never wait on a change.
+ *
+ * <p>Draining a host takes it out of rotation right away but keeps it listed as draining for the
+ * drain period, after which every request that was sent to it has completed or timed out and it is
+ * safe to shut down. Requests in flight to a removed host complete too, removing just doesn't wait
+ * for them.
+ */
+public class HostRegistry implements AutoCloseable {
+  public enum State {
+    ACTIVE,
+    DRAINING
+  }
+
+  /**
+   * A host as listed by the admin API.
+   *
+   * @param zone the host's zone, or null if it has none.
+   */
+  public record Member(URI uri, int weight, String zone, int priority, State state) {
+    /** A member in no particular zone and the first tier. */
+    public Member(URI uri, int weight, State state) {
+      this(uri, weight, null, 0, state);
+    }
+
+    private Member(HostSpec host, State state) {
+      this(host.uri(), host.weight(), host.zone().orElse(null), host.priority(), state);
+    }
+
+    private Member withState(State state) {
+      return new Member(uri, weight, zone, priority, state);
+    }
+
+    private HostSpec host() {
+      return new HostSpec(uri, weight, Optional.ofNullable(zone), priority);
+    }
+  }
+
+  private final Duration drainPeriod;
+  private final List<MembershipListener> listeners;
+  private final ScheduledExecutorService scheduler;
+  private final Logger logger;
+  /** Every host, in the order it was first added. Guarded by this. */
+  private final Map<URI, Member> members;
+  /** Scheduled removals of the draining hosts. Guarded by this. */
+  private final Map<URI, ScheduledFuture<?>> drains;
+
+  private volatile ImmutableList<HostSpec> activeHosts;
+
+  public HostRegistry(List<HostSpec> hosts, Duration drainPeriod) {
+    this.drainPeriod = drainPeriod;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("host-registry-%d").setDaemon(true).build());
+    this.logger = LoggerFactory.getLogger(HostRegistry.class);
+    this.members = new LinkedHashMap<>();
+    this.drains = new HashMap<>();
+    for (HostSpec host : hosts) {
+      members.put(host.uri(), new Member(host, State.ACTIVE));
+    }
+    this.activeHosts = ImmutableList.copyOf(hosts);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  /** Returns the hosts currently in rotation. Never blocks. */
+  public ImmutableList<HostSpec> activeHosts() {
+    return activeHosts;
+  }
+
+  /** Returns every host, including the draining ones. */
+  public synchronized ImmutableList<Member> members() {
+    return ImmutableList.copyOf(members.values());
+  }
+
+  /** Registers a listener and immediately hands it the hosts in rotation. */
+  public synchronized void addListener(MembershipListener listener) {
+    listeners.add(listener);
+    listener.onMembershipChanged(activeHosts);
+  }
+
+  /**
+   * Adds a host, or updates its weight, zone and priority, and puts it back in rotation if it was
+   * draining.
+   */
+  public void add(HostSpec host) {
+    update(List.of(host), List.of());
+  }
+
+  /**
+   * Takes a host out of rotation and removes it once the drain period has passed.
+   *
+   * @return false if there is no such host.
+   */
+  public synchronized boolean drain(URI uri) {
+    if (!members.containsKey(uri)) {
+      return false;
+    }
+    update(List.of(), List.of(uri));
+    return true;
+  }
+
+  /**
+   * Removes a host right away, without waiting for its requests to complete.
+   *
+   * @return false if there is no such host.
+   */
+  public synchronized boolean remove(URI uri) {
+    cancelDrain(uri);
+    if (members.remove(uri) == null) {
+      return false;
+    }
+    logger.info("Removed " + uri);
+    publish();
+    return true;
+  }
+
+  /**
+   * Adds or updates the given hosts and drains the others given, as one change.
+   *
+   * @param hosts hosts to add, update or put back in rotation.
+   * @param drained hosts to drain; unknown ones are ignored.
+   */
+  public synchronized void update(List<HostSpec> hosts, List<URI> drained) {
+    for (HostSpec host : hosts) {
+      cancelDrain(host.uri());
+      Member previous = members.put(host.uri(), new Member(host, State.ACTIVE));
+      logger.info((previous == null ? "Added " : "Updated ") + host);
+    }
+    for (URI uri : drained) {
+      Member member = members.get(uri);
+      if (member == null || member.state() == State.DRAINING) {
+        continue;
+      }
+      members.put(uri, member.withState(State.DRAINING));
+      drains.put(
+          uri,
+          scheduler.schedule(
+              () -> finishDrain(uri), drainPeriod.toNanos(), TimeUnit.NANOSECONDS));
+      logger.info("Draining " + uri + " for " + drainPeriod);
+    }
+    publish();
+  }
+
+  private synchronized void finishDrain(URI uri) {
+    drains.remove(uri);
+    Member member = members.get(uri);
+    if (member != null && member.state() == State.DRAINING) {
+      members.remove(uri);
+      logger.info("Drained " + uri);
+    }
+  }
+
+  private void cancelDrain(URI uri) {
+    ScheduledFuture<?> drain = drains.remove(uri);
+    if (drain != null) {
+      drain.cancel(false);
+    }
+  }
+
+  /** Hands the hosts in rotation to the listeners, if they changed. Called holding the lock. */
+  private void publish() {
+    ImmutableList<HostSpec> hosts =
+        members.values().stream()
+            .filter(member -> member.state() == State.ACTIVE)
+            .map(Member::host)
+            .collect(ImmutableList.toImmutableList());
+    if (hosts.equals(activeHosts)) {
+      return;
+    }
+    activeHosts = hosts;
+    logger.info("Hosts in rotation changed to " + HostSpec.uris(hosts));
+    for (MembershipListener listener : listeners) {
+      listener.onMembershipChanged(hosts);
+    }
+  }
+}
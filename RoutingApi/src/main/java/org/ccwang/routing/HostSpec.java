@@ -0,0 +1,94 @@
+package org.ccwang.routing;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An upstream host together with its routing metadata. Written as {@code <uri>[;key=value...]}, e.g.
+ * {@code http://localhost:8081;weight=3;zone=us-east-1a;priority=1}.
+ *
+ * @param weight share of the requests the host gets relative to the others, from 1 to {@value
+ *     #MAX_WEIGHT}.
+ * @param zone where the host runs, requests stay in the router's own zone where they can.
+ * @param priority tier of the host, 0 being the first; lower tiers only get requests once the
+ *     higher ones have too few healthy hosts.
+ */
+public record HostSpec(URI uri, int weight, Optional<String> zone, int priority) {
+  /**
+   * Keeps what schemes derive from weights small: weighted round-robin's schedule and consistent
+   * hashing's ring both grow with them.
+   */
+  public static final int MAX_WEIGHT = 100;
+
+  private static final Splitter ATTRIBUTE_SPLITTER = Splitter.on(';').trimResults();
+  private static final Splitter KEY_VALUE_SPLITTER = Splitter.on('=').limit(2).trimResults();
+
+  public HostSpec {
+    if (weight < 1 || weight > MAX_WEIGHT) {
+      throw new IllegalArgumentException(
+          "Weight of " + uri + " must be between 1 and " + MAX_WEIGHT + ": " + weight);
+    }
+    if (priority < 0) {
+      throw new IllegalArgumentException(
+          "Priority of " + uri + " must not be negative: " + priority);
+    }
+  }
+
+  /** A host in no particular zone and the first tier. */
+  public HostSpec(URI uri, int weight) {
+    this(uri, weight, Optional.empty(), 0);
+  }
+
+  public static HostSpec of(URI uri) {
+    return new HostSpec(uri, 1);
+  }
+
+  /**
+   * Parses a host spec.
+   *
+   * @throws IllegalArgumentException if the URI, an attribute or its value is malformed.
+   */
+  public static HostSpec parse(String spec) {
+    List<String> parts = ATTRIBUTE_SPLITTER.splitToList(spec);
+    URI uri = URI.create(parts.get(0));
+    int weight = 1;
+    Optional<String> zone = Optional.empty();
+    int priority = 0;
+    for (String attribute : parts.subList(1, parts.size())) {
+      List<String> keyValue = KEY_VALUE_SPLITTER.splitToList(attribute);
+      if (keyValue.size() != 2) {
+        throw new IllegalArgumentException("Malformed attribute of " + uri + ": " + attribute);
+      }
+      switch (keyValue.get(0)) {
+        case "weight" -> weight = Integer.parseInt(keyValue.get(1));
+        case "zone" -> zone = Optional.of(keyValue.get(1));
+        case "priority" -> priority = Integer.parseInt(keyValue.get(1));
+        default ->
+            throw new IllegalArgumentException("Unknown attribute of " + uri + ": " + attribute);
+      }
+    }
+    return new HostSpec(uri, weight, zone, priority);
+  }
+
+  /** Reads one host spec per line. Blank lines and lines starting with {@code #} are skipped. */
+  public static ImmutableList<HostSpec> readAll(Path file) throws IOException {
+    ImmutableList.Builder<HostSpec> hosts = ImmutableList.builder();
+    for (String line : Files.readAllLines(file)) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        hosts.add(parse(line));
+      }
+    }
+    return hosts.build();
+  }
+
+  public static ImmutableList<URI> uris(List<HostSpec> hosts) {
+    return hosts.stream().map(HostSpec::uri).collect(ImmutableList.toImmutableList());
+  }
+}
@@ -0,0 +1,121 @@
+package org.ccwang.routing;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the hosts file and applies edits to a {@link HostRegistry} as they are saved: hosts that
+ * appear are added, hosts whose weight changed are updated and hosts that disappear are drained.
+ * Hosts that were not read from the file, e.g. those given on the command line, are left alone.
+ *
+ * <p>Editors often save in more than one step, so the file is only read once it has stopped
+ * changing for a moment. A file that fails to parse or has no hosts left is ignored, as it is more
+ * likely caught mid-write than meant to take every host out of rotation.
+ */
+public class HostsFileWatcher implements AutoCloseable {
+  private static final long SETTLE_MILLIS = 100;
+
+  private final Path file;
+  private final HostRegistry registry;
+  private final WatchService watchService;
+  private final Thread thread;
+  private final Logger logger;
+  /** The hosts last applied from the file. Only accessed by the watcher thread after start. */
+  private ImmutableList<HostSpec> hosts;
+
+  public HostsFileWatcher(Path file, HostRegistry registry) throws IOException {
+    this.file = file.toAbsolutePath();
+    this.registry = registry;
+    this.logger = LoggerFactory.getLogger(HostsFileWatcher.class);
+    this.hosts = HostSpec.readAll(this.file);
+    this.watchService = this.file.getFileSystem().newWatchService();
+    this.file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    this.thread =
+        new ThreadFactoryBuilder()
+            .setNameFormat("hosts-file-watcher")
+            .setDaemon(true)
+            .build()
+            .newThread(this::watch);
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  @Override
+  public void close() {
+    try {
+      // Wakes the watcher thread up with a ClosedWatchServiceException.
+      watchService.close();
+    } catch (IOException e) {
+      logger.warn("Failed to stop watching " + file + ": " + e);
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        if (!concernsFile(watchService.take())) {
+          continue;
+        }
+        // Waits for the writes to settle.
+        for (WatchKey key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            key != null;
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+          concernsFile(key);
+        }
+        reload();
+      }
+    } catch (ClosedWatchServiceException | InterruptedException e) {
+      // Closed
+    }
+  }
+
+  /** Returns whether the events of the given key concern the watched file, and resets it. */
+  private boolean concernsFile(WatchKey key) {
+    boolean concernsFile =
+        key.pollEvents().stream()
+            .anyMatch(
+                event -> event.kind() == OVERFLOW || file.getFileName().equals(event.context()));
+    key.reset();
+    return concernsFile;
+  }
+
+  private void reload() {
+    ImmutableList<HostSpec> next;
+    try {
+      next = HostSpec.readAll(file);
+    } catch (IOException | IllegalArgumentException e) {
+      logger.warn("Ignoring unreadable hosts file " + file + ": " + e);
+      return;
+    }
+    if (next.isEmpty()) {
+      logger.warn("Ignoring hosts file " + file + " without hosts");
+      return;
+    }
+    ImmutableSet<URI> nextUris = ImmutableSet.copyOf(HostSpec.uris(next));
+    List<HostSpec> changed = next.stream().filter(host -> !hosts.contains(host)).toList();
+    List<URI> removed =
+        HostSpec.uris(hosts).stream().filter(uri -> !nextUris.contains(uri)).distinct().toList();
+    hosts = next;
+    if (!changed.isEmpty() || !removed.isEmpty()) {
+      logger.info("Hosts file " + file + " changed");
+      registry.update(changed, removed);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package org.ccwang.routing;
+
+import io.javalin.http.Context;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Whether the router is ready for traffic, and the requests it is serving, so that it can report
+ * liveness and readiness apart and shut down without failing requests in flight.
+ *
+ * <p>The router is live from the start but only ready once its pools have warmed up. When it shuts
+ * down it turns unready, answers new requests with 503 and {@code Connection: close} so that load
+ * balancers send them elsewhere, and waits for the requests in flight to complete.
+ */
+public class Lifecycle {
+  public enum State {
+    STARTING,
+    READY,
+    DRAINING
+  }
+
+  private static final String ENTERED_ATTRIBUTE = Lifecycle.class.getName() + ".entered";
+
+  private final AtomicReference<State> state;
+  private final AtomicInteger inFlight;
+  /** Completes once draining and no request is in flight any more. */
+  private final CompletableFuture<Void> drained;
+  private final Logger logger;
+
+  public Lifecycle() {
+    this.state = new AtomicReference<>(State.STARTING);
+    this.inFlight = new AtomicInteger();
+    this.drained = new CompletableFuture<>();
+    this.logger = LoggerFactory.getLogger(Lifecycle.class);
+  }
+
+  public State state() {
+    return state.get();
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /** Reports ready, unless already draining. */
+  public void ready() {
+    if (state.compareAndSet(State.STARTING, State.READY)) {
+      logger.info("Ready");
+    }
+  }
+
+  /**
+   * Counts the request as in flight until {@link #exit}, or answers it with 503 if draining.
+   *
+   * @return whether the request may be served.
+   */
+  public boolean enter(Context context) {
+    inFlight.incrementAndGet();
+    if (state.get() == State.DRAINING) {
+      leave();
+      context.header("Connection", "close");
+      context.status(503);
+      return false;
+    }
+    context.attribute(ENTERED_ATTRIBUTE, true);
+    return true;
+  }
+
+  /** Called once the response to every request is complete, whether it was {@link #enter}ed. */
+  public void exit(Context context) {
+    if (context.attribute(ENTERED_ATTRIBUTE) != null) {
+      leave();
+    }
+  }
+
+  /**
+   * Stops letting requests in and waits for those in flight to complete, or the timeout to pass.
+   *
+   * @return whether every request in flight completed.
+   */
+  public boolean drain(Duration timeout) {
+    state.set(State.DRAINING);
+    logger.info("Draining " + inFlight.get() + " requests in flight");
+    if (inFlight.get() == 0) {
+      drained.complete(null);
+    }
+    try {
+      drained.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+      logger.info("Drained");
+      return true;
+    } catch (TimeoutException e) {
+      logger.warn("Gave up on " + inFlight.get() + " requests in flight after " + timeout);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Answers 200 for as long as the router is serving at all. */
+  public void livez(Context context) {
+    context.status(200);
+  }
+
+  /** Answers 200 once warmed up, and 503 before that or while draining. */
+  public void readyz(Context context) {
+    context.status(state.get() == State.READY ? 200 : 503);
+  }
+
+  private void leave() {
+    if (inFlight.decrementAndGet() == 0 && state.get() == State.DRAINING) {
+      drained.complete(null);
+    }
+  }
+}
@@ -1,19 +1,46 @@
 package org.ccwang.routing;
 
 import com.google.common.collect.ImmutableList;
-import java.net.URI;
+import java.io.IOException;
 
 public class Main {
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     if (args.length < 2) {
-      System.out.println("Expecting argument list: <port> <host1> <host2> ...");
-      System.exit(0);
+      printUsageAndExit();
     }
-    ImmutableList.Builder<URI> builder = ImmutableList.builder();
+    ImmutableList.Builder<HostSpec> builder = ImmutableList.builder();
+    RouterConfig.Builder configBuilder = RouterConfig.builder();
     for (int i = 1; i < args.length; ++i) {
-      builder.add(URI.create(args[i]));
+      if (args[i].startsWith("--")) {
+        int separator = args[i].indexOf('=');
+        if (separator < 0) {
+          configBuilder.setFlag(args[i].substring(2), "true");
+        } else {
+          configBuilder.setFlag(args[i].substring(2, separator), args[i].substring(separator + 1));
+        }
+      } else {
+        builder.add(HostSpec.parse(args[i]));
+      }
     }
+    RouterConfig config = configBuilder.build();
+    if (config.hostsFile().isPresent()) {
+      builder.addAll(HostSpec.readAll(config.hostsFile().get()));
+    }
+    ImmutableList<HostSpec> hosts = builder.build();
+    if (hosts.isEmpty()) {
+      printUsageAndExit();
+    }
+
+    RoutingServiceApp router = new RoutingServiceApp(hosts, config);
+    // Runs on SIGTERM and SIGINT, as well as on a normal exit.
+    Runtime.getRuntime().addShutdownHook(new Thread(router::shutdown, "shutdown"));
+    router.app().start(Integer.parseInt(args[0]));
+  }
 
-    new RoutingServiceApp(builder.build()).app().start(Integer.parseInt(args[0]));
+  private static void printUsageAndExit() {
+    System.out.println(
+        "Expecting argument list: <port> <host1>[;weight=<n>][;zone=<zone>][;priority=<n>] <host2>"
+            + " ... [--flag=value ...]");
+    System.exit(0);
   }
 }
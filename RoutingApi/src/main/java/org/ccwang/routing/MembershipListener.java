@@ -0,0 +1,13 @@
+package org.ccwang.routing;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Receives the hosts that currently belong in rotation whenever they change, see {@link
+ * HostRegistry}. Implementations rebuild their state copy-on-write, keeping whatever they know
+ * about hosts that stay, so that the request path never waits on a membership change.
+ */
+@FunctionalInterface
+public interface MembershipListener {
+  void onMembershipChanged(ImmutableList<HostSpec> hosts);
+}
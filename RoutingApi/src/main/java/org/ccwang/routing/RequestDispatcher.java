@@ -1,69 +1,683 @@
 package org.ccwang.routing;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import io.javalin.http.Context;
-import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.ccwang.routing.batch.UpstreamBatcher;
+import org.ccwang.routing.cache.CachedResponse;
+import org.ccwang.routing.cache.ResponseCache;
+import org.ccwang.routing.health.RequestOutcomeListener;
+import org.ccwang.routing.limit.ConcurrencyLimiter;
+import org.ccwang.routing.limit.ConcurrencyLimiter.Permit;
+import org.ccwang.routing.limit.HostLimiters;
+import org.ccwang.routing.limit.TenantWeights;
 import org.ccwang.routing.loadbalancing.LoadBalancingScheme;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.metrics.RouterMetrics.Unavailable;
+import org.ccwang.routing.metrics.RouterMetrics.UpstreamResult;
+import org.ccwang.routing.trace.RequestTrace;
+import org.ccwang.routing.trace.Span;
+import org.ccwang.routing.trace.TraceContext;
+import org.ccwang.routing.trace.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Dispatches requests to given hosts provided by LoadBalancingScheme. */
+/**
+ * Dispatches requests to given hosts provided by LoadBalancingScheme. Both dispatch modes share one
+ * non-blocking pipeline; they only differ in whether the calling worker thread waits for it.
+ * Requests go to the {@link UpstreamTarget} they are dispatched with, the echo endpoint if none is
+ * given.
+ *
+ * <p>Whatever status the host answers with is passed on to the client. An attempt that fails, by
+ * answering with a server error or not at all, is retried on the next host, as long as the
+ * request's method is one that {@link RouterConfig#retryMethods} allows to be sent again. With a
+ * {@link HedgeDelay}, such a request that is still outstanding after the delay is raced against a
+ * duplicate sent to the next host, the first response that is not a failure wins and the other
+ * attempt is cancelled. Both retries and hedges count against the same attempt limit and {@link
+ * RetryBudget}. Once they run out, the client gets the last server error, or 503 if no host
+ * answered at all.
+ *
+ * <p>Requests to routes with a cache TTL are answered through a {@link ResponseCache}, which also
+ * collapses concurrent identical requests into one upstream call.
+ *
+ * <p>With a concurrency limit, requests over it are turned away with 429 or 503 and a Retry-After
+ * header before any host sees them, or wait briefly for a permit in their tenant's queue; the
+ * queues are served in weighted fair order. Hosts at their own limit are skipped in favour of the
+ * next one, without spending the retry budget since nothing was sent.
+ *
+ * <p>With batching, attempts to the same host are grouped by an {@link UpstreamBatcher} into calls
+ * to its batch endpoint. Retries, hedges and limits still apply to each request on its own.
+ *
+ * <p>Every request is traced by the {@link Tracer}: sampled requests record a span for the wait
+ * for a permit, each host selection and each attempt, and send each attempt's {@code traceparent}
+ * upstream, except in batches.
+ */
 public class RequestDispatcher {
-  private static final int MAX_RETRIES = 2;
+  /** Tokens the retry budget holds at most, so that low traffic can still be retried. */
+  private static final int RETRY_BUDGET_TOKENS = 10;
+  /** Where concurrency limits start out, overall and per host, unless their maximum is lower. */
+  private static final int INITIAL_LIMIT = 100;
+  private static final int INITIAL_HOST_LIMIT = 20;
+  private static final String RETRY_AFTER_SECONDS = "1";
+
   private final HttpClient httpClient;
   private final Logger logger;
   private final LoadBalancingScheme loadBalancingScheme;
+  private final RoutingKeyExtractor routingKeyExtractor;
+  private final RoutingKeyExtractor tenantKey;
+  private final TenantWeights tenantWeights;
+  private final BodyMode<?> bodyMode;
+  private final int maxRetries;
+  private final ImmutableSet<String> retryMethods;
+  private final long maxRequestBytes;
+  private final Duration timeout;
+  private final Optional<HedgeDelay> hedgeDelay;
+  private final RetryBudget retryBudget;
+  private final RequestOutcomeListener outcomeListener;
+  private final RouterMetrics metrics;
+  private final Optional<ResponseCache> responseCache;
+  private final Optional<ConcurrencyLimiter> limiter;
+  private final Optional<HostLimiters> hostLimiters;
+  private final int rejectStatus;
+  private final Optional<UpstreamBatcher> batcher;
+  private final Tracer tracer;
 
   public RequestDispatcher(LoadBalancingScheme loadBalancingScheme) {
-    this.httpClient = HttpClient.newBuilder().build();
+    this(loadBalancingScheme, RouterConfig.defaults());
+  }
+
+  public RequestDispatcher(LoadBalancingScheme loadBalancingScheme, RouterConfig config) {
+    this(loadBalancingScheme, config, RequestOutcomeListener.NONE, HttpClient.newHttpClient());
+  }
+
+  public RequestDispatcher(
+      LoadBalancingScheme loadBalancingScheme,
+      RouterConfig config,
+      RequestOutcomeListener outcomeListener,
+      HttpClient httpClient) {
+    this(loadBalancingScheme, config, outcomeListener, httpClient, new RouterMetrics());
+  }
+
+  public RequestDispatcher(
+      LoadBalancingScheme loadBalancingScheme,
+      RouterConfig config,
+      RequestOutcomeListener outcomeListener,
+      HttpClient httpClient,
+      RouterMetrics metrics) {
+    this(loadBalancingScheme, config, outcomeListener, httpClient, metrics, Tracer.NONE);
+  }
+
+  /**
+   * @param outcomeListener gets told how every attempt turned out, e.g. to eject outliers.
+   * @param httpClient client to forward with, see {@link UpstreamTransport}.
+   * @param metrics where requests and attempts are counted.
+   * @param tracer shared by every pool, so that their spans go to the same place.
+   */
+  public RequestDispatcher(
+      LoadBalancingScheme loadBalancingScheme,
+      RouterConfig config,
+      RequestOutcomeListener outcomeListener,
+      HttpClient httpClient,
+      RouterMetrics metrics,
+      Tracer tracer) {
+    this.httpClient = httpClient;
     this.logger = LoggerFactory.getLogger(RequestDispatcher.class);
     this.loadBalancingScheme = loadBalancingScheme;
+    this.routingKeyExtractor = config.routingKey();
+    this.tenantKey = config.tenantKey();
+    this.tenantWeights = config.tenantWeights();
+    this.bodyMode = config.streamBodies() ? BodyMode.STREAMING : BodyMode.BUFFERED;
+    this.maxRetries = config.maxRetries();
+    this.retryMethods = config.retryMethods();
+    this.maxRequestBytes = config.maxRequestBytes();
+    this.timeout = config.upstreamTimeout();
+    this.hedgeDelay = config.hedgeDelay();
+    this.retryBudget = new RetryBudget(config.retryBudgetPercent(), RETRY_BUDGET_TOKENS);
+    this.outcomeListener = outcomeListener;
+    this.metrics = metrics;
+    this.responseCache =
+        config.cacheTtls().isEmpty()
+            ? Optional.empty()
+            : Optional.of(
+                new ResponseCache(
+                    config.cacheTtls(),
+                    config.cacheKeyHeaders(),
+                    config.cacheMaxEntries(),
+                    config.cacheMaxBytes(),
+                    metrics));
+    this.limiter =
+        config
+            .concurrencyLimit()
+            .map(
+                algorithm ->
+                    new ConcurrencyLimiter(
+                        algorithm.create(
+                            Math.min(INITIAL_LIMIT, config.maxConcurrency()),
+                            config.maxConcurrency()),
+                        config.limitQueueSize(),
+                        config.limitQueueTimeout()));
+    this.hostLimiters =
+        config
+            .hostConcurrencyLimit()
+            .map(
+                algorithm ->
+                    new HostLimiters(
+                        algorithm,
+                        Math.min(INITIAL_HOST_LIMIT, config.maxHostConcurrency()),
+                        config.maxHostConcurrency()));
+    this.rejectStatus = config.limitRejectStatus();
+    this.batcher =
+        config.batchMaxSize() == 0
+            ? Optional.empty()
+            : Optional.of(
+                new UpstreamBatcher(
+                    httpClient, timeout, config.batchMaxSize(), config.batchWindow()));
+    this.tracer = tracer;
+    limiter.ifPresent(l -> metrics.onConcurrencyLimit(l.limit()));
   }
 
+  /** Dispatches the request, blocking the calling thread until the response has been set. */
   public void dispatch(Context context) {
-    int retries = 0;
-    do {
-      var uriOpt = loadBalancingScheme.getNextHost();
-      if (uriOpt.isEmpty()) {
-        // No available hosts. Returns 503 Service Unavailable and exits.
-        context.status(503);
-        return;
+    dispatch(context, UpstreamTarget.ECHO);
+  }
+
+  /** Dispatches the request to the target, blocking the calling thread until it has a response. */
+  public void dispatch(Context context, UpstreamTarget target) {
+    forward(context, target).join();
+  }
+
+  /**
+   * Dispatches the request without blocking the calling thread. The response is completed through
+   * {@link Context#future}, so the number of in-flight requests is not bound by the server's thread
+   * pool.
+   */
+  public void dispatchAsync(Context context) {
+    dispatchAsync(context, UpstreamTarget.ECHO);
+  }
+
+  /** Dispatches the request to the target without blocking the calling thread. */
+  public void dispatchAsync(Context context, UpstreamTarget target) {
+    // Reads the body on the request thread, the servlet input is not safe to consume elsewhere.
+    var request = read(context, target);
+    context.future(() -> trace(context, request));
+  }
+
+  CompletableFuture<Void> forward(Context context) {
+    return forward(context, UpstreamTarget.ECHO);
+  }
+
+  private CompletableFuture<Void> forward(Context context, UpstreamTarget target) {
+    return trace(context, read(context, target));
+  }
+
+  private UpstreamRequest read(Context context, UpstreamTarget target) {
+    var body = BodyMode.readBody(context, maxRequestBytes);
+    var routingKey = routingKeyExtractor.extract(context);
+    metrics.onRequest();
+    retryBudget.onRequest();
+    return new UpstreamRequest(
+        target, body, ForwardedHeaders.fromClient(context), routingKey, tracer.start(context));
+  }
+
+  /** Admits the request, and ends its trace once it has a response. */
+  private CompletableFuture<Void> trace(Context context, UpstreamRequest request) {
+    var response = admit(context, request);
+    if (!request.trace().sampled()) {
+      return response;
+    }
+    return response.whenComplete((unused, e) -> request.trace().end(context));
+  }
+
+  /**
+   * Responds once the concurrency limit lets the request in, or turns it away. The time from then
+   * until the response is written is fed back into the limit.
+   */
+  private CompletableFuture<Void> admit(Context context, UpstreamRequest request) {
+    if (limiter.isEmpty()) {
+      return respond(context, request);
+    }
+    String tenant = tenantKey.extract(context);
+    Span queued = request.trace().startSpan("queue");
+    return limiter
+        .get()
+        .acquire(tenant, tenantWeights.weight(tenant))
+        .thenCompose(
+            permitOpt -> {
+              queued.attribute("admitted", permitOpt.isPresent()).end();
+              if (permitOpt.isEmpty()) {
+                metrics.onRejected();
+                context.header("Retry-After", RETRY_AFTER_SECONDS);
+                context.status(rejectStatus);
+                return CompletableFuture.completedFuture(null);
+              }
+              Permit permit = permitOpt.get();
+              return respond(context, request)
+                  .whenComplete(
+                      (unused, e) -> {
+                        if (e != null || context.statusCode() == 503) {
+                          permit.onDropped();
+                        } else {
+                          permit.onSuccess();
+                        }
+                        metrics.onConcurrencyLimit(limiter.get().limit());
+                      });
+            });
+  }
+
+  /** Answers from the response cache if the request's route is cached, or else from upstream. */
+  private CompletableFuture<Void> respond(Context context, UpstreamRequest request) {
+    if (responseCache.isPresent()) {
+      var cached =
+          responseCache
+              .get()
+              .get(
+                  context,
+                  request.body(),
+                  () ->
+                      forward(BodyMode.BYTES, request)
+                          .thenApply(RequestDispatcher::toCachedResponse));
+      if (cached.isPresent()) {
+        return cached.get().thenAccept(response -> response.sendTo(context));
       }
-      var uri = uriOpt.get();
-      try {
-        // TODO: Switch to async requests
-        var response = forwardHttpRequest(context, uri);
-        if (response.statusCode() == 200) {
-          context.result(response.body());
-          context.status(response.statusCode());
-          return; // Exit early upon successful request
+    }
+    return respond(context, bodyMode, request);
+  }
+
+  private <T> CompletableFuture<Void> respond(
+      Context context, BodyMode<T> bodyMode, UpstreamRequest request) {
+    return forward(bodyMode, request)
+        .thenAccept(
+            responseOpt -> {
+              if (responseOpt.isPresent()) {
+                var response = responseOpt.get();
+                ForwardedHeaders.sendToClient(
+                    ForwardedHeaders.fromHost(response.headers()), context);
+                bodyMode.sendToClient(context, response);
+                context.status(response.statusCode());
+              } else {
+                // Returns 503 Service Unavailable
+                context.status(503);
+              }
+            });
+  }
+
+  /**
+   * Forwards the request until a host answers without failing or attempts run out. The returned
+   * future holds the response to pass on, the last server error if every host failed, or nothing if
+   * the request is to be answered with 503.
+   */
+  private <T> CompletableFuture<Optional<HttpResponse<T>>> forward(
+      BodyMode<T> bodyMode, UpstreamRequest request) {
+    var attempts = new Attempts<>(bodyMode);
+    return forward(bodyMode, request, attempts)
+        .thenApply(
+            responseOpt -> {
+              Optional<HttpResponse<T>> serverError = attempts.takeServerError();
+              if (responseOpt.isPresent()) {
+                serverError.ifPresent(bodyMode::discard);
+                return responseOpt;
+              }
+              return serverError;
+            });
+  }
+
+  /**
+   * Forwards to the next host, chaining one more attempt on failure until retries run out. The
+   * returned future holds the response to pass on, or nothing if every attempt failed.
+   */
+  private <T> CompletableFuture<Optional<HttpResponse<T>>> forward(
+      BodyMode<T> bodyMode, UpstreamRequest request, Attempts<T> attempts) {
+    Span select = request.trace().startSpan("select");
+    var uriOpt = loadBalancingScheme.getNextHost(request.routingKey(), attempts.getAndIncrement());
+    select.end();
+    if (uriOpt.isEmpty()) {
+      return giveUp(attempts, Unavailable.NO_HOSTS);
+    }
+    Optional<Permit> hostPermit = Optional.empty();
+    if (hostLimiters.isPresent()) {
+      hostPermit = hostLimiters.get().tryAcquire(uriOpt.get());
+      if (hostPermit.isEmpty()) {
+        if (attempts.get() > maxRetries) {
+          return giveUp(attempts, Unavailable.HOSTS_AT_LIMIT);
         }
-        logger.info("Got " + response.statusCode() + " from " + uri);
-      } catch (Exception e) {
-        logger.error("Got exception from: " + uri + " " + e);
-      } finally {
-        retries++;
+        // Nothing was sent, so moving on to the next host is not a retry.
+        return forward(bodyMode, request, attempts);
       }
-    } while (retries <= MAX_RETRIES);
-    // Returns 503 Service Unavailable
-    context.status(503);
-  }
-
-  private HttpResponse<String> forwardHttpRequest(Context context, URI uri)
-      throws IOException, InterruptedException {
-    var echoEndPoint = uri.resolve("/echo");
-    var request =
-        HttpRequest.newBuilder()
-            .header("Content-Type", "application/json")
-            .POST(HttpRequest.BodyPublishers.ofString(context.body()))
-            .uri(echoEndPoint)
-            .timeout(Duration.ofMillis(100)) // sets 100ms timeout
-            .build();
-    logger.info("Dispatching request to " + echoEndPoint);
-    return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+    boolean retryable = retryable(request.target());
+    var response =
+        send(
+            bodyMode,
+            request,
+            uriOpt.get(),
+            hostPermit,
+            attempts,
+            attemptSpan(request, attempts, false));
+    if (hedgeDelay.isPresent() && retryable) {
+      response = hedge(response, bodyMode, request, attempts);
+    }
+    return response.thenCompose(
+        responseOpt -> {
+          if (responseOpt.isPresent()) {
+            return CompletableFuture.completedFuture(responseOpt);
+          }
+          if (!retryable || attempts.get() > maxRetries) {
+            return giveUp(attempts, Unavailable.RETRIES_EXHAUSTED);
+          }
+          if (!retryBudget.tryAcquire()) {
+            logger.warn("Retry budget exhausted, giving up on request");
+            return giveUp(attempts, Unavailable.RETRY_BUDGET);
+          }
+          metrics.onRetry();
+          return forward(bodyMode, request, attempts);
+        });
+  }
+
+  /** Whether a failed attempt may be sent again, the echo endpoint has no side effects. */
+  private boolean retryable(UpstreamTarget target) {
+    return target.equals(UpstreamTarget.ECHO) || retryMethods.contains(target.method());
+  }
+
+  /** Stops sending attempts, counting the request as unavailable unless a host answered it. */
+  private <T> CompletableFuture<Optional<HttpResponse<T>>> giveUp(
+      Attempts<T> attempts, Unavailable reason) {
+    if (!attempts.hasServerError()) {
+      metrics.onUnavailable(reason);
+    }
+    return CompletableFuture.completedFuture(Optional.empty());
+  }
+
+  /**
+   * Sends one attempt to the given host. The returned future holds the response unless the attempt
+   * failed, in which case it holds nothing and a server error is kept in {@code attempts}; it never
+   * completes exceptionally. Cancelling it cancels the exchange with the host.
+   *
+   * @param hostPermit given back once the attempt completes, if hosts are limited.
+   * @param span of the attempt, ended once it completes.
+   */
+  private <T> CompletableFuture<Optional<HttpResponse<T>>> send(
+      BodyMode<T> bodyMode,
+      UpstreamRequest request,
+      URI uri,
+      Optional<Permit> hostPermit,
+      Attempts<T> attempts,
+      Span span) {
+    var outcome = new CompletableFuture<Optional<HttpResponse<T>>>();
+    loadBalancingScheme.onRequestStart(uri);
+    metrics.onUpstreamStart(uri);
+    span.attribute("host", uri);
+    long startNanos = System.nanoTime();
+    var exchange = exchange(bodyMode, request, uri, span);
+    exchange.whenComplete(
+        (response, e) -> {
+          long latencyNanos = System.nanoTime() - startNanos;
+          // A cancelled attempt lost a hedging race, which says nothing about the host's health.
+          boolean cancelled = e != null && unwrap(e) instanceof CancellationException;
+          boolean failure = e != null ? !cancelled : response.statusCode() >= 500;
+          // Client errors are the request's fault rather than the host's, they count as neither.
+          boolean success = e == null && response.statusCode() < 400;
+          loadBalancingScheme.onRequestFinish(uri, latencyNanos, !failure);
+          UpstreamResult result = upstreamResult(response, e, cancelled);
+          metrics.onUpstreamFinish(uri, latencyNanos, result);
+          span.attribute("result", result).end();
+          if (success || failure) {
+            outcomeListener.onRequestOutcome(uri, success);
+          }
+          hostPermit.ifPresent(
+              permit -> {
+                if (cancelled) {
+                  permit.onIgnore();
+                } else if (failure) {
+                  permit.onDropped();
+                } else {
+                  permit.onSuccess();
+                }
+              });
+          if (e == null && !failure) {
+            hedgeDelay.ifPresent(delay -> delay.record(latencyNanos));
+            if (!outcome.complete(Optional.of(response))) {
+              bodyMode.discard(response);
+            }
+            return;
+          }
+          if (e != null) {
+            if (!cancelled) {
+              logger.error("Got exception from: " + uri + " " + unwrap(e));
+            }
+          } else {
+            logger.debug("Got {} from {}", response.statusCode(), uri);
+            if (outcome.isDone()) {
+              // Lost a hedging race, nothing is going to take the response any more.
+              bodyMode.discard(response);
+            } else {
+              attempts.onServerError(response);
+            }
+          }
+          outcome.complete(Optional.empty());
+        });
+    outcome.whenComplete(
+        (response, e) -> {
+          if (outcome.isCancelled()) {
+            exchange.cancel(true);
+          }
+        });
+    return outcome;
+  }
+
+  /**
+   * Races the given attempt against a duplicate sent to the next host once the hedge delay passes
+   * without a response. Completes with the first successful response and cancels the other attempt,
+   * or with nothing once every attempt has failed.
+   */
+  private <T> CompletableFuture<Optional<HttpResponse<T>>> hedge(
+      CompletableFuture<Optional<HttpResponse<T>>> primary,
+      BodyMode<T> bodyMode,
+      UpstreamRequest request,
+      Attempts<T> attempts) {
+    long delayNanos = hedgeDelay.get().delayNanos();
+    if (delayNanos == Long.MAX_VALUE) {
+      return primary;
+    }
+    var winner = new CompletableFuture<Optional<HttpResponse<T>>>();
+    List<CompletableFuture<Optional<HttpResponse<T>>>> racers = new CopyOnWriteArrayList<>();
+    // Attempts still outstanding; once it drops to zero no hedge may start any more.
+    var pending = new AtomicInteger(1);
+    Consumer<Optional<HttpResponse<T>>> settle =
+        responseOpt -> {
+          if (responseOpt.isPresent()) {
+            if (winner.complete(responseOpt)) {
+              racers.forEach(racer -> racer.cancel(true));
+            } else {
+              bodyMode.discard(responseOpt.get());
+            }
+          } else if (pending.decrementAndGet() == 0) {
+            winner.complete(Optional.empty());
+          }
+        };
+    racers.add(primary);
+    primary.thenAccept(settle);
+    CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS)
+        .execute(
+            () -> {
+              if (winner.isDone() || attempts.get() > maxRetries) {
+                return;
+              }
+              Span select = request.trace().startSpan("select");
+              var uriOpt =
+                  loadBalancingScheme.getNextHost(
+                      request.routingKey(), attempts.getAndIncrement());
+              select.end();
+              if (uriOpt.isEmpty()) {
+                return;
+              }
+              Optional<Permit> hostPermit = Optional.empty();
+              if (hostLimiters.isPresent()) {
+                hostPermit = hostLimiters.get().tryAcquire(uriOpt.get());
+                if (hostPermit.isEmpty()) {
+                  return;
+                }
+              }
+              if (pending.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                hostPermit.ifPresent(Permit::onIgnore);
+                return;
+              }
+              // Only a hedge that is about to be sent takes a token from the budget.
+              if (!retryBudget.tryAcquire()) {
+                hostPermit.ifPresent(Permit::onIgnore);
+                settle.accept(Optional.empty());
+                return;
+              }
+              logger.debug("Hedging request to {}", uriOpt.get());
+              metrics.onHedge();
+              var hedged =
+                  send(
+                      bodyMode,
+                      request,
+                      uriOpt.get(),
+                      hostPermit,
+                      attempts,
+                      attemptSpan(request, attempts, true));
+              racers.add(hedged);
+              if (winner.isDone()) {
+                hedged.cancel(true);
+              }
+              hedged.thenAccept(settle);
+            });
+    return winner;
+  }
+
+  /**
+   * Exchanges the request with the host, on its own or, if it is for the echo endpoint, as part of
+   * a batch.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchange(
+      BodyMode<T> bodyMode, UpstreamRequest request, URI uri, Span span) {
+    if (batcher.isPresent() && request.target().equals(UpstreamTarget.ECHO)) {
+      return batcher.get().send(uri, request.body(), bodyMode::decode);
+    }
+    return forwardHttpRequest(
+        request,
+        bodyMode.requestBody(request.body()),
+        uri,
+        bodyMode,
+        request.trace().traceparent(span));
+  }
+
+  /** @param traceparent header to send, or null for none. */
+  private <T> CompletableFuture<HttpResponse<T>> forwardHttpRequest(
+      UpstreamRequest request,
+      HttpRequest.BodyPublisher body,
+      URI uri,
+      BodyMode<T> bodyMode,
+      String traceparent) {
+    var endPoint = uri.resolve(request.target().pathAndQuery());
+    String method = request.target().method();
+    var builder = HttpRequest.newBuilder().uri(endPoint).timeout(timeout);
+    request.headers().forEach(builder::header);
+    if (traceparent != null) {
+      builder.header(TraceContext.HEADER, traceparent);
+    }
+    builder.method(
+        method, request.body().length == 0 ? HttpRequest.BodyPublishers.noBody() : body);
+    logger.debug("Dispatching {} request to {}", method, endPoint);
+    return httpClient.sendAsync(builder.build(), bodyMode.responseBody());
+  }
+
+  /** Starts the span of the attempt just counted, numbered from 1. */
+  private static Span attemptSpan(UpstreamRequest request, Attempts<?> attempts, boolean hedged) {
+    Span span = request.trace().startSpan("upstream");
+    if (request.trace().sampled()) {
+      span.attribute("attempt", attempts.get()).attribute("hedged", hedged);
+    }
+    return span;
   }
+
+  private static CachedResponse toCachedResponse(Optional<HttpResponse<byte[]>> responseOpt) {
+    return responseOpt
+        .map(
+            response ->
+                new CachedResponse(
+                    response.statusCode(),
+                    response.body(),
+                    ForwardedHeaders.fromHost(response.headers())))
+        .orElse(CachedResponse.status(503));
+  }
+
+  private static UpstreamResult upstreamResult(
+      HttpResponse<?> response, Throwable e, boolean cancelled) {
+    if (cancelled) {
+      return UpstreamResult.CANCELLED;
+    }
+    if (e != null) {
+      return UpstreamResult.EXCEPTION;
+    }
+    int status = response.statusCode();
+    return status / 100 == 2
+        ? UpstreamResult.SUCCESS
+        : status >= 500 ? UpstreamResult.SERVER_ERROR : UpstreamResult.OTHER_STATUS;
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  /**
+   * How many hosts a request has been sent to so far, and the last server error one of them
+   * answered with, which is passed on if no other host does better.
+   */
+  private static class Attempts<T> {
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicReference<HttpResponse<T>> serverError = new AtomicReference<>();
+    private final BodyMode<T> bodyMode;
+
+    Attempts(BodyMode<T> bodyMode) {
+      this.bodyMode = bodyMode;
+    }
+
+    int get() {
+      return count.get();
+    }
+
+    int getAndIncrement() {
+      return count.getAndIncrement();
+    }
+
+    void onServerError(HttpResponse<T> response) {
+      HttpResponse<T> previous = serverError.getAndSet(response);
+      if (previous != null) {
+        bodyMode.discard(previous);
+      }
+    }
+
+    boolean hasServerError() {
+      return serverError.get() != null;
+    }
+
+    Optional<HttpResponse<T>> takeServerError() {
+      return Optional.ofNullable(serverError.getAndSet(null));
+    }
+  }
+
+  /** A request read from the client, which every attempt sends on to its host. */
+  private record UpstreamRequest(
+      UpstreamTarget target,
+      byte[] body,
+      ImmutableMap<String, String> headers,
+      String routingKey,
+      RequestTrace trace) {}
 }
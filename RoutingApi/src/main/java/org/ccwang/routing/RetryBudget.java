@@ -0,0 +1,48 @@
+package org.ccwang.routing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that caps retries and hedged requests at a percentage of recent traffic. Every
+ * request deposits {@code percent / 100} of a token and every extra attempt withdraws a whole one,
+ * so when most requests fail the bucket drains and the extra attempts stop instead of multiplying
+ * the load on the backends.
+ *
+ * <p>The bucket starts full and holds at most {@code maxTokens}, which lets a trickle of traffic
+ * still be retried. Lock-free, tokens are kept in thousandths in a single {@link AtomicLong}.
+ */
+class RetryBudget {
+  private static final long SCALE = 1000;
+
+  private final long deposit;
+  private final long capacity;
+  private final AtomicLong balance;
+
+  RetryBudget(int percent, int maxTokens) {
+    if (percent < 0) {
+      throw new IllegalArgumentException("Retry budget must not be negative: " + percent);
+    }
+    this.deposit = percent * SCALE / 100;
+    this.capacity = maxTokens * SCALE;
+    this.balance = new AtomicLong(capacity);
+  }
+
+  /** Records a request entering the router. */
+  void onRequest() {
+    if (balance.get() < capacity) {
+      balance.getAndUpdate(current -> Math.min(capacity, current + deposit));
+    }
+  }
+
+  /** Takes a token for one more attempt, returns false if the budget is exhausted. */
+  boolean tryAcquire() {
+    long current;
+    do {
+      current = balance.get();
+      if (current < SCALE) {
+        return false;
+      }
+    } while (!balance.compareAndSet(current, current - SCALE));
+    return true;
+  }
+}
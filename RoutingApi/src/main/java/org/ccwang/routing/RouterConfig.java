@@ -0,0 +1,921 @@
+package org.ccwang.routing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.ccwang.routing.cache.CacheTtls;
+import org.ccwang.routing.cache.ResponseCache;
+import org.ccwang.routing.limit.LimitAlgorithm;
+import org.ccwang.routing.limit.TenantWeights;
+import org.ccwang.routing.loadbalancing.SchemeType;
+
+/**
+ * Tunables for {@link RoutingServiceApp}. Values are normally supplied as {@code --name=value}
+ * command-line flags, see {@link Builder#setFlag(String, String)}.
+ */
+public class RouterConfig {
+  /** The methods HTTP defines as idempotent, which can be sent more than once without harm. */
+  public static final ImmutableSet<String> IDEMPOTENT_METHODS =
+      ImmutableSet.of("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE");
+
+  private final boolean asyncDispatch;
+  private final Duration healthCheckInterval;
+  private final Duration healthCheckTimeout;
+  private final int healthyThreshold;
+  private final int unhealthyThreshold;
+  private final SchemeType loadBalancing;
+  private final Optional<Path> hostsFile;
+  private final RoutingKeyExtractor routingKey;
+  private final boolean streamBodies;
+  private final long maxRequestBytes;
+  private final Duration upstreamTimeout;
+  private final Optional<HedgeDelay> hedgeDelay;
+  private final int retryBudgetPercent;
+  private final int outlierConsecutiveFailures;
+  private final Duration outlierBaseEjection;
+  private final Duration outlierMaxEjection;
+  private final int outlierMaxEjectionPercent;
+  private final UpstreamTransport.Protocol upstreamProtocol;
+  private final int upstreamPoolSize;
+  private final Duration upstreamKeepAlive;
+  private final int upstreamThreads;
+  private final boolean adminApi;
+  private final Duration drainPeriod;
+  private final ThreadingMode threading;
+  private final CacheTtls cacheTtls;
+  private final ImmutableList<String> cacheKeyHeaders;
+  private final int cacheMaxEntries;
+  private final long cacheMaxBytes;
+  private final Optional<LimitAlgorithm> concurrencyLimit;
+  private final Optional<LimitAlgorithm> hostConcurrencyLimit;
+  private final int limitQueueSize;
+  private final Duration limitQueueTimeout;
+  private final int limitRejectStatus;
+  private final int maxConcurrency;
+  private final int maxHostConcurrency;
+  private final int batchMaxSize;
+  private final Duration batchWindow;
+  private final int maxRetries;
+  private final Optional<Path> routesFile;
+  private final Optional<String> localZone;
+  private final double overprovisioningFactor;
+  private final int warmupConnections;
+  private final Duration warmupTimeout;
+  private final Duration shutdownTimeout;
+  private final RoutingKeyExtractor tenantKey;
+  private final double tenantRate;
+  private final int tenantBurst;
+  private final int maxTenants;
+  private final TenantWeights tenantWeights;
+  private final double traceSampleRate;
+  private final Path traceFile;
+  private final ImmutableSet<String> retryMethods;
+
+  private RouterConfig(Builder builder) {
+    this.asyncDispatch = builder.asyncDispatch;
+    this.healthCheckInterval = builder.healthCheckInterval;
+    this.healthCheckTimeout = builder.healthCheckTimeout;
+    this.healthyThreshold = builder.healthyThreshold;
+    this.unhealthyThreshold = builder.unhealthyThreshold;
+    this.loadBalancing = builder.loadBalancing;
+    this.hostsFile = builder.hostsFile;
+    this.routingKey = builder.routingKey;
+    this.streamBodies = builder.streamBodies;
+    this.maxRequestBytes = builder.maxRequestBytes;
+    this.upstreamTimeout = builder.upstreamTimeout;
+    this.hedgeDelay = builder.hedgeDelay;
+    this.retryBudgetPercent = builder.retryBudgetPercent;
+    this.outlierConsecutiveFailures = builder.outlierConsecutiveFailures;
+    this.outlierBaseEjection = builder.outlierBaseEjection;
+    this.outlierMaxEjection = builder.outlierMaxEjection;
+    this.outlierMaxEjectionPercent = builder.outlierMaxEjectionPercent;
+    this.upstreamProtocol = builder.upstreamProtocol;
+    this.upstreamPoolSize = builder.upstreamPoolSize;
+    this.upstreamKeepAlive = builder.upstreamKeepAlive;
+    this.upstreamThreads = builder.upstreamThreads;
+    this.adminApi = builder.adminApi;
+    this.drainPeriod = builder.drainPeriod;
+    this.threading = builder.threading;
+    this.cacheTtls = builder.cacheTtls;
+    this.cacheKeyHeaders = builder.cacheKeyHeaders;
+    this.cacheMaxEntries = builder.cacheMaxEntries;
+    this.cacheMaxBytes = builder.cacheMaxBytes;
+    this.concurrencyLimit = builder.concurrencyLimit;
+    this.hostConcurrencyLimit = builder.hostConcurrencyLimit;
+    this.limitQueueSize = builder.limitQueueSize;
+    this.limitQueueTimeout = builder.limitQueueTimeout;
+    this.limitRejectStatus = builder.limitRejectStatus;
+    this.maxConcurrency = builder.maxConcurrency;
+    this.maxHostConcurrency = builder.maxHostConcurrency;
+    this.batchMaxSize = builder.batchMaxSize;
+    this.batchWindow = builder.batchWindow;
+    this.maxRetries = builder.maxRetries;
+    this.routesFile = builder.routesFile;
+    this.localZone = builder.localZone;
+    this.overprovisioningFactor = builder.overprovisioningFactor;
+    this.warmupConnections = builder.warmupConnections;
+    this.warmupTimeout = builder.warmupTimeout;
+    this.shutdownTimeout = builder.shutdownTimeout;
+    this.tenantKey = builder.tenantKey;
+    this.tenantRate = builder.tenantRate;
+    this.tenantBurst = builder.tenantBurst;
+    this.maxTenants = builder.maxTenants;
+    this.tenantWeights = builder.tenantWeights;
+    this.traceSampleRate = builder.traceSampleRate;
+    this.traceFile = builder.traceFile;
+    this.retryMethods = builder.retryMethods;
+  }
+
+  public static RouterConfig defaults() {
+    return builder().build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns a builder that starts out with this config's options, e.g. to override a few. */
+  public Builder toBuilder() {
+    Builder builder = new Builder();
+    builder.asyncDispatch = asyncDispatch;
+    builder.healthCheckInterval = healthCheckInterval;
+    builder.healthCheckTimeout = healthCheckTimeout;
+    builder.healthyThreshold = healthyThreshold;
+    builder.unhealthyThreshold = unhealthyThreshold;
+    builder.loadBalancing = loadBalancing;
+    builder.hostsFile = hostsFile;
+    builder.routingKey = routingKey;
+    builder.streamBodies = streamBodies;
+    builder.maxRequestBytes = maxRequestBytes;
+    builder.upstreamTimeout = upstreamTimeout;
+    builder.hedgeDelay = hedgeDelay;
+    builder.retryBudgetPercent = retryBudgetPercent;
+    builder.outlierConsecutiveFailures = outlierConsecutiveFailures;
+    builder.outlierBaseEjection = outlierBaseEjection;
+    builder.outlierMaxEjection = outlierMaxEjection;
+    builder.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+    builder.upstreamProtocol = upstreamProtocol;
+    builder.upstreamPoolSize = upstreamPoolSize;
+    builder.upstreamKeepAlive = upstreamKeepAlive;
+    builder.upstreamThreads = upstreamThreads;
+    builder.adminApi = adminApi;
+    builder.drainPeriod = drainPeriod;
+    builder.threading = threading;
+    builder.cacheTtls = cacheTtls;
+    builder.cacheKeyHeaders = cacheKeyHeaders;
+    builder.cacheMaxEntries = cacheMaxEntries;
+    builder.cacheMaxBytes = cacheMaxBytes;
+    builder.concurrencyLimit = concurrencyLimit;
+    builder.hostConcurrencyLimit = hostConcurrencyLimit;
+    builder.limitQueueSize = limitQueueSize;
+    builder.limitQueueTimeout = limitQueueTimeout;
+    builder.limitRejectStatus = limitRejectStatus;
+    builder.maxConcurrency = maxConcurrency;
+    builder.maxHostConcurrency = maxHostConcurrency;
+    builder.batchMaxSize = batchMaxSize;
+    builder.batchWindow = batchWindow;
+    builder.maxRetries = maxRetries;
+    builder.routesFile = routesFile;
+    builder.localZone = localZone;
+    builder.overprovisioningFactor = overprovisioningFactor;
+    builder.warmupConnections = warmupConnections;
+    builder.warmupTimeout = warmupTimeout;
+    builder.shutdownTimeout = shutdownTimeout;
+    builder.tenantKey = tenantKey;
+    builder.tenantRate = tenantRate;
+    builder.tenantBurst = tenantBurst;
+    builder.maxTenants = maxTenants;
+    builder.tenantWeights = tenantWeights;
+    builder.traceSampleRate = traceSampleRate;
+    builder.traceFile = traceFile;
+    builder.retryMethods = retryMethods;
+    return builder;
+  }
+
+  /**
+   * Whether requests are dispatched without holding a Jetty worker thread for the upstream round
+   * trip.
+   */
+  public boolean asyncDispatch() {
+    return asyncDispatch;
+  }
+
+  /** How often every host's {@code /healthz} endpoint is probed. */
+  public Duration healthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  public Duration healthCheckTimeout() {
+    return healthCheckTimeout;
+  }
+
+  /** Consecutive successful probes before an unhealthy host takes traffic again. */
+  public int healthyThreshold() {
+    return healthyThreshold;
+  }
+
+  /** Consecutive failed probes before a host stops taking traffic. */
+  public int unhealthyThreshold() {
+    return unhealthyThreshold;
+  }
+
+  public SchemeType loadBalancing() {
+    return loadBalancing;
+  }
+
+  /** File with one {@link HostSpec} per line, read in addition to the hosts on the command line. */
+  public Optional<Path> hostsFile() {
+    return hostsFile;
+  }
+
+  /** Where the key for sticky schemes such as consistent hashing comes from. */
+  public RoutingKeyExtractor routingKey() {
+    return routingKey;
+  }
+
+  /** Whether bodies are passed through as raw bytes, streaming responses back to the client. */
+  public boolean streamBodies() {
+    return streamBodies;
+  }
+
+  /** Largest request body the router accepts, larger ones are rejected with 413. */
+  public long maxRequestBytes() {
+    return maxRequestBytes;
+  }
+
+  /** How long one attempt may take, from sending the request until the response headers arrive. */
+  public Duration upstreamTimeout() {
+    return upstreamTimeout;
+  }
+
+  /** When to send a speculative duplicate of a slow attempt to another host, if at all. */
+  public Optional<HedgeDelay> hedgeDelay() {
+    return hedgeDelay;
+  }
+
+  /** Retries and hedged requests allowed, as a percentage of recent requests. */
+  public int retryBudgetPercent() {
+    return retryBudgetPercent;
+  }
+
+  /** Failed requests in a row, including timeouts and 5xx responses, before a host is ejected. */
+  public int outlierConsecutiveFailures() {
+    return outlierConsecutiveFailures;
+  }
+
+  /** How long a host is ejected the first time, doubling with every ejection after that. */
+  public Duration outlierBaseEjection() {
+    return outlierBaseEjection;
+  }
+
+  public Duration outlierMaxEjection() {
+    return outlierMaxEjection;
+  }
+
+  /** Largest percentage of hosts that may be ejected at the same time. */
+  public int outlierMaxEjectionPercent() {
+    return outlierMaxEjectionPercent;
+  }
+
+  public UpstreamTransport.Protocol upstreamProtocol() {
+    return upstreamProtocol;
+  }
+
+  /** Most idle upstream connections kept open for reuse, across all hosts; 0 for no limit. */
+  public int upstreamPoolSize() {
+    return upstreamPoolSize;
+  }
+
+  /** How long an idle upstream connection is kept open. */
+  public Duration upstreamKeepAlive() {
+    return upstreamKeepAlive;
+  }
+
+  /**
+   * Threads that complete upstream exchanges, shared by dispatching and health checks. Ignored with
+   * {@link ThreadingMode#VIRTUAL}, which starts a virtual thread per exchange instead.
+   */
+  public int upstreamThreads() {
+    return upstreamThreads;
+  }
+
+  /** Whether to serve the unauthenticated {@code /admin} endpoints, see {@link HostRegistry}. */
+  public boolean adminApi() {
+    return adminApi;
+  }
+
+  /** How long a draining host is given to finish its requests. At least the upstream timeout. */
+  public Duration drainPeriod() {
+    return drainPeriod;
+  }
+
+  /** Threads requests are served and forwarded on, see {@link ThreadingMode}. */
+  public ThreadingMode threading() {
+    return threading;
+  }
+
+  /** How long responses are cached on each route, see {@link ResponseCache}. None by default. */
+  public CacheTtls cacheTtls() {
+    return cacheTtls;
+  }
+
+  /** Request headers that, besides the path and body, tell cached requests apart. */
+  public ImmutableList<String> cacheKeyHeaders() {
+    return cacheKeyHeaders;
+  }
+
+  /** Most responses cached at once. */
+  public int cacheMaxEntries() {
+    return cacheMaxEntries;
+  }
+
+  /** Most bytes of response bodies cached at once. */
+  public long cacheMaxBytes() {
+    return cacheMaxBytes;
+  }
+
+  /** How the number of requests in flight through the router is limited, not at all by default. */
+  public Optional<LimitAlgorithm> concurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  /** How the number of attempts in flight to each host is limited, not at all by default. */
+  public Optional<LimitAlgorithm> hostConcurrencyLimit() {
+    return hostConcurrencyLimit;
+  }
+
+  /** Requests over the concurrency limit that may wait for a permit, newest first. */
+  public int limitQueueSize() {
+    return limitQueueSize;
+  }
+
+  /** How long a request waits for a permit at most before it is turned away. */
+  public Duration limitQueueTimeout() {
+    return limitQueueTimeout;
+  }
+
+  /** Status requests turned away by the concurrency limit are answered with, 429 or 503. */
+  public int limitRejectStatus() {
+    return limitRejectStatus;
+  }
+
+  /** Highest the concurrency limit may grow to. */
+  public int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /** Highest each host's concurrency limit may grow to. */
+  public int maxHostConcurrency() {
+    return maxHostConcurrency;
+  }
+
+  /** Most requests sent to a host in one batch, 0 to send every request on its own. */
+  public int batchMaxSize() {
+    return batchMaxSize;
+  }
+
+  /** How long a request waits at most for others to join its batch. */
+  public Duration batchWindow() {
+    return batchWindow;
+  }
+
+  /** Attempts a request may be retried or hedged with on top of the first one. */
+  public int maxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * File with more backend pools and the routes to them, see {@link
+   * org.ccwang.routing.route.RoutesFile}.
+   */
+  public Optional<Path> routesFile() {
+    return routesFile;
+  }
+
+  /** Zone the router runs in, whose hosts get its requests while enough of them are healthy. */
+  public Optional<String> localZone() {
+    return localZone;
+  }
+
+  /**
+   * How much more traffic than their share a zone or priority tier is assumed to handle. A tier
+   * keeps all of the traffic until fewer than {@code 1 / overprovisioningFactor} of its hosts are
+   * healthy, and then spills the rest over to the next one.
+   */
+  public double overprovisioningFactor() {
+    return overprovisioningFactor;
+  }
+
+  /**
+   * Connections opened to every host on startup, before the router reports ready, so that the first
+   * requests find them in the pool.
+   */
+  public int warmupConnections() {
+    return warmupConnections;
+  }
+
+  /** How long the router waits for warm-up on startup before it reports ready regardless. */
+  public Duration warmupTimeout() {
+    return warmupTimeout;
+  }
+
+  /** How long the router waits for requests in flight to complete when it shuts down. */
+  public Duration shutdownTimeout() {
+    return shutdownTimeout;
+  }
+
+  /**
+   * Tells the tenant a request comes from, for rate limits and fair queuing. Requests it extracts
+   * nothing from are keyed by their client IP.
+   */
+  public RoutingKeyExtractor tenantKey() {
+    return tenantKey;
+  }
+
+  /** Requests per second each tenant may send, 0 for no limit. */
+  public double tenantRate() {
+    return tenantRate;
+  }
+
+  /** Requests each tenant may send at once on top of its rate. */
+  public int tenantBurst() {
+    return tenantBurst;
+  }
+
+  /** Most tenants whose rate is tracked at once. */
+  public int maxTenants() {
+    return maxTenants;
+  }
+
+  /** Each tenant's share of the concurrency limit's queue, relative to the others. */
+  public TenantWeights tenantWeights() {
+    return tenantWeights;
+  }
+
+  /** Share of requests without a traceparent that are traced, from 0 to 1. */
+  public double traceSampleRate() {
+    return traceSampleRate;
+  }
+
+  /** File the spans of traced requests are appended to, one JSON object per line. */
+  public Path traceFile() {
+    return traceFile;
+  }
+
+  /** Methods whose requests are retried and hedged, the idempotent ones by default. */
+  public ImmutableSet<String> retryMethods() {
+    return retryMethods;
+  }
+
+  public static class Builder {
+    private boolean asyncDispatch = false;
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+    private Duration healthCheckTimeout = Duration.ofMillis(100);
+    private int healthyThreshold = 2;
+    private int unhealthyThreshold = 2;
+    private SchemeType loadBalancing = SchemeType.ROUND_ROBIN;
+    private Optional<Path> hostsFile = Optional.empty();
+    private RoutingKeyExtractor routingKey = RoutingKeyExtractor.NONE;
+    private boolean streamBodies = false;
+    private long maxRequestBytes = 1_000_000; // Javalin's default
+    private Duration upstreamTimeout = Duration.ofMillis(100);
+    private Optional<HedgeDelay> hedgeDelay = Optional.empty();
+    private int retryBudgetPercent = 20;
+    private int outlierConsecutiveFailures = 5;
+    private Duration outlierBaseEjection = Duration.ofSeconds(1);
+    private Duration outlierMaxEjection = Duration.ofMinutes(1);
+    private int outlierMaxEjectionPercent = 50;
+    private UpstreamTransport.Protocol upstreamProtocol = UpstreamTransport.Protocol.HTTP1;
+    private int upstreamPoolSize = 0;
+    // Below Jetty's 30s idle timeout, so the router never reuses a connection the host just closed.
+    private Duration upstreamKeepAlive = Duration.ofSeconds(20);
+    private int upstreamThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private boolean adminApi = false;
+    private Duration drainPeriod = Duration.ofSeconds(5);
+    private ThreadingMode threading = ThreadingMode.PLATFORM;
+    private CacheTtls cacheTtls = CacheTtls.NONE;
+    private ImmutableList<String> cacheKeyHeaders = ImmutableList.of();
+    private int cacheMaxEntries = 10_000;
+    private long cacheMaxBytes = 64L * 1024 * 1024;
+    private Optional<LimitAlgorithm> concurrencyLimit = Optional.empty();
+    private Optional<LimitAlgorithm> hostConcurrencyLimit = Optional.empty();
+    private int limitQueueSize = 0;
+    private Duration limitQueueTimeout = Duration.ofMillis(100);
+    private int limitRejectStatus = 503;
+    private int maxConcurrency = 1000;
+    private int maxHostConcurrency = 500;
+    private int batchMaxSize = 0;
+    private Duration batchWindow = Duration.ofMillis(1);
+    private int maxRetries = 2;
+    private Optional<Path> routesFile = Optional.empty();
+    private Optional<String> localZone = Optional.empty();
+    private double overprovisioningFactor = 1.4;
+    private int warmupConnections = 2;
+    private Duration warmupTimeout = Duration.ofSeconds(5);
+    private Duration shutdownTimeout = Duration.ofSeconds(30);
+    private RoutingKeyExtractor tenantKey = RoutingKeyExtractor.CLIENT_IP;
+    private double tenantRate = 0;
+    private int tenantBurst = 10;
+    private int maxTenants = 100_000;
+    private TenantWeights tenantWeights = TenantWeights.NONE;
+    private double traceSampleRate = 0;
+    private Path traceFile = Path.of("traces.jsonl");
+    private ImmutableSet<String> retryMethods = IDEMPOTENT_METHODS;
+
+    private Builder() {}
+
+    public Builder setAsyncDispatch(boolean asyncDispatch) {
+      this.asyncDispatch = asyncDispatch;
+      return this;
+    }
+
+    public Builder setHealthCheckInterval(Duration healthCheckInterval) {
+      this.healthCheckInterval = healthCheckInterval;
+      return this;
+    }
+
+    public Builder setHealthCheckTimeout(Duration healthCheckTimeout) {
+      this.healthCheckTimeout = healthCheckTimeout;
+      return this;
+    }
+
+    public Builder setHealthyThreshold(int healthyThreshold) {
+      this.healthyThreshold = healthyThreshold;
+      return this;
+    }
+
+    public Builder setUnhealthyThreshold(int unhealthyThreshold) {
+      this.unhealthyThreshold = unhealthyThreshold;
+      return this;
+    }
+
+    public Builder setLoadBalancing(SchemeType loadBalancing) {
+      this.loadBalancing = loadBalancing;
+      return this;
+    }
+
+    public Builder setHostsFile(Path hostsFile) {
+      this.hostsFile = Optional.of(hostsFile);
+      return this;
+    }
+
+    public Builder setRoutingKey(RoutingKeyExtractor routingKey) {
+      this.routingKey = routingKey;
+      return this;
+    }
+
+    public Builder setStreamBodies(boolean streamBodies) {
+      this.streamBodies = streamBodies;
+      return this;
+    }
+
+    public Builder setMaxRequestBytes(long maxRequestBytes) {
+      this.maxRequestBytes = maxRequestBytes;
+      return this;
+    }
+
+    public Builder setUpstreamTimeout(Duration upstreamTimeout) {
+      this.upstreamTimeout = upstreamTimeout;
+      return this;
+    }
+
+    public Builder setHedgeDelay(HedgeDelay hedgeDelay) {
+      this.hedgeDelay = Optional.of(hedgeDelay);
+      return this;
+    }
+
+    /** @throws IllegalArgumentException if the percentage is not between 0 and 100. */
+    public Builder setRetryBudgetPercent(int retryBudgetPercent) {
+      if (retryBudgetPercent < 0 || retryBudgetPercent > 100) {
+        throw new IllegalArgumentException(
+            "Retry budget percent must be between 0 and 100: " + retryBudgetPercent);
+      }
+      this.retryBudgetPercent = retryBudgetPercent;
+      return this;
+    }
+
+    public Builder setOutlierConsecutiveFailures(int outlierConsecutiveFailures) {
+      this.outlierConsecutiveFailures = outlierConsecutiveFailures;
+      return this;
+    }
+
+    public Builder setOutlierBaseEjection(Duration outlierBaseEjection) {
+      this.outlierBaseEjection = outlierBaseEjection;
+      return this;
+    }
+
+    public Builder setOutlierMaxEjection(Duration outlierMaxEjection) {
+      this.outlierMaxEjection = outlierMaxEjection;
+      return this;
+    }
+
+    /** @throws IllegalArgumentException if the percentage is not between 0 and 100. */
+    public Builder setOutlierMaxEjectionPercent(int outlierMaxEjectionPercent) {
+      if (outlierMaxEjectionPercent < 0 || outlierMaxEjectionPercent > 100) {
+        throw new IllegalArgumentException(
+            "Outlier max ejection percent must be between 0 and 100: "
+                + outlierMaxEjectionPercent);
+      }
+      this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+      return this;
+    }
+
+    public Builder setUpstreamProtocol(UpstreamTransport.Protocol upstreamProtocol) {
+      this.upstreamProtocol = upstreamProtocol;
+      return this;
+    }
+
+    public Builder setUpstreamPoolSize(int upstreamPoolSize) {
+      this.upstreamPoolSize = upstreamPoolSize;
+      return this;
+    }
+
+    public Builder setUpstreamKeepAlive(Duration upstreamKeepAlive) {
+      this.upstreamKeepAlive = upstreamKeepAlive;
+      return this;
+    }
+
+    public Builder setUpstreamThreads(int upstreamThreads) {
+      this.upstreamThreads = upstreamThreads;
+      return this;
+    }
+
+    public Builder setAdminApi(boolean adminApi) {
+      this.adminApi = adminApi;
+      return this;
+    }
+
+    public Builder setDrainPeriod(Duration drainPeriod) {
+      this.drainPeriod = drainPeriod;
+      return this;
+    }
+
+    public Builder setThreading(ThreadingMode threading) {
+      this.threading = threading;
+      return this;
+    }
+
+    public Builder setCacheTtls(CacheTtls cacheTtls) {
+      this.cacheTtls = cacheTtls;
+      return this;
+    }
+
+    public Builder setCacheKeyHeaders(List<String> cacheKeyHeaders) {
+      this.cacheKeyHeaders = ImmutableList.copyOf(cacheKeyHeaders);
+      return this;
+    }
+
+    public Builder setCacheMaxEntries(int cacheMaxEntries) {
+      this.cacheMaxEntries = cacheMaxEntries;
+      return this;
+    }
+
+    public Builder setCacheMaxBytes(long cacheMaxBytes) {
+      this.cacheMaxBytes = cacheMaxBytes;
+      return this;
+    }
+
+    public Builder setConcurrencyLimit(LimitAlgorithm concurrencyLimit) {
+      return setConcurrencyLimit(Optional.of(concurrencyLimit));
+    }
+
+    /** @param concurrencyLimit empty for no limit. */
+    public Builder setConcurrencyLimit(Optional<LimitAlgorithm> concurrencyLimit) {
+      this.concurrencyLimit = concurrencyLimit;
+      return this;
+    }
+
+    public Builder setHostConcurrencyLimit(LimitAlgorithm hostConcurrencyLimit) {
+      return setHostConcurrencyLimit(Optional.of(hostConcurrencyLimit));
+    }
+
+    /** @param hostConcurrencyLimit empty for no limit. */
+    public Builder setHostConcurrencyLimit(Optional<LimitAlgorithm> hostConcurrencyLimit) {
+      this.hostConcurrencyLimit = hostConcurrencyLimit;
+      return this;
+    }
+
+    /** @throws IllegalArgumentException if the size is negative. */
+    public Builder setLimitQueueSize(int limitQueueSize) {
+      if (limitQueueSize < 0) {
+        throw new IllegalArgumentException(
+            "Limit queue size must not be negative: " + limitQueueSize);
+      }
+      this.limitQueueSize = limitQueueSize;
+      return this;
+    }
+
+    public Builder setLimitQueueTimeout(Duration limitQueueTimeout) {
+      this.limitQueueTimeout = limitQueueTimeout;
+      return this;
+    }
+
+    /** @throws IllegalArgumentException if the status is neither 429 nor 503. */
+    public Builder setLimitRejectStatus(int limitRejectStatus) {
+      if (limitRejectStatus != 429 && limitRejectStatus != 503) {
+        throw new IllegalArgumentException(
+            "Reject status must be 429 or 503: " + limitRejectStatus);
+      }
+      this.limitRejectStatus = limitRejectStatus;
+      return this;
+    }
+
+    public Builder setMaxConcurrency(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    public Builder setMaxHostConcurrency(int maxHostConcurrency) {
+      this.maxHostConcurrency = maxHostConcurrency;
+      return this;
+    }
+
+    public Builder setBatchMaxSize(int batchMaxSize) {
+      this.batchMaxSize = batchMaxSize;
+      return this;
+    }
+
+    public Builder setBatchWindow(Duration batchWindow) {
+      this.batchWindow = batchWindow;
+      return this;
+    }
+
+    /** @throws IllegalArgumentException if the count is negative. */
+    public Builder setMaxRetries(int maxRetries) {
+      if (maxRetries < 0) {
+        throw new IllegalArgumentException("Max retries must not be negative: " + maxRetries);
+      }
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    public Builder setRoutesFile(Path routesFile) {
+      this.routesFile = Optional.of(routesFile);
+      return this;
+    }
+
+    public Builder setLocalZone(String localZone) {
+      this.localZone = Optional.of(localZone);
+      return this;
+    }
+
+    public Builder setOverprovisioningFactor(double overprovisioningFactor) {
+      if (overprovisioningFactor < 1) {
+        throw new IllegalArgumentException(
+            "Overprovisioning factor must be at least 1: " + overprovisioningFactor);
+      }
+      this.overprovisioningFactor = overprovisioningFactor;
+      return this;
+    }
+
+    public Builder setWarmupConnections(int warmupConnections) {
+      this.warmupConnections = warmupConnections;
+      return this;
+    }
+
+    public Builder setWarmupTimeout(Duration warmupTimeout) {
+      this.warmupTimeout = warmupTimeout;
+      return this;
+    }
+
+    public Builder setShutdownTimeout(Duration shutdownTimeout) {
+      this.shutdownTimeout = shutdownTimeout;
+      return this;
+    }
+
+    public Builder setTenantKey(RoutingKeyExtractor tenantKey) {
+      this.tenantKey = tenantKey;
+      return this;
+    }
+
+    public Builder setTenantRate(double tenantRate) {
+      if (tenantRate < 0) {
+        throw new IllegalArgumentException("Tenant rate must not be negative: " + tenantRate);
+      }
+      this.tenantRate = tenantRate;
+      return this;
+    }
+
+    public Builder setTenantBurst(int tenantBurst) {
+      if (tenantBurst < 1) {
+        throw new IllegalArgumentException("Tenant burst must be at least 1: " + tenantBurst);
+      }
+      this.tenantBurst = tenantBurst;
+      return this;
+    }
+
+    public Builder setMaxTenants(int maxTenants) {
+      this.maxTenants = maxTenants;
+      return this;
+    }
+
+    public Builder setTenantWeights(TenantWeights tenantWeights) {
+      this.tenantWeights = tenantWeights;
+      return this;
+    }
+
+    public Builder setTraceSampleRate(double traceSampleRate) {
+      if (traceSampleRate < 0 || traceSampleRate > 1) {
+        throw new IllegalArgumentException(
+            "Trace sample rate must be between 0 and 1: " + traceSampleRate);
+      }
+      this.traceSampleRate = traceSampleRate;
+      return this;
+    }
+
+    public Builder setTraceFile(Path traceFile) {
+      this.traceFile = traceFile;
+      return this;
+    }
+
+    public Builder setRetryMethods(Collection<String> retryMethods) {
+      this.retryMethods =
+          retryMethods.stream()
+              .map(method -> method.trim().toUpperCase(Locale.ROOT))
+              .collect(ImmutableSet.toImmutableSet());
+      return this;
+    }
+
+    /**
+     * Sets the option named by a command-line flag, e.g. {@code --async-dispatch=true}.
+     *
+     * @throws IllegalArgumentException if the flag is unknown or its value is malformed.
+     */
+    public Builder setFlag(String name, String value) {
+      switch (name) {
+        case "async-dispatch" -> setAsyncDispatch(Boolean.parseBoolean(value));
+        case "health-check-interval-ms" ->
+            setHealthCheckInterval(Duration.ofMillis(Long.parseLong(value)));
+        case "health-check-timeout-ms" ->
+            setHealthCheckTimeout(Duration.ofMillis(Long.parseLong(value)));
+        case "healthy-threshold" -> setHealthyThreshold(Integer.parseInt(value));
+        case "unhealthy-threshold" -> setUnhealthyThreshold(Integer.parseInt(value));
+        case "load-balancing" -> setLoadBalancing(SchemeType.fromFlag(value));
+        case "hosts-file" -> setHostsFile(Path.of(value));
+        case "routing-key" -> setRoutingKey(RoutingKeyExtractor.parse(value));
+        case "stream-bodies" -> setStreamBodies(Boolean.parseBoolean(value));
+        case "max-request-bytes" -> setMaxRequestBytes(Long.parseLong(value));
+        case "upstream-timeout-ms" -> setUpstreamTimeout(Duration.ofMillis(Long.parseLong(value)));
+        case "hedge-delay" -> setHedgeDelay(HedgeDelay.parse(value));
+        case "retry-budget-percent" -> setRetryBudgetPercent(Integer.parseInt(value));
+        case "outlier-consecutive-failures" ->
+            setOutlierConsecutiveFailures(Integer.parseInt(value));
+        case "outlier-base-ejection-ms" ->
+            setOutlierBaseEjection(Duration.ofMillis(Long.parseLong(value)));
+        case "outlier-max-ejection-ms" ->
+            setOutlierMaxEjection(Duration.ofMillis(Long.parseLong(value)));
+        case "outlier-max-ejection-percent" ->
+            setOutlierMaxEjectionPercent(Integer.parseInt(value));
+        case "upstream-protocol" -> setUpstreamProtocol(UpstreamTransport.Protocol.fromFlag(value));
+        case "upstream-pool-size" -> setUpstreamPoolSize(Integer.parseInt(value));
+        case "upstream-keep-alive-ms" ->
+            setUpstreamKeepAlive(Duration.ofMillis(Long.parseLong(value)));
+        case "upstream-threads" -> setUpstreamThreads(Integer.parseInt(value));
+        case "admin-api" -> setAdminApi(Boolean.parseBoolean(value));
+        case "drain-period-ms" -> setDrainPeriod(Duration.ofMillis(Long.parseLong(value)));
+        case "threading" -> setThreading(ThreadingMode.fromFlag(value));
+        case "cache-ttls" -> setCacheTtls(CacheTtls.parse(value));
+        case "cache-key-headers" -> setCacheKeyHeaders(List.of(value.split(",")));
+        case "cache-max-entries" -> setCacheMaxEntries(Integer.parseInt(value));
+        case "cache-max-bytes" -> setCacheMaxBytes(Long.parseLong(value));
+        case "concurrency-limit" -> setConcurrencyLimit(LimitAlgorithm.fromFlag(value));
+        case "host-concurrency-limit" -> setHostConcurrencyLimit(LimitAlgorithm.fromFlag(value));
+        case "limit-queue-size" -> setLimitQueueSize(Integer.parseInt(value));
+        case "limit-queue-timeout-ms" ->
+            setLimitQueueTimeout(Duration.ofMillis(Long.parseLong(value)));
+        case "limit-reject-status" -> setLimitRejectStatus(Integer.parseInt(value));
+        case "max-concurrency" -> setMaxConcurrency(Integer.parseInt(value));
+        case "max-host-concurrency" -> setMaxHostConcurrency(Integer.parseInt(value));
+        case "batch-max-size" -> setBatchMaxSize(Integer.parseInt(value));
+        case "batch-window-us" -> setBatchWindow(Duration.ofNanos(Long.parseLong(value) * 1000));
+        case "max-retries" -> setMaxRetries(Integer.parseInt(value));
+        case "routes-file" -> setRoutesFile(Path.of(value));
+        case "local-zone" -> setLocalZone(value);
+        case "overprovisioning-factor" -> setOverprovisioningFactor(Double.parseDouble(value));
+        case "warmup-connections" -> setWarmupConnections(Integer.parseInt(value));
+        case "warmup-timeout-ms" -> setWarmupTimeout(Duration.ofMillis(Long.parseLong(value)));
+        case "shutdown-timeout-ms" -> setShutdownTimeout(Duration.ofMillis(Long.parseLong(value)));
+        case "tenant-key" ->
+            setTenantKey(RoutingKeyExtractor.parse(value).orElse(RoutingKeyExtractor.CLIENT_IP));
+        case "tenant-rate" -> setTenantRate(Double.parseDouble(value));
+        case "tenant-burst" -> setTenantBurst(Integer.parseInt(value));
+        case "max-tenants" -> setMaxTenants(Integer.parseInt(value));
+        case "tenant-weights" -> setTenantWeights(TenantWeights.parse(value));
+        case "trace-sample-rate" -> setTraceSampleRate(Double.parseDouble(value));
+        case "trace-file" -> setTraceFile(Path.of(value));
+        case "retry-methods" -> setRetryMethods(List.of(value.split(",")));
+        default -> throw new IllegalArgumentException("Unknown flag: --" + name);
+      }
+      return this;
+    }
+
+    public RouterConfig build() {
+      return new RouterConfig(this);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.ccwang.routing;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.javalin.http.Context;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the key that sticky load balancing schemes route by, from either a request header or a
+ * top-level field of the JSON body. Written as {@code header:<name>} or {@code json:<field>}.
+ */
+@FunctionalInterface
+public interface RoutingKeyExtractor {
+  /** Extracts nothing, every request is routed without a key. */
+  RoutingKeyExtractor NONE = context -> null;
+
+  /** Extracts the address of the client the request came from. */
+  RoutingKeyExtractor CLIENT_IP = Context::ip;
+
+  /** Returns the routing key of the request, or null if it has none. */
+  String extract(Context context);
+
+  /** Extracts the key with the fallback from requests this extracts none from. */
+  default RoutingKeyExtractor orElse(RoutingKeyExtractor fallback) {
+    return context -> {
+      String key = extract(context);
+      return key != null ? key : fallback.extract(context);
+    };
+  }
+
+  /**
+   * Parses a routing key source, e.g. {@code header:X-User-Id}.
+   *
+   * @throws IllegalArgumentException if the source is malformed.
+   */
+  static RoutingKeyExtractor parse(String source) {
+    int separator = source.indexOf(':');
+    if (separator < 0 || separator == source.length() - 1) {
+      throw new IllegalArgumentException("Malformed routing key source: " + source);
+    }
+    String name = source.substring(separator + 1);
+    return switch (source.substring(0, separator)) {
+      case "header" -> header(name);
+      case "json" -> jsonField(name);
+      default -> throw new IllegalArgumentException("Unknown routing key source: " + source);
+    };
+  }
+
+  static RoutingKeyExtractor header(String name) {
+    return context -> context.header(name);
+  }
+
+  static RoutingKeyExtractor jsonField(String field) {
+    return context -> {
+      try {
+        // Parses the raw bytes already read, without decoding them into a String first.
+        byte[] body = BodyMode.bodyAsBytes(context);
+        JsonElement json =
+            JsonParser.parseReader(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        if (!json.isJsonObject()) {
+          return null;
+        }
+        JsonElement value = json.getAsJsonObject().get(field);
+        if (value == null || value.isJsonNull()) {
+          return null;
+        }
+        return value.isJsonPrimitive() ? value.getAsString() : value.toString();
+      } catch (JsonParseException e) {
+        // Not JSON, routes the request without a key.
+        return null;
+      }
+    };
+  }
+}
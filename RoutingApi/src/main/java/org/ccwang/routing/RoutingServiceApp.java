@@ -1,41 +1,261 @@
 package org.ccwang.routing;
 
+import static io.javalin.apibuilder.ApiBuilder.after;
+import static io.javalin.apibuilder.ApiBuilder.delete;
+import static io.javalin.apibuilder.ApiBuilder.get;
+import static io.javalin.apibuilder.ApiBuilder.head;
+import static io.javalin.apibuilder.ApiBuilder.patch;
 import static io.javalin.apibuilder.ApiBuilder.post;
+import static io.javalin.apibuilder.ApiBuilder.put;
+import static io.javalin.apibuilder.ApiBuilder.staticInstance;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import org.ccwang.routing.loadbalancing.RoundRobinScheme;
+import org.ccwang.routing.limit.TenantRateLimiter;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.route.Route;
+import org.ccwang.routing.route.RouteTable;
+import org.ccwang.routing.route.RoutesFile;
+import org.ccwang.routing.trace.FileSpanExporter;
+import org.ccwang.routing.trace.Tracer;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * The router: routes requests to its backend pools and serves its own endpoints, for metrics, the
+ * admin API and the {@link Lifecycle} probes {@code /livez} and {@code /readyz}.
+ *
+ * <p>Once started, it warms up every pool in the background and reports ready when done. {@link
+ * #shutdown} drains the requests in flight before it stops.
+ *
+ * <p>With a tenant rate, each tenant's requests go through a {@link TenantRateLimiter} before they
+ * are routed, and those over the rate are answered with 429 and a Retry-After header.
+ */
 public class RoutingServiceApp {
-  private final Javalin app;
-  private final RequestDispatcher dispatcher;
+  /**
+   * Sends {@code POST /} to the echo endpoint of the command line's hosts, as the router always
+   * has. Routes from the routes file come first.
+   */
+  private static final Route DEFAULT_ROUTE =
+      new Route(
+          Optional.of("POST"),
+          "/",
+          Optional.empty(),
+          RoutesFile.DEFAULT_POOL,
+          Optional.of(UpstreamTarget.ECHO.pathAndQuery()));
+
+  /** Traced requests whose spans may wait to be written, before more are dropped. */
+  private static final int MAX_QUEUED_TRACES = 10_000;
 
-  private final LoadingCache<URI, Integer> cache;
+  private final Javalin app;
+  private final UpstreamTransport transport;
+  private final RouterMetrics metrics;
+  private final Tracer tracer;
+  private final ImmutableMap<String, BackendPool> pools;
+  private final RouteTable routes;
+  private final Optional<HostsFileWatcher> hostsFileWatcher;
+  private final Lifecycle lifecycle;
+  private final RoutingKeyExtractor tenantKey;
+  private final Optional<TenantRateLimiter> rateLimiter;
+  private final long maxRequestBytes;
+  private final int warmupConnections;
+  private final Duration warmupTimeout;
+  private final Duration shutdownTimeout;
+  private final Logger logger;
 
   public RoutingServiceApp(List<URI> uris) {
+    this(uris.stream().map(HostSpec::of).toList(), RouterConfig.defaults());
+  }
+
+  public RoutingServiceApp(List<HostSpec> hosts, RouterConfig config) {
     // TODO: Use dependency injection framework. e.g. Dagger
-    this.cache =
-        CacheBuilder.newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .build(new HealthCheckCacheLoader());
-    this.dispatcher = new RequestDispatcher(new RoundRobinScheme(uris, cache));
+    this.transport = new UpstreamTransport(config);
+    this.metrics = new RouterMetrics();
+    this.tracer =
+        config.traceSampleRate() == 0
+            ? Tracer.NONE
+            : new Tracer(
+                config.traceSampleRate(),
+                new FileSpanExporter(config.traceFile(), MAX_QUEUED_TRACES));
+    this.lifecycle = new Lifecycle();
+    this.tenantKey = config.tenantKey();
+    this.rateLimiter =
+        config.tenantRate() == 0
+            ? Optional.empty()
+            : Optional.of(
+                new TenantRateLimiter(
+                    config.tenantRate(), config.tenantBurst(), config.maxTenants()));
+    this.maxRequestBytes = config.maxRequestBytes();
+    this.warmupConnections = config.warmupConnections();
+    this.warmupTimeout = config.warmupTimeout();
+    this.shutdownTimeout = config.shutdownTimeout();
+    this.logger = LoggerFactory.getLogger(RoutingServiceApp.class);
+    RoutesFile routesFile;
+    try {
+      routesFile =
+          config.routesFile().isPresent()
+              ? RoutesFile.read(config.routesFile().get())
+              : new RoutesFile(ImmutableList.of(), ImmutableList.of());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    BackendPool defaultPool =
+        new BackendPool(RoutesFile.DEFAULT_POOL, hosts, config, transport, metrics, tracer);
+    ImmutableMap.Builder<String, BackendPool> pools = ImmutableMap.builder();
+    pools.put(defaultPool.name(), defaultPool);
+    for (RoutesFile.PoolSpec pool : routesFile.pools()) {
+      pools.put(
+          pool.name(),
+          new BackendPool(
+              pool.name(), pool.hosts(), pool.config(config), transport, metrics, tracer));
+    }
+    this.pools = pools.buildOrThrow();
+    this.routes =
+        new RouteTable(
+            ImmutableList.<Route>builder()
+                .addAll(routesFile.routes())
+                .add(DEFAULT_ROUTE)
+                .build());
+    // The hosts file and the admin API change the command line's hosts.
+    try {
+      this.hostsFileWatcher =
+          config.hostsFile().isPresent()
+              ? Optional.of(new HostsFileWatcher(config.hostsFile().get(), defaultPool.registry()))
+              : Optional.empty();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    AdminController admin = new AdminController(defaultPool.registry());
+    Handler route = this::route;
     this.app =
         Javalin.create(
-                config -> {
-                  config.http.defaultContentType = "application/json";
+                javalinConfig -> {
+                  javalinConfig.http.defaultContentType = "application/json";
+                  javalinConfig.http.maxRequestSize = config.maxRequestBytes();
+                  javalinConfig.jetty.server(
+                      () -> new Server(config.threading().serverThreadPool("router")));
                 })
             .routes(
                 () -> {
-                  post("/", dispatcher::dispatch);
+                  get(
+                      "/metrics",
+                      ctx ->
+                          ctx.contentType("text/plain; version=0.0.4; charset=utf-8")
+                              .result(metrics.scrape()));
+                  get("/livez", lifecycle::livez);
+                  get("/readyz", lifecycle::readyz);
+                  if (config.adminApi()) {
+                    get("/admin/hosts", admin::listHosts);
+                    post("/admin/hosts", admin::addHost);
+                    delete("/admin/hosts", admin::removeHost);
+                    post("/admin/hosts/drain", admin::drainHost);
+                  }
+                  // Javalin runs the first handler that matches, so these only get what the
+                  // router's own endpoints above leave.
+                  for (String path : List.of("/", "/*")) {
+                    get(path, route);
+                    head(path, route);
+                    // ApiBuilder has no options(), the app it builds does.
+                    staticInstance().options(path, route);
+                    post(path, route);
+                    put(path, route);
+                    patch(path, route);
+                    delete(path, route);
+                  }
+                  after(lifecycle::exit);
+                })
+            .events(
+                event -> {
+                  this.pools.values().forEach(pool -> event.serverStarting(pool::start));
+                  event.serverStarting(() -> hostsFileWatcher.ifPresent(HostsFileWatcher::start));
+                  event.serverStarted(this::warmUp);
+                  event.serverStopped(() -> hostsFileWatcher.ifPresent(HostsFileWatcher::close));
+                  this.pools.values().forEach(pool -> event.serverStopped(pool::close));
+                  event.serverStopped(transport::close);
+                  event.serverStopped(tracer::close);
                 });
   }
 
   public Javalin app() {
     return app;
   }
+
+  public Lifecycle lifecycle() {
+    return lifecycle;
+  }
+
+  /**
+   * Stops taking requests, waits for those in flight to complete for up to the shutdown timeout,
+   * and then stops the server.
+   */
+  public void shutdown() {
+    lifecycle.drain(shutdownTimeout);
+    app.stop();
+  }
+
+  /** Warms up every pool at once, and reports ready when done or once warm-up times out. */
+  private void warmUp() {
+    long startNanos = System.nanoTime();
+    CompletableFuture.allOf(
+            pools.values().stream()
+                .map(pool -> pool.warmUp(warmupConnections, warmupTimeout))
+                .toArray(CompletableFuture[]::new))
+        .orTimeout(warmupTimeout.toNanos(), TimeUnit.NANOSECONDS)
+        .whenComplete(
+            (unused, e) -> {
+              Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+              if (e != null) {
+                logger.warn("Warm-up incomplete after " + elapsed + ": " + e);
+              } else {
+                logger.info("Warmed up in " + elapsed);
+              }
+              lifecycle.ready();
+            });
+  }
+
+  /**
+   * Dispatches the request to the pool of the route it matches. Answers 404 if none does, and 503
+   * while draining, and 429 if its tenant is over its rate.
+   */
+  private void route(Context context) {
+    if (!lifecycle.enter(context)) {
+      return;
+    }
+    if (rateLimiter.isPresent()) {
+      // Reads the body first, as the tenant key may be in it and the pool forwards the same bytes.
+      BodyMode.readBody(context, maxRequestBytes);
+      long waitNanos = rateLimiter.get().tryAcquire(tenantKey.extract(context));
+      if (waitNanos > 0) {
+        metrics.onRateLimited();
+        // Whole seconds, rounded up.
+        context.header(
+            "Retry-After", Long.toString(TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1));
+        context.status(429);
+        return;
+      }
+    }
+    String method = context.method().name();
+    Optional<Route> route = routes.match(method, context.path(), context.header("Host"));
+    if (route.isEmpty()) {
+      metrics.onUnrouted();
+      context.status(404);
+      return;
+    }
+    String query = context.queryString();
+    String pathAndQuery =
+        route.get().rewrite().orElse(query == null ? context.path() : context.path() + "?" + query);
+    pools.get(route.get().pool()).dispatch(context, new UpstreamTarget(method, pathAndQuery));
+  }
 }
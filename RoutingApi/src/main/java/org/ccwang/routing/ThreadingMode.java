@@ -0,0 +1,65 @@
+package org.ccwang.routing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Which threads requests are served on and upstream exchanges are completed on.
+ *
+ * <p>Left to itself, Javalin runs all of Jetty on virtual threads when the JDK has them, selectors
+ * and acceptors included. A handler that pins its carrier, e.g. in a blocking read of the request
+ * body, can then starve the very selector that would wake it, which deadlocks once every carrier
+ * is pinned. Both modes therefore hand Jetty a {@link QueuedThreadPool} that keeps its own work on
+ * platform threads.
+ */
+public enum ThreadingMode {
+  /** Handlers run on Jetty's bounded pool and exchanges complete on a fixed pool. */
+  PLATFORM,
+  /**
+   * Handlers, upstream exchanges and health probes each run on a virtual thread of their own, so
+   * the number of requests a blocking {@link RequestDispatcher#dispatch} can serve at once is no
+   * longer bound by a thread pool.
+   */
+  VIRTUAL;
+
+  /** Same bounds as Javalin's own platform thread pool. */
+  private static final int MAX_SERVER_THREADS = 250;
+
+  private static final int MIN_SERVER_THREADS = 8;
+
+  /** Parses a flag value such as {@code virtual}. */
+  public static ThreadingMode fromFlag(String value) {
+    return valueOf(value.toUpperCase(Locale.ROOT));
+  }
+
+  /** Thread pool for a Jetty server, whose threads are named after {@code name}. */
+  public ThreadPool serverThreadPool(String name) {
+    QueuedThreadPool pool = new QueuedThreadPool(MAX_SERVER_THREADS, MIN_SERVER_THREADS);
+    pool.setName(name);
+    if (this == VIRTUAL) {
+      pool.setVirtualThreadsExecutor(virtualThreads(name + "-virtual-"));
+    }
+    return pool;
+  }
+
+  /**
+   * Executor that completes upstream exchanges.
+   *
+   * @param threads size of the pool, only used for {@link #PLATFORM}.
+   */
+  public ExecutorService upstreamExecutor(String name, int threads) {
+    if (this == VIRTUAL) {
+      return virtualThreads(name + "-virtual-");
+    }
+    return Executors.newFixedThreadPool(
+        threads, new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+  }
+
+  private static ExecutorService virtualThreads(String prefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
+  }
+}
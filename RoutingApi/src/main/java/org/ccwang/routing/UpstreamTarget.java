@@ -0,0 +1,10 @@
+package org.ccwang.routing;
+
+/**
+ * What a request asks of the host it is sent to: the method, and the path together with the query
+ * string if there is one.
+ */
+public record UpstreamTarget(String method, String pathAndQuery) {
+  /** The echo endpoint, which requests to the default route are sent to. */
+  public static final UpstreamTarget ECHO = new UpstreamTarget("POST", "/echo");
+}
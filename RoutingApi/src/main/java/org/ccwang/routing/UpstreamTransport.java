@@ -0,0 +1,72 @@
+package org.ccwang.routing;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The one {@link HttpClient} the router talks to its upstreams through, shared by request
+ * dispatching and health checks so that both reuse the same pooled connections and threads.
+ *
+ * <p>The JDK client only takes its connection pool settings from system properties, which it reads
+ * once when the first client in the JVM is built. They are therefore set here, unless already given
+ * with {@code -D}, and only take effect if no other client was built before.
+ */
+public class UpstreamTransport implements AutoCloseable {
+  private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+  private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+  private final ExecutorService executor;
+  private final HttpClient httpClient;
+
+  public UpstreamTransport(RouterConfig config) {
+    System.getProperties()
+        .putIfAbsent(POOL_SIZE_PROPERTY, Integer.toString(config.upstreamPoolSize()));
+    System.getProperties()
+        .putIfAbsent(
+            KEEP_ALIVE_PROPERTY, Long.toString(ceilSeconds(config.upstreamKeepAlive())));
+    this.executor = config.threading().upstreamExecutor("upstream", config.upstreamThreads());
+    this.httpClient =
+        HttpClient.newBuilder()
+            .version(config.upstreamProtocol().version)
+            .connectTimeout(config.upstreamTimeout())
+            .executor(executor)
+            .build();
+  }
+
+  public HttpClient httpClient() {
+    return httpClient;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static long ceilSeconds(Duration duration) {
+    return Math.max(1, (duration.toMillis() + 999) / 1000);
+  }
+
+  /** Protocol spoken to the upstreams. */
+  public enum Protocol {
+    HTTP1(HttpClient.Version.HTTP_1_1),
+    /**
+     * Cleartext HTTP/2. The JDK client has no prior-knowledge mode, so it asks to upgrade the first
+     * request on a connection and multiplexes every later request to the host over it. Hosts that
+     * decline keep being served over HTTP/1.1.
+     */
+    H2C(HttpClient.Version.HTTP_2);
+
+    final HttpClient.Version version;
+
+    Protocol(HttpClient.Version version) {
+      this.version = version;
+    }
+
+    /** Parses a flag value such as {@code h2c}. */
+    public static Protocol fromFlag(String value) {
+      return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package org.ccwang.routing.batch;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Wire format of a batch, the same for requests and their responses: each body in turn, prefixed
+ * with its length as a 4-byte big-endian int. Bodies are carried as they are, so a response is
+ * byte-for-byte what the host would have answered the request with on its own.
+ */
+public class BatchCodec {
+  public static final String CONTENT_TYPE = "application/x-length-prefixed";
+
+  private BatchCodec() {}
+
+  public static byte[] encode(List<byte[]> bodies) {
+    int size = 0;
+    for (byte[] body : bodies) {
+      size += Integer.BYTES + body.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (byte[] body : bodies) {
+      buffer.putInt(body.length).put(body);
+    }
+    return buffer.array();
+  }
+
+  /** @throws IllegalArgumentException if the batch is malformed. */
+  public static ImmutableList<byte[]> decode(byte[] batch) {
+    ByteBuffer buffer = ByteBuffer.wrap(batch);
+    ImmutableList.Builder<byte[]> bodies = ImmutableList.builder();
+    try {
+      while (buffer.hasRemaining()) {
+        int length = buffer.getInt();
+        if (length < 0) {
+          throw new IllegalArgumentException("Negative body length in batch: " + length);
+        }
+        byte[] body = new byte[length];
+        buffer.get(body);
+        bodies.add(body);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated batch", e);
+    }
+    return bodies.build();
+  }
+}
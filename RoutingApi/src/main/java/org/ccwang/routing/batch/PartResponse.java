@@ -0,0 +1,39 @@
+package org.ccwang.routing.batch;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Optional;
+import javax.net.ssl.SSLSession;
+
+/**
+ * The response to one request of a batch, as if the host had answered it on its own. It has no
+ * headers of its own; {@link #request()} is the batch request.
+ */
+record PartResponse<T>(int statusCode, T body, HttpRequest request, HttpClient.Version version)
+    implements HttpResponse<T> {
+  private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+  @Override
+  public Optional<HttpResponse<T>> previousResponse() {
+    return Optional.empty();
+  }
+
+  @Override
+  public HttpHeaders headers() {
+    return NO_HEADERS;
+  }
+
+  @Override
+  public Optional<SSLSession> sslSession() {
+    return Optional.empty();
+  }
+
+  @Override
+  public URI uri() {
+    return request.uri();
+  }
+}
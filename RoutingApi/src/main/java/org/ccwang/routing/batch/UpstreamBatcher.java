@@ -0,0 +1,202 @@
+package org.ccwang.routing.batch;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Groups requests bound for the same host into one call to its {@code /echo/batch} endpoint, so
+ * that small payloads share the cost of a round trip. See {@link BatchCodec} for the wire format.
+ *
+ * <p>The window adapts to load. A request to a host with no batch outstanding is sent right away,
+ * so at low rates nothing waits. Otherwise requests collect until the outstanding batch returns,
+ * {@code maxBatchSize} of them are pending or the window has passed, whichever comes first.
+ *
+ * <p>Every request gets a response of its own, which for a failed batch is the batch's status
+ * with an empty body, or the batch's exception. Requests cancelled before their batch is sent are
+ * left out of it.
+ */
+public class UpstreamBatcher {
+  public static final String BATCH_PATH = "/echo/batch";
+
+  private final HttpClient httpClient;
+  private final Duration timeout;
+  private final int maxBatchSize;
+  private final Executor afterWindow;
+  private final Logger logger;
+  private final Map<URI, HostBatches> hosts = new ConcurrentHashMap<>();
+
+  /**
+   * @param timeout how long one batch may take, as for a single request.
+   * @param window how long a request waits at most for others to join its batch.
+   */
+  public UpstreamBatcher(
+      HttpClient httpClient, Duration timeout, int maxBatchSize, Duration window) {
+    this.httpClient = httpClient;
+    this.timeout = timeout;
+    this.maxBatchSize = maxBatchSize;
+    this.afterWindow = CompletableFuture.delayedExecutor(window.toNanos(), TimeUnit.NANOSECONDS);
+    this.logger = LoggerFactory.getLogger(UpstreamBatcher.class);
+  }
+
+  /**
+   * Sends the body to the host as part of a batch. Cancelling the returned future leaves the
+   * request out of its batch if that has not been sent yet.
+   *
+   * @param decoder turns the bytes of the response body into the type the caller wants.
+   */
+  public <T> CompletableFuture<HttpResponse<T>> send(
+      URI uri, byte[] body, Function<byte[], T> decoder) {
+    Part<T> part = new Part<>(body, decoder);
+    HostBatches host = hosts.get(uri);
+    if (host == null) {
+      host = hosts.computeIfAbsent(uri, HostBatches::new);
+    }
+    host.add(part);
+    return part.response;
+  }
+
+  /** The requests pending for one host, and how many of its batches are outstanding. */
+  private class HostBatches {
+    private final URI batchUri;
+    private List<Part<?>> pending = new ArrayList<>();
+    private int outstanding;
+    private boolean flushScheduled;
+
+    HostBatches(URI uri) {
+      this.batchUri = uri.resolve(BATCH_PATH);
+    }
+
+    void add(Part<?> part) {
+      List<Part<?>> batch = null;
+      synchronized (this) {
+        pending.add(part);
+        if (outstanding == 0 || pending.size() >= maxBatchSize) {
+          batch = take();
+        } else if (!flushScheduled) {
+          flushScheduled = true;
+          afterWindow.execute(this::onWindowPassed);
+        }
+      }
+      if (batch != null) {
+        send(batch);
+      }
+    }
+
+    private void onWindowPassed() {
+      List<Part<?>> batch;
+      synchronized (this) {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+          return;
+        }
+        batch = take();
+      }
+      send(batch);
+    }
+
+    private void onBatchDone() {
+      List<Part<?>> batch = null;
+      synchronized (this) {
+        --outstanding;
+        if (outstanding == 0 && !pending.isEmpty()) {
+          batch = take();
+        }
+      }
+      if (batch != null) {
+        send(batch);
+      }
+    }
+
+    /** Takes the pending requests as a batch that is about to be sent. */
+    private List<Part<?>> take() {
+      List<Part<?>> batch = pending;
+      pending = new ArrayList<>();
+      ++outstanding;
+      return batch;
+    }
+
+    private void send(List<Part<?>> batch) {
+      List<Part<?>> parts = batch.stream().filter(part -> !part.response.isDone()).toList();
+      if (parts.isEmpty()) {
+        onBatchDone();
+        return;
+      }
+      var request =
+          HttpRequest.newBuilder()
+              .header("Content-Type", BatchCodec.CONTENT_TYPE)
+              .POST(
+                  HttpRequest.BodyPublishers.ofByteArray(
+                      BatchCodec.encode(parts.stream().map(part -> part.body).toList())))
+              .uri(batchUri)
+              .timeout(timeout)
+              .build();
+      logger.debug("Dispatching batch of {} requests to {}", parts.size(), batchUri);
+      httpClient
+          .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+          .whenComplete(
+              (response, e) -> {
+                try {
+                  complete(parts, response, e);
+                } finally {
+                  onBatchDone();
+                }
+              });
+    }
+  }
+
+  private static void complete(List<Part<?>> parts, HttpResponse<byte[]> response, Throwable e) {
+    if (e != null) {
+      parts.forEach(part -> part.response.completeExceptionally(e));
+      return;
+    }
+    if (response.statusCode() != 200) {
+      parts.forEach(part -> part.complete(response, response.statusCode(), new byte[0]));
+      return;
+    }
+    List<byte[]> bodies;
+    try {
+      bodies = BatchCodec.decode(response.body());
+    } catch (IllegalArgumentException malformed) {
+      // Fails every part below.
+      bodies = List.of();
+    }
+    if (bodies.size() != parts.size()) {
+      var error = new IOException("Malformed batch response from " + response.uri());
+      parts.forEach(part -> part.response.completeExceptionally(error));
+      return;
+    }
+    for (int i = 0; i < parts.size(); ++i) {
+      parts.get(i).complete(response, 200, bodies.get(i));
+    }
+  }
+
+  private static class Part<T> {
+    private final byte[] body;
+    private final Function<byte[], T> decoder;
+    private final CompletableFuture<HttpResponse<T>> response = new CompletableFuture<>();
+
+    Part(byte[] body, Function<byte[], T> decoder) {
+      this.body = body;
+      this.decoder = decoder;
+    }
+
+    void complete(HttpResponse<byte[]> batch, int status, byte[] body) {
+      response.complete(
+          new PartResponse<>(status, decoder.apply(body), batch.request(), batch.version()));
+    }
+  }
+}
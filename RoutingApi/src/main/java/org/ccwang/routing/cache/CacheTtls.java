@@ -0,0 +1,64 @@
+package org.ccwang.routing.cache;
+
+import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * How long responses are cached on each route, by path prefix. Written as a comma-separated list of
+ * {@code <path-prefix>=<ttl-ms>}, e.g. {@code /=5000,/quotes=500}. The longest matching prefix
+ * wins; requests to paths no prefix matches, or whose TTL is 0, are not cached.
+ */
+public class CacheTtls {
+  /** Caches nothing. */
+  public static final CacheTtls NONE = new CacheTtls(ImmutableMap.of());
+
+  /** Longest prefix first, so the first match is the most specific one. */
+  private final ImmutableMap<String, Duration> ttls;
+
+  private CacheTtls(Map<String, Duration> ttls) {
+    this.ttls =
+        ttls.entrySet().stream()
+            .sorted(
+                Comparator.comparing((Map.Entry<String, Duration> e) -> e.getKey().length())
+                    .reversed())
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  /**
+   * Parses TTLs, e.g. {@code /=5000,/quotes=500}.
+   *
+   * @throws IllegalArgumentException if they are malformed.
+   */
+  public static CacheTtls parse(String value) {
+    ImmutableMap.Builder<String, Duration> ttls = ImmutableMap.builder();
+    for (String rule : value.split(",")) {
+      String[] parts = rule.trim().split("=", 2);
+      if (parts.length != 2 || !parts[0].startsWith("/")) {
+        throw new IllegalArgumentException("Malformed cache TTL: " + rule);
+      }
+      Duration ttl = Duration.ofMillis(Long.parseLong(parts[1]));
+      if (ttl.isNegative()) {
+        throw new IllegalArgumentException("Negative cache TTL: " + rule);
+      }
+      ttls.put(parts[0], ttl);
+    }
+    return new CacheTtls(ttls.buildOrThrow());
+  }
+
+  /** Whether no route is cached at all. */
+  public boolean isEmpty() {
+    return ttls.values().stream().allMatch(Duration::isZero);
+  }
+
+  /** Returns how long responses to the path are cached, zero if they are not. */
+  public Duration ttl(String path) {
+    for (var entry : ttls.entrySet()) {
+      if (path.startsWith(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return Duration.ZERO;
+  }
+}
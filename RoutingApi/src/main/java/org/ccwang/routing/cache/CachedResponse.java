@@ -0,0 +1,39 @@
+package org.ccwang.routing.cache;
+
+import com.google.common.collect.ImmutableListMultimap;
+import io.javalin.http.Context;
+import org.ccwang.routing.ForwardedHeaders;
+
+/**
+ * A response the router sent, or would send, to a client, kept so it can be sent again. Only
+ * responses with status 200 are cached; the others are only shared between concurrent identical
+ * requests.
+ *
+ * @param headers the end-to-end headers of the host's response.
+ */
+public record CachedResponse(
+    int status, byte[] body, ImmutableListMultimap<String, String> headers) {
+  private static final byte[] EMPTY = new byte[0];
+
+  public static CachedResponse ok(byte[] body, ImmutableListMultimap<String, String> headers) {
+    return new CachedResponse(200, body, headers);
+  }
+
+  /** A response with the given status and no body. */
+  public static CachedResponse status(int status) {
+    return new CachedResponse(status, EMPTY, ImmutableListMultimap.of());
+  }
+
+  /** Whether the response may be served to later requests. */
+  boolean cacheable() {
+    return status == 200;
+  }
+
+  public void sendTo(Context context) {
+    ForwardedHeaders.sendToClient(headers, context);
+    if (body.length > 0) {
+      context.result(body);
+    }
+    context.status(status);
+  }
+}
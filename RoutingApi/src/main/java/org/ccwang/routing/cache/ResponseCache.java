@@ -0,0 +1,151 @@
+package org.ccwang.routing.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.metrics.RouterMetrics.CacheResult;
+
+/**
+ * Caches the responses to identical requests, for as long as {@link CacheTtls} says for their
+ * route. Requests are keyed by a 128-bit murmur3 hash of their method, path, query string, body and
+ * the configured headers, so the cache keeps none of the requests themselves. PUT, PATCH and DELETE
+ * requests change what the host holds, so they always reach it.
+ *
+ * <p>Entries are admitted and evicted by Caffeine's W-TinyLFU policy, which keeps a burst of
+ * one-off requests from flushing out the keys that are hot. Caffeine bounds a cache by either
+ * entry count or weight; both are enforced by weighing every entry at least {@code maxBytes /
+ * maxEntries}, so that {@code maxBytes} never holds more than {@code maxEntries} entries.
+ *
+ * <p>Concurrent identical requests share one upstream call: the first starts it and the others wait
+ * for the same future. Responses other than 200 are shared that way too, but expire right away.
+ */
+public class ResponseCache {
+  /** Rough cost of an entry besides its body, in bytes. */
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+  private static final ImmutableSet<HandlerType> UNCACHED_METHODS =
+      Sets.immutableEnumSet(HandlerType.PUT, HandlerType.PATCH, HandlerType.DELETE);
+
+  private final CacheTtls ttls;
+  private final ImmutableList<String> keyHeaders;
+  private final RouterMetrics metrics;
+  private final AsyncCache<HashCode, Entry> cache;
+
+  /**
+   * @param keyHeaders request headers that, besides the method, path, query and body, tell
+   *     requests apart.
+   * @param metrics where lookups are counted.
+   */
+  public ResponseCache(
+      CacheTtls ttls,
+      List<String> keyHeaders,
+      int maxEntries,
+      long maxBytes,
+      RouterMetrics metrics) {
+    this.ttls = ttls;
+    this.keyHeaders = ImmutableList.copyOf(keyHeaders);
+    this.metrics = metrics;
+    int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / maxEntries));
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((HashCode key, Entry entry) -> Math.max(minWeight, entry.weight()))
+            .expireAfter(new EntryExpiry())
+            .buildAsync();
+  }
+
+  /**
+   * Returns the response to the request, from the cache or from {@code loader} if the same request
+   * is neither cached nor already being loaded. Returns nothing, without calling {@code loader}, if
+   * the request's route or method is not cached.
+   */
+  public Optional<CompletableFuture<CachedResponse>> get(
+      Context context, byte[] body, Supplier<CompletableFuture<CachedResponse>> loader) {
+    long ttlNanos = ttls.ttl(context.path()).toNanos();
+    if (ttlNanos == 0 || UNCACHED_METHODS.contains(context.method())) {
+      return Optional.empty();
+    }
+    var loaded = new AtomicBoolean();
+    CompletableFuture<Entry> entry =
+        cache.get(
+            key(context, body),
+            (key, executor) -> {
+              loaded.set(true);
+              return loader.get().thenApply(response -> new Entry(response, ttlNanos));
+            });
+    metrics.onCacheLookup(
+        loaded.get() ? CacheResult.MISS : entry.isDone() ? CacheResult.HIT : CacheResult.COALESCED);
+    return Optional.of(entry.thenApply(Entry::response));
+  }
+
+  /** Number of responses cached, once pending evictions have been carried out. */
+  public long size() {
+    cache.synchronous().cleanUp();
+    return cache.synchronous().estimatedSize();
+  }
+
+  private HashCode key(Context context, byte[] body) {
+    String path = context.path();
+    Hasher hasher =
+        Hashing.murmur3_128()
+            .newHasher()
+            .putInt(path.length())
+            .putString(path, StandardCharsets.UTF_8)
+            .putInt(body.length)
+            .putBytes(body);
+    putNullable(hasher, context.method() == null ? null : context.method().name());
+    putNullable(hasher, context.queryString());
+    for (String name : keyHeaders) {
+      putNullable(hasher, context.header(name));
+    }
+    return hasher.hash();
+  }
+
+  private static void putNullable(Hasher hasher, String value) {
+    // Tells a missing value apart from an empty one.
+    hasher.putBoolean(value != null);
+    if (value != null) {
+      hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  private record Entry(CachedResponse response, long ttlNanos) {
+    int weight() {
+      return response.body().length + ENTRY_OVERHEAD_BYTES;
+    }
+  }
+
+  /** Expires each entry after its route's TTL, and responses that may not be cached right away. */
+  private static class EntryExpiry implements Expiry<HashCode, Entry> {
+    @Override
+    public long expireAfterCreate(HashCode key, Entry entry, long currentTime) {
+      return entry.response().cacheable() ? entry.ttlNanos() : 0;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        HashCode key, Entry entry, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, entry, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(HashCode key, Entry entry, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package org.ccwang.routing.health;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Actively probes the {@code /healthz} endpoint of every host in the background and publishes an
+ * immutable snapshot of the healthy ones, so the request path never has to wait on a health check.
+ *
+ * <p>All hosts are probed in parallel once per interval. A host is marked unhealthy after {@code
+ * unhealthyThreshold} consecutive failed probes and healthy again after {@code healthyThreshold}
+ * consecutive successful ones. Hosts start out healthy so that traffic flows before the first round
+ * of probes completes, and so do hosts that join later. {@link #warmUp} settles their health from
+ * one round instead, for the router to do before it reports ready.
+ */
+public class HealthChecker implements MembershipListener, AutoCloseable {
+  private final HttpClient httpClient;
+  private final Duration interval;
+  private final Duration timeout;
+  private final int healthyThreshold;
+  private final int unhealthyThreshold;
+  private final List<HealthListener> listeners;
+  private final List<ProbeListener> probeListeners;
+  private final ScheduledExecutorService scheduler;
+  private final Logger logger;
+  /** Probe state of every member, in their configured order. Replaced on membership changes. */
+  private volatile ImmutableMap<URI, HostState> states;
+
+  private volatile ImmutableSet<URI> healthyHosts;
+
+  public HealthChecker(
+      List<URI> uris,
+      Duration interval,
+      Duration timeout,
+      int healthyThreshold,
+      int unhealthyThreshold) {
+    this(
+        HttpClient.newBuilder().connectTimeout(timeout).build(),
+        uris,
+        interval,
+        timeout,
+        healthyThreshold,
+        unhealthyThreshold);
+  }
+
+  /** @param httpClient client to probe with, normally shared with request dispatching. */
+  public HealthChecker(
+      HttpClient httpClient,
+      List<URI> uris,
+      Duration interval,
+      Duration timeout,
+      int healthyThreshold,
+      int unhealthyThreshold) {
+    this.httpClient = httpClient;
+    this.interval = interval;
+    this.timeout = timeout;
+    this.healthyThreshold = healthyThreshold;
+    this.unhealthyThreshold = unhealthyThreshold;
+    ImmutableMap.Builder<URI, HostState> builder = ImmutableMap.builder();
+    for (URI uri : uris) {
+      builder.put(uri, new HostState());
+    }
+    this.states = builder.buildKeepingLast();
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.probeListeners = new CopyOnWriteArrayList<>();
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("health-checker-%d").setDaemon(true).build());
+    this.logger = LoggerFactory.getLogger(HealthChecker.class);
+    this.healthyHosts = states.keySet();
+  }
+
+  /** Starts probing all hosts, immediately and then once per interval. */
+  public void start() {
+    scheduler.scheduleWithFixedDelay(
+        this::probeAllAndWait, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  /** Returns the latest snapshot of healthy hosts. Never blocks. */
+  public ImmutableSet<URI> healthyHosts() {
+    return healthyHosts;
+  }
+
+  /** Registers a listener and immediately hands it the current snapshot. */
+  public void addListener(HealthListener listener) {
+    listeners.add(listener);
+    listener.onHealthyHostsChanged(healthyHosts);
+  }
+
+  /** Registers a listener that gets told the outcome of every probe. */
+  public void addProbeListener(ProbeListener listener) {
+    probeListeners.add(listener);
+  }
+
+  /**
+   * Starts probing hosts that joined and forgets hosts that left. A host that leaves drops out of
+   * the healthy snapshot right away, one that joins is added as healthy.
+   */
+  @Override
+  public synchronized void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    ImmutableMap<URI, HostState> previous = states;
+    ImmutableMap.Builder<URI, HostState> builder = ImmutableMap.builder();
+    for (URI uri : HostSpec.uris(hosts)) {
+      HostState state = previous.get(uri);
+      builder.put(uri, state != null ? state : new HostState());
+    }
+    states = builder.buildKeepingLast();
+    publish();
+  }
+
+  /** Probes all hosts in parallel; the returned future completes once the snapshot is updated. */
+  public CompletableFuture<Void> probeAll() {
+    ImmutableMap.Builder<URI, CompletableFuture<Boolean>> probes = ImmutableMap.builder();
+    for (URI uri : states.keySet()) {
+      probes.put(uri, probe(uri));
+    }
+    var results = probes.buildKeepingLast();
+    return CompletableFuture.allOf(results.values().toArray(CompletableFuture[]::new))
+        .thenRun(() -> record(Maps.transformValues(results, CompletableFuture::join)));
+  }
+
+  /**
+   * Probes every host with the given number of concurrent probes, which leaves as many connections
+   * to it in the client's pool, and takes the outcome as the host's health right away instead of
+   * waiting for the thresholds. A host is healthy if any of its probes succeeded.
+   *
+   * @param timeout of each probe, which may have to open its connection on a cold JVM and so
+   *     deserves longer than the probes that follow.
+   */
+  public CompletableFuture<Void> warmUp(int connectionsPerHost, Duration timeout) {
+    ImmutableMap.Builder<URI, CompletableFuture<Boolean>> probes = ImmutableMap.builder();
+    for (URI uri : states.keySet()) {
+      List<CompletableFuture<Boolean>> connections = new ArrayList<>();
+      for (int i = 0; i < Math.max(1, connectionsPerHost); ++i) {
+        connections.add(probe(uri, timeout));
+      }
+      probes.put(
+          uri,
+          CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new))
+              .thenApply(unused -> connections.stream().anyMatch(CompletableFuture::join)));
+    }
+    var results = probes.buildKeepingLast();
+    return CompletableFuture.allOf(results.values().toArray(CompletableFuture[]::new))
+        .thenRun(() -> reset(Maps.transformValues(results, CompletableFuture::join)));
+  }
+
+  private void probeAllAndWait() {
+    try {
+      // Waits for the round to finish so that rounds never overlap on slow hosts.
+      probeAll().join();
+    } catch (Exception e) {
+      // Swallows the exception, otherwise the scheduler would silently stop probing.
+      logger.error("Caught exception while probing hosts " + e);
+    }
+  }
+
+  private CompletableFuture<Boolean> probe(URI uri) {
+    return probe(uri, timeout);
+  }
+
+  private CompletableFuture<Boolean> probe(URI uri, Duration timeout) {
+    var request =
+        HttpRequest.newBuilder().GET().uri(uri.resolve("/healthz")).timeout(timeout).build();
+    return httpClient
+        .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+        .handle(
+            (response, e) -> {
+              if (e != null) {
+                logger.debug("Health check failed for " + uri + " " + e);
+              }
+              boolean success = e == null && response.statusCode() == 200;
+              for (ProbeListener listener : probeListeners) {
+                listener.onProbe(uri, success);
+              }
+              return success;
+            });
+  }
+
+  private synchronized void record(Map<URI, Boolean> results) {
+    for (var result : results.entrySet()) {
+      // Hosts that left while being probed are ignored
+      HostState state = states.get(result.getKey());
+      if (state != null) {
+        state.record(result.getValue());
+      }
+    }
+    publish();
+  }
+
+  private synchronized void reset(Map<URI, Boolean> results) {
+    for (var result : results.entrySet()) {
+      HostState state = states.get(result.getKey());
+      if (state != null) {
+        state.reset(result.getValue());
+      }
+    }
+    publish();
+  }
+
+  /** Publishes the healthy hosts, if they changed. Only called while holding the lock. */
+  private void publish() {
+    ImmutableSet.Builder<URI> builder = ImmutableSet.builder();
+    for (var entry : states.entrySet()) {
+      if (entry.getValue().healthy) {
+        builder.add(entry.getKey());
+      }
+    }
+    ImmutableSet<URI> hosts = builder.build();
+    if (hosts.equals(healthyHosts)) {
+      return;
+    }
+    healthyHosts = hosts;
+    logger.info("Healthy hosts changed to " + healthyHosts);
+    for (HealthListener listener : listeners) {
+      listener.onHealthyHostsChanged(healthyHosts);
+    }
+  }
+
+  /** Consecutive probe outcomes of one host. Only accessed while holding the checker's lock. */
+  private class HostState {
+    private boolean healthy = true;
+    private int consecutiveSuccesses;
+    private int consecutiveFailures;
+
+    private void record(boolean success) {
+      if (success) {
+        consecutiveSuccesses++;
+        consecutiveFailures = 0;
+        if (consecutiveSuccesses >= healthyThreshold) {
+          healthy = true;
+        }
+      } else {
+        consecutiveFailures++;
+        consecutiveSuccesses = 0;
+        if (consecutiveFailures >= unhealthyThreshold) {
+          healthy = false;
+        }
+      }
+    }
+
+    private void reset(boolean success) {
+      healthy = success;
+      consecutiveSuccesses = success ? 1 : 0;
+      consecutiveFailures = success ? 0 : 1;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package org.ccwang.routing.health;
+
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+
+/** Receives the set of hosts that currently pass health checks whenever it changes. */
+@FunctionalInterface
+public interface HealthListener {
+  void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts);
+}
@@ -0,0 +1,215 @@
+package org.ccwang.routing.health;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passively ejects hosts that keep failing real requests, reacting much faster than the active
+ * probes of {@link HealthChecker}, and catching hosts whose {@code /healthz} passes while their
+ * {@code /echo} fails.
+ *
+ * <p>A host is ejected after {@code consecutiveFailures} failed requests in a row. After the
+ * ejection period it is let back in half-open: its next request decides whether it stays, or is
+ * ejected again for twice as long, up to {@code maxEjection}. The backoff starts over once a host
+ * has stayed in for {@code maxEjection}. At most {@code maxEjectionPercent} of the hosts are
+ * ejected at once, so that a shared outage cannot take every host out of rotation.
+ *
+ * <p>Listens to the active health checker and publishes the hosts that are both actively healthy
+ * and not ejected. Counting failures is lock-free; only ejecting and re-admitting take the lock.
+ */
+public class OutlierDetector
+    implements HealthListener, RequestOutcomeListener, MembershipListener, AutoCloseable {
+  private final int consecutiveFailures;
+  private final Duration baseEjection;
+  private final Duration maxEjection;
+  private final int maxEjectionPercent;
+  private final List<HealthListener> listeners;
+  private final ScheduledExecutorService scheduler;
+  private final Logger logger;
+  /** Ejection state of every member, in their configured order. Replaced on membership changes. */
+  private volatile ImmutableMap<URI, HostState> states;
+
+  private ImmutableSet<URI> activelyHealthyHosts;
+  private volatile ImmutableSet<URI> healthyHosts;
+
+  public OutlierDetector(
+      List<URI> uris,
+      int consecutiveFailures,
+      Duration baseEjection,
+      Duration maxEjection,
+      int maxEjectionPercent) {
+    this.consecutiveFailures = consecutiveFailures;
+    this.baseEjection = baseEjection;
+    this.maxEjection = maxEjection;
+    this.maxEjectionPercent = maxEjectionPercent;
+    ImmutableMap.Builder<URI, HostState> builder = ImmutableMap.builder();
+    for (URI uri : uris) {
+      builder.put(uri, new HostState());
+    }
+    this.states = builder.buildKeepingLast();
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("outlier-detector-%d")
+                .setDaemon(true)
+                .build());
+    this.logger = LoggerFactory.getLogger(OutlierDetector.class);
+    this.activelyHealthyHosts = states.keySet();
+    this.healthyHosts = activelyHealthyHosts;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  /** Returns the latest snapshot of hosts that are actively healthy and not ejected. */
+  public ImmutableSet<URI> healthyHosts() {
+    return healthyHosts;
+  }
+
+  /** Registers a listener and immediately hands it the current snapshot. */
+  public void addListener(HealthListener listener) {
+    listeners.add(listener);
+    listener.onHealthyHostsChanged(healthyHosts);
+  }
+
+  @Override
+  public synchronized void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    activelyHealthyHosts = healthyHosts;
+    publish();
+  }
+
+  /** Starts tracking hosts that joined and forgets hosts that left, along with their ejections. */
+  @Override
+  public synchronized void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    ImmutableMap<URI, HostState> previous = states;
+    ImmutableMap.Builder<URI, HostState> builder = ImmutableMap.builder();
+    for (URI uri : HostSpec.uris(hosts)) {
+      HostState state = previous.get(uri);
+      builder.put(uri, state != null ? state : new HostState());
+    }
+    states = builder.buildKeepingLast();
+    publish();
+  }
+
+  @Override
+  public void onRequestOutcome(URI uri, boolean success) {
+    HostState state = states.get(uri);
+    if (state == null) {
+      return;
+    }
+    if (success) {
+      if (state.failures.get() != 0) {
+        state.failures.set(0);
+      }
+      if (state.status == Status.HALF_OPEN) {
+        readmit(uri, state);
+      }
+    } else {
+      int failures = state.failures.incrementAndGet();
+      if (state.status == Status.HALF_OPEN
+          || (state.status == Status.IN && failures >= consecutiveFailures)) {
+        eject(uri, state);
+      }
+    }
+  }
+
+  private synchronized void eject(URI uri, HostState state) {
+    if (state.status == Status.EJECTED) {
+      return;
+    }
+    if (!canEject()) {
+      logger.warn("Not ejecting " + uri + ", too many hosts are ejected already");
+      return;
+    }
+    long inForNanos = System.nanoTime() - state.inSinceNanos;
+    if (state.status == Status.IN && inForNanos >= maxEjection.toNanos()) {
+      // Stayed in long enough, the backoff starts over.
+      state.ejections = 0;
+    }
+    Duration ejection = baseEjection.multipliedBy(1L << Math.min(state.ejections, 30));
+    if (ejection.compareTo(maxEjection) > 0) {
+      ejection = maxEjection;
+    }
+    state.ejections++;
+    state.status = Status.EJECTED;
+    state.failures.set(0);
+    logger.info("Ejecting " + uri + " for " + ejection);
+    scheduler.schedule(() -> halfOpen(uri, state), ejection.toNanos(), TimeUnit.NANOSECONDS);
+    publish();
+  }
+
+  private synchronized void halfOpen(URI uri, HostState state) {
+    if (states.get(uri) != state) {
+      // Left while ejected
+      return;
+    }
+    state.status = Status.HALF_OPEN;
+    logger.info("Letting " + uri + " back in half-open");
+    publish();
+  }
+
+  private synchronized void readmit(URI uri, HostState state) {
+    if (state.status != Status.HALF_OPEN) {
+      return;
+    }
+    state.status = Status.IN;
+    state.inSinceNanos = System.nanoTime();
+    logger.info("Readmitted " + uri);
+  }
+
+  private boolean canEject() {
+    long ejected = states.values().stream().filter(state -> state.status == Status.EJECTED).count();
+    return (ejected + 1) * 100 <= (long) maxEjectionPercent * states.size();
+  }
+
+  /** Publishes the hosts that are both actively healthy and not ejected, if they changed. */
+  private void publish() {
+    ImmutableSet.Builder<URI> builder = ImmutableSet.builder();
+    for (var entry : states.entrySet()) {
+      if (activelyHealthyHosts.contains(entry.getKey())
+          && entry.getValue().status != Status.EJECTED) {
+        builder.add(entry.getKey());
+      }
+    }
+    ImmutableSet<URI> hosts = builder.build();
+    if (hosts.equals(healthyHosts)) {
+      return;
+    }
+    healthyHosts = hosts;
+    logger.info("Healthy hosts changed to " + healthyHosts);
+    for (HealthListener listener : listeners) {
+      listener.onHealthyHostsChanged(healthyHosts);
+    }
+  }
+
+  private enum Status {
+    IN,
+    EJECTED,
+    HALF_OPEN
+  }
+
+  /** Ejection state of one host. The status is read lock-free, but only changed under the lock. */
+  private static class HostState {
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile Status status = Status.IN;
+    private int ejections;
+    private long inSinceNanos = System.nanoTime();
+  }
+}
@@ -0,0 +1,9 @@
+package org.ccwang.routing.health;
+
+import java.net.URI;
+
+/** Gets told the outcome of every active health check probe. */
+@FunctionalInterface
+public interface ProbeListener {
+  void onProbe(URI uri, boolean success);
+}
@@ -0,0 +1,15 @@
+package org.ccwang.routing.health;
+
+import java.net.URI;
+
+/** Gets told how requests forwarded to a host turned out, as seen by the dispatcher. */
+@FunctionalInterface
+public interface RequestOutcomeListener {
+  RequestOutcomeListener NONE = (uri, success) -> {};
+
+  /**
+   * @param success whether the host answered successfully; false for errors, timeouts and 5xx
+   *     responses.
+   */
+  void onRequestOutcome(URI uri, boolean success);
+}
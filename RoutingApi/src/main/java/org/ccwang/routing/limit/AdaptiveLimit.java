@@ -0,0 +1,19 @@
+package org.ccwang.routing.limit;
+
+/**
+ * A concurrency limit learnt from how requests turn out: it grows while latency stays flat and
+ * shrinks once requests start queueing up at the hosts or failing.
+ */
+public interface AdaptiveLimit {
+  /** How many requests may currently be in flight. */
+  int limit();
+
+  /**
+   * Records a completed request.
+   *
+   * @param rttNanos how long the request took.
+   * @param inFlight requests in flight when it started, itself included.
+   * @param dropped whether it timed out or failed, which is a sign of overload.
+   */
+  void onSample(long rttNanos, int inFlight, boolean dropped);
+}
@@ -0,0 +1,35 @@
+package org.ccwang.routing.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase, multiplicative decrease: the limit grows by one for every request that
+ * completes while the limit is being used, and is cut by {@link #BACKOFF} for every dropped one.
+ * Ignores latency altogether, so it only backs off once requests actually time out or fail.
+ */
+class AimdLimit implements AdaptiveLimit {
+  private static final double BACKOFF = 0.9;
+
+  private final int maxLimit;
+  private final AtomicInteger limit;
+
+  AimdLimit(int initialLimit, int maxLimit) {
+    this.maxLimit = maxLimit;
+    this.limit = new AtomicInteger(initialLimit);
+  }
+
+  @Override
+  public int limit() {
+    return limit.get();
+  }
+
+  @Override
+  public void onSample(long rttNanos, int inFlight, boolean dropped) {
+    if (dropped) {
+      limit.updateAndGet(current -> Math.max(1, (int) (current * BACKOFF)));
+    } else if (inFlight * 2 >= limit.get()) {
+      // Growing while the limit is barely used would let it run away from the actual load.
+      limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+    }
+  }
+}
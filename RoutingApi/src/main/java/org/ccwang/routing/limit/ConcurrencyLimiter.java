@@ -0,0 +1,270 @@
+package org.ccwang.routing.limit;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits requests while fewer than an {@link AdaptiveLimit} are in flight. Each admitted request
+ * holds a {@link Permit} and feeds its latency back into the limit when it gives the permit back.
+ *
+ * <p>Requests over the limit are turned away right away, or wait in a small queue if there is room.
+ * The queue is served newest first: under sustained overload the oldest waiters are the likeliest
+ * to have been given up on by their clients, and they time out while the fresh ones get through.
+ * Admission is a compare-and-set on the in-flight count; only the queue takes a lock, and only to
+ * push or pop a waiter.
+ *
+ * <p>Waiters queue by tenant, and freed permits go to the tenants in weighted fair order by
+ * start-time fair queuing: each tenant is served in proportion to its weight for as long as it has
+ * waiters, so one tenant's burst cannot hold up the others behind it. When the queue is full, a
+ * newcomer takes the place of the oldest waiter of the tenant with the most waiters for its weight,
+ * unless that is the newcomer's own.
+ */
+public class ConcurrencyLimiter {
+  /** The tenant of requests acquired without one. */
+  private static final String DEFAULT_TENANT = "";
+
+  private final AdaptiveLimit limit;
+  private final int maxQueued;
+  private final long queueTimeoutNanos;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  /** Tenants with waiters, guarded by itself. */
+  private final Map<String, TenantQueue> queues = new LinkedHashMap<>();
+  /** Guarded by queues. */
+  private int queued;
+  /** Start tag of the waiter served last, guarded by queues. */
+  private double virtualTime;
+
+  public ConcurrencyLimiter(AdaptiveLimit limit) {
+    this(limit, 0, Duration.ZERO);
+  }
+
+  /**
+   * @param maxQueued requests that may wait for a permit at once, 0 to turn away every request
+   *     over the limit.
+   * @param queueTimeout how long a request waits at most.
+   */
+  public ConcurrencyLimiter(AdaptiveLimit limit, int maxQueued, Duration queueTimeout) {
+    this.limit = limit;
+    this.maxQueued = maxQueued;
+    this.queueTimeoutNanos = queueTimeout.toNanos();
+  }
+
+  /** Takes a permit if the limit allows, without waiting. */
+  public Optional<Permit> tryAcquire() {
+    int current;
+    do {
+      current = inFlight.get();
+      if (current >= limit.limit()) {
+        return Optional.empty();
+      }
+    } while (!inFlight.compareAndSet(current, current + 1));
+    return Optional.of(new Permit(current + 1));
+  }
+
+  /**
+   * Takes a permit, waiting in the queue if the limit is reached. The returned future holds
+   * nothing if the queue was full or the wait timed out.
+   */
+  public CompletableFuture<Optional<Permit>> acquire() {
+    return acquire(DEFAULT_TENANT, 1);
+  }
+
+  /**
+   * Takes a permit for the tenant, waiting in its queue if the limit is reached. The returned
+   * future holds nothing if the queue was full, the wait timed out or a tenant with fewer waiters
+   * took the waiter's place.
+   *
+   * @param weight of the tenant, at least 1; only the weight it has when its queue is empty counts.
+   */
+  public CompletableFuture<Optional<Permit>> acquire(String tenant, int weight) {
+    var permit = tryAcquire();
+    if (permit.isPresent() || maxQueued == 0) {
+      return CompletableFuture.completedFuture(permit);
+    }
+    var waiter = new CompletableFuture<Optional<Permit>>();
+    CompletableFuture<Optional<Permit>> displaced = null;
+    synchronized (queues) {
+      if (queued >= maxQueued) {
+        displaced = displace(tenant, weight);
+        if (displaced == null) {
+          return CompletableFuture.completedFuture(Optional.empty());
+        }
+      }
+      queues
+          .computeIfAbsent(tenant, unused -> new TenantQueue(weight))
+          .waiters
+          .push(waiter);
+      ++queued;
+    }
+    if (displaced != null) {
+      displaced.complete(Optional.empty());
+    }
+    waiter.completeOnTimeout(Optional.empty(), queueTimeoutNanos, TimeUnit.NANOSECONDS);
+    waiter.thenAccept(
+        acquired -> {
+          if (acquired.isEmpty()) {
+            remove(tenant, waiter);
+          }
+        });
+    // Every permit may have been given back while the waiter was being queued.
+    handOff();
+    return waiter;
+  }
+
+  public int limit() {
+    return limit.limit();
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /** Passes free permits on to the newest waiter of the tenant whose turn it is. */
+  private void handOff() {
+    while (true) {
+      CompletableFuture<Optional<Permit>> waiter;
+      Permit permit;
+      synchronized (queues) {
+        if (queued == 0) {
+          return;
+        }
+        var acquired = tryAcquire();
+        if (acquired.isEmpty()) {
+          return;
+        }
+        waiter = next();
+        permit = acquired.get();
+      }
+      if (!waiter.complete(Optional.of(permit))) {
+        // Timed out in the meantime.
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Pops the newest waiter of the tenant with the earliest start tag, the later of its last finish
+   * tag and the virtual time. Only called while holding the lock, with waiters queued.
+   */
+  private CompletableFuture<Optional<Permit>> next() {
+    Map.Entry<String, TenantQueue> earliest = null;
+    double earliestStart = Double.MAX_VALUE;
+    for (var entry : queues.entrySet()) {
+      double start = Math.max(entry.getValue().finish, virtualTime);
+      if (start < earliestStart) {
+        earliest = entry;
+        earliestStart = start;
+      }
+    }
+    TenantQueue queue = earliest.getValue();
+    virtualTime = earliestStart;
+    queue.finish = earliestStart + 1.0 / queue.weight;
+    --queued;
+    var waiter = queue.waiters.pop();
+    if (queue.waiters.isEmpty()) {
+      queues.remove(earliest.getKey());
+    }
+    return waiter;
+  }
+
+  /**
+   * Takes the oldest waiter out of the queue of the tenant with the most waiters for its weight,
+   * unless the newcomer's tenant would then have as many. Only called while holding the lock.
+   *
+   * @return the waiter taken out, to be turned away once the lock is released, or null.
+   */
+  private CompletableFuture<Optional<Permit>> displace(String tenant, int weight) {
+    TenantQueue own = queues.get(tenant);
+    long ownSize = own == null ? 1 : own.waiters.size() + 1;
+    long ownWeight = own == null ? weight : own.weight;
+    Map.Entry<String, TenantQueue> longest = null;
+    for (var entry : queues.entrySet()) {
+      TenantQueue queue = entry.getValue();
+      if (longest == null
+          || (long) queue.waiters.size() * longest.getValue().weight
+              > (long) longest.getValue().waiters.size() * queue.weight) {
+        longest = entry;
+      }
+    }
+    TenantQueue victim = longest.getValue();
+    if (longest.getKey().equals(tenant)
+        || (long) victim.waiters.size() * ownWeight <= ownSize * victim.weight) {
+      return null;
+    }
+    --queued;
+    var waiter = victim.waiters.removeLast();
+    if (victim.waiters.isEmpty()) {
+      queues.remove(longest.getKey());
+    }
+    return waiter;
+  }
+
+  private void remove(String tenant, CompletableFuture<Optional<Permit>> waiter) {
+    synchronized (queues) {
+      TenantQueue queue = queues.get(tenant);
+      if (queue != null && queue.waiters.remove(waiter)) {
+        --queued;
+        if (queue.waiters.isEmpty()) {
+          queues.remove(tenant);
+        }
+      }
+    }
+  }
+
+  /** The waiters of one tenant, and when its last one served would have finished. */
+  private static class TenantQueue {
+    private final int weight;
+    /** Newest first. */
+    private final Deque<CompletableFuture<Optional<Permit>>> waiters = new ArrayDeque<>();
+    private double finish;
+
+    TenantQueue(int weight) {
+      this.weight = weight;
+    }
+  }
+
+  /** The right to have one request in flight, to be given back once when it completes. */
+  public class Permit {
+    private final long startNanos = System.nanoTime();
+    private final int inFlightAtStart;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(int inFlightAtStart) {
+      this.inFlightAtStart = inFlightAtStart;
+    }
+
+    /** The request completed, its latency tells how loaded the hosts are. */
+    public void onSuccess() {
+      release(true, false);
+    }
+
+    /** The request timed out or failed. */
+    public void onDropped() {
+      release(true, true);
+    }
+
+    /** The request says nothing about the load, e.g. it was cancelled. */
+    public void onIgnore() {
+      release(false, false);
+    }
+
+    private void release(boolean sample, boolean dropped) {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      if (sample) {
+        limit.onSample(System.nanoTime() - startNanos, inFlightAtStart, dropped);
+      }
+      inFlight.decrementAndGet();
+      handOff();
+    }
+  }
+}
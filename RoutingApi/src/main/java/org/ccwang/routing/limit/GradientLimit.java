@@ -0,0 +1,65 @@
+package org.ccwang.routing.limit;
+
+/**
+ * Scales the limit by the ratio of the long-term to the short-term average latency, the gradient.
+ * While the hosts keep up both averages agree and the limit grows by its square root, the room left
+ * for requests to queue; once requests queue up at the hosts the short-term latency rises and the
+ * limit shrinks along with it, by half at most per sample. Each dropped request halves it outright.
+ *
+ * <p>The long-term average decays while it is far above the short-term one, so that the limit can
+ * recover after a long stretch of high latency. Updates from latency are smoothed, and only taken
+ * while the limit is at least half used: a lightly loaded router says nothing about what the hosts
+ * can take.
+ */
+class GradientLimit implements AdaptiveLimit {
+  /** How much slower than usual requests may get before the limit shrinks. */
+  private static final double TOLERANCE = 1.5;
+  /** Weight of a new estimate against the current limit. */
+  private static final double SMOOTHING = 0.2;
+  /** Samples the short-term and long-term averages span, roughly. */
+  private static final int SHORT_WINDOW = 10;
+  private static final int LONG_WINDOW = 600;
+
+  private final int maxLimit;
+  private double estimatedLimit;
+  private double shortRttNanos;
+  private double longRttNanos;
+  private volatile int limit;
+
+  GradientLimit(int initialLimit, int maxLimit) {
+    this.maxLimit = maxLimit;
+    this.estimatedLimit = initialLimit;
+    this.limit = initialLimit;
+  }
+
+  @Override
+  public int limit() {
+    return limit;
+  }
+
+  @Override
+  public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+    shortRttNanos = average(shortRttNanos, rttNanos, SHORT_WINDOW);
+    longRttNanos = average(longRttNanos, rttNanos, LONG_WINDOW);
+    if (longRttNanos > 2 * shortRttNanos) {
+      longRttNanos *= 0.95;
+    }
+    if (dropped) {
+      estimatedLimit = Math.max(1, estimatedLimit / 2);
+      limit = (int) estimatedLimit;
+      return;
+    }
+    if (inFlight < estimatedLimit / 2) {
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+    double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+    estimatedLimit =
+        Math.max(1, Math.min(maxLimit, (1 - SMOOTHING) * estimatedLimit + SMOOTHING * newLimit));
+    limit = (int) estimatedLimit;
+  }
+
+  private static double average(double average, long sample, int window) {
+    return average == 0 ? sample : average + (sample - average) / window;
+  }
+}
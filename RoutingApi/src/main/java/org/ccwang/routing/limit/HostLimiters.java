@@ -0,0 +1,36 @@
+package org.ccwang.routing.limit;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.ccwang.routing.limit.ConcurrencyLimiter.Permit;
+
+/**
+ * A {@link ConcurrencyLimiter} per host, each learning its own limit from the latency of the
+ * attempts sent to it, so that one slow host is held back without holding back the others. Hosts
+ * over their limit are skipped rather than queued for.
+ */
+public class HostLimiters {
+  private final LimitAlgorithm algorithm;
+  private final int initialLimit;
+  private final int maxLimit;
+  private final Map<URI, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  public HostLimiters(LimitAlgorithm algorithm, int initialLimit, int maxLimit) {
+    this.algorithm = algorithm;
+    this.initialLimit = initialLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /** Takes a permit to send an attempt to the host, if it is under its limit. */
+  public Optional<Permit> tryAcquire(URI uri) {
+    ConcurrencyLimiter limiter = limiters.get(uri);
+    if (limiter == null) {
+      limiter =
+          limiters.computeIfAbsent(
+              uri, unused -> new ConcurrencyLimiter(algorithm.create(initialLimit, maxLimit)));
+    }
+    return limiter.tryAcquire();
+  }
+}
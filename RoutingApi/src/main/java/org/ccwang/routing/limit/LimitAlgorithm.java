@@ -0,0 +1,32 @@
+package org.ccwang.routing.limit;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/** The adaptive concurrency limits that can be selected through configuration. */
+public enum LimitAlgorithm {
+  /** See {@link AimdLimit}. */
+  AIMD {
+    @Override
+    public AdaptiveLimit create(int initialLimit, int maxLimit) {
+      return new AimdLimit(initialLimit, maxLimit);
+    }
+  },
+  /** See {@link GradientLimit}. */
+  GRADIENT {
+    @Override
+    public AdaptiveLimit create(int initialLimit, int maxLimit) {
+      return new GradientLimit(initialLimit, maxLimit);
+    }
+  };
+
+  /** Creates a new limit, starting out at {@code initialLimit} and never above {@code maxLimit}. */
+  public abstract AdaptiveLimit create(int initialLimit, int maxLimit);
+
+  /** Parses a flag value such as {@code gradient}, or {@code none} for no limit. */
+  public static Optional<LimitAlgorithm> fromFlag(String value) {
+    return value.equals("none")
+        ? Optional.empty()
+        : Optional.of(valueOf(value.toUpperCase(Locale.ROOT)));
+  }
+}
@@ -0,0 +1,80 @@
+package org.ccwang.routing.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket per tenant, refilled at a steady rate and holding at most a burst of tokens, so
+ * that one tenant sending too much is turned away before it takes capacity from the others.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} holding when the tenant's next request would
+ * conform if it sent nothing in between, as in the generic cell rate algorithm; taking a token is
+ * one compare-and-set, without a lock. The buckets are kept in a Caffeine cache, which bounds their
+ * number and stripes its table so that tenants rarely contend. A bucket idle long enough to be full
+ * again is evicted, since a fresh one is the same; one evicted because the table was full starts
+ * over with a full burst.
+ */
+public class TenantRateLimiter {
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final Ticker ticker;
+  private final Cache<String, AtomicLong> buckets;
+
+  /**
+   * @param ratePerSecond tokens each tenant's bucket is refilled with per second.
+   * @param burst tokens each bucket holds at most, at least 1.
+   * @param maxTenants most tenants whose buckets are kept at once.
+   */
+  public TenantRateLimiter(double ratePerSecond, int burst, int maxTenants) {
+    this(ratePerSecond, burst, maxTenants, Ticker.systemTicker());
+  }
+
+  TenantRateLimiter(double ratePerSecond, int burst, int maxTenants, Ticker ticker) {
+    if (ratePerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException(
+          "Tenant rate and burst must be positive: " + ratePerSecond + ", " + burst);
+    }
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    this.burstNanos = intervalNanos * burst;
+    this.ticker = ticker;
+    this.buckets =
+        Caffeine.newBuilder()
+            .maximumSize(maxTenants)
+            .expireAfterAccess(Duration.ofNanos(burstNanos))
+            .ticker(ticker::read)
+            .build();
+  }
+
+  /**
+   * Takes a token from the tenant's bucket.
+   *
+   * @return 0 if the request may go ahead, or else how many nanoseconds until it could.
+   */
+  public long tryAcquire(String tenant) {
+    long now = ticker.read();
+    AtomicLong bucket = buckets.getIfPresent(tenant);
+    if (bucket == null) {
+      bucket = buckets.get(tenant, unused -> new AtomicLong(now));
+    }
+    long next;
+    long updated;
+    do {
+      next = bucket.get();
+      updated = Math.max(next, now) + intervalNanos;
+      if (updated - now > burstNanos) {
+        return updated - now - burstNanos;
+      }
+    } while (!bucket.compareAndSet(next, updated));
+    return 0;
+  }
+
+  /** Number of tenants with a bucket, once pending evictions have been carried out. */
+  public long tenants() {
+    buckets.cleanUp();
+    return buckets.estimatedSize();
+  }
+}
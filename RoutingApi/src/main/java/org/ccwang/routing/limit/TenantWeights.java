@@ -0,0 +1,45 @@
+package org.ccwang.routing.limit;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * How large a share of the router's capacity each tenant gets when requests queue for it, relative
+ * to the others. Written as a comma-separated list of {@code <tenant>=<weight>}, e.g. {@code
+ * gold-key=4,silver-key=2}; tenants not listed have weight 1.
+ */
+public class TenantWeights {
+  /** Every tenant has weight 1. */
+  public static final TenantWeights NONE = new TenantWeights(ImmutableMap.of());
+
+  private final ImmutableMap<String, Integer> weights;
+
+  private TenantWeights(Map<String, Integer> weights) {
+    this.weights = ImmutableMap.copyOf(weights);
+  }
+
+  /**
+   * Parses weights, e.g. {@code gold-key=4,silver-key=2}.
+   *
+   * @throws IllegalArgumentException if they are malformed.
+   */
+  public static TenantWeights parse(String value) {
+    ImmutableMap.Builder<String, Integer> weights = ImmutableMap.builder();
+    for (String rule : value.split(",")) {
+      String[] parts = rule.trim().split("=", 2);
+      if (parts.length != 2 || parts[0].isEmpty()) {
+        throw new IllegalArgumentException("Malformed tenant weight: " + rule);
+      }
+      int weight = Integer.parseInt(parts[1]);
+      if (weight < 1) {
+        throw new IllegalArgumentException("Tenant weight must be at least 1: " + rule);
+      }
+      weights.put(parts[0], weight);
+    }
+    return new TenantWeights(weights.buildOrThrow());
+  }
+
+  public int weight(String tenant) {
+    return weights.getOrDefault(tenant, 1);
+  }
+}
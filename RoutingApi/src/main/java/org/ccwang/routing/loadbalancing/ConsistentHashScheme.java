@@ -0,0 +1,126 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.ccwang.routing.health.HealthListener;
+
+/**
+ * Routes requests with the same routing key to the same host, using a hash ring with virtual nodes.
+ * Only healthy hosts are placed on the ring, so when a host fails or recovers only the keys it owns,
+ * about 1/N of them, move. A host gets {@code weight * VIRTUAL_NODES_PER_WEIGHT} points on the ring.
+ *
+ * <p>Retries walk the ring clockwise to the next distinct host, and requests without a routing key
+ * fall back to round-robin over the healthy hosts.
+ */
+public class ConsistentHashScheme
+    implements LoadBalancingScheme, HealthListener, MembershipListener {
+  private static final int VIRTUAL_NODES_PER_WEIGHT = 100;
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final AtomicLong counter;
+  private final Rotation rotation;
+  private volatile Ring ring;
+
+  public ConsistentHashScheme(List<HostSpec> hosts) {
+    this.counter = new AtomicLong();
+    this.rotation = new Rotation(hosts, healthyHosts -> ring = new Ring(healthyHosts));
+  }
+
+  @Override
+  public Optional<URI> getNextHost() {
+    URI[] healthyHosts = ring.hosts;
+    if (healthyHosts.length == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(healthyHosts[Math.floorMod(counter.getAndIncrement(), healthyHosts.length)]);
+  }
+
+  @Override
+  public Optional<URI> getNextHost(String routingKey, int attempt) {
+    if (routingKey == null) {
+      return getNextHost();
+    }
+    return ring.lookup(HASH.hashString(routingKey, StandardCharsets.UTF_8).asLong(), attempt);
+  }
+
+  @Override
+  public void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    rotation.setHealthyHosts(healthyHosts);
+  }
+
+  @Override
+  public void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    rotation.setMembers(hosts);
+  }
+
+  /** Immutable hash ring of the hosts that were healthy when it was built. */
+  private static class Ring {
+    private final long[] points;
+    private final URI[] owners;
+    private final URI[] hosts;
+
+    private Ring(List<HostSpec> hosts) {
+      Set<URI> distinctHosts = new LinkedHashSet<>();
+      int size = 0;
+      for (HostSpec host : hosts) {
+        distinctHosts.add(host.uri());
+        size += host.weight() * VIRTUAL_NODES_PER_WEIGHT;
+      }
+      VirtualNode[] nodes = new VirtualNode[size];
+      int i = 0;
+      for (HostSpec host : hosts) {
+        for (int replica = 0; replica < host.weight() * VIRTUAL_NODES_PER_WEIGHT; ++replica) {
+          String name = host.uri() + "#" + replica;
+          nodes[i++] =
+              new VirtualNode(HASH.hashString(name, StandardCharsets.UTF_8).asLong(), host.uri());
+        }
+      }
+      Arrays.sort(nodes, Comparator.comparingLong(VirtualNode::point));
+      this.points = Arrays.stream(nodes).mapToLong(VirtualNode::point).toArray();
+      this.owners = Arrays.stream(nodes).map(VirtualNode::owner).toArray(URI[]::new);
+      this.hosts = distinctHosts.toArray(URI[]::new);
+    }
+
+    /** Returns the {@code attempt}-th distinct host clockwise from the given hash. */
+    private Optional<URI> lookup(long hash, int attempt) {
+      if (hosts.length == 0) {
+        return Optional.empty();
+      }
+      int index = Arrays.binarySearch(points, hash);
+      if (index < 0) {
+        // Not an exact hit, starts at the first point after the hash.
+        index = -index - 1;
+      }
+      int skip = attempt % hosts.length;
+      if (skip == 0) {
+        return Optional.of(owners[index % owners.length]);
+      }
+      Set<URI> skipped = new HashSet<>();
+      for (int i = 0; ; ++i) {
+        URI owner = owners[(index + i) % owners.length];
+        if (!skipped.contains(owner)) {
+          if (skipped.size() == skip) {
+            return Optional.of(owner);
+          }
+          skipped.add(owner);
+        }
+      }
+    }
+  }
+
+  private record VirtualNode(long point, URI owner) {}
+}
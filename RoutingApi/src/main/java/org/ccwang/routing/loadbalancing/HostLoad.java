@@ -0,0 +1,15 @@
+package org.ccwang.routing.loadbalancing;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Live load of one host, as seen by a {@link LoadAwareScheme}. */
+class HostLoad {
+  final URI uri;
+  final AtomicInteger inFlight;
+
+  HostLoad(URI uri) {
+    this.uri = uri;
+    this.inFlight = new AtomicInteger();
+  }
+}
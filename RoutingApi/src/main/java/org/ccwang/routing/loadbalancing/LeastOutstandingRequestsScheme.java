@@ -0,0 +1,34 @@
+package org.ccwang.routing.loadbalancing;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends each request to the healthy host with the fewest requests in flight. Ties are broken in
+ * round-robin order so that idle hosts share the traffic evenly.
+ */
+public class LeastOutstandingRequestsScheme extends LoadAwareScheme {
+  private final AtomicInteger offset;
+
+  public LeastOutstandingRequestsScheme(List<URI> uris) {
+    super(uris);
+    this.offset = new AtomicInteger();
+  }
+
+  @Override
+  HostLoad select(HostLoad[] healthyHosts) {
+    int start = Math.floorMod(offset.getAndIncrement(), healthyHosts.length);
+    HostLoad selected = healthyHosts[start];
+    int minInFlight = selected.inFlight.get();
+    for (int i = 1; i < healthyHosts.length && minInFlight > 0; ++i) {
+      HostLoad candidate = healthyHosts[(start + i) % healthyHosts.length];
+      int inFlight = candidate.inFlight.get();
+      if (inFlight < minInFlight) {
+        selected = candidate;
+        minInFlight = inFlight;
+      }
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,76 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.ccwang.routing.health.HealthListener;
+
+/**
+ * Base class for schemes that pick hosts by their live load rather than a fixed rotation. Keeps one
+ * {@link HostLoad} per host, updated lock-free by the dispatcher's start/finish notifications, and
+ * a copy-on-write array of the healthy ones to select from.
+ *
+ * <p>The load of a host that leaves is kept, so that requests still in flight to it settle its
+ * count correctly should it come back.
+ */
+abstract class LoadAwareScheme implements LoadBalancingScheme, HealthListener, MembershipListener {
+  private final Map<URI, HostLoad> loads;
+  private final Rotation rotation;
+  private volatile HostLoad[] healthyHosts;
+
+  LoadAwareScheme(List<URI> uris) {
+    this.loads = new ConcurrentHashMap<>();
+    this.rotation =
+        new Rotation(
+            uris.stream().distinct().map(HostSpec::of).toList(),
+            hosts -> healthyHosts = hosts.stream().map(this::load).toArray(HostLoad[]::new));
+  }
+
+  /** Picks one of the given hosts, which is never empty. */
+  abstract HostLoad select(HostLoad[] healthyHosts);
+
+  @Override
+  public Optional<URI> getNextHost() {
+    HostLoad[] hosts = healthyHosts;
+    if (hosts.length == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(select(hosts).uri);
+  }
+
+  @Override
+  public void onRequestStart(URI uri) {
+    HostLoad load = loads.get(uri);
+    if (load != null) {
+      load.inFlight.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void onRequestFinish(URI uri, long latencyNanos, boolean success) {
+    HostLoad load = loads.get(uri);
+    if (load != null) {
+      load.inFlight.decrementAndGet();
+    }
+  }
+
+  @Override
+  public void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    rotation.setHealthyHosts(healthyHosts);
+  }
+
+  @Override
+  public void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    rotation.setMembers(hosts.stream().distinct().toList());
+  }
+
+  private HostLoad load(HostSpec host) {
+    return loads.computeIfAbsent(host.uri(), HostLoad::new);
+  }
+}
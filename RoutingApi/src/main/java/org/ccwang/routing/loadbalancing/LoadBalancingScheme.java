@@ -6,4 +6,27 @@ import java.util.Optional;
 /** Interface for the algorithm of load balancing. */
 public interface LoadBalancingScheme {
   Optional<URI> getNextHost();
+
+  /**
+   * Picks a host for a request that carries a routing key. Schemes that route by key return the same
+   * host for the same key for as long as that host stays healthy; the others ignore the key.
+   *
+   * @param routingKey the request's routing key, or null if it has none.
+   * @param attempt 0 for the first try, incremented on every retry of the same request.
+   */
+  default Optional<URI> getNextHost(String routingKey, int attempt) {
+    return getNextHost();
+  }
+
+  /** Called by the dispatcher right before a request is sent to a host returned by this scheme. */
+  default void onRequestStart(URI uri) {}
+
+  /**
+   * Called by the dispatcher exactly once for every {@link #onRequestStart}, when the upstream call
+   * has completed.
+   *
+   * @param latencyNanos time from sending the request until the response or failure arrived.
+   * @param success whether the host answered with 200.
+   */
+  default void onRequestFinish(URI uri, long latencyNanos, boolean success) {}
 }
@@ -0,0 +1,330 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.ccwang.routing.health.HealthListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps requests on the hosts of the first priority and the router's own zone for as long as enough
+ * of them are healthy, and spills them over to the other zones and then the lower priorities as
+ * their health drops. Within each tier, hosts are picked by a scheme of the configured type.
+ *
+ * <p>Hosts are grouped into tiers by priority and, within a priority, by whether they are in the
+ * local zone. The health of a group is the share of its hosts that are healthy times the
+ * overprovisioning factor, at most 1. Priorities take traffic in order, each as much as its health
+ * allows; the local zone does the same ahead of the other zones of its priority. Health that adds
+ * up to less than 1 is scaled up, so traffic still goes somewhere for as long as any host is
+ * healthy.
+ *
+ * <p>The share of every tier is recomputed whenever membership or health changes. Requests with a
+ * routing key pick their tier by the key's hash, so that they keep going to the same host.
+ *
+ * <p>A request's finish is passed to the tier scheme that saw it start, even if its host has since
+ * left or moved to another tier, so that schemes counting requests in flight see every one settle.
+ */
+public class LocalityAwareScheme
+    implements LoadBalancingScheme, HealthListener, MembershipListener {
+  /** The local zone before the others, within each priority. */
+  private static final Comparator<Tier> TIER_ORDER =
+      Comparator.comparingInt(Tier::priority).thenComparing(Tier::remote);
+
+  private final SchemeType type;
+  private final Optional<String> localZone;
+  private final double overprovisioningFactor;
+  private final Logger logger;
+  /** Guarded by this. */
+  private final Map<Tier, LoadBalancingScheme> schemes;
+  /** Guarded by this. */
+  private ImmutableList<HostSpec> members;
+  /** Null until the first health snapshot arrives, all members count as healthy until then. */
+  private ImmutableSet<URI> healthyHosts;
+
+  private volatile Snapshot snapshot;
+  /** The tier schemes with requests in flight to each host, entries removed once none are. */
+  private final Map<URI, Owners> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * @param type scheme that picks a host within a tier.
+   * @param localZone zone the router runs in, or empty if every zone is as good as any other.
+   * @param overprovisioningFactor at least 1.
+   */
+  public LocalityAwareScheme(
+      SchemeType type,
+      List<HostSpec> hosts,
+      Optional<String> localZone,
+      double overprovisioningFactor) {
+    this.type = type;
+    this.localZone = localZone;
+    this.overprovisioningFactor = overprovisioningFactor;
+    this.logger = LoggerFactory.getLogger(LocalityAwareScheme.class);
+    this.schemes = new TreeMap<>(TIER_ORDER);
+    onMembershipChanged(ImmutableList.copyOf(hosts));
+  }
+
+  @Override
+  public Optional<URI> getNextHost() {
+    return getNextHost(null, 0);
+  }
+
+  @Override
+  public Optional<URI> getNextHost(String routingKey, int attempt) {
+    Snapshot current = snapshot;
+    if (current.schemes.length == 1) {
+      return current.schemes[0].getNextHost(routingKey, attempt);
+    }
+    double draw =
+        routingKey == null
+            ? ThreadLocalRandom.current().nextDouble()
+            : (Hashing.murmur3_128().hashString(routingKey, StandardCharsets.UTF_8).asLong()
+                    >>> 11)
+                * 0x1.0p-53;
+    int picked = current.pick(draw);
+    Optional<URI> uri = current.schemes[picked].getNextHost(routingKey, attempt);
+    // Tiers are only picked while they have healthy hosts, but health may just have changed.
+    for (int i = 0; uri.isEmpty() && i < current.schemes.length; ++i) {
+      if (i != picked) {
+        uri = current.schemes[i].getNextHost(routingKey, attempt);
+      }
+    }
+    return uri;
+  }
+
+  @Override
+  public void onRequestStart(URI uri) {
+    LoadBalancingScheme scheme = snapshot.owners.get(uri);
+    if (scheme != null) {
+      inFlight.compute(uri, (unused, owners) -> Owners.plus(owners, scheme));
+      scheme.onRequestStart(uri);
+    }
+  }
+
+  @Override
+  public void onRequestFinish(URI uri, long latencyNanos, boolean success) {
+    while (true) {
+      Owners owners = inFlight.get(uri);
+      if (owners == null) {
+        return;
+      }
+      Owners rest = owners.minusOldest();
+      if (rest == null ? inFlight.remove(uri, owners) : inFlight.replace(uri, owners, rest)) {
+        owners.oldest().onRequestFinish(uri, latencyNanos, success);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    this.healthyHosts = healthyHosts;
+    for (LoadBalancingScheme scheme : schemes.values()) {
+      if (scheme instanceof HealthListener listener) {
+        listener.onHealthyHostsChanged(healthyHosts);
+      }
+    }
+    publish();
+  }
+
+  @Override
+  public synchronized void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    this.members = hosts;
+    Map<Tier, ImmutableList.Builder<HostSpec>> tiers = new TreeMap<>(TIER_ORDER);
+    for (HostSpec host : hosts) {
+      tiers.computeIfAbsent(tier(host), unused -> ImmutableList.builder()).add(host);
+    }
+    schemes.keySet().retainAll(tiers.keySet());
+    tiers.forEach(
+        (tier, builder) -> {
+          ImmutableList<HostSpec> tierHosts = builder.build();
+          LoadBalancingScheme scheme = schemes.get(tier);
+          if (scheme == null) {
+            scheme = type.create(tierHosts);
+            if (healthyHosts != null && scheme instanceof HealthListener listener) {
+              listener.onHealthyHostsChanged(healthyHosts);
+            }
+            schemes.put(tier, scheme);
+          } else if (scheme instanceof MembershipListener listener) {
+            listener.onMembershipChanged(tierHosts);
+          }
+        });
+    if (schemes.isEmpty()) {
+      // Keeps one tier, which has no hosts to give, until some are added.
+      schemes.put(new Tier(0, false), type.create(ImmutableList.of()));
+    }
+    publish();
+  }
+
+  /**
+   * Splits traffic between groups in order, each taking as much as its health allows. Health that
+   * adds up to less than 1 is scaled up first.
+   *
+   * @param health of each group, between 0 and 1.
+   * @return the share of each group, adding up to 1 unless every group has health 0.
+   */
+  static double[] distribute(double[] health) {
+    double total = Arrays.stream(health).sum();
+    double[] shares = new double[health.length];
+    if (total == 0) {
+      return shares;
+    }
+    double scale = total < 1 ? 1 / total : 1;
+    double remaining = 1;
+    for (int i = 0; i < health.length; ++i) {
+      shares[i] = Math.min(remaining, health[i] * scale);
+      remaining -= shares[i];
+    }
+    return shares;
+  }
+
+  private Tier tier(HostSpec host) {
+    return new Tier(host.priority(), localZone.isPresent() && !localZone.equals(host.zone()));
+  }
+
+  /** Computes every tier's share of the traffic from the health of the hosts. */
+  private void publish() {
+    List<Tier> tiers = new ArrayList<>(schemes.keySet());
+    int[] total = new int[tiers.size()];
+    int[] healthy = new int[tiers.size()];
+    ImmutableMap.Builder<URI, LoadBalancingScheme> owners = ImmutableMap.builder();
+    for (HostSpec host : members.stream().distinct().toList()) {
+      int index = tiers.indexOf(tier(host));
+      ++total[index];
+      if (healthyHosts == null || healthyHosts.contains(host.uri())) {
+        ++healthy[index];
+      }
+      owners.put(host.uri(), schemes.get(tiers.get(index)));
+    }
+    double[] shares = new double[tiers.size()];
+    // Tiers are ordered by priority, so each priority's tiers are next to each other.
+    List<Integer> priorityStarts = new ArrayList<>();
+    for (int i = 0; i < tiers.size(); ++i) {
+      if (i == 0 || tiers.get(i).priority() != tiers.get(i - 1).priority()) {
+        priorityStarts.add(i);
+      }
+    }
+    priorityStarts.add(tiers.size());
+    double[] priorityHealth = new double[priorityStarts.size() - 1];
+    for (int p = 0; p < priorityHealth.length; ++p) {
+      int start = priorityStarts.get(p);
+      int end = priorityStarts.get(p + 1);
+      priorityHealth[p] =
+          health(
+              Arrays.stream(healthy, start, end).sum(), Arrays.stream(total, start, end).sum());
+    }
+    double[] priorityShares = distribute(priorityHealth);
+    for (int p = 0; p < priorityShares.length; ++p) {
+      int start = priorityStarts.get(p);
+      int end = priorityStarts.get(p + 1);
+      double[] zoneHealth = new double[end - start];
+      for (int i = start; i < end; ++i) {
+        zoneHealth[i - start] = health(healthy[i], total[i]);
+      }
+      double[] zoneShares = distribute(zoneHealth);
+      for (int i = start; i < end; ++i) {
+        shares[i] = priorityShares[p] * zoneShares[i - start];
+      }
+    }
+    Snapshot previous = snapshot;
+    snapshot =
+        new Snapshot(
+            schemes.values().toArray(LoadBalancingScheme[]::new),
+            cumulative(shares),
+            owners.buildKeepingLast());
+    if (tiers.size() > 1
+        && (previous == null || !Arrays.equals(previous.cumulative, snapshot.cumulative))) {
+      logger.info("Traffic shares of " + tiers + " changed to " + Arrays.toString(shares));
+    }
+  }
+
+  private double health(int healthy, int total) {
+    return total == 0 ? 0 : Math.min(1, overprovisioningFactor * healthy / total);
+  }
+
+  private static double[] cumulative(double[] shares) {
+    double[] cumulative = new double[shares.length];
+    double sum = 0;
+    for (int i = 0; i < shares.length; ++i) {
+      sum += shares[i];
+      cumulative[i] = sum;
+    }
+    return cumulative;
+  }
+
+  /** A group of hosts with the same priority, either in the local zone or not. */
+  private record Tier(int priority, boolean remote) {
+    @Override
+    public String toString() {
+      return "priority " + priority + (remote ? " remote" : " local");
+    }
+  }
+
+  /**
+   * Requests in flight to one host, counted by the tier scheme that saw them start, the newest
+   * first. A host has more than one only while requests sent before it changed tiers finish.
+   */
+  private record Owners(LoadBalancingScheme scheme, int count, Owners older) {
+    static Owners plus(Owners owners, LoadBalancingScheme started) {
+      if (owners == null || !owners.contains(started)) {
+        return new Owners(started, 1, owners);
+      }
+      return owners.scheme == started
+          ? new Owners(started, owners.count + 1, owners.older)
+          : new Owners(owners.scheme, owners.count, plus(owners.older, started));
+    }
+
+    /** The scheme that has had requests in flight the longest, which likely finish first. */
+    LoadBalancingScheme oldest() {
+      return older == null ? scheme : older.oldest();
+    }
+
+    /** These owners with one request of the oldest finished, or null if none are left. */
+    Owners minusOldest() {
+      if (older == null) {
+        return count == 1 ? null : new Owners(scheme, count - 1, null);
+      }
+      return new Owners(scheme, count, older.minusOldest());
+    }
+
+    private boolean contains(LoadBalancingScheme owner) {
+      return scheme == owner || (older != null && older.contains(owner));
+    }
+  }
+
+  /** What requests read: the tiers' schemes, in order, and where each tier's share ends. */
+  private record Snapshot(
+      LoadBalancingScheme[] schemes,
+      double[] cumulative,
+      ImmutableMap<URI, LoadBalancingScheme> owners) {
+    /** Returns the tier whose share the draw, between 0 and 1, falls into. */
+    int pick(double draw) {
+      for (int i = 0; i < cumulative.length; ++i) {
+        if (draw < cumulative[i]) {
+          return i;
+        }
+      }
+      // Rounding may leave the shares a little short of 1, or every tier is without hosts.
+      for (int i = cumulative.length - 1; i > 0; --i) {
+        if (cumulative[i] > cumulative[i - 1]) {
+          return i;
+        }
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latency-aware load balancing in the "peak EWMA" style of Finagle and Linkerd. Every host keeps an
+ * exponentially weighted moving average of its observed response times which jumps straight up to
+ * any slower response (the peak) and decays back over {@code decay}. Failed requests are recorded
+ * as taking at least {@code errorPenalty}.
+ *
+ * <p>Hosts are then compared by {@code ewma * (inFlight + 1)} using power of two choices, so a host
+ * that is slow but still passes health checks quickly loses most of its traffic, and wins it back
+ * as its average decays.
+ */
+public class PeakEwmaScheme extends PowerOfTwoChoicesScheme {
+  private static final Duration DEFAULT_DECAY = Duration.ofSeconds(10);
+  private static final Duration DEFAULT_ERROR_PENALTY = Duration.ofSeconds(1);
+  /** Cost of a host with requests in flight but no response yet, so new hosts aren't swamped. */
+  private static final double UNKNOWN_LATENCY_PENALTY = Long.MAX_VALUE >> 16;
+
+  /** Kept for hosts that leave, like their {@link HostLoad}. */
+  private final Map<URI, PeakEwma> latencies = new ConcurrentHashMap<>();
+  private final double decayNanos;
+  private final long errorPenaltyNanos;
+  private final Ticker ticker;
+
+  public PeakEwmaScheme(List<URI> uris) {
+    this(uris, DEFAULT_DECAY, DEFAULT_ERROR_PENALTY, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  PeakEwmaScheme(List<URI> uris, Duration decay, Duration errorPenalty, Ticker ticker) {
+    super(uris);
+    this.decayNanos = decay.toNanos();
+    this.errorPenaltyNanos = errorPenalty.toNanos();
+    this.ticker = ticker;
+  }
+
+  @Override
+  public void onRequestFinish(URI uri, long latencyNanos, boolean success) {
+    super.onRequestFinish(uri, latencyNanos, success);
+    latency(uri).observe(success ? latencyNanos : Math.max(latencyNanos, errorPenaltyNanos));
+  }
+
+  private PeakEwma latency(URI uri) {
+    PeakEwma latency = latencies.get(uri);
+    return latency != null
+        ? latency
+        : latencies.computeIfAbsent(uri, unused -> new PeakEwma(ticker.read()));
+  }
+
+  @Override
+  double cost(HostLoad load) {
+    double latency = latency(load.uri).get();
+    int inFlight = load.inFlight.get();
+    if (latency == 0 && inFlight != 0) {
+      return UNKNOWN_LATENCY_PENALTY + inFlight;
+    }
+    return latency * (inFlight + 1);
+  }
+
+  /** Peak-sensitive moving average of one host's latency, updated lock-free. */
+  private class PeakEwma {
+    private final AtomicReference<Sample> sample;
+
+    private PeakEwma(long nowNanos) {
+      this.sample = new AtomicReference<>(new Sample(0, nowNanos));
+    }
+
+    private void observe(long latencyNanos) {
+      long now = ticker.read();
+      sample.updateAndGet(
+          previous -> {
+            double weight = previous.weight(now);
+            // A slower response resets the average to it, faster ones are blended in.
+            double next =
+                latencyNanos > previous.ewmaNanos * weight
+                    ? latencyNanos
+                    : previous.ewmaNanos * weight + latencyNanos * (1 - weight);
+            return new Sample(next, Math.max(now, previous.stampNanos));
+          });
+    }
+
+    /** Returns the average as of now. Idle hosts decay towards zero so they get probed again. */
+    private double get() {
+      Sample current = sample.get();
+      return current.ewmaNanos * current.weight(ticker.read());
+    }
+  }
+
+  /** An immutable average together with the time it was recorded at. */
+  private class Sample {
+    private final double ewmaNanos;
+    private final long stampNanos;
+
+    private Sample(double ewmaNanos, long stampNanos) {
+      this.ewmaNanos = ewmaNanos;
+      this.stampNanos = stampNanos;
+    }
+
+    /** Weight of the current average after the time elapsed since it was recorded. */
+    private double weight(long nowNanos) {
+      return Math.exp(-Math.max(nowNanos - stampNanos, 0) / decayNanos);
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.ccwang.routing.loadbalancing;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two distinct healthy hosts at random and sends the request to the one with fewer requests
+ * in flight. Unlike {@link LeastOutstandingRequestsScheme} the cost does not grow with the number
+ * of hosts, and concurrent callers don't all herd onto the same least-loaded host.
+ */
+public class PowerOfTwoChoicesScheme extends LoadAwareScheme {
+  public PowerOfTwoChoicesScheme(List<URI> uris) {
+    super(uris);
+  }
+
+  @Override
+  HostLoad select(HostLoad[] healthyHosts) {
+    if (healthyHosts.length == 1) {
+      return healthyHosts[0];
+    }
+    var random = ThreadLocalRandom.current();
+    int first = random.nextInt(healthyHosts.length);
+    // Draws from the remaining hosts so the two choices are always distinct.
+    int second = (first + 1 + random.nextInt(healthyHosts.length - 1)) % healthyHosts.length;
+    HostLoad a = healthyHosts[first];
+    HostLoad b = healthyHosts[second];
+    return cost(a) <= cost(b) ? a : b;
+  }
+
+  /** The load of a host the two choices are compared by. Lower is better. */
+  double cost(HostLoad load) {
+    return load.inFlight.get();
+  }
+}
@@ -0,0 +1,47 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.List;
+import java.util.function.Consumer;
+import org.ccwang.routing.HostSpec;
+
+/**
+ * The hosts a scheme selects from: its members, in their configured order, less those missing from
+ * the latest health snapshot. Until a snapshot arrives all members count as healthy.
+ *
+ * <p>Membership and health change on different threads, so every change hands the new rotation to
+ * the scheme while holding the lock, in the order the changes were made.
+ */
+class Rotation {
+  private final Consumer<ImmutableList<HostSpec>> onChange;
+  private ImmutableList<HostSpec> members;
+  private ImmutableSet<URI> healthyHosts;
+
+  /** @param onChange rebuilds the scheme's copy-on-write state; called right away. */
+  Rotation(List<HostSpec> members, Consumer<ImmutableList<HostSpec>> onChange) {
+    this.onChange = onChange;
+    this.members = ImmutableList.copyOf(members);
+    onChange.accept(this.members);
+  }
+
+  synchronized void setMembers(List<HostSpec> members) {
+    this.members = ImmutableList.copyOf(members);
+    onChange.accept(active());
+  }
+
+  synchronized void setHealthyHosts(ImmutableSet<URI> healthyHosts) {
+    this.healthyHosts = healthyHosts;
+    onChange.accept(active());
+  }
+
+  private ImmutableList<HostSpec> active() {
+    if (healthyHosts == null) {
+      return members;
+    }
+    return members.stream()
+        .filter(host -> healthyHosts.contains(host.uri()))
+        .collect(ImmutableList.toImmutableList());
+  }
+}
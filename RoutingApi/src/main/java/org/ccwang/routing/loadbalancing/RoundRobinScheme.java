@@ -1,41 +1,61 @@
 package org.ccwang.routing.loadbalancing;
 
-import com.google.common.cache.LoadingCache;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.net.URI;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.ccwang.routing.health.HealthListener;
 
 /**
- * Load balancing algorithm to dispatch requests in round-robin fashion. There's an auxiliary
- * internal cache to memoize health check results in order not to overwhelm temporarily unavailable
- * hosts.
+ * Load balancing algorithm to dispatch requests in round-robin fashion. Hosts that fail health
+ * checks are skipped, based on the latest snapshot published by a {@link
+ * org.ccwang.routing.health.HealthChecker}. Until a snapshot arrives, all hosts are assumed healthy.
+ *
+ * <p>Selection is lock-free: every snapshot and every membership change is turned into a fresh
+ * array of healthy hosts (copy-on-write), so {@link #getNextHost()} is one volatile read plus one
+ * atomic increment.
  */
-public class RoundRobinScheme implements LoadBalancingScheme {
-  private final ImmutableList<URI> uris;
-  private final AtomicInteger counter;
-  LoadingCache<URI, Integer> cache;
+public class RoundRobinScheme implements LoadBalancingScheme, HealthListener, MembershipListener {
+  private final AtomicLong counter;
+  private final Rotation rotation;
+  private volatile URI[] healthyHosts;
 
-  public RoundRobinScheme(List<URI> uris, LoadingCache<URI, Integer> cache) {
-    this.uris = ImmutableList.copyOf(uris);
-    this.counter = new AtomicInteger();
-    this.cache = cache;
+  public RoundRobinScheme(List<URI> uris) {
+    this(uris, 0);
+  }
+
+  @VisibleForTesting
+  RoundRobinScheme(List<URI> uris, long initialCounter) {
+    this.counter = new AtomicLong(initialCounter);
+    // Keeps the configured order (and duplicates) so the rotation stays stable across snapshots.
+    this.rotation =
+        new Rotation(
+            uris.stream().map(HostSpec::of).toList(),
+            hosts -> this.healthyHosts = HostSpec.uris(hosts).toArray(URI[]::new));
   }
 
   @Override
-  public synchronized Optional<URI> getNextHost() {
-    for (int i = 0; i < uris.size(); ++i) {
-      URI candidate = getNextURI();
-      if (cache.getUnchecked(candidate).equals(200)) {
-        return Optional.of(candidate);
-      }
+  public Optional<URI> getNextHost() {
+    URI[] hosts = healthyHosts;
+    if (hosts.length == 0) {
+      return Optional.empty();
     }
-    return Optional.empty();
+    // floorMod keeps the index in range even if the counter ever wraps around.
+    return Optional.of(hosts[Math.floorMod(counter.getAndIncrement(), hosts.length)]);
+  }
+
+  @Override
+  public void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    rotation.setHealthyHosts(healthyHosts);
   }
 
-  private URI getNextURI() {
-    // TODO: Launch a background thread to reset the counter
-    return uris.get(counter.getAndIncrement() % uris.size());
+  @Override
+  public void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    rotation.setMembers(hosts);
   }
 }
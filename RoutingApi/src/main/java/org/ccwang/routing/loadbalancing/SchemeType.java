@@ -0,0 +1,53 @@
+package org.ccwang.routing.loadbalancing;
+
+import java.util.List;
+import java.util.Locale;
+import org.ccwang.routing.HostSpec;
+
+/** The load balancing schemes that can be selected through configuration. */
+public enum SchemeType {
+  ROUND_ROBIN {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new RoundRobinScheme(HostSpec.uris(hosts));
+    }
+  },
+  WEIGHTED_ROUND_ROBIN {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new WeightedRoundRobinScheme(hosts);
+    }
+  },
+  LEAST_OUTSTANDING_REQUESTS {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new LeastOutstandingRequestsScheme(HostSpec.uris(hosts));
+    }
+  },
+  POWER_OF_TWO_CHOICES {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new PowerOfTwoChoicesScheme(HostSpec.uris(hosts));
+    }
+  },
+  PEAK_EWMA {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new PeakEwmaScheme(HostSpec.uris(hosts));
+    }
+  },
+  CONSISTENT_HASH {
+    @Override
+    public LoadBalancingScheme create(List<HostSpec> hosts) {
+      return new ConsistentHashScheme(hosts);
+    }
+  };
+
+  /** Creates a new scheme over the given hosts. All hosts start out healthy. */
+  public abstract LoadBalancingScheme create(List<HostSpec> hosts);
+
+  /** Parses the command-line spelling of a scheme, e.g. {@code least-outstanding-requests}. */
+  public static SchemeType fromFlag(String value) {
+    return valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+  }
+}
@@ -0,0 +1,74 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.math.IntMath;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.MembershipListener;
+import org.ccwang.routing.health.HealthListener;
+
+/**
+ * Smooth weighted round-robin, as popularized by nginx: a host with weight 3 gets three out of every
+ * {@code totalWeight} requests, interleaved with the other hosts instead of in a burst.
+ *
+ * <p>The sequence only depends on the weights of the healthy hosts, so it is precomputed into an
+ * array whenever the health snapshot changes and then walked lock-free like {@link
+ * RoundRobinScheme}. The weights are divided by their greatest common divisor first, which keeps
+ * the same sequence in a shorter array.
+ */
+public class WeightedRoundRobinScheme
+    implements LoadBalancingScheme, HealthListener, MembershipListener {
+  private final AtomicLong counter;
+  private final Rotation rotation;
+  private volatile URI[] schedule;
+
+  public WeightedRoundRobinScheme(List<HostSpec> hosts) {
+    this.counter = new AtomicLong();
+    this.rotation = new Rotation(hosts, healthyHosts -> schedule = buildSchedule(healthyHosts));
+  }
+
+  @Override
+  public Optional<URI> getNextHost() {
+    URI[] hosts = schedule;
+    if (hosts.length == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(hosts[Math.floorMod(counter.getAndIncrement(), hosts.length)]);
+  }
+
+  @Override
+  public void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    rotation.setHealthyHosts(healthyHosts);
+  }
+
+  @Override
+  public void onMembershipChanged(ImmutableList<HostSpec> hosts) {
+    rotation.setMembers(hosts);
+  }
+
+  /** Runs one full period of the smooth weighted round-robin selection. */
+  private static URI[] buildSchedule(List<HostSpec> hosts) {
+    int divisor = hosts.stream().mapToInt(HostSpec::weight).reduce(0, IntMath::gcd);
+    int[] weights = hosts.stream().mapToInt(host -> host.weight() / divisor).toArray();
+    int totalWeight = Arrays.stream(weights).sum();
+    int[] currentWeights = new int[hosts.size()];
+    URI[] schedule = new URI[totalWeight];
+    for (int i = 0; i < totalWeight; ++i) {
+      int selected = 0;
+      for (int j = 0; j < hosts.size(); ++j) {
+        currentWeights[j] += weights[j];
+        if (currentWeights[j] > currentWeights[selected]) {
+          selected = j;
+        }
+      }
+      currentWeights[selected] -= totalWeight;
+      schedule[i] = hosts.get(selected).uri();
+    }
+    return schedule;
+  }
+}
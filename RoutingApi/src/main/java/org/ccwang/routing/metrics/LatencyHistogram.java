@@ -0,0 +1,59 @@
+package org.ccwang.routing.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets, in the shape Prometheus expects. Recording is a
+ * short scan over the bucket bounds and two {@link LongAdder} increments, so it neither allocates
+ * nor contends between threads.
+ */
+public class LatencyHistogram {
+  /** Upper bounds of the buckets in seconds, the same for every histogram so they aggregate. */
+  static final double[] BOUNDS_SECONDS = {
+    0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+  static {
+    for (int i = 0; i < BOUNDS_SECONDS.length; ++i) {
+      BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  /** Observations per bucket, not cumulative; the last one is {@code +Inf}. */
+  private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+
+  private final LongAdder sumNanos = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; ++i) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    sumNanos.add(nanos);
+  }
+
+  /** Observations at or below each bound, followed by the total count. */
+  long[] cumulativeCounts() {
+    long[] counts = new long[buckets.length];
+    long total = 0;
+    for (int i = 0; i < buckets.length; ++i) {
+      total += buckets[i].sum();
+      counts[i] = total;
+    }
+    return counts;
+  }
+
+  double sumSeconds() {
+    return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+}
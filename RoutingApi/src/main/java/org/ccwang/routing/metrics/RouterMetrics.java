@@ -0,0 +1,360 @@
+package org.ccwang.routing.metrics;
+
+import com.google.common.collect.ImmutableSet;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.ccwang.routing.health.HealthListener;
+import org.ccwang.routing.health.ProbeListener;
+import org.ccwang.routing.route.RoutesFile;
+
+/**
+ * What the router is doing, exposed in the Prometheus text format by {@link #scrape()}.
+ *
+ * <p>Everything recorded on the request path is a {@link LongAdder} or a {@link LatencyHistogram},
+ * so recording takes nanoseconds, never blocks and does not allocate once a host has been seen.
+ * The cost of summing them up is paid by the scrape instead.
+ *
+ * <p>Each pool records through its own view, see {@link #forPool}, which shares every counter with
+ * the others but labels the gauges that describe one pool with its name.
+ */
+public class RouterMetrics implements HealthListener, ProbeListener {
+  /** Why a request was answered with 503 Service Unavailable. */
+  public enum Unavailable {
+    /** No host was available to send it to. */
+    NO_HOSTS,
+    /** Every attempt the request was allowed failed. */
+    RETRIES_EXHAUSTED,
+    /** An attempt failed and the retry budget had run out. */
+    RETRY_BUDGET,
+    /** Every host the request was allowed to try was at its concurrency limit. */
+    HOSTS_AT_LIMIT
+  }
+
+  /** How a request to a cached route was answered. */
+  public enum CacheResult {
+    /** Served from the cache. */
+    HIT,
+    /** Sent upstream, and cached if successful. */
+    MISS,
+    /** Waited for an identical request that had already been sent upstream. */
+    COALESCED
+  }
+
+  /** How one attempt sent to a host turned out. */
+  public enum UpstreamResult {
+    SUCCESS,
+    /** A status below 500 other than 2xx, which is the request's fault rather than the host's. */
+    OTHER_STATUS,
+    SERVER_ERROR,
+    /** Timed out or could not connect. */
+    EXCEPTION,
+    /** Lost a hedging race. */
+    CANCELLED
+  }
+
+  private final LongAdder requests;
+  private final LongAdder retries;
+  private final LongAdder hedges;
+  private final LongAdder[] unavailable;
+  private final LongAdder rejected;
+  private final LongAdder rateLimited;
+  private final LongAdder unrouted;
+  private final LongAdder[] cacheLookups;
+  private final LongAdder healthChanges;
+  private final Map<URI, HostMetrics> hosts;
+  private final Map<String, PoolGauges> pools;
+  private final String pool;
+
+  public RouterMetrics() {
+    this.requests = new LongAdder();
+    this.retries = new LongAdder();
+    this.hedges = new LongAdder();
+    this.unavailable = newAdders(Unavailable.values().length);
+    this.rejected = new LongAdder();
+    this.rateLimited = new LongAdder();
+    this.unrouted = new LongAdder();
+    this.cacheLookups = newAdders(CacheResult.values().length);
+    this.healthChanges = new LongAdder();
+    this.hosts = new ConcurrentHashMap<>();
+    this.pools = new ConcurrentHashMap<>();
+    this.pool = RoutesFile.DEFAULT_POOL;
+  }
+
+  private RouterMetrics(RouterMetrics shared, String pool) {
+    this.requests = shared.requests;
+    this.retries = shared.retries;
+    this.hedges = shared.hedges;
+    this.unavailable = shared.unavailable;
+    this.rejected = shared.rejected;
+    this.rateLimited = shared.rateLimited;
+    this.unrouted = shared.unrouted;
+    this.cacheLookups = shared.cacheLookups;
+    this.healthChanges = shared.healthChanges;
+    this.hosts = shared.hosts;
+    this.pools = shared.pools;
+    this.pool = pool;
+  }
+
+  /** A view for the given pool, recording into the same metrics as this one. */
+  public RouterMetrics forPool(String pool) {
+    return new RouterMetrics(this, pool);
+  }
+
+  public void onRequest() {
+    requests.increment();
+  }
+
+  public void onRetry() {
+    retries.increment();
+  }
+
+  public void onHedge() {
+    hedges.increment();
+  }
+
+  public void onUnavailable(Unavailable reason) {
+    unavailable[reason.ordinal()].increment();
+  }
+
+  /** Records a request turned away by the concurrency limit. */
+  public void onRejected() {
+    rejected.increment();
+  }
+
+  /** Records a request turned away because its tenant was over its rate. */
+  public void onRateLimited() {
+    rateLimited.increment();
+  }
+
+  /** Records a request that no route matched, answered with 404. */
+  public void onUnrouted() {
+    unrouted.increment();
+  }
+
+  public void onConcurrencyLimit(int limit) {
+    gauges().concurrencyLimit = limit;
+  }
+
+  public void onCacheLookup(CacheResult result) {
+    cacheLookups[result.ordinal()].increment();
+  }
+
+  public void onUpstreamStart(URI uri) {
+    host(uri).inFlight.increment();
+  }
+
+  public void onUpstreamFinish(URI uri, long latencyNanos, UpstreamResult result) {
+    HostMetrics host = host(uri);
+    host.inFlight.decrement();
+    host.results[result.ordinal()].increment();
+    if (result != UpstreamResult.CANCELLED) {
+      host.latency.record(latencyNanos);
+    }
+  }
+
+  @Override
+  public void onProbe(URI uri, boolean success) {
+    host(uri).probes[success ? 1 : 0].increment();
+  }
+
+  @Override
+  public void onHealthyHostsChanged(ImmutableSet<URI> healthyHosts) {
+    healthChanges.increment();
+    gauges().healthyHosts = healthyHosts.size();
+  }
+
+  /** Renders every metric in the Prometheus text exposition format. */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(4096);
+    header(out, "router_requests_total", "counter", "Requests received.");
+    sample(out, "router_requests_total", "", requests.sum());
+    header(out, "router_retries_total", "counter", "Attempts retried on another host.");
+    sample(out, "router_retries_total", "", retries.sum());
+    header(out, "router_hedges_total", "counter", "Hedged attempts sent to another host.");
+    sample(out, "router_hedges_total", "", hedges.sum());
+    header(
+        out, "router_unavailable_total", "counter", "Requests answered with 503, by reason.");
+    for (Unavailable reason : Unavailable.values()) {
+      sample(
+          out,
+          "router_unavailable_total",
+          label("reason", reason),
+          unavailable[reason.ordinal()].sum());
+    }
+    header(
+        out,
+        "router_rejected_total",
+        "counter",
+        "Requests turned away by the concurrency limit, with 429 or 503.");
+    sample(out, "router_rejected_total", "", rejected.sum());
+    header(
+        out,
+        "router_rate_limited_total",
+        "counter",
+        "Requests turned away with 429 because their tenant was over its rate.");
+    sample(out, "router_rate_limited_total", "", rateLimited.sum());
+    header(
+        out, "router_unrouted_total", "counter", "Requests no route matched, answered with 404.");
+    sample(out, "router_unrouted_total", "", unrouted.sum());
+    var sortedPools = pools.entrySet().stream().sorted(Map.Entry.comparingByKey()).toList();
+    header(
+        out,
+        "router_concurrency_limit",
+        "gauge",
+        "Requests each pool currently lets in flight, 0 if unlimited.");
+    for (var entry : sortedPools) {
+      sample(
+          out,
+          "router_concurrency_limit",
+          poolLabel(entry.getKey()),
+          entry.getValue().concurrencyLimit);
+    }
+    header(
+        out,
+        "router_cache_lookups_total",
+        "counter",
+        "Requests to cached routes, by how they were answered.");
+    for (CacheResult result : CacheResult.values()) {
+      sample(
+          out,
+          "router_cache_lookups_total",
+          label("result", result),
+          cacheLookups[result.ordinal()].sum());
+    }
+    header(
+        out,
+        "router_healthy_hosts_changes_total",
+        "counter",
+        "Changes to the set of hosts in rotation.");
+    sample(out, "router_healthy_hosts_changes_total", "", healthChanges.sum());
+    header(out, "router_healthy_hosts", "gauge", "Hosts currently in rotation, per pool.");
+    for (var entry : sortedPools) {
+      sample(out, "router_healthy_hosts", poolLabel(entry.getKey()), entry.getValue().healthyHosts);
+    }
+
+    var sortedHosts =
+        hosts.entrySet().stream().sorted(Comparator.comparing(Map.Entry::getKey)).toList();
+    header(out, "router_upstream_in_flight", "gauge", "Attempts outstanding per host.");
+    for (var entry : sortedHosts) {
+      sample(
+          out, "router_upstream_in_flight", hostLabel(entry.getKey()), entry.getValue().inFlight);
+    }
+    header(
+        out,
+        "router_upstream_responses_total",
+        "counter",
+        "Attempts sent to each host, by result.");
+    for (var entry : sortedHosts) {
+      for (UpstreamResult result : UpstreamResult.values()) {
+        sample(
+            out,
+            "router_upstream_responses_total",
+            hostLabel(entry.getKey()) + "," + label("result", result),
+            entry.getValue().results[result.ordinal()].sum());
+      }
+    }
+    header(
+        out,
+        "router_upstream_latency_seconds",
+        "histogram",
+        "Latency of attempts sent to each host, cancelled ones excluded.");
+    for (var entry : sortedHosts) {
+      String labels = hostLabel(entry.getKey());
+      histogram(out, "router_upstream_latency_seconds", labels, entry.getValue().latency);
+    }
+    header(out, "router_health_probes_total", "counter", "Health check probes, by result.");
+    for (var entry : sortedHosts) {
+      for (int success = 1; success >= 0; --success) {
+        sample(
+            out,
+            "router_health_probes_total",
+            hostLabel(entry.getKey()) + "," + label("result", success == 1 ? "success" : "failure"),
+            entry.getValue().probes[success].sum());
+      }
+    }
+    return out.toString();
+  }
+
+  private HostMetrics host(URI uri) {
+    HostMetrics host = hosts.get(uri);
+    return host != null ? host : hosts.computeIfAbsent(uri, unused -> new HostMetrics());
+  }
+
+  private PoolGauges gauges() {
+    PoolGauges gauges = pools.get(pool);
+    return gauges != null ? gauges : pools.computeIfAbsent(pool, unused -> new PoolGauges());
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, Number value) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static void histogram(
+      StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+    long[] counts = histogram.cumulativeCounts();
+    for (int i = 0; i < counts.length; ++i) {
+      String bound =
+          i < LatencyHistogram.BOUNDS_SECONDS.length
+              ? BigDecimal.valueOf(LatencyHistogram.BOUNDS_SECONDS[i]).toPlainString()
+              : "+Inf";
+      sample(out, name + "_bucket", labels + ",le=\"" + bound + "\"", counts[i]);
+    }
+    sample(out, name + "_sum", labels, histogram.sumSeconds());
+    sample(out, name + "_count", labels, counts[counts.length - 1]);
+  }
+
+  private static String label(String name, Enum<?> value) {
+    return label(name, value.name().toLowerCase(Locale.ROOT));
+  }
+
+  private static String hostLabel(URI uri) {
+    return label("host", escape(uri.toString()));
+  }
+
+  private static String poolLabel(String pool) {
+    return label("pool", escape(pool));
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static String label(String name, String value) {
+    return name + "=\"" + value + "\"";
+  }
+
+  private static LongAdder[] newAdders(int size) {
+    LongAdder[] adders = new LongAdder[size];
+    for (int i = 0; i < size; ++i) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private static class PoolGauges {
+    private volatile int healthyHosts;
+    private volatile int concurrencyLimit;
+  }
+
+  private static class HostMetrics {
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder[] results = newAdders(UpstreamResult.values().length);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /** Failed probes at index 0, successful ones at 1. */
+    private final LongAdder[] probes = newAdders(2);
+  }
+}
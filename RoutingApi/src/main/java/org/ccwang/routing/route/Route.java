@@ -0,0 +1,32 @@
+package org.ccwang.routing.route;
+
+import java.util.Optional;
+
+/**
+ * Sends requests that match it to a backend pool.
+ *
+ * @param method the request method it matches, or any if empty. A GET route matches HEAD too.
+ * @param pattern path it matches, made of {@code /}-separated segments. A segment is literal, or
+ *     {@code *} or {@code :name} for any one segment. A final {@code /**} matches any number of
+ *     further segments, including none.
+ * @param host the Host header it matches, ignoring case and port, or any if empty.
+ * @param pool name of the pool the requests go to.
+ * @param rewrite path and query the requests are sent to instead of their own.
+ */
+public record Route(
+    Optional<String> method,
+    String pattern,
+    Optional<String> host,
+    String pool,
+    Optional<String> rewrite) {
+  public Route {
+    if (!pattern.startsWith("/")) {
+      throw new IllegalArgumentException("Route pattern must start with /: " + pattern);
+    }
+  }
+
+  /** A route for any method and host, sending requests to their own path. */
+  public static Route of(String pattern, String pool) {
+    return new Route(Optional.empty(), pattern, Optional.empty(), pool, Optional.empty());
+  }
+}
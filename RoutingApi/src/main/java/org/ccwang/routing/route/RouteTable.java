@@ -0,0 +1,146 @@
+package org.ccwang.routing.route;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Finds the route for a request in a trie of path segments, so that a lookup takes time in the
+ * depth of the path rather than the number of routes.
+ *
+ * <p>The most specific route wins: one whose pattern matches more segments, and at the same depth
+ * a literal segment over a wildcard, a whole path over a {@code /**} prefix, a route for the host
+ * over one for any host and a route for the method over one for any method. Routes that tie are
+ * tried in the order they were given.
+ */
+public class RouteTable {
+  private static final String PREFIX_SUFFIX = "/**";
+  private static final Splitter SEGMENT_SPLITTER = Splitter.on('/').omitEmptyStrings();
+  /** Routes for a host before those for any host, then routes for a method before the others. */
+  private static final Comparator<Route> SPECIFIC_FIRST =
+      Comparator.comparing((Route route) -> route.host().isEmpty())
+          .thenComparing(route -> route.method().isEmpty());
+
+  private final Node root = new Node();
+  private final int size;
+
+  public RouteTable(List<Route> routes) {
+    for (Route route : routes) {
+      add(route);
+    }
+    root.sort();
+    this.size = routes.size();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the most specific route that matches the request, or nothing if none does.
+   *
+   * @param host the request's Host header, or null if it has none.
+   */
+  public Optional<Route> match(String method, String path, String host) {
+    List<String> segments = SEGMENT_SPLITTER.splitToList(path);
+    String hostName = host == null ? null : hostName(host);
+    return Optional.ofNullable(match(root, segments, 0, method, hostName));
+  }
+
+  private void add(Route route) {
+    String pattern = route.pattern();
+    boolean prefix = pattern.endsWith(PREFIX_SUFFIX);
+    if (prefix) {
+      pattern = pattern.substring(0, pattern.length() - PREFIX_SUFFIX.length());
+    }
+    Node node = root;
+    for (String segment : SEGMENT_SPLITTER.split(pattern)) {
+      node = node.child(segment);
+    }
+    (prefix ? node.prefix : node.exact).add(route);
+  }
+
+  /** Depth-first, so that the deepest match is found first; literal children before wildcards. */
+  private static Route match(
+      Node node, List<String> segments, int depth, String method, String host) {
+    if (depth == segments.size()) {
+      Route route = first(node.exact, method, host);
+      if (route != null) {
+        return route;
+      }
+    } else {
+      Node literal = node.literals.get(segments.get(depth));
+      if (literal != null) {
+        Route route = match(literal, segments, depth + 1, method, host);
+        if (route != null) {
+          return route;
+        }
+      }
+      if (node.wildcard != null) {
+        Route route = match(node.wildcard, segments, depth + 1, method, host);
+        if (route != null) {
+          return route;
+        }
+      }
+    }
+    return first(node.prefix, method, host);
+  }
+
+  private static Route first(List<Route> routes, String method, String host) {
+    for (Route route : routes) {
+      if (route.method().map(m -> matchesMethod(m, method)).orElse(true)
+          && route.host().map(h -> h.equalsIgnoreCase(host)).orElse(true)) {
+        return route;
+      }
+    }
+    return null;
+  }
+
+  /** HEAD asks for what GET would answer without the body, so it goes where GET does. */
+  private static boolean matchesMethod(String routeMethod, String method) {
+    return routeMethod.equals(method) || (routeMethod.equals("GET") && method.equals("HEAD"));
+  }
+
+  /** Strips the port off a Host header, e.g. {@code [::1]:8080} becomes {@code [::1]}. */
+  static String hostName(String host) {
+    int colon = host.lastIndexOf(':');
+    if (colon < 0 || host.indexOf(']', colon) >= 0) {
+      return Ascii.toLowerCase(host);
+    }
+    return Ascii.toLowerCase(host.substring(0, colon));
+  }
+
+  private static class Node {
+    final Map<String, Node> literals = new HashMap<>();
+    /** Child for a {@code *} or {@code :name} segment. */
+    Node wildcard;
+    List<Route> exact = new ArrayList<>();
+    List<Route> prefix = new ArrayList<>();
+
+    Node child(String segment) {
+      if (segment.equals("*") || segment.startsWith(":")) {
+        if (wildcard == null) {
+          wildcard = new Node();
+        }
+        return wildcard;
+      }
+      return literals.computeIfAbsent(segment, unused -> new Node());
+    }
+
+    /** Orders the routes of this node and below from most to least specific; the sort is stable. */
+    void sort() {
+      exact = ImmutableList.sortedCopyOf(SPECIFIC_FIRST, exact);
+      prefix = ImmutableList.sortedCopyOf(SPECIFIC_FIRST, prefix);
+      literals.values().forEach(Node::sort);
+      if (wildcard != null) {
+        wildcard.sort();
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.ccwang.routing.route;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.RouterConfig;
+
+/**
+ * Backend pools and the routes to them, one per line:
+ *
+ * <pre>
+ * pool &lt;name&gt; &lt;host-spec&gt;... [--flag=value...]
+ * route &lt;METHOD|*&gt; &lt;pattern&gt; &lt;pool&gt; [host=&lt;host&gt;] [rewrite=&lt;path&gt;]
+ * </pre>
+ *
+ * <p>Host specs are those of {@link HostSpec}, and flags are those of the command line, which they
+ * override for the pool. Routes are described at {@link Route}. The pool named {@value
+ * #DEFAULT_POOL} is the one the command line configures, every other pool a route names has to be
+ * declared. Blank lines and lines starting with {@code #} are skipped.
+ */
+public record RoutesFile(ImmutableList<PoolSpec> pools, ImmutableList<Route> routes) {
+  public static final String DEFAULT_POOL = "default";
+
+  private static final Splitter FIELD_SPLITTER =
+      Splitter.on(CharMatcher.whitespace()).omitEmptyStrings();
+  private static final Splitter KEY_VALUE_SPLITTER = Splitter.on('=').limit(2);
+
+  /** A backend pool declared in the file. */
+  public record PoolSpec(
+      String name, ImmutableList<HostSpec> hosts, ImmutableMap<String, String> flags) {
+    /** Returns the given config with this pool's flags applied. */
+    public RouterConfig config(RouterConfig base) {
+      RouterConfig.Builder builder = base.toBuilder();
+      flags.forEach(builder::setFlag);
+      return builder.build();
+    }
+  }
+
+  public static RoutesFile read(Path file) throws IOException {
+    return parse(Files.readAllLines(file));
+  }
+
+  /**
+   * Parses the lines of a routes file.
+   *
+   * @throws IllegalArgumentException if a line is malformed, or a route names an unknown pool.
+   */
+  public static RoutesFile parse(List<String> lines) {
+    ImmutableList.Builder<PoolSpec> pools = ImmutableList.builder();
+    ImmutableList.Builder<Route> routes = ImmutableList.builder();
+    Set<String> poolNames = new HashSet<>();
+    poolNames.add(DEFAULT_POOL);
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      List<String> fields = FIELD_SPLITTER.splitToList(line);
+      try {
+        switch (fields.get(0)) {
+          case "pool" -> {
+            PoolSpec pool = parsePool(fields);
+            if (!poolNames.add(pool.name())) {
+              throw new IllegalArgumentException("Pool declared twice: " + pool.name());
+            }
+            pools.add(pool);
+          }
+          case "route" -> routes.add(parseRoute(fields));
+          default -> throw new IllegalArgumentException("Unknown directive: " + fields.get(0));
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(e.getMessage() + " in line: " + line, e);
+      }
+    }
+    ImmutableList<Route> parsed = routes.build();
+    for (Route route : parsed) {
+      if (!poolNames.contains(route.pool())) {
+        throw new IllegalArgumentException(
+            "Route " + route.pattern() + " to unknown pool: " + route.pool());
+      }
+    }
+    return new RoutesFile(pools.build(), parsed);
+  }
+
+  private static PoolSpec parsePool(List<String> fields) {
+    if (fields.size() < 3) {
+      throw new IllegalArgumentException("Expecting: pool <name> <host-spec>... [--flag=value...]");
+    }
+    ImmutableList.Builder<HostSpec> hosts = ImmutableList.builder();
+    ImmutableMap.Builder<String, String> flags = ImmutableMap.builder();
+    for (String field : fields.subList(2, fields.size())) {
+      if (field.startsWith("--")) {
+        List<String> keyValue = KEY_VALUE_SPLITTER.splitToList(field.substring(2));
+        flags.put(keyValue.get(0), keyValue.size() == 2 ? keyValue.get(1) : "true");
+      } else {
+        hosts.add(HostSpec.parse(field));
+      }
+    }
+    var pool = new PoolSpec(fields.get(1), hosts.build(), flags.buildOrThrow());
+    if (pool.name().equals(DEFAULT_POOL)) {
+      throw new IllegalArgumentException("Pool name is reserved: " + DEFAULT_POOL);
+    }
+    if (pool.hosts().isEmpty()) {
+      throw new IllegalArgumentException("Pool without hosts: " + pool.name());
+    }
+    // Fails on unknown flags and malformed values now rather than when the pool is created.
+    pool.config(RouterConfig.defaults());
+    return pool;
+  }
+
+  private static Route parseRoute(List<String> fields) {
+    if (fields.size() < 4) {
+      throw new IllegalArgumentException(
+          "Expecting: route <METHOD|*> <pattern> <pool> [host=<host>] [rewrite=<path>]");
+    }
+    String method = fields.get(1);
+    Optional<String> host = Optional.empty();
+    Optional<String> rewrite = Optional.empty();
+    for (String field : fields.subList(4, fields.size())) {
+      List<String> keyValue = KEY_VALUE_SPLITTER.splitToList(field);
+      if (keyValue.size() != 2) {
+        throw new IllegalArgumentException("Malformed route attribute: " + field);
+      }
+      switch (keyValue.get(0)) {
+        case "host" -> host = Optional.of(keyValue.get(1));
+        case "rewrite" -> rewrite = Optional.of(keyValue.get(1));
+        default -> throw new IllegalArgumentException("Unknown route attribute: " + field);
+      }
+    }
+    return new Route(
+        method.equals("*") ? Optional.empty() : Optional.of(method.toUpperCase(Locale.ROOT)),
+        fields.get(2),
+        host,
+        fields.get(3),
+        rewrite);
+  }
+}
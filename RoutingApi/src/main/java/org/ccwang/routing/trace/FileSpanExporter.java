@@ -0,0 +1,95 @@
+package org.ccwang.routing.trace;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends spans to a file, one JSON object per line, standing in for an OTLP collector. Spans are
+ * written by a background thread; when it falls behind by more than {@code maxQueued} requests,
+ * their spans are dropped rather than slowing requests down.
+ */
+public class FileSpanExporter implements SpanExporter {
+  private final Gson gson;
+  private final BufferedWriter writer;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder dropped;
+  private final Logger logger;
+
+  public FileSpanExporter(Path file, int maxQueued) {
+    this.gson = new Gson();
+    try {
+      this.writer =
+          Files.newBufferedWriter(
+              file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.dropped = new LongAdder();
+    this.executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxQueued),
+            new ThreadFactoryBuilder().setNameFormat("span-exporter-%d").setDaemon(true).build(),
+            (task, executor) -> dropped.increment());
+    this.logger = LoggerFactory.getLogger(FileSpanExporter.class);
+  }
+
+  @Override
+  public void export(List<SpanData> spans) {
+    executor.execute(() -> write(spans));
+  }
+
+  /** Spans of requests dropped so far because the file could not keep up. */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  /** Writes the spans still queued and closes the file. */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+      writer.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      logger.error("Failed to close span file " + e);
+    }
+    if (dropped.sum() > 0) {
+      logger.warn("Dropped the spans of " + dropped.sum() + " requests");
+    }
+  }
+
+  private void write(List<SpanData> spans) {
+    try {
+      for (SpanData span : spans) {
+        writer.write(gson.toJson(span));
+        writer.newLine();
+      }
+      // Flushes once the queue runs dry, so that bursts are written in few system calls.
+      if (executor.getQueue().isEmpty()) {
+        writer.flush();
+      }
+    } catch (IOException e) {
+      logger.error("Failed to write spans " + e);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.ccwang.routing.trace;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.javalin.http.Context;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The trace of one request through the router: a root span for the whole request, with a child
+ * span per phase, e.g. host selection or an attempt upstream.
+ *
+ * <p>Only sampled requests record spans. Once the request has its response, they are exported and
+ * summed up by phase in a {@code Server-Timing} header. Unsampled requests only pass on the
+ * {@code traceparent} they came with, if any, so that the hops behind the router stay in the
+ * trace.
+ */
+public class RequestTrace {
+  /** Neither sampled nor part of a trace. */
+  public static final RequestTrace NONE = new RequestTrace(null, null, null, null, null);
+
+  /** Exports the spans, null unless sampled. */
+  private final Tracer tracer;
+  private final String traceId;
+  private final String spanId;
+  private final String parentSpanId;
+  /** Sent upstream as is by unsampled requests. */
+  private final String traceparent;
+  private final long startNanos;
+  private final long startEpochNanos;
+  private final ConcurrentLinkedQueue<SpanData> spans;
+
+  private RequestTrace(
+      Tracer tracer, String traceId, String spanId, String parentSpanId, String traceparent) {
+    this.tracer = tracer;
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.traceparent = traceparent;
+    this.startNanos = tracer == null ? 0 : System.nanoTime();
+    this.startEpochNanos = tracer == null ? 0 : epochNanos(Instant.now());
+    this.spans = tracer == null ? null : new ConcurrentLinkedQueue<>();
+  }
+
+  /** A request that is sampled, in the given trace and below the given parent span, if any. */
+  static RequestTrace sampled(Tracer tracer, String traceId, String parentSpanId) {
+    return new RequestTrace(tracer, traceId, TraceContext.newSpanId(), parentSpanId, null);
+  }
+
+  /** A request that is not sampled, but passes on the trace it is part of. */
+  static RequestTrace propagating(String traceparent) {
+    return new RequestTrace(null, null, null, null, traceparent);
+  }
+
+  public boolean sampled() {
+    return tracer != null;
+  }
+
+  /** Starts a child span of the request's root span, or returns {@link Span#NONE}. */
+  public Span startSpan(String name) {
+    return sampled() ? new Span(this, name, TraceContext.newSpanId()) : Span.NONE;
+  }
+
+  /**
+   * The {@code traceparent} header to send upstream from within the given span, or null if the
+   * request is neither sampled nor part of a trace.
+   */
+  public String traceparent(Span span) {
+    return sampled() ? TraceContext.traceparent(traceId, span.id(), true) : traceparent;
+  }
+
+  /**
+   * Ends the root span, adds the {@code Server-Timing} header and exports the spans. Does nothing
+   * unless sampled.
+   */
+  public void end(Context context) {
+    if (!sampled()) {
+      return;
+    }
+    long endNanos = System.nanoTime();
+    record(
+        context.method() == null ? "request" : context.method().name() + " " + context.path(),
+        spanId,
+        startNanos,
+        endNanos,
+        ImmutableMap.of("http.status_code", Integer.toString(context.statusCode())));
+    List<SpanData> finished = ImmutableList.copyOf(spans);
+    context.header("Server-Timing", serverTiming(finished, endNanos - startNanos));
+    tracer.export(finished);
+  }
+
+  void record(
+      String name, String id, long spanStartNanos, long spanEndNanos, Map<String, String> attrs) {
+    spans.add(
+        new SpanData(
+            traceId,
+            id,
+            id.equals(spanId) ? parentSpanId : spanId,
+            name,
+            startEpochNanos + spanStartNanos - startNanos,
+            startEpochNanos + spanEndNanos - startNanos,
+            attrs));
+  }
+
+  /**
+   * Sums up the time of the phases by name, e.g. {@code select;dur=0.02, upstream;dur=12.5;desc="2
+   * spans", total;dur=13.1}, in milliseconds.
+   */
+  private String serverTiming(List<SpanData> finished, long totalNanos) {
+    Map<String, long[]> phases = new LinkedHashMap<>();
+    for (SpanData span : finished) {
+      if (!span.spanId().equals(spanId)) {
+        long[] phase = phases.computeIfAbsent(span.name(), unused -> new long[2]);
+        phase[0] += span.durationNanos();
+        ++phase[1];
+      }
+    }
+    StringBuilder timing = new StringBuilder();
+    phases.forEach(
+        (name, phase) -> {
+          timing.append(name).append(";dur=").append(millis(phase[0]));
+          if (phase[1] > 1) {
+            timing.append(";desc=\"").append(phase[1]).append(" spans\"");
+          }
+          timing.append(", ");
+        });
+    return timing.append("total;dur=").append(millis(totalNanos)).toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  private static long epochNanos(Instant instant) {
+    return ChronoUnit.NANOS.between(Instant.EPOCH, instant);
+  }
+}
@@ -0,0 +1,50 @@
+package org.ccwang.routing.trace;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * One timed phase of a request, from when it is started until {@link #end}. Spans of unsampled
+ * requests are {@link #NONE}, which records nothing.
+ */
+public class Span {
+  /** The span of every unsampled request. */
+  static final Span NONE = new Span(null, null, null);
+
+  private final RequestTrace trace;
+  private final String name;
+  private final String id;
+  private final long startNanos;
+  private final ImmutableMap.Builder<String, String> attributes;
+
+  Span(RequestTrace trace, String name, String id) {
+    this.trace = trace;
+    this.name = name;
+    this.id = id;
+    this.startNanos = trace == null ? 0 : System.nanoTime();
+    this.attributes = trace == null ? null : ImmutableMap.builder();
+  }
+
+  /** Null for {@link #NONE}. */
+  public String id() {
+    return id;
+  }
+
+  public Span attribute(String key, Object value) {
+    if (trace != null) {
+      synchronized (attributes) {
+        attributes.put(key, String.valueOf(value));
+      }
+    }
+    return this;
+  }
+
+  public void end() {
+    if (trace != null) {
+      ImmutableMap<String, String> finished;
+      synchronized (attributes) {
+        finished = attributes.buildKeepingLast();
+      }
+      trace.record(name, id, startNanos, System.nanoTime(), finished);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package org.ccwang.routing.trace;
+
+import java.util.Map;
+
+/**
+ * A finished span, as exported. Field names follow the OTLP JSON encoding, so that a collector's
+ * file receiver, or a short script, can take them in.
+ *
+ * @param parentSpanId null for a span without a parent.
+ */
+public record SpanData(
+    String traceId,
+    String spanId,
+    String parentSpanId,
+    String name,
+    long startTimeUnixNano,
+    long endTimeUnixNano,
+    Map<String, String> attributes) {
+  public long durationNanos() {
+    return endTimeUnixNano - startTimeUnixNano;
+  }
+}
@@ -0,0 +1,16 @@
+package org.ccwang.routing.trace;
+
+import java.util.List;
+
+/** Takes the spans of each sampled request once it has its response. */
+@FunctionalInterface
+public interface SpanExporter extends AutoCloseable {
+  /** Drops every span. */
+  SpanExporter NONE = spans -> {};
+
+  /** Exports the spans of one request. Must not block the request path. */
+  void export(List<SpanData> spans);
+
+  @Override
+  default void close() {}
+}
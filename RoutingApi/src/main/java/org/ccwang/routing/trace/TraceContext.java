@@ -0,0 +1,55 @@
+package org.ccwang.routing.trace;
+
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * The part of a trace that crosses process boundaries, as carried by the W3C {@code traceparent}
+ * header: {@code 00-<32 hex trace id>-<16 hex parent span id>-<2 hex flags>}.
+ */
+public record TraceContext(String traceId, String spanId, boolean sampled) {
+  public static final String HEADER = "traceparent";
+
+  private static final Pattern TRACEPARENT =
+      Pattern.compile("[0-9a-f]{2}-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}(-.*)?");
+  private static final String INVALID_TRACE_ID = "0".repeat(32);
+  private static final String INVALID_SPAN_ID = "0".repeat(16);
+  private static final int SAMPLED_FLAG = 1;
+
+  /**
+   * Parses a {@code traceparent} header. Versions after 00 are read as 00, as the specification
+   * asks; anything malformed, or with an all-zero id, is ignored.
+   */
+  public static Optional<TraceContext> parse(String traceparent) {
+    if (!TRACEPARENT.matcher(traceparent).matches() || traceparent.startsWith("ff")) {
+      return Optional.empty();
+    }
+    if (traceparent.startsWith("00") && traceparent.length() != 55) {
+      return Optional.empty();
+    }
+    String traceId = traceparent.substring(3, 35);
+    String spanId = traceparent.substring(36, 52);
+    if (traceId.equals(INVALID_TRACE_ID) || spanId.equals(INVALID_SPAN_ID)) {
+      return Optional.empty();
+    }
+    int flags = HexFormat.fromHexDigits(traceparent, 53, 55);
+    return Optional.of(new TraceContext(traceId, spanId, (flags & SAMPLED_FLAG) != 0));
+  }
+
+  public static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    HexFormat hex = HexFormat.of();
+    return hex.toHexDigits(random.nextLong()) + hex.toHexDigits(random.nextLong() | 1);
+  }
+
+  public static String newSpanId() {
+    return HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong() | 1);
+  }
+
+  /** The {@code traceparent} header that makes the given span the parent of the next hop. */
+  public static String traceparent(String traceId, String spanId, boolean sampled) {
+    return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+  }
+}
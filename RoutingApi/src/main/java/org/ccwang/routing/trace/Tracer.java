@@ -0,0 +1,54 @@
+package org.ccwang.routing.trace;
+
+import io.javalin.http.Context;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts the {@link RequestTrace} of each request. Requests that come with a {@code traceparent}
+ * are sampled if their parent was, the others at the sample rate. At a sample rate of 0, no
+ * request is sampled and the only work per request is passing on its {@code traceparent}.
+ */
+public class Tracer implements AutoCloseable {
+  /** Samples nothing. */
+  public static final Tracer NONE = new Tracer(0, SpanExporter.NONE);
+
+  private final double sampleRate;
+  private final SpanExporter exporter;
+
+  /** @param sampleRate share of requests without a parent to sample, from 0 to 1. */
+  public Tracer(double sampleRate, SpanExporter exporter) {
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+    }
+    this.sampleRate = sampleRate;
+    this.exporter = exporter;
+  }
+
+  public RequestTrace start(Context context) {
+    String traceparent = context.header(TraceContext.HEADER);
+    if (sampleRate == 0) {
+      return traceparent == null ? RequestTrace.NONE : RequestTrace.propagating(traceparent);
+    }
+    Optional<TraceContext> parent =
+        traceparent == null ? Optional.empty() : TraceContext.parse(traceparent);
+    if (parent.isPresent()) {
+      return parent.get().sampled()
+          ? RequestTrace.sampled(this, parent.get().traceId(), parent.get().spanId())
+          : RequestTrace.propagating(traceparent);
+    }
+    return ThreadLocalRandom.current().nextDouble() < sampleRate
+        ? RequestTrace.sampled(this, TraceContext.newTraceId(), null)
+        : RequestTrace.NONE;
+  }
+
+  void export(List<SpanData> spans) {
+    exporter.export(spans);
+  }
+
+  @Override
+  public void close() {
+    exporter.close();
+  }
+}
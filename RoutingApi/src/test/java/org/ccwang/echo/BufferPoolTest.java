@@ -0,0 +1,40 @@
+package org.ccwang.echo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+  @Test
+  public void testAcquire_reusesReleasedBuffers() {
+    BufferPool pool = new BufferPool(16, 2);
+    ByteBuffer buffer = pool.acquire();
+    assertThat(buffer.isDirect()).isTrue();
+    assertThat(buffer.capacity()).isEqualTo(16);
+    buffer.put((byte) 1);
+    pool.release(buffer);
+
+    ByteBuffer reused = pool.acquire();
+    assertThat(reused).isSameInstanceAs(buffer);
+    assertThat(reused.position()).isEqualTo(0);
+    assertThat(reused.remaining()).isEqualTo(16);
+  }
+
+  @Test
+  public void testRelease_keepsAtMostMaxPooled() {
+    BufferPool pool = new BufferPool(16, 2);
+    ByteBuffer first = pool.acquire();
+    ByteBuffer second = pool.acquire();
+    ByteBuffer third = pool.acquire();
+    assertThat(pool.pooled()).isEqualTo(0);
+
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    assertThat(pool.pooled()).isEqualTo(2);
+    assertThat(pool.acquire()).isSameInstanceAs(first);
+    assertThat(pool.acquire()).isSameInstanceAs(second);
+    assertThat(pool.acquire()).isNotSameInstanceAs(third);
+  }
+}
@@ -2,6 +2,9 @@ package org.ccwang.echo;
 
 import com.google.gson.Gson;
 import io.javalin.http.Context;
+import org.ccwang.routing.batch.BatchCodec;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -13,10 +16,21 @@ public class EchoControllerTest {
   private final Context ctx = mock(Context.class);
 
   @Test
-  public void POST_to_returns_echo() {
-    when(ctx.body()).thenReturn(USERS_JSON);
+  public void POST_to_returns_echo() throws Exception {
+    byte[] body = USERS_JSON.getBytes(StandardCharsets.UTF_8);
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body));
     EchoController.get(ctx); // the handler we're testing
     verify(ctx).status(200);
-    verify(ctx).result(USERS_JSON);
+    verify(ctx).result(body);
+  }
+
+  @Test
+  public void POST_batch_returns_each_echo() throws Exception {
+    byte[] batch =
+        BatchCodec.encode(List.of(USERS_JSON.getBytes(StandardCharsets.UTF_8), new byte[0]));
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(batch));
+    EchoController.batch(ctx);
+    verify(ctx).status(200);
+    verify(ctx).result(batch);
   }
 }
@@ -1,10 +1,11 @@
 package org.ccwang.echo;
 
+import com.google.common.base.Strings;
 import com.google.gson.Gson;
 import io.javalin.Javalin;
 import io.javalin.testtools.JavalinTest;
 import okhttp3.Response;
-import org.junit.Test;
+import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
@@ -34,4 +35,18 @@ public class FunctionalTest {
           assertThat(response.body().string()).isEqualTo(USERS_JSON);
         });
   }
+
+  @Test
+  public void POST_returns_echo_of_body_larger_than_a_buffer() {
+    String json = new Gson().toJson(Strings.repeat("x", 200_000));
+    JavalinTest.test(
+        app,
+        (server, client) -> {
+          Response response = client.post("/echo", json);
+          assertThat(response.code()).isEqualTo(200);
+          assertThat(response.header("Content-Type")).isEqualTo("application/json");
+          assertThat(response.header("Content-Length")).isEqualTo(String.valueOf(json.length()));
+          assertThat(response.body().string()).isEqualTo(json);
+        });
+  }
 }
@@ -0,0 +1,153 @@
+package org.ccwang.echo;
+
+import com.google.common.base.Strings;
+import io.javalin.Javalin;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sends echo and health check requests to an in-process {@link SimpleServiceApp} over one kept-alive
+ * connection. The client writes prepared bytes and reads the response into a reused array, so it
+ * allocates nothing and {@code gc.alloc.rate.norm} from JMH's GC profiler, run by {@link #main}, is
+ * the server's alone. Health checks show what Jetty and Javalin allocate for any request; echo
+ * requests should allocate no more than that, whatever the size of their body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@State(Scope.Benchmark)
+public class SimpleServiceAppBenchmark {
+  private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CONTENT_LENGTH =
+      "\r\ncontent-length:".getBytes(StandardCharsets.US_ASCII);
+
+  @Param({"1024", "65536", "1048576"})
+  public int payloadBytes;
+
+  private Javalin backend;
+  private Socket socket;
+  private InputStream in;
+  private OutputStream out;
+  private byte[] echoRequest;
+  private byte[] healthRequest;
+  private byte[] response;
+
+  @Setup
+  public void setup() throws IOException {
+    backend = new SimpleServiceApp().app().start(0);
+    socket = new Socket("localhost", backend.port());
+    socket.setTcpNoDelay(true);
+    in = socket.getInputStream();
+    out = socket.getOutputStream();
+    // A JSON string of the requested size
+    String payload = "\"" + Strings.repeat("x", payloadBytes - 2) + "\"";
+    echoRequest =
+        ("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: "
+                + payloadBytes
+                + "\r\n\r\n"
+                + payload)
+            .getBytes(StandardCharsets.US_ASCII);
+    healthRequest =
+        "GET /healthz HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    response = new byte[payloadBytes + 4096];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    socket.close();
+    backend.stop();
+  }
+
+  @Benchmark
+  public int echo() throws IOException {
+    return exchange(echoRequest);
+  }
+
+  @Benchmark
+  public int healthz() throws IOException {
+    return exchange(healthRequest);
+  }
+
+  /** Sends the request and reads the whole response, returning its status code. */
+  private int exchange(byte[] request) throws IOException {
+    out.write(request);
+    out.flush();
+    int read = 0;
+    int headerEnd = -1;
+    int length = -1;
+    while (headerEnd < 0 || read < headerEnd + length) {
+      int n = in.read(response, read, response.length - read);
+      if (n < 0) {
+        throw new IOException("Connection closed after " + read + " bytes");
+      }
+      read += n;
+      if (headerEnd < 0) {
+        int end = indexOf(HEADER_END, read);
+        if (end >= 0) {
+          headerEnd = end + HEADER_END.length;
+          length = contentLength(headerEnd);
+        }
+      }
+    }
+    return (response[9] - '0') * 100 + (response[10] - '0') * 10 + (response[11] - '0');
+  }
+
+  private int contentLength(int headerEnd) throws IOException {
+    int start = indexOf(CONTENT_LENGTH, headerEnd);
+    if (start < 0) {
+      throw new IOException("Response has no Content-Length");
+    }
+    int length = 0;
+    for (int i = start + CONTENT_LENGTH.length; response[i] != '\r'; ++i) {
+      if (response[i] != ' ') {
+        length = length * 10 + response[i] - '0';
+      }
+    }
+    return length;
+  }
+
+  /** Index of {@code target} in the first {@code limit} bytes of the response, ignoring case. */
+  private int indexOf(byte[] target, int limit) {
+    for (int i = 0; i + target.length <= limit; ++i) {
+      int j = 0;
+      while (j < target.length && Character.toLowerCase(response[i + j]) == target[j]) {
+        ++j;
+      }
+      if (j == target.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(SimpleServiceAppBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,50 @@
+package org.ccwang.loadgen;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class FaultTest {
+  @Test
+  public void testParseSlow() {
+    Fault fault = Fault.parse("1:echo:slow=200@5-15");
+
+    assertThat(fault)
+        .isEqualTo(
+            new Fault(
+                1,
+                "echo",
+                Fault.Kind.SLOW,
+                Duration.ofMillis(200),
+                Duration.ofSeconds(5),
+                Duration.ofSeconds(15)));
+  }
+
+  @Test
+  public void testParseFailWithoutEnd() {
+    Fault fault = Fault.parse("0:healthz:fail@3");
+
+    assertThat(fault.kind()).isEqualTo(Fault.Kind.FAIL);
+    assertThat(fault.appliesTo("/healthz", Duration.ofSeconds(2))).isFalse();
+    assertThat(fault.appliesTo("/healthz", Duration.ofSeconds(3))).isTrue();
+    assertThat(fault.appliesTo("/healthz", Duration.ofDays(1))).isTrue();
+    assertThat(fault.appliesTo("/echo", Duration.ofSeconds(3))).isFalse();
+  }
+
+  @Test
+  public void testAppliesUntilEnd() {
+    Fault fault = Fault.parse("0:echo:fail@1-2");
+
+    assertThat(fault.appliesTo("/echo", Duration.ofMillis(1999))).isTrue();
+    assertThat(fault.appliesTo("/echo", Duration.ofSeconds(2))).isFalse();
+  }
+
+  @Test
+  public void testParseMalformed() {
+    assertThrows(IllegalArgumentException.class, () -> Fault.parse("1:echo:fail"));
+    assertThrows(IllegalArgumentException.class, () -> Fault.parse("1:status:fail@0"));
+    assertThrows(IllegalArgumentException.class, () -> Fault.parse("1:echo:crash@0"));
+  }
+}
@@ -0,0 +1,59 @@
+package org.ccwang.loadgen;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gson.Gson;
+import io.javalin.Javalin;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.RouterConfig;
+import org.ccwang.routing.RoutingServiceApp;
+import org.junit.jupiter.api.Test;
+
+public class LoadGeneratorTest {
+  private static final String USERS_JSON = new Gson().toJson(List.of("jason", "michael", "robert"));
+
+  @Test
+  public void testSpreadsLoadOverBackends() throws Exception {
+    LoadReport report = run(List.of());
+
+    assertThat(report.sent()).isEqualTo(100);
+    assertThat(report.succeeded()).isEqualTo(100);
+    assertThat(report.errors()).isEmpty();
+    assertThat(report.latencyMs().max()).isGreaterThan(0);
+    assertThat(report.backendRequests().values()).containsExactly(50L, 50L);
+    assertThat(report.timeline()).isNotEmpty();
+  }
+
+  @Test
+  public void testInjectsFaults() throws Exception {
+    LoadReport report = run(List.of(Fault.parse("1:echo:slow=50@1")));
+
+    assertThat(report.succeeded()).isEqualTo(100);
+    assertThat(report.latencyMs().max()).isAtLeast(50);
+  }
+
+  private static LoadReport run(List<Fault> faults) throws Exception {
+    try (BackendFleet fleet = new BackendFleet(2, faults)) {
+      Javalin router =
+          new RoutingServiceApp(
+                  fleet.uris().stream().map(HostSpec::of).toList(),
+                  RouterConfig.builder().setUpstreamTimeout(Duration.ofSeconds(1)).build())
+              .app()
+              .start(0);
+      try {
+        return new LoadGenerator(
+                URI.create("http://localhost:" + router.port() + "/"),
+                USERS_JSON,
+                50,
+                Duration.ofSeconds(2),
+                Duration.ofSeconds(5))
+            .run(fleet);
+      } finally {
+        router.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class AdminControllerTest {
+  private static final HostSpec HOST_1 = HostSpec.of(URI.create("http://localhost:8081"));
+
+  @Test
+  public void testAddHost() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      Context ctx = mock(Context.class);
+      when(ctx.body()).thenReturn("http://localhost:8082;weight=2\n");
+
+      new AdminController(registry).addHost(ctx);
+
+      verify(ctx).status(204);
+      assertThat(registry.activeHosts())
+          .containsExactly(HOST_1, new HostSpec(URI.create("http://localhost:8082"), 2))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testAddHost_rejectsMalformedSpecs() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      AdminController admin = new AdminController(registry);
+      for (String spec :
+          List.of(
+              "http://localhost:8082;weight=0",
+              "http://localhost:8082;weight=1000000",
+              "localhost:8082",
+              "")) {
+        Context ctx = mock(Context.class);
+        when(ctx.body()).thenReturn(spec);
+
+        assertThrows(BadRequestResponse.class, () -> admin.addHost(ctx));
+      }
+      assertThat(registry.activeHosts()).containsExactly(HOST_1);
+    }
+  }
+
+  @Test
+  public void testDrainAndRemoveHost() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      AdminController admin = new AdminController(registry);
+      Context ctx = mock(Context.class);
+      when(ctx.queryParam("uri")).thenReturn("http://localhost:8081");
+
+      admin.drainHost(ctx);
+      verify(ctx).status(202);
+      assertThat(registry.activeHosts()).isEmpty();
+
+      admin.removeHost(ctx);
+      verify(ctx).status(204);
+      assertThat(registry.members()).isEmpty();
+      assertThrows(NotFoundResponse.class, () -> admin.removeHost(ctx));
+    }
+  }
+
+  @Test
+  public void testAddHost_withZoneAndPriority() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      Context ctx = mock(Context.class);
+      when(ctx.body()).thenReturn("http://localhost:8082;zone=us-east-1b;priority=1");
+      when(ctx.result(anyString())).thenReturn(ctx);
+      AdminController admin = new AdminController(registry);
+
+      admin.addHost(ctx);
+      admin.listHosts(ctx);
+
+      assertThat(registry.activeHosts())
+          .contains(
+              new HostSpec(
+                  URI.create("http://localhost:8082"), 1, Optional.of("us-east-1b"), 1));
+      verify(ctx).result(contains("\"zone\":\"us-east-1b\",\"priority\":1"));
+    }
+  }
+
+  @Test
+  public void testListHosts() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      Context ctx = mock(Context.class);
+      when(ctx.result(anyString())).thenReturn(ctx);
+
+      new AdminController(registry).listHosts(ctx);
+
+      verify(ctx)
+          .result(
+              "[{\"uri\":\"http://localhost:8081\",\"weight\":1,\"priority\":0,"
+                  + "\"state\":\"ACTIVE\"}]");
+    }
+  }
+}
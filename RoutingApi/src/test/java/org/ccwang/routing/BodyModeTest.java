@@ -0,0 +1,28 @@
+package org.ccwang.routing;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import org.junit.jupiter.api.Test;
+
+public class BodyModeTest {
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testStreamingDiscard_swallowsCloseFailure() throws Exception {
+    InputStream body = mock(InputStream.class);
+    doThrow(new IOException("reset")).when(body).close();
+    HttpResponse<InputStream> response = mock(HttpResponse.class);
+    when(response.body()).thenReturn(body);
+    when(response.uri()).thenReturn(URI.create("http://localhost:8080/echo"));
+
+    BodyMode.STREAMING.discard(response);
+
+    verify(body).close();
+  }
+}
@@ -0,0 +1,101 @@
+package org.ccwang.routing;
+
+import com.google.gson.Gson;
+import io.javalin.Javalin;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.echo.SimpleServiceApp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Proxies requests from a client through {@link RoutingServiceApp} to two {@link SimpleServiceApp}
+ * backends, all on localhost in one JVM, with both dispatch modes and with batching off or on. Run
+ * {@link #main} for throughput, latency percentiles and allocation per request across the whole
+ * path.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@Threads(4)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+  private static final String JSON_PAYLOAD =
+      new Gson().toJson(List.of("jason", "michael", "robert"));
+
+  @Param({"false", "true"})
+  public boolean asyncDispatch;
+
+  @Param({"0", "64"})
+  public int batchMaxSize;
+
+  private List<Javalin> backends;
+  private Javalin router;
+  private HttpClient client;
+  private HttpRequest request;
+
+  @Setup
+  public void setup() {
+    backends =
+        List.of(new SimpleServiceApp().app().start(0), new SimpleServiceApp().app().start(0));
+    router =
+        new RoutingServiceApp(
+                backends.stream()
+                    .map(backend -> HostSpec.of(URI.create("http://localhost:" + backend.port())))
+                    .toList(),
+                RouterConfig.builder()
+                    .setAsyncDispatch(asyncDispatch)
+                    .setBatchMaxSize(batchMaxSize)
+                    .setUpstreamTimeout(Duration.ofSeconds(1))
+                    .build())
+            .app()
+            .start(0);
+    client = HttpClient.newHttpClient();
+    request =
+        HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:" + router.port() + "/"))
+            .POST(HttpRequest.BodyPublishers.ofString(JSON_PAYLOAD))
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    router.stop();
+    backends.forEach(Javalin::stop);
+  }
+
+  @Benchmark
+  public int proxy() throws Exception {
+    return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(EndToEndBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
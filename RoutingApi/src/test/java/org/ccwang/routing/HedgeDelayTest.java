@@ -0,0 +1,50 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class HedgeDelayTest {
+  @Test
+  public void testParseFixed() {
+    HedgeDelay delay = HedgeDelay.parse("50");
+
+    delay.record(Duration.ofSeconds(1).toNanos());
+    assertThat(delay.delayNanos()).isEqualTo(Duration.ofMillis(50).toNanos());
+  }
+
+  @Test
+  public void testParsePercentile_doesNotHedgeUntilWindowFills() {
+    HedgeDelay delay = HedgeDelay.parse("p95");
+
+    for (int i = 0; i < 1000; ++i) {
+      delay.record(i);
+    }
+    assertThat(delay.delayNanos()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testPercentile_tracksRecentLatencies() {
+    HedgeDelay delay = HedgeDelay.percentile(95);
+
+    // Latencies 1..1024, so the 95th percentile is 973
+    for (int i = 1; i <= 1024; ++i) {
+      delay.record(i);
+    }
+    assertThat(delay.delayNanos()).isEqualTo(973);
+
+    // A full window of slower latencies replaces the old ones
+    for (int i = 1; i <= 1024; ++i) {
+      delay.record(1000 + i);
+    }
+    assertThat(delay.delayNanos()).isEqualTo(1973);
+  }
+
+  @Test
+  public void testParse_malformed() {
+    assertThrows(IllegalArgumentException.class, () -> HedgeDelay.parse("p100"));
+    assertThrows(IllegalArgumentException.class, () -> HedgeDelay.parse("fast"));
+  }
+}
@@ -0,0 +1,97 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.ccwang.routing.HostRegistry.Member;
+import org.ccwang.routing.HostRegistry.State;
+import org.junit.jupiter.api.Test;
+
+public class HostRegistryTest {
+  private static final HostSpec HOST_1 = HostSpec.of(URI.create("http://localhost:8081"));
+  private static final HostSpec HOST_2 = HostSpec.of(URI.create("http://localhost:8082"));
+  private static final HostSpec HOST_3 = HostSpec.of(URI.create("http://localhost:8083"));
+
+  @Test
+  public void testAddAndRemove_notifyListeners() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1))) {
+      List<ImmutableList<HostSpec>> snapshots = new ArrayList<>();
+      registry.addListener(snapshots::add);
+
+      registry.add(HOST_2);
+      assertThat(registry.remove(HOST_1.uri())).isTrue();
+      assertThat(registry.remove(HOST_1.uri())).isFalse();
+
+      assertThat(snapshots)
+          .containsExactly(
+              ImmutableList.of(HOST_1), ImmutableList.of(HOST_1, HOST_2), ImmutableList.of(HOST_2))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testAdd_updatesWeightInPlace() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1, HOST_2), Duration.ofMinutes(1))) {
+      HostSpec heavier = new HostSpec(HOST_1.uri(), 3);
+      registry.add(heavier);
+
+      assertThat(registry.activeHosts()).containsExactly(heavier, HOST_2).inOrder();
+    }
+  }
+
+  @Test
+  public void testDrain_takesHostOutOfRotationThenRemovesIt() throws Exception {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1, HOST_2), Duration.ofMillis(50))) {
+      assertThat(registry.drain(HOST_1.uri())).isTrue();
+
+      assertThat(registry.activeHosts()).containsExactly(HOST_2);
+      assertThat(registry.members())
+          .containsExactly(
+              new Member(HOST_1.uri(), 1, State.DRAINING),
+              new Member(HOST_2.uri(), 1, State.ACTIVE))
+          .inOrder();
+      awaitMembers(registry, 1);
+      assertThat(registry.members()).containsExactly(new Member(HOST_2.uri(), 1, State.ACTIVE));
+      assertThat(registry.drain(HOST_1.uri())).isFalse();
+    }
+  }
+
+  @Test
+  public void testAdd_cancelsDrain() throws Exception {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMillis(50))) {
+      registry.drain(HOST_1.uri());
+      registry.add(HOST_1);
+      Thread.sleep(100);
+
+      assertThat(registry.members()).containsExactly(new Member(HOST_1.uri(), 1, State.ACTIVE));
+      assertThat(registry.activeHosts()).containsExactly(HOST_1);
+    }
+  }
+
+  @Test
+  public void testUpdate_isOneChange() {
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1, HOST_2), Duration.ofMinutes(1))) {
+      List<ImmutableList<HostSpec>> snapshots = new ArrayList<>();
+      registry.addListener(snapshots::add);
+
+      registry.update(List.of(HOST_3), List.of(HOST_1.uri(), HOST_2.uri()));
+
+      assertThat(snapshots)
+          .containsExactly(ImmutableList.of(HOST_1, HOST_2), ImmutableList.of(HOST_3))
+          .inOrder();
+    }
+  }
+
+  private static void awaitMembers(HostRegistry registry, int size) throws InterruptedException {
+    long startNanos = System.nanoTime();
+    while (registry.members().size() != size) {
+      assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+          .isLessThan(Duration.ofSeconds(5));
+      Thread.sleep(5);
+    }
+  }
+}
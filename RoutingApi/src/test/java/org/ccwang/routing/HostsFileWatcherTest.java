@@ -0,0 +1,64 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.ccwang.routing.HostRegistry.Member;
+import org.ccwang.routing.HostRegistry.State;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HostsFileWatcherTest {
+  private static final HostSpec HOST_1 = HostSpec.of(URI.create("http://localhost:8081"));
+  private static final HostSpec HOST_2 = HostSpec.of(URI.create("http://localhost:8082"));
+  private static final HostSpec HOST_3 = HostSpec.of(URI.create("http://localhost:8083"));
+
+  @TempDir Path directory;
+
+  @Test
+  public void testAppliesEditsOfTheFile() throws Exception {
+    Path file = directory.resolve("hosts");
+    Files.writeString(file, "http://localhost:8082\n");
+    // The first host came from the command line
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1, HOST_2), Duration.ofMinutes(1));
+        HostsFileWatcher watcher = new HostsFileWatcher(file, registry)) {
+      watcher.start();
+
+      Files.writeString(file, "# Scaled out\nhttp://localhost:8083;weight=2\n");
+
+      awaitActiveHosts(registry, ImmutableList.of(HOST_1, new HostSpec(HOST_3.uri(), 2)));
+      assertThat(registry.members()).contains(new Member(HOST_2.uri(), 1, State.DRAINING));
+    }
+  }
+
+  @Test
+  public void testIgnoresFileWithoutHosts() throws Exception {
+    Path file = directory.resolve("hosts");
+    Files.writeString(file, "http://localhost:8081\n");
+    try (HostRegistry registry = new HostRegistry(List.of(HOST_1), Duration.ofMinutes(1));
+        HostsFileWatcher watcher = new HostsFileWatcher(file, registry)) {
+      watcher.start();
+
+      Files.writeString(file, "");
+      Thread.sleep(500);
+      Files.writeString(file, "http://localhost:8081\nhttp://localhost:8082\n");
+
+      awaitActiveHosts(registry, ImmutableList.of(HOST_1, HOST_2));
+    }
+  }
+
+  private static void awaitActiveHosts(HostRegistry registry, ImmutableList<HostSpec> hosts)
+      throws InterruptedException {
+    long startNanos = System.nanoTime();
+    while (!registry.activeHosts().equals(hosts)) {
+      assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+          .isLessThan(Duration.ofSeconds(10));
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.javalin.http.Context;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.Lifecycle.State;
+import org.junit.jupiter.api.Test;
+
+public class LifecycleTest {
+  private final Lifecycle lifecycle = new Lifecycle();
+
+  @Test
+  public void testReadiness() {
+    Context ctx = mock(Context.class);
+    lifecycle.readyz(ctx);
+    verify(ctx).status(503);
+
+    lifecycle.ready();
+    Context ready = mock(Context.class);
+    lifecycle.readyz(ready);
+    verify(ready).status(200);
+    assertThat(lifecycle.state()).isEqualTo(State.READY);
+  }
+
+  @Test
+  public void testDrain_waitsForRequestsInFlight() throws Exception {
+    lifecycle.ready();
+    Context ctx = enteredContext();
+    assertThat(lifecycle.enter(ctx)).isTrue();
+
+    CompletableFuture<Boolean> drained =
+        CompletableFuture.supplyAsync(() -> lifecycle.drain(Duration.ofSeconds(10)));
+    while (lifecycle.state() != State.DRAINING) {
+      Thread.sleep(1);
+    }
+    // New requests are turned away, and so is readiness.
+    Context late = mock(Context.class);
+    assertThat(lifecycle.enter(late)).isFalse();
+    verify(late).header("Connection", "close");
+    verify(late).status(503);
+    Context probe = mock(Context.class);
+    lifecycle.readyz(probe);
+    verify(probe).status(503);
+    lifecycle.exit(late);
+    assertThat(drained.isDone()).isFalse();
+
+    lifecycle.exit(ctx);
+    assertThat(drained.get(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(lifecycle.inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDrain_givesUpAfterTimeout() {
+    assertThat(lifecycle.enter(enteredContext())).isTrue();
+
+    assertThat(lifecycle.drain(Duration.ofMillis(10))).isFalse();
+    assertThat(lifecycle.inFlight()).isEqualTo(1);
+  }
+
+  @Test
+  public void testReady_notOnceDraining() {
+    assertThat(lifecycle.drain(Duration.ofMillis(10))).isTrue();
+    lifecycle.ready();
+
+    assertThat(lifecycle.state()).isEqualTo(State.DRAINING);
+  }
+
+  /** A context that remembers it was entered, as Javalin's does. */
+  private static Context enteredContext() {
+    Context ctx = mock(Context.class);
+    when(ctx.attribute(Lifecycle.class.getName() + ".entered")).thenReturn(true);
+    return ctx;
+  }
+}
@@ -0,0 +1,133 @@
+package org.ccwang.routing;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.javalin.http.Context;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.loadbalancing.SchemeType;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.trace.SpanExporter;
+import org.ccwang.routing.trace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link RequestDispatcher#dispatch} against a minimal in-process echo backend built on the
+ * JDK's HTTP server, so the numbers are dominated by the dispatcher and its HTTP client rather than
+ * by a full Javalin backend. Run {@link #main} for throughput, latency percentiles and allocation
+ * per request, with tracing off and with every request traced; spans are dropped rather than
+ * written, so that only the cost of recording them shows.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@Threads(4)
+@State(Scope.Benchmark)
+public class RequestDispatcherBenchmark {
+  private static final String JSON_PAYLOAD =
+      new Gson().toJson(List.of("jason", "michael", "robert"));
+
+  @Param({"0", "1"})
+  public double traceSampleRate;
+
+  private HttpServer backend;
+  private ExecutorService backendExecutor;
+  private UpstreamTransport transport;
+  private RequestDispatcher dispatcher;
+  private Context context;
+
+  @Setup
+  public void setup() throws Exception {
+    backend = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    backend.createContext("/echo", RequestDispatcherBenchmark::echo);
+    backendExecutor = Executors.newFixedThreadPool(4);
+    backend.setExecutor(backendExecutor);
+    backend.start();
+
+    URI uri = URI.create("http://localhost:" + backend.getAddress().getPort());
+    RouterConfig config =
+        RouterConfig.builder()
+            .setLoadBalancing(SchemeType.ROUND_ROBIN)
+            .setUpstreamTimeout(Duration.ofSeconds(1))
+            .build();
+    transport = new UpstreamTransport(config);
+    dispatcher =
+        new RequestDispatcher(
+            config.loadBalancing().create(List.of(HostSpec.of(uri))),
+            config,
+            (host, success) -> {},
+            transport.httpClient(),
+            new RouterMetrics(),
+            new Tracer(traceSampleRate, SpanExporter.NONE));
+    // Stub-only, so the mock does not remember every invocation
+    context = mock(Context.class, withSettings().stubOnly());
+    when(context.bodyInputStream())
+        .thenAnswer(
+            invocation -> new ByteArrayInputStream(JSON_PAYLOAD.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @TearDown
+  public void tearDown() {
+    transport.close();
+    backend.stop(0);
+    backendExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public void dispatch() {
+    dispatcher.dispatch(context);
+  }
+
+  private static void echo(HttpExchange exchange) throws IOException {
+    byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(RequestDispatcherBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
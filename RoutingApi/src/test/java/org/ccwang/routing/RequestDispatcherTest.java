@@ -1,7 +1,13 @@
 package org.ccwang.routing;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -9,21 +15,39 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import io.javalin.http.Context;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.ccwang.routing.batch.BatchCodec;
+import org.ccwang.routing.cache.CacheTtls;
+import org.ccwang.routing.health.RequestOutcomeListener;
+import org.ccwang.routing.limit.LimitAlgorithm;
 import org.ccwang.routing.loadbalancing.LoadBalancingScheme;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.ccwang.routing.trace.SpanData;
+import org.ccwang.routing.trace.Tracer;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 public class RequestDispatcherTest {
   private static final String JSON_PAYLOAD =
       new Gson().toJson(List.of("jason", "michael", "robert"));
+  private static final byte[] JSON_PAYLOAD_BYTES = JSON_PAYLOAD.getBytes(StandardCharsets.UTF_8);
 
   @Test
   public void testRoundRobinDispatching() throws Exception {
@@ -34,7 +58,7 @@ public class RequestDispatcherTest {
             new SimpleRoundRobinScheme(
                 servers.stream().map(server -> server.url("/echo").uri()).toList()));
     Context ctx = mock(Context.class);
-    when(ctx.body()).thenReturn(JSON_PAYLOAD);
+    stubBody(ctx, JSON_PAYLOAD);
 
     dispatcher.dispatch(ctx);
     RecordedRequest request1 = servers.get(0).takeRequest();
@@ -62,7 +86,7 @@ public class RequestDispatcherTest {
             new SimpleRoundRobinScheme(
                 servers.stream().map(server -> server.url("/echo").uri()).toList()));
     Context ctx = mock(Context.class);
-    when(ctx.body()).thenReturn(JSON_PAYLOAD);
+    stubBody(ctx, JSON_PAYLOAD);
 
     // Shuts down the first server
     servers.get(0).shutdown();
@@ -85,7 +109,7 @@ public class RequestDispatcherTest {
             new SimpleRoundRobinScheme(
                 servers.stream().map(server -> server.url("/echo").uri()).toList()));
     Context ctx = mock(Context.class);
-    when(ctx.body()).thenReturn(JSON_PAYLOAD);
+    stubBody(ctx, JSON_PAYLOAD);
 
     // Shuts down all the servers
     shutdownServers(servers);
@@ -116,7 +140,7 @@ public class RequestDispatcherTest {
             new SimpleRoundRobinScheme(
                 List.of(server1.url("/echo").uri(), server2.url("/echo").uri())));
     Context ctx = mock(Context.class);
-    when(ctx.body()).thenReturn(JSON_PAYLOAD);
+    stubBody(ctx, JSON_PAYLOAD);
 
     dispatcher.dispatch(ctx);
     // The second server should take the request
@@ -127,6 +151,618 @@ public class RequestDispatcherTest {
     shutdownServers(List.of(server1, server2));
   }
 
+  @Test
+  public void testAsyncDispatching() throws Exception {
+    List<MockWebServer> servers = setupMockServers(2);
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/echo").uri()).toList()));
+    Context ctx = mockAsyncContext();
+
+    dispatcher.dispatchAsync(ctx);
+    RecordedRequest request1 = servers.get(0).takeRequest();
+    assertThat(request1.getRequestUrl()).isEqualTo(servers.get(0).url("/echo"));
+
+    dispatcher.dispatchAsync(ctx);
+    RecordedRequest request2 = servers.get(1).takeRequest();
+    assertThat(request2.getRequestUrl()).isEqualTo(servers.get(1).url("/echo"));
+
+    verify(ctx, times(2)).status(200);
+    verify(ctx, times(2)).result(JSON_PAYLOAD);
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testAsyncExhaustingRetries() throws Exception {
+    List<MockWebServer> servers = setupMockServers(3);
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/echo").uri()).toList()));
+    Context ctx = mockAsyncContext();
+
+    // Shuts down all the servers
+    shutdownServers(servers);
+
+    dispatcher.dispatchAsync(ctx);
+    // Should exhaust the retries
+    verify(ctx).status(503);
+  }
+
+  @Test
+  public void testSchemeIsToldWhenRequestsStartAndFinish() throws Exception {
+    List<MockWebServer> servers = setupMockServers(1);
+    URI uri = servers.get(0).url("/echo").uri();
+    LoadBalancingScheme scheme = mock(LoadBalancingScheme.class);
+    when(scheme.getNextHost(any(), anyInt())).thenReturn(Optional.of(uri));
+
+    RequestDispatcher dispatcher = new RequestDispatcher(scheme);
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+    verify(scheme).onRequestStart(uri);
+    verify(scheme).onRequestFinish(eq(uri), anyLong(), eq(true));
+
+    // The second attempt fails, since the server is gone
+    shutdownServers(servers);
+    dispatcher.dispatch(ctx);
+    verify(scheme, times(4)).onRequestStart(uri);
+    verify(scheme, times(3)).onRequestFinish(eq(uri), anyLong(), eq(false));
+  }
+
+  @Test
+  public void testStreamingDispatching_passesBytesThrough() throws Exception {
+    List<MockWebServer> servers = setupMockServers(1);
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(servers.get(0).url("/echo").uri())),
+            RouterConfig.builder()
+                .setStreamBodies(true)
+                .setUpstreamTimeout(Duration.ofSeconds(1))
+                .build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+    RecordedRequest request = servers.get(0).takeRequest();
+    assertThat(request.getBody().readUtf8()).isEqualTo(JSON_PAYLOAD);
+
+    ArgumentCaptor<InputStream> result = ArgumentCaptor.forClass(InputStream.class);
+    verify(ctx).result(result.capture());
+    verify(ctx).status(200);
+    try (InputStream body = result.getValue()) {
+      assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(JSON_PAYLOAD);
+    }
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testBatching_sendsRequestsToBatchEndpoint() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(
+        new MockResponse()
+            .setBody(new Buffer().write(BatchCodec.encode(List.of(JSON_PAYLOAD_BYTES)))));
+    server.start();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(server.url("/echo").uri())),
+            RouterConfig.builder()
+                .setBatchMaxSize(64)
+                .setUpstreamTimeout(Duration.ofSeconds(1))
+                .build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getPath()).isEqualTo("/echo/batch");
+    assertThat(BatchCodec.decode(request.getBody().readByteArray()).get(0))
+        .isEqualTo(JSON_PAYLOAD_BYTES);
+    verify(ctx).result(JSON_PAYLOAD);
+    verify(ctx).status(200);
+    server.shutdown();
+  }
+
+  @Test
+  public void testCachedRoute_answersRepeatedRequestsFromCache() throws Exception {
+    List<MockWebServer> servers = setupMockServers(1);
+    RouterMetrics metrics = new RouterMetrics();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(servers.get(0).url("/echo").uri())),
+            RouterConfig.builder()
+                .setCacheTtls(CacheTtls.parse("/=60000"))
+                .setStreamBodies(true)
+                .build(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient(),
+            metrics);
+    Context ctx = mock(Context.class);
+    when(ctx.path()).thenReturn("/");
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+    dispatcher.dispatch(ctx);
+
+    assertThat(servers.get(0).getRequestCount()).isEqualTo(1);
+    verify(ctx, times(2)).result(JSON_PAYLOAD.getBytes(StandardCharsets.UTF_8));
+    verify(ctx, times(2)).status(200);
+    assertThat(metrics.scrape()).contains("router_cache_lookups_total{result=\"hit\"} 1\n");
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testConcurrencyLimit_turnsAwayRequestsOverIt() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(
+        new MockResponse().setBody(JSON_PAYLOAD).setHeadersDelay(200, TimeUnit.MILLISECONDS));
+    server.enqueue(new MockResponse().setBody(JSON_PAYLOAD));
+    server.start();
+    RouterMetrics metrics = new RouterMetrics();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(server.url("/echo").uri())),
+            RouterConfig.builder()
+                .setConcurrencyLimit(LimitAlgorithm.AIMD)
+                .setMaxConcurrency(1)
+                .setLimitRejectStatus(429)
+                .setUpstreamTimeout(Duration.ofSeconds(1))
+                .build(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient(),
+            metrics);
+    Context slow = mock(Context.class);
+    stubBody(slow, JSON_PAYLOAD);
+    Context rejected = mock(Context.class);
+    stubBody(rejected, JSON_PAYLOAD);
+    Context admitted = mock(Context.class);
+    stubBody(admitted, JSON_PAYLOAD);
+
+    CompletableFuture<Void> inFlight = dispatcher.forward(slow);
+    dispatcher.dispatch(rejected);
+    inFlight.join();
+    dispatcher.dispatch(admitted);
+
+    verify(rejected).status(429);
+    verify(rejected).header("Retry-After", "1");
+    verify(slow).status(200);
+    verify(admitted).status(200);
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(metrics.scrape()).contains("router_rejected_total 1\n");
+    assertThat(metrics.scrape()).contains("router_concurrency_limit{pool=\"default\"} 1\n");
+    server.shutdown();
+  }
+
+  @Test
+  public void testHostConcurrencyLimit_skipsHostsAtTheirLimit() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(
+        new MockResponse().setBody(JSON_PAYLOAD).setHeadersDelay(200, TimeUnit.MILLISECONDS));
+    server.start();
+    RouterMetrics metrics = new RouterMetrics();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(server.url("/echo").uri())),
+            RouterConfig.builder()
+                .setHostConcurrencyLimit(LimitAlgorithm.GRADIENT)
+                .setMaxHostConcurrency(1)
+                .setUpstreamTimeout(Duration.ofSeconds(1))
+                .build(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient(),
+            metrics);
+    Context slow = mock(Context.class);
+    stubBody(slow, JSON_PAYLOAD);
+    Context skipped = mock(Context.class);
+    stubBody(skipped, JSON_PAYLOAD);
+
+    CompletableFuture<Void> inFlight = dispatcher.forward(slow);
+    dispatcher.dispatch(skipped);
+    inFlight.join();
+
+    verify(skipped).status(503);
+    verify(slow).status(200);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(metrics.scrape())
+        .contains("router_unavailable_total{reason=\"hosts_at_limit\"} 1\n");
+    assertThat(metrics.scrape()).contains("router_retries_total 0\n");
+    server.shutdown();
+  }
+
+  @Test
+  public void testHedging_slowHostLosesToHedgedRequest() throws Exception {
+    MockWebServer slowServer = new MockWebServer();
+    slowServer.enqueue(
+        new MockResponse()
+            .setResponseCode(200)
+            .setBody(JSON_PAYLOAD)
+            .setHeadersDelay(2, TimeUnit.SECONDS));
+    slowServer.start();
+    MockWebServer fastServer = new MockWebServer();
+    fastServer.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    fastServer.start();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                List.of(slowServer.url("/echo").uri(), fastServer.url("/echo").uri())),
+            RouterConfig.builder()
+                .setUpstreamTimeout(Duration.ofSeconds(4))
+                .setHedgeDelay(HedgeDelay.fixed(Duration.ofMillis(20)))
+                .build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    long startNanos = System.nanoTime();
+    dispatcher.dispatch(ctx);
+    // Well short of the slow host's delay, as this is the first request the JVM sends.
+    assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+        .isLessThan(Duration.ofSeconds(1));
+    assertThat(slowServer.getRequestCount()).isEqualTo(1);
+    assertThat(fastServer.getRequestCount()).isEqualTo(1);
+    verify(ctx, times(1)).result(JSON_PAYLOAD);
+    verify(ctx, times(1)).status(200);
+    shutdownServers(List.of(slowServer, fastServer));
+  }
+
+  @Test
+  public void testHedging_fastHostIsNotHedged() throws Exception {
+    List<MockWebServer> servers = setupMockServers(2);
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/echo").uri()).toList()),
+            RouterConfig.builder()
+                .setUpstreamTimeout(Duration.ofSeconds(2))
+                .setHedgeDelay(HedgeDelay.fixed(Duration.ofMillis(500)))
+                .build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+    // Gives a hedge the chance to fire, if it were going to
+    Thread.sleep(600);
+    assertThat(servers.get(0).getRequestCount()).isEqualTo(1);
+    assertThat(servers.get(1).getRequestCount()).isEqualTo(0);
+    verify(ctx).status(200);
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testHedging_hedgeRefusedByHostLimitLeavesRetryBudgetAlone() throws Exception {
+    MockWebServer server = new MockWebServer();
+    // Each of these holds the host's only permit past the hedge delay, so every hedge is refused.
+    for (int i = 0; i < 10; ++i) {
+      server.enqueue(
+          new MockResponse()
+              .setResponseCode(200)
+              .setBody(JSON_PAYLOAD)
+              .setHeadersDelay(50, TimeUnit.MILLISECONDS));
+    }
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    server.start();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(server.url("/echo").uri())),
+            RouterConfig.builder()
+                .setUpstreamTimeout(Duration.ofSeconds(2))
+                .setHedgeDelay(HedgeDelay.fixed(Duration.ofMillis(10)))
+                .setHostConcurrencyLimit(LimitAlgorithm.AIMD)
+                .setMaxHostConcurrency(1)
+                // Leaves only the 10 initial tokens, one per request if refused hedges took them
+                .setRetryBudgetPercent(0)
+                .build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    for (int i = 0; i < 10; ++i) {
+      dispatcher.dispatch(ctx);
+    }
+    // The budget still has a token to retry the 500.
+    dispatcher.dispatch(ctx);
+    assertThat(server.getRequestCount()).isEqualTo(12);
+    verify(ctx, times(11)).status(200);
+    verify(ctx, never()).status(503);
+    server.shutdown();
+  }
+
+  @Test
+  public void testRetryBudget_stopsRetryingOnceExhausted() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.start();
+    URI uri = server.url("/echo").uri();
+    // Nothing listens on the port any more, so every attempt fails right away
+    server.shutdown();
+    LoadBalancingScheme scheme = mock(LoadBalancingScheme.class);
+    when(scheme.getNextHost(any(), anyInt())).thenReturn(Optional.of(uri));
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(scheme, RouterConfig.builder().setRetryBudgetPercent(0).build());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    // Each request spends 2 of the 10 initial tokens on retries
+    for (int i = 0; i < 5; ++i) {
+      dispatcher.dispatch(ctx);
+    }
+    verify(scheme, times(15)).onRequestStart(uri);
+
+    dispatcher.dispatch(ctx);
+    verify(scheme, times(16)).onRequestStart(uri);
+    verify(ctx, times(6)).status(503);
+  }
+
+  @Test
+  public void testOutcomeListenerIsToldAboutFailuresAndSuccesses() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setResponseCode(400));
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    server.start();
+    URI uri = server.url("/echo").uri();
+    RequestOutcomeListener listener = mock(RequestOutcomeListener.class);
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(uri)),
+            RouterConfig.defaults(),
+            listener,
+            HttpClient.newHttpClient());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx);
+    // The 400 counts as neither a success nor a failure of the host
+    verify(listener).onRequestOutcome(uri, false);
+    verify(listener, never()).onRequestOutcome(uri, true);
+    verify(ctx).status(400);
+
+    dispatcher.dispatch(ctx);
+    verify(listener).onRequestOutcome(uri, true);
+    verify(ctx).status(200);
+    server.shutdown();
+  }
+
+  @Test
+  public void testMetricsCountRetriesAndUnavailable() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    server.start();
+    URI uri = server.url("/echo").uri();
+    RouterMetrics metrics = new RouterMetrics();
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(uri)),
+            RouterConfig.defaults(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient(),
+            metrics);
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+    dispatcher.dispatch(ctx);
+    server.shutdown();
+    dispatcher.dispatch(ctx);
+
+    String host = "host=\"" + uri + "\"";
+    assertThat(metrics.scrape())
+        .contains(
+            String.join(
+                "\n",
+                "router_requests_total 2",
+                "# HELP router_retries_total Attempts retried on another host.",
+                "# TYPE router_retries_total counter",
+                "router_retries_total 3"));
+    assertThat(metrics.scrape())
+        .contains("router_unavailable_total{reason=\"retries_exhausted\"} 1\n");
+    assertThat(metrics.scrape())
+        .contains("router_upstream_responses_total{" + host + ",result=\"success\"} 1\n");
+    assertThat(metrics.scrape())
+        .contains("router_upstream_responses_total{" + host + ",result=\"server_error\"} 1\n");
+    assertThat(metrics.scrape())
+        .contains("router_upstream_responses_total{" + host + ",result=\"exception\"} 3\n");
+    assertThat(metrics.scrape()).contains("router_upstream_in_flight{" + host + "} 0\n");
+  }
+
+  /** Mocks a context whose {@link Context#future} waits for the supplied future to complete. */
+  @SuppressWarnings("unchecked")
+  private Context mockAsyncContext() {
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+    doAnswer(
+            invocation -> {
+              ((Supplier<CompletableFuture<?>>) invocation.getArgument(0)).get().join();
+              return null;
+            })
+        .when(ctx)
+        .future(any());
+    return ctx;
+  }
+
+  @Test
+  public void testStatus_clientErrorIsPassedOnWithoutRetry() throws Exception {
+    List<MockWebServer> servers =
+        List.of(
+            startServer(new MockResponse().setResponseCode(404).setBody("{}")),
+            startServer(new MockResponse().setResponseCode(200)));
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/").uri()).toList()));
+    Context ctx = mock(Context.class);
+    stubBody(ctx, "");
+
+    dispatcher.dispatch(ctx, new UpstreamTarget("GET", "/users/7"));
+    verify(ctx).status(404);
+    verify(ctx).result("{}");
+    assertThat(servers.get(1).getRequestCount()).isEqualTo(0);
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testStatus_serverErrorOfNonIdempotentRequestIsPassedOnWithoutRetry()
+      throws Exception {
+    List<MockWebServer> servers =
+        List.of(
+            startServer(new MockResponse().setResponseCode(502)),
+            startServer(new MockResponse().setResponseCode(200)));
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/").uri()).toList()));
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx, new UpstreamTarget("POST", "/orders"));
+    verify(ctx).status(502);
+    assertThat(servers.get(1).getRequestCount()).isEqualTo(0);
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testStatus_serverErrorOfIdempotentRequestIsRetried() throws Exception {
+    List<MockWebServer> servers =
+        List.of(
+            startServer(
+                new MockResponse().setResponseCode(500), new MockResponse().setResponseCode(503)),
+            startServer(
+                new MockResponse().setResponseCode(204), new MockResponse().setResponseCode(500)),
+            startServer(new MockResponse().setResponseCode(500)));
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/").uri()).toList()));
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx, new UpstreamTarget("PUT", "/orders/1"));
+    verify(ctx).status(204);
+
+    // Once every attempt failed, the client gets the last host's answer rather than a bare 503
+    dispatcher.dispatch(ctx, new UpstreamTarget("PUT", "/orders/1"));
+    verify(ctx).status(500);
+    verify(ctx, never()).status(503);
+    assertThat(servers.get(2).takeRequest().getPath()).isEqualTo("/orders/1");
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testStatus_retryMethodsAllowRetryingOtherMethods() throws Exception {
+    List<MockWebServer> servers =
+        List.of(
+            startServer(new MockResponse().setResponseCode(500)),
+            startServer(new MockResponse().setResponseCode(201)));
+
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(
+                servers.stream().map(server -> server.url("/").uri()).toList()),
+            RouterConfig.builder().setRetryMethods(List.of("post")).build(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient());
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+
+    dispatcher.dispatch(ctx, new UpstreamTarget("POST", "/orders"));
+    verify(ctx).status(201);
+    shutdownServers(servers);
+  }
+
+  @Test
+  public void testTracing_recordsEveryAttemptAndPropagatesTraceparent() throws Exception {
+    MockWebServer failing = new MockWebServer();
+    failing.enqueue(new MockResponse().setResponseCode(500));
+    failing.start();
+    MockWebServer healthy = new MockWebServer();
+    healthy.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    healthy.start();
+    List<SpanData> exported = new CopyOnWriteArrayList<>();
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(
+            new SimpleRoundRobinScheme(List.of(failing.url("/").uri(), healthy.url("/").uri())),
+            RouterConfig.defaults(),
+            RequestOutcomeListener.NONE,
+            HttpClient.newHttpClient(),
+            new RouterMetrics(),
+            new Tracer(1, exported::addAll));
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+    String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+    when(ctx.header("traceparent")).thenReturn("00-" + traceId + "-00f067aa0ba902b7-01");
+
+    dispatcher.dispatch(ctx);
+
+    assertThat(exported.stream().map(SpanData::name).toList())
+        .containsExactly("select", "upstream", "select", "upstream", "request")
+        .inOrder();
+    SpanData root = exported.get(4);
+    assertThat(root.parentSpanId()).isEqualTo("00f067aa0ba902b7");
+    for (SpanData span : exported) {
+      assertThat(span.traceId()).isEqualTo(traceId);
+      assertThat(span.endTimeUnixNano()).isAtLeast(span.startTimeUnixNano());
+      if (span != root) {
+        assertThat(span.parentSpanId()).isEqualTo(root.spanId());
+      }
+    }
+    assertThat(exported.get(1).attributes()).containsEntry("attempt", "1");
+    assertThat(exported.get(1).attributes()).containsEntry("result", "SERVER_ERROR");
+    assertThat(exported.get(3).attributes()).containsEntry("attempt", "2");
+    assertThat(exported.get(3).attributes()).containsEntry("result", "SUCCESS");
+    // Each attempt tells its host the attempt's span as the parent.
+    assertThat(failing.takeRequest().getHeader("traceparent"))
+        .isEqualTo("00-" + traceId + "-" + exported.get(1).spanId() + "-01");
+    assertThat(healthy.takeRequest().getHeader("traceparent"))
+        .isEqualTo("00-" + traceId + "-" + exported.get(3).spanId() + "-01");
+    ArgumentCaptor<String> serverTiming = ArgumentCaptor.forClass(String.class);
+    verify(ctx).header(eq("Server-Timing"), serverTiming.capture());
+    String phase = ";dur=[0-9.]+;desc=\"2 spans\"";
+    assertThat(serverTiming.getValue())
+        .matches("select" + phase + ", upstream" + phase + ", total;dur=[0-9.]+");
+    shutdownServers(List.of(failing, healthy));
+  }
+
+  @Test
+  public void testTracing_unsampledRequestOnlyPassesTraceparentOn() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(JSON_PAYLOAD));
+    server.start();
+    RequestDispatcher dispatcher =
+        new RequestDispatcher(new SimpleRoundRobinScheme(List.of(server.url("/").uri())));
+    Context ctx = mock(Context.class);
+    stubBody(ctx, JSON_PAYLOAD);
+    String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+    when(ctx.header("traceparent")).thenReturn(traceparent);
+
+    dispatcher.dispatch(ctx);
+
+    assertThat(server.takeRequest().getHeader("traceparent")).isEqualTo(traceparent);
+    verify(ctx, times(0)).header(eq("Server-Timing"), any());
+    server.shutdown();
+  }
+
+  /** Stubs the request body, which the dispatcher reads straight from the input stream. */
+  private static void stubBody(Context ctx, String body) {
+    when(ctx.bodyInputStream())
+        .thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
   private List<MockWebServer> setupMockServers(int numServers) throws IOException {
     ImmutableList.Builder<MockWebServer> servers = ImmutableList.builder();
     for (int i = 0; i < numServers; ++i) {
@@ -140,6 +776,16 @@ public class RequestDispatcherTest {
     return servers.build();
   }
 
+  /** Starts a server that answers with the given responses in turn. */
+  private static MockWebServer startServer(MockResponse... responses) throws IOException {
+    MockWebServer server = new MockWebServer();
+    for (MockResponse response : responses) {
+      server.enqueue(response);
+    }
+    server.start();
+    return server;
+  }
+
   private void shutdownServers(List<MockWebServer> servers) throws IOException {
     for (MockWebServer server : servers) {
       server.shutdown();
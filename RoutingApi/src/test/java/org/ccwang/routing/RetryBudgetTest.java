@@ -0,0 +1,43 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryBudgetTest {
+  @Test
+  public void testStartsFull() {
+    RetryBudget budget = new RetryBudget(20, 3);
+
+    assertThat(budget.tryAcquire()).isTrue();
+    assertThat(budget.tryAcquire()).isTrue();
+    assertThat(budget.tryAcquire()).isTrue();
+    assertThat(budget.tryAcquire()).isFalse();
+  }
+
+  @Test
+  public void testRefillsWithAPercentageOfRequests() {
+    RetryBudget budget = new RetryBudget(20, 1);
+    assertThat(budget.tryAcquire()).isTrue();
+
+    for (int i = 0; i < 4; ++i) {
+      budget.onRequest();
+    }
+    assertThat(budget.tryAcquire()).isFalse();
+
+    budget.onRequest();
+    assertThat(budget.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void testDoesNotExceedMaxTokens() {
+    RetryBudget budget = new RetryBudget(100, 2);
+
+    for (int i = 0; i < 10; ++i) {
+      budget.onRequest();
+    }
+    assertThat(budget.tryAcquire()).isTrue();
+    assertThat(budget.tryAcquire()).isTrue();
+    assertThat(budget.tryAcquire()).isFalse();
+  }
+}
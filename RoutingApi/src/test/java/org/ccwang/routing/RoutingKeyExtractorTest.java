@@ -0,0 +1,55 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.javalin.http.Context;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class RoutingKeyExtractorTest {
+  private final Context ctx = mock(Context.class);
+
+  @Test
+  public void testHeader() {
+    when(ctx.header("X-User-Id")).thenReturn("42");
+    assertThat(RoutingKeyExtractor.parse("header:X-User-Id").extract(ctx)).isEqualTo("42");
+    assertThat(RoutingKeyExtractor.parse("header:X-Other").extract(ctx)).isNull();
+  }
+
+  @Test
+  public void testJsonField() {
+    RoutingKeyExtractor extractor = RoutingKeyExtractor.parse("json:user");
+    assertThat(extractFromBody(extractor, "{\"user\": \"jason\", \"id\": 1}")).isEqualTo("jason");
+    assertThat(extractFromBody(extractor, "{\"user\": 7}")).isEqualTo("7");
+    assertThat(extractFromBody(extractor, "{\"id\": 1}")).isNull();
+    assertThat(extractFromBody(extractor, "[\"jason\"]")).isNull();
+    assertThat(extractFromBody(extractor, "{not json")).isNull();
+  }
+
+  @Test
+  public void testOrElse_fallsBackToClientIp() {
+    when(ctx.header("X-Api-Key")).thenReturn("key-1");
+    when(ctx.ip()).thenReturn("10.0.0.1");
+    RoutingKeyExtractor extractor =
+        RoutingKeyExtractor.parse("header:X-Api-Key").orElse(RoutingKeyExtractor.CLIENT_IP);
+    assertThat(extractor.extract(ctx)).isEqualTo("key-1");
+
+    when(ctx.header("X-Api-Key")).thenReturn(null);
+    assertThat(extractor.extract(ctx)).isEqualTo("10.0.0.1");
+  }
+
+  @Test
+  public void testMalformedSource_throws() {
+    assertThrows(IllegalArgumentException.class, () -> RoutingKeyExtractor.parse("header"));
+    assertThrows(IllegalArgumentException.class, () -> RoutingKeyExtractor.parse("json:"));
+    assertThrows(IllegalArgumentException.class, () -> RoutingKeyExtractor.parse("query:id"));
+  }
+
+  private String extractFromBody(RoutingKeyExtractor extractor, String body) {
+    when(ctx.bodyAsBytes()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+    return extractor.extract(ctx);
+  }
+}
@@ -0,0 +1,350 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.javalin.Javalin;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+public class RoutingServiceAppTest {
+  private final HttpClient client = HttpClient.newHttpClient();
+  private final MockWebServer echo = new MockWebServer();
+  private final MockWebServer users = new MockWebServer();
+  private RoutingServiceApp app;
+  private Javalin router;
+
+  @TempDir Path directory;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    echo.setDispatcher(new EchoPathDispatcher());
+    users.setDispatcher(new EchoPathDispatcher());
+    echo.start();
+    users.start();
+    Path routes = directory.resolve("routes");
+    Files.writeString(
+        routes,
+        "pool users " + users.url("/") + " --max-retries=0\n"
+            + "route GET /users/** users\n"
+            + "route DELETE /users/:id users\n"
+            + "route OPTIONS /users/** users\n"
+            + "pool slow " + users.url("/") + " --async-dispatch=true --upstream-timeout-ms=5000\n"
+            + "route GET /slow/** slow\n");
+    app =
+        new RoutingServiceApp(
+            List.of(HostSpec.of(echo.url("/").uri())),
+            RouterConfig.builder().setRoutesFile(routes).build());
+    router = app.app().start(0);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    router.stop();
+    echo.shutdown();
+    users.shutdown();
+  }
+
+  @Test
+  public void testRoutesToPoolWithPathAndQuery() throws Exception {
+    var response = send("GET", "/users/42?fields=name", "");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo("users GET /users/42?fields=name");
+  }
+
+  @Test
+  public void testRoutesMethodToPool() throws Exception {
+    assertThat(send("DELETE", "/users/42", "").body()).isEqualTo("users DELETE /users/42");
+  }
+
+  @Test
+  public void testRoutesHeadAndOptions() throws Exception {
+    var head = send("HEAD", "/users/42", "");
+    assertThat(head.statusCode()).isEqualTo(200);
+    assertThat(head.headers().firstValue("X-Method").orElse("")).isEqualTo("HEAD");
+    assertThat(send("OPTIONS", "/users/42", "").body()).isEqualTo("users OPTIONS /users/42");
+  }
+
+  @Test
+  public void testDefaultRouteSendsToEcho() throws Exception {
+    assertThat(send("POST", "/", "\"hi\"").body()).isEqualTo("echo POST /echo \"hi\"");
+  }
+
+  @Test
+  public void testForwardsEndToEndHeadersBothWays() throws Exception {
+    MockWebServer host = new MockWebServer();
+    host.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            if (request.getPath().equals("/healthz")) {
+              return new MockResponse();
+            }
+            return new MockResponse()
+                .setResponseCode(201)
+                .setHeader("Content-Type", "application/xml")
+                .addHeader("Set-Cookie", "a=1")
+                .addHeader("Set-Cookie", "b=2")
+                .setHeader("Connection", "X-Hop")
+                .setHeader("X-Hop", "1")
+                .setBody("<created/>");
+          }
+        });
+    host.start();
+    Javalin proxy =
+        new RoutingServiceApp(List.of(HostSpec.of(host.url("/").uri())), RouterConfig.defaults())
+            .app()
+            .start(0);
+    try {
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create("http://localhost:" + proxy.port() + "/"))
+              .header("Content-Type", "text/plain")
+              .header("X-Request-Id", "42")
+              .header("Proxy-Authorization", "Basic c2VjcmV0")
+              .POST(HttpRequest.BodyPublishers.ofString("hi"))
+              .build();
+      var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+      assertThat(response.statusCode()).isEqualTo(201);
+      assertThat(response.body()).isEqualTo("<created/>");
+      assertThat(response.headers().firstValue("Content-Type").orElse(""))
+          .startsWith("application/xml");
+      assertThat(response.headers().allValues("Set-Cookie")).containsExactly("a=1", "b=2");
+      assertThat(response.headers().firstValue("X-Hop").isPresent()).isFalse();
+      RecordedRequest forwarded = host.takeRequest();
+      while (!forwarded.getPath().equals("/echo")) {
+        forwarded = host.takeRequest();
+      }
+      assertThat(forwarded.getHeader("Content-Type")).isEqualTo("text/plain");
+      assertThat(forwarded.getHeader("X-Request-Id")).isEqualTo("42");
+      assertThat(forwarded.getHeader("Proxy-Authorization")).isNull();
+    } finally {
+      proxy.stop();
+      host.shutdown();
+    }
+  }
+
+  @Test
+  public void testUnroutedRequestsGet404() throws Exception {
+    assertThat(send("GET", "/orders", "").statusCode()).isEqualTo(404);
+    assertThat(send("POST", "/users/42", "{}").statusCode()).isEqualTo(404);
+    assertThat(send("GET", "/metrics", "").body()).contains("router_unrouted_total 2");
+  }
+
+  @Test
+  public void testReadyOnceWarmedUp() throws Exception {
+    awaitReady(router);
+
+    assertThat(send("GET", "/livez", "").statusCode()).isEqualTo(200);
+    assertThat(send("GET", "/readyz", "").statusCode()).isEqualTo(200);
+  }
+
+  /**
+   * Cold start: requests sent as soon as the router is ready must not find a dead host in rotation,
+   * which without retries would fail every request sent to it.
+   */
+  @Test
+  public void testColdStart_deadHostIsOutOfRotationOnceReady() throws Exception {
+    URI dead;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      dead = URI.create("http://localhost:" + socket.getLocalPort());
+    }
+    Javalin cold =
+        new RoutingServiceApp(
+                List.of(HostSpec.of(dead), HostSpec.of(echo.url("/").uri())),
+                RouterConfig.builder().setMaxRetries(0).build())
+            .app()
+            .start(0);
+    try {
+      awaitReady(cold);
+      List<Long> latencies = new ArrayList<>();
+      int errors = 0;
+      for (int i = 0; i < 200; ++i) {
+        long startNanos = System.nanoTime();
+        if (send(cold, "POST", "/", "\"hi\"").statusCode() != 200) {
+          ++errors;
+        }
+        latencies.add(System.nanoTime() - startNanos);
+      }
+      Collections.sort(latencies);
+      Duration p99 = Duration.ofNanos(latencies.get(latencies.size() * 99 / 100));
+      LoggerFactory.getLogger(RoutingServiceAppTest.class).info("Cold-start p99: " + p99);
+
+      assertThat(errors).isEqualTo(0);
+      assertThat(p99).isLessThan(Duration.ofSeconds(1));
+    } finally {
+      cold.stop();
+    }
+  }
+
+  /** Restart: every request the router took before shutting down gets its response. */
+  @Test
+  public void testShutdown_drainsRequestsInFlight() throws Exception {
+    awaitReady(router);
+    List<CompletableFuture<HttpResponse<String>>> inFlight = new ArrayList<>();
+    for (int i = 0; i < 20; ++i) {
+      inFlight.add(sendAsync(router, "GET", "/slow/" + i));
+    }
+    while (app.lifecycle().inFlight() < inFlight.size()) {
+      Thread.sleep(1);
+    }
+
+    var shutdown = CompletableFuture.runAsync(app::shutdown);
+    while (app.lifecycle().state() != Lifecycle.State.DRAINING) {
+      Thread.sleep(1);
+    }
+    var late = send("GET", "/users/1", "");
+    shutdown.get(10, TimeUnit.SECONDS);
+
+    assertThat(late.statusCode()).isEqualTo(503);
+    assertThat(late.headers().firstValue("Connection").orElse("")).isEqualTo("close");
+    int errors = 0;
+    for (var response : inFlight) {
+      if (response.join().statusCode() != 200) {
+        ++errors;
+      }
+    }
+    assertThat(errors).isEqualTo(0);
+  }
+
+  @Test
+  public void testRateLimitsEachTenant() throws Exception {
+    RouterConfig.Builder config = RouterConfig.builder();
+    config.setFlag("tenant-key", "header:X-Api-Key");
+    config.setFlag("tenant-rate", "0.1");
+    config.setFlag("tenant-burst", "2");
+    Javalin limited =
+        new RoutingServiceApp(List.of(HostSpec.of(echo.url("/").uri())), config.build())
+            .app()
+            .start(0);
+    try {
+      assertThat(sendAs(limited, "noisy").statusCode()).isEqualTo(200);
+      assertThat(sendAs(limited, "noisy").statusCode()).isEqualTo(200);
+      HttpResponse<String> limitedResponse = sendAs(limited, "noisy");
+      assertThat(limitedResponse.statusCode()).isEqualTo(429);
+      assertThat(limitedResponse.headers().firstValue("Retry-After").orElse(""))
+          .isEqualTo("10");
+
+      assertThat(sendAs(limited, "quiet").statusCode()).isEqualTo(200);
+      // Requests without a key are limited by client IP.
+      assertThat(sendAs(limited, null).statusCode()).isEqualTo(200);
+    } finally {
+      limited.stop();
+    }
+  }
+
+  @Test
+  public void testRateLimitsByJsonTenantKey_forwardsTheBody() throws Exception {
+    RouterConfig.Builder config = RouterConfig.builder();
+    config.setFlag("tenant-key", "json:tenant");
+    config.setFlag("tenant-rate", "0.1");
+    config.setFlag("tenant-burst", "1");
+    Javalin limited =
+        new RoutingServiceApp(List.of(HostSpec.of(echo.url("/").uri())), config.build())
+            .app()
+            .start(0);
+    try {
+      String body = "{\"tenant\":\"noisy\"}";
+      HttpResponse<String> response = send(limited, "POST", "/", body);
+      assertThat(response.statusCode()).isEqualTo(200);
+      assertThat(response.body()).isEqualTo("echo POST /echo " + body);
+      assertThat(send(limited, "POST", "/", body).statusCode()).isEqualTo(429);
+      assertThat(send(limited, "POST", "/", "{\"tenant\":\"quiet\"}").statusCode())
+          .isEqualTo(200);
+    } finally {
+      limited.stop();
+    }
+  }
+
+  private HttpResponse<String> sendAs(Javalin app, String apiKey) throws Exception {
+    HttpRequest.Builder request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/"))
+            .POST(HttpRequest.BodyPublishers.ofString("\"hi\""));
+    if (apiKey != null) {
+      request.header("X-Api-Key", apiKey);
+    }
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private void awaitReady(Javalin app) throws Exception {
+    long startNanos = System.nanoTime();
+    while (send(app, "GET", "/readyz", "").statusCode() != 200) {
+      assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+          .isLessThan(Duration.ofSeconds(10));
+      Thread.sleep(10);
+    }
+  }
+
+  private HttpResponse<String> send(String method, String pathAndQuery, String body)
+      throws Exception {
+    return send(router, method, pathAndQuery, body);
+  }
+
+  private CompletableFuture<HttpResponse<String>> sendAsync(
+      Javalin app, String method, String pathAndQuery) {
+    return client.sendAsync(
+        HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + pathAndQuery))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  private HttpResponse<String> send(Javalin app, String method, String pathAndQuery, String body)
+      throws Exception {
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + pathAndQuery))
+            .method(
+                method,
+                body.isEmpty()
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  /**
+   * Answers health checks, HEAD requests with no body, and every other request with the pool,
+   * method, path and body.
+   */
+  private class EchoPathDispatcher extends Dispatcher {
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      if (request.getPath().equals("/healthz")) {
+        return new MockResponse();
+      }
+      if (request.getMethod().equals("HEAD")) {
+        return new MockResponse().setHeader("X-Method", "HEAD");
+      }
+      String pool = request.getRequestUrl().port() == users.getPort() ? "users" : "echo";
+      String body = request.getBody().readUtf8();
+      MockResponse response = new MockResponse();
+      if (request.getPath().startsWith("/slow")) {
+        response.setHeadersDelay(300, TimeUnit.MILLISECONDS);
+      }
+      return response
+          .setBody(
+              pool + " " + request.getMethod() + " " + request.getPath()
+                  + (body.isEmpty() ? "" : " " + body));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package org.ccwang.routing;
+
+import com.google.common.base.Strings;
+import io.javalin.Javalin;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.echo.SimpleServiceApp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Proxies payloads of different sizes through a {@link RoutingServiceApp} to a {@link
+ * SimpleServiceApp}, both in-process, with and without {@code --stream-bodies}. Run {@link #main}
+ * to get the allocation per request ({@code gc.alloc.rate.norm}) from JMH's GC profiler. The echo
+ * backend and the client allocate the same in both modes, so the difference is the router's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@State(Scope.Benchmark)
+public class StreamingBodiesBenchmark {
+  @Param({"1024", "65536", "4194304"})
+  public int payloadBytes;
+
+  @Param({"false", "true"})
+  public boolean streamBodies;
+
+  private Javalin backend;
+  private Javalin router;
+  private HttpClient client;
+  private HttpRequest request;
+
+  @Setup
+  public void setup() {
+    backend = new SimpleServiceApp().app().start(0);
+    router =
+        new RoutingServiceApp(
+                List.of(HostSpec.of(URI.create("http://localhost:" + backend.port()))),
+                RouterConfig.builder()
+                    .setStreamBodies(streamBodies)
+                    .setMaxRequestBytes(2L * payloadBytes)
+                    // The default is far too short for the 4MB payloads
+                    .setUpstreamTimeout(Duration.ofSeconds(10))
+                    .build())
+            .app()
+            .start(0);
+    client = HttpClient.newHttpClient();
+    // A JSON string of the requested size
+    byte[] payload =
+        ("\"" + Strings.repeat("x", payloadBytes - 2) + "\"").getBytes(StandardCharsets.UTF_8);
+    request =
+        HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:" + router.port() + "/"))
+            .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    router.stop();
+    backend.stop();
+  }
+
+  @Benchmark
+  public int proxy() throws Exception {
+    return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(StreamingBodiesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
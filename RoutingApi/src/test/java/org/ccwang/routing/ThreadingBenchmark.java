@@ -0,0 +1,150 @@
+package org.ccwang.routing;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.javalin.Javalin;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sends waves of concurrent requests, each over its own connection, through a {@link
+ * RoutingServiceApp} to a backend that takes {@link #BACKEND_LATENCY_MS} to answer, with every
+ * {@link ThreadingMode} and both dispatch modes. A wave takes at least the backend latency; with
+ * blocking dispatch on platform threads it takes that once per batch of Jetty's 250 threads.
+ * Run {@link #main} for the time per wave and the allocation per wave.
+ *
+ * <p>The backend is the JDK's HTTP server on virtual threads, so that it is never the bottleneck.
+ * Client, router and backend share one JVM, which then holds four sockets per connection: 10000
+ * connections need {@code ulimit -n} well above 40000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@State(Scope.Benchmark)
+public class ThreadingBenchmark {
+  private static final int BACKEND_LATENCY_MS = 50;
+  private static final String JSON_PAYLOAD =
+      new Gson().toJson(List.of("jason", "michael", "robert"));
+
+  @Param({"PLATFORM", "VIRTUAL"})
+  public ThreadingMode threading;
+
+  @Param({"false", "true"})
+  public boolean asyncDispatch;
+
+  @Param({"10000"})
+  public int connections;
+
+  private HttpServer backend;
+  private ExecutorService backendExecutor;
+  private Javalin router;
+  private ExecutorService clientExecutor;
+  private HttpClient client;
+  private HttpRequest request;
+
+  @Setup
+  public void setup() throws Exception {
+    backend = HttpServer.create(new InetSocketAddress("localhost", 0), connections);
+    backend.createContext("/echo", ThreadingBenchmark::echo);
+    backend.createContext("/healthz", exchange -> exchange.sendResponseHeaders(200, -1));
+    backendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    backend.setExecutor(backendExecutor);
+    backend.start();
+
+    URI uri = URI.create("http://localhost:" + backend.getAddress().getPort());
+    router =
+        new RoutingServiceApp(
+                List.of(HostSpec.of(uri)),
+                RouterConfig.builder()
+                    .setThreading(threading)
+                    .setAsyncDispatch(asyncDispatch)
+                    .setUpstreamTimeout(Duration.ofSeconds(30))
+                    .build())
+            .app()
+            .start(0);
+    // A few platform threads, so that the client neither competes for carriers with the router
+    // nor starts a thread per connection.
+    clientExecutor = Executors.newFixedThreadPool(4);
+    client = HttpClient.newBuilder().executor(clientExecutor).build();
+    request =
+        HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:" + router.port() + "/"))
+            .POST(HttpRequest.BodyPublishers.ofString(JSON_PAYLOAD))
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    router.stop();
+    backend.stop(0);
+    backendExecutor.shutdownNow();
+    clientExecutor.shutdownNow();
+  }
+
+  /** Sends one wave of concurrent requests and waits for all of them. */
+  @Benchmark
+  public int wave() {
+    CompletableFuture<?>[] responses = new CompletableFuture<?>[connections];
+    for (int i = 0; i < connections; ++i) {
+      responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+    }
+    CompletableFuture.allOf(responses).join();
+    return responses.length;
+  }
+
+  private static void echo(HttpExchange exchange) throws IOException {
+    byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+    try {
+      Thread.sleep(BACKEND_LATENCY_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(ThreadingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,91 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.javalin.Javalin;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import org.ccwang.echo.SimpleServiceApp;
+import org.junit.jupiter.api.Test;
+
+public class ThreadingModeTest {
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @Test
+  public void testServerThreadPool_platform() throws Exception {
+    assertThat(handlerThreadIsVirtual(ThreadingMode.PLATFORM)).isEqualTo("false");
+  }
+
+  @Test
+  public void testServerThreadPool_virtual() throws Exception {
+    assertThat(handlerThreadIsVirtual(ThreadingMode.VIRTUAL)).isEqualTo("true");
+  }
+
+  @Test
+  public void testUpstreamExecutor() throws Exception {
+    ExecutorService platform = ThreadingMode.PLATFORM.upstreamExecutor("upstream", 1);
+    ExecutorService virtual = ThreadingMode.VIRTUAL.upstreamExecutor("upstream", 1);
+
+    assertThat(platform.submit(() -> Thread.currentThread().isVirtual()).get()).isFalse();
+    assertThat(virtual.submit(() -> Thread.currentThread().isVirtual()).get()).isTrue();
+    platform.shutdownNow();
+    virtual.shutdownNow();
+  }
+
+  @Test
+  public void testFromFlag() {
+    assertThat(ThreadingMode.fromFlag("virtual")).isEqualTo(ThreadingMode.VIRTUAL);
+  }
+
+  /** Reading a body must not pin the handler to its carrier while the client is still sending. */
+  @Test
+  public void testVirtual_proxiesLargeBodiesConcurrently() throws Exception {
+    Javalin backend = new SimpleServiceApp(ThreadingMode.VIRTUAL).app().start(0);
+    Javalin router =
+        new RoutingServiceApp(
+                List.of(HostSpec.of(URI.create("http://localhost:" + backend.port()))),
+                RouterConfig.builder()
+                    .setThreading(ThreadingMode.VIRTUAL)
+                    .setMaxRequestBytes(16 * 1024 * 1024)
+                    .setUpstreamTimeout(Duration.ofSeconds(10))
+                    .build())
+            .app()
+            .start(0);
+    String body = "\"" + "x".repeat(4 * 1024 * 1024) + "\"";
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + router.port() + "/"))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+
+    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+    }
+    for (var response : responses) {
+      assertThat(response.join().statusCode()).isEqualTo(200);
+      assertThat(response.join().body()).hasLength(body.length());
+    }
+    router.stop();
+    backend.stop();
+  }
+
+  private String handlerThreadIsVirtual(ThreadingMode threading) throws Exception {
+    Javalin app = new SimpleServiceApp(threading).app();
+    app.get("/thread", ctx -> ctx.result(Boolean.toString(Thread.currentThread().isVirtual())));
+    app.start(0);
+    try {
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/thread")).build();
+      return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    } finally {
+      app.stop();
+    }
+  }
+}
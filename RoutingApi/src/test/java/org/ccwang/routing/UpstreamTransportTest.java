@@ -0,0 +1,44 @@
+package org.ccwang.routing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamTransportTest {
+  @Test
+  public void testReusesConnections() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse().setResponseCode(200));
+    server.enqueue(new MockResponse().setResponseCode(200));
+    server.start();
+
+    try (UpstreamTransport transport = new UpstreamTransport(RouterConfig.defaults())) {
+      HttpRequest request = HttpRequest.newBuilder(server.url("/healthz").uri()).build();
+      transport.httpClient().send(request, HttpResponse.BodyHandlers.discarding());
+      transport.httpClient().send(request, HttpResponse.BodyHandlers.discarding());
+
+      assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+      // The second request went over the same connection
+      assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+    server.shutdown();
+  }
+
+  @Test
+  public void testProtocol() {
+    RouterConfig config =
+        RouterConfig.builder()
+            .setFlag("upstream-protocol", "h2c")
+            .setFlag("upstream-threads", "1")
+            .build();
+
+    try (UpstreamTransport transport = new UpstreamTransport(config)) {
+      assertThat(transport.httpClient().version()).isEqualTo(HttpClient.Version.HTTP_2);
+    }
+  }
+}
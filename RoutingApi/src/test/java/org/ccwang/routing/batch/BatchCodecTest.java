@@ -0,0 +1,37 @@
+package org.ccwang.routing.batch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class BatchCodecTest {
+  @Test
+  public void testRoundTrip() {
+    byte[] first = "[\"jason\"]".getBytes(StandardCharsets.UTF_8);
+    byte[] empty = new byte[0];
+
+    List<byte[]> bodies = BatchCodec.decode(BatchCodec.encode(List.of(first, empty, first)));
+
+    assertThat(bodies).hasSize(3);
+    assertThat(bodies.get(0)).isEqualTo(first);
+    assertThat(bodies.get(1)).isEqualTo(empty);
+    assertThat(bodies.get(2)).isEqualTo(first);
+    assertThat(BatchCodec.decode(new byte[0])).isEmpty();
+  }
+
+  @Test
+  public void testDecode_malformed() {
+    byte[] batch = BatchCodec.encode(List.of(new byte[] {1, 2, 3}));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BatchCodec.decode(Arrays.copyOf(batch, batch.length - 1)));
+    assertThrows(IllegalArgumentException.class, () -> BatchCodec.decode(new byte[] {0, 0}));
+    assertThrows(
+        IllegalArgumentException.class, () -> BatchCodec.decode(new byte[] {-1, -1, -1, -1}));
+  }
+}
@@ -0,0 +1,146 @@
+package org.ccwang.routing.batch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamBatcherTest {
+  private static final Function<byte[], String> UTF_8 =
+      body -> new String(body, StandardCharsets.UTF_8);
+
+  private final MockWebServer server = new MockWebServer();
+  /** The first batch is held until released, so that later requests queue up behind it. */
+  private final CountDownLatch releaseFirst = new CountDownLatch(1);
+  private final AtomicInteger dispatched = new AtomicInteger();
+
+  private URI uri;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (dispatched.getAndIncrement() == 0) {
+              releaseFirst.await(5, TimeUnit.SECONDS);
+            }
+            return new MockResponse().setBody(request.getBody());
+          }
+        });
+    server.start();
+    uri = server.url("/").uri();
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    releaseFirst.countDown();
+    server.shutdown();
+  }
+
+  @Test
+  public void testIdleHostIsSentRequestRightAway() throws Exception {
+    releaseFirst.countDown();
+    UpstreamBatcher batcher = newBatcher(64, Duration.ofSeconds(10));
+
+    HttpResponse<String> response =
+        batcher.send(uri, bytes("jason"), UTF_8).get(5, TimeUnit.SECONDS);
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo("jason");
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getPath()).isEqualTo(UpstreamBatcher.BATCH_PATH);
+    assertThat(request.getHeader("Content-Type")).isEqualTo(BatchCodec.CONTENT_TYPE);
+  }
+
+  @Test
+  public void testRequestsQueuedBehindOutstandingBatchAreSentTogether() throws Exception {
+    UpstreamBatcher batcher = newBatcher(64, Duration.ofSeconds(10));
+    var first = batcher.send(uri, bytes("first"), UTF_8);
+    server.takeRequest();
+
+    List<CompletableFuture<HttpResponse<String>>> queued = new ArrayList<>();
+    for (String name : List.of("jason", "michael", "robert")) {
+      queued.add(batcher.send(uri, bytes(name), UTF_8));
+    }
+    releaseFirst.countDown();
+
+    assertThat(first.get(5, TimeUnit.SECONDS).body()).isEqualTo("first");
+    assertThat(queued.get(0).get(5, TimeUnit.SECONDS).body()).isEqualTo("jason");
+    assertThat(queued.get(1).get(5, TimeUnit.SECONDS).body()).isEqualTo("michael");
+    assertThat(queued.get(2).get(5, TimeUnit.SECONDS).body()).isEqualTo("robert");
+    RecordedRequest batch = server.takeRequest();
+    assertThat(BatchCodec.decode(batch.getBody().readByteArray())).hasSize(3);
+    assertThat(server.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFullBatchIsSentWithoutWaiting() throws Exception {
+    UpstreamBatcher batcher = newBatcher(2, Duration.ofSeconds(10));
+    var first = batcher.send(uri, bytes("first"), UTF_8);
+    server.takeRequest();
+
+    var second = batcher.send(uri, bytes("jason"), UTF_8);
+    var third = batcher.send(uri, bytes("michael"), UTF_8);
+
+    assertThat(second.get(5, TimeUnit.SECONDS).body()).isEqualTo("jason");
+    assertThat(third.get(5, TimeUnit.SECONDS).body()).isEqualTo("michael");
+    assertThat(first.isDone()).isFalse();
+  }
+
+  @Test
+  public void testBatchIsSentOnceTheWindowPasses() throws Exception {
+    UpstreamBatcher batcher = newBatcher(64, Duration.ofMillis(20));
+    var first = batcher.send(uri, bytes("first"), UTF_8);
+    server.takeRequest();
+
+    var second = batcher.send(uri, bytes("jason"), UTF_8);
+
+    assertThat(second.get(5, TimeUnit.SECONDS).body()).isEqualTo("jason");
+    assertThat(first.isDone()).isFalse();
+  }
+
+  @Test
+  public void testFailedBatchFailsEveryRequest() throws Exception {
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            return new MockResponse().setResponseCode(500);
+          }
+        });
+    UpstreamBatcher batcher = newBatcher(64, Duration.ofSeconds(10));
+
+    HttpResponse<String> response =
+        batcher.send(uri, bytes("jason"), UTF_8).get(5, TimeUnit.SECONDS);
+
+    assertThat(response.statusCode()).isEqualTo(500);
+    assertThat(response.body()).isEmpty();
+  }
+
+  private UpstreamBatcher newBatcher(int maxBatchSize, Duration window) {
+    return new UpstreamBatcher(
+        HttpClient.newHttpClient(), Duration.ofSeconds(5), maxBatchSize, window);
+  }
+
+  private static byte[] bytes(String body) {
+    return body.getBytes(StandardCharsets.UTF_8);
+  }
+}
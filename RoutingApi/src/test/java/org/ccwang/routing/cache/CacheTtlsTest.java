@@ -0,0 +1,36 @@
+package org.ccwang.routing.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class CacheTtlsTest {
+  @Test
+  public void testLongestPrefixWins() {
+    CacheTtls ttls = CacheTtls.parse("/=5000,/quotes/live=0,/quotes=500");
+
+    assertThat(ttls.ttl("/")).isEqualTo(Duration.ofSeconds(5));
+    assertThat(ttls.ttl("/users")).isEqualTo(Duration.ofSeconds(5));
+    assertThat(ttls.ttl("/quotes/eur")).isEqualTo(Duration.ofMillis(500));
+    assertThat(ttls.ttl("/quotes/live")).isEqualTo(Duration.ZERO);
+    assertThat(ttls.isEmpty()).isFalse();
+  }
+
+  @Test
+  public void testUnmatchedPathsAreNotCached() {
+    assertThat(CacheTtls.parse("/quotes=500").ttl("/")).isEqualTo(Duration.ZERO);
+    assertThat(CacheTtls.NONE.ttl("/")).isEqualTo(Duration.ZERO);
+    assertThat(CacheTtls.NONE.isEmpty()).isTrue();
+    assertThat(CacheTtls.parse("/=0").isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testParse_malformed() {
+    assertThrows(IllegalArgumentException.class, () -> CacheTtls.parse("quotes=500"));
+    assertThrows(IllegalArgumentException.class, () -> CacheTtls.parse("/quotes"));
+    assertThrows(IllegalArgumentException.class, () -> CacheTtls.parse("/=-1"));
+    assertThrows(IllegalArgumentException.class, () -> CacheTtls.parse("/=1,/=2"));
+  }
+}
@@ -0,0 +1,182 @@
+package org.ccwang.routing.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableListMultimap;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.ccwang.routing.metrics.RouterMetrics;
+import org.junit.jupiter.api.Test;
+
+public class ResponseCacheTest {
+  private static final byte[] BODY = "[\"jason\"]".getBytes(StandardCharsets.UTF_8);
+
+  private final RouterMetrics metrics = new RouterMetrics();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void testIdenticalRequestIsAnsweredFromCache() {
+    ResponseCache cache = newCache("/=60000", 100, 1 << 20);
+    Context ctx = mockContext("/", null);
+
+    assertThat(get(cache, ctx, BODY).join().body()).isEqualTo(BODY);
+    assertThat(get(cache, ctx, BODY).join().body()).isEqualTo(BODY);
+
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(metrics.scrape()).contains("router_cache_lookups_total{result=\"miss\"} 1\n");
+    assertThat(metrics.scrape()).contains("router_cache_lookups_total{result=\"hit\"} 1\n");
+  }
+
+  @Test
+  public void testDifferentBodyPathOrKeyHeaderIsNotAnsweredFromCache() {
+    ResponseCache cache = newCache("/=60000", 100, 1 << 20);
+
+    get(cache, mockContext("/", "a"), BODY).join();
+    get(cache, mockContext("/", "a"), "[]".getBytes(StandardCharsets.UTF_8)).join();
+    get(cache, mockContext("/other", "a"), BODY).join();
+    get(cache, mockContext("/", "b"), BODY).join();
+    get(cache, mockContext("/", ""), BODY).join();
+    get(cache, mockContext("/", null), BODY).join();
+
+    assertThat(loads.get()).isEqualTo(6);
+  }
+
+  @Test
+  public void testConcurrentIdenticalRequestsShareOneLoad() {
+    ResponseCache cache = newCache("/=60000", 100, 1 << 20);
+    Context ctx = mockContext("/", null);
+    var upstream = new CompletableFuture<CachedResponse>();
+
+    CompletableFuture<CachedResponse> first = cache.get(ctx, BODY, load(upstream)).orElseThrow();
+    CompletableFuture<CachedResponse> second = cache.get(ctx, BODY, load(upstream)).orElseThrow();
+    assertThat(second.isDone()).isFalse();
+    upstream.complete(CachedResponse.ok(BODY, ImmutableListMultimap.of()));
+
+    assertThat(first.join().body()).isEqualTo(BODY);
+    assertThat(second.join().body()).isEqualTo(BODY);
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(metrics.scrape()).contains("router_cache_lookups_total{result=\"coalesced\"} 1\n");
+  }
+
+  @Test
+  public void testUnavailableIsSharedButNotCached() {
+    ResponseCache cache = newCache("/=60000", 100, 1 << 20);
+    Context ctx = mockContext("/", null);
+    var upstream = new CompletableFuture<CachedResponse>();
+
+    CompletableFuture<CachedResponse> first = cache.get(ctx, BODY, load(upstream)).orElseThrow();
+    CompletableFuture<CachedResponse> second = cache.get(ctx, BODY, load(upstream)).orElseThrow();
+    upstream.complete(CachedResponse.status(503));
+
+    assertThat(first.join().status()).isEqualTo(503);
+    assertThat(second.join().status()).isEqualTo(503);
+    assertThat(get(cache, ctx, BODY).join().status()).isEqualTo(200);
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testUncachedRouteIsNotLoaded() {
+    ResponseCache cache = newCache("/quotes=60000,/quotes/live=0", 100, 1 << 20);
+
+    assertThat(cache.get(mockContext("/", null), BODY, this::loadOk).isPresent()).isFalse();
+    assertThat(cache.get(mockContext("/quotes/live", null), BODY, this::loadOk).isPresent())
+        .isFalse();
+    assertThat(loads.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMethodsThatChangeTheHostAreNotLoaded() {
+    ResponseCache cache = newCache("/=60000", 100, 1 << 20);
+
+    for (HandlerType method : List.of(HandlerType.PUT, HandlerType.PATCH, HandlerType.DELETE)) {
+      Context ctx = mockContext("/", null);
+      when(ctx.method()).thenReturn(method);
+      assertThat(cache.get(ctx, BODY, this::loadOk).isPresent()).isFalse();
+    }
+    Context get = mockContext("/", null);
+    when(get.method()).thenReturn(HandlerType.GET);
+    assertThat(cache.get(get, BODY, this::loadOk).isPresent()).isTrue();
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEntriesExpireAfterTheirTtl() throws Exception {
+    ResponseCache cache = newCache("/=50", 100, 1 << 20);
+    Context ctx = mockContext("/", null);
+
+    get(cache, ctx, BODY).join();
+    Thread.sleep(200);
+    get(cache, ctx, BODY).join();
+
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testEntryCountIsBounded() {
+    ResponseCache cache = newCache("/=60000", 10, 1 << 20);
+
+    for (int i = 0; i < 100; ++i) {
+      get(cache, mockContext("/" + i, null), BODY).join();
+    }
+
+    assertThat(cache.size()).isAtMost(10);
+  }
+
+  @Test
+  public void testBytesAreBounded() {
+    ResponseCache cache = newCache("/=60000", 1000, 10 * 1024);
+    byte[] large = new byte[1024];
+
+    for (int i = 0; i < 100; ++i) {
+      get(cache, mockContext("/" + i, null), large).join();
+    }
+
+    assertThat(cache.size()).isAtMost(10);
+  }
+
+  private ResponseCache newCache(String ttls, int maxEntries, long maxBytes) {
+    return new ResponseCache(
+        CacheTtls.parse(ttls), List.of("Authorization"), maxEntries, maxBytes, metrics);
+  }
+
+  /** Looks up a request whose upstream answers with the request body. */
+  private CompletableFuture<CachedResponse> get(ResponseCache cache, Context ctx, byte[] body) {
+    return cache
+        .get(
+            ctx,
+            body,
+            () -> {
+              loads.incrementAndGet();
+              return CompletableFuture.completedFuture(
+                  CachedResponse.ok(body, ImmutableListMultimap.of()));
+            })
+        .orElseThrow();
+  }
+
+  private CompletableFuture<CachedResponse> loadOk() {
+    loads.incrementAndGet();
+    return CompletableFuture.completedFuture(CachedResponse.ok(BODY, ImmutableListMultimap.of()));
+  }
+
+  private Supplier<CompletableFuture<CachedResponse>> load(
+      CompletableFuture<CachedResponse> upstream) {
+    return () -> {
+      loads.incrementAndGet();
+      return upstream;
+    };
+  }
+
+  private static Context mockContext(String path, String authorization) {
+    Context ctx = mock(Context.class);
+    when(ctx.path()).thenReturn(path);
+    when(ctx.header("Authorization")).thenReturn(authorization);
+    return ctx;
+  }
+}
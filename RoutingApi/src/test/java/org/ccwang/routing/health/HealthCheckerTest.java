@@ -0,0 +1,182 @@
+package org.ccwang.routing.health;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class HealthCheckerTest {
+  private final List<MockWebServer> servers = new ArrayList<>();
+
+  @AfterEach
+  public void shutdownServers() throws IOException {
+    for (MockWebServer server : servers) {
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void testProbeAll_probesEveryHost() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris, 1, 1)) {
+      enqueue(200, 200);
+      checker.probeAll().join();
+
+      for (MockWebServer server : servers) {
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertThat(request.getRequestUrl()).isEqualTo(server.url("/healthz"));
+      }
+      assertThat(checker.healthyHosts()).containsExactlyElementsIn(uris).inOrder();
+    }
+  }
+
+  @Test
+  public void testUnhealthyThreshold_requiresConsecutiveFailures() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris, 1, 2)) {
+      enqueue(200, 503);
+      checker.probeAll().join();
+      // A single failure is tolerated
+      assertThat(checker.healthyHosts()).containsExactlyElementsIn(uris);
+
+      enqueue(200, 503);
+      checker.probeAll().join();
+      assertThat(checker.healthyHosts()).containsExactly(uris.get(0));
+    }
+  }
+
+  @Test
+  public void testHealthyThreshold_requiresConsecutiveSuccesses() throws Exception {
+    List<URI> uris = setupMockServers(1);
+    try (HealthChecker checker = newHealthChecker(uris, 2, 1)) {
+      enqueue(503);
+      checker.probeAll().join();
+      assertThat(checker.healthyHosts()).isEmpty();
+
+      enqueue(200);
+      checker.probeAll().join();
+      assertThat(checker.healthyHosts()).isEmpty();
+
+      enqueue(200);
+      checker.probeAll().join();
+      assertThat(checker.healthyHosts()).containsExactly(uris.get(0));
+    }
+  }
+
+  @Test
+  public void testUnreachableHost_isMarkedUnhealthy() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    servers.get(1).shutdown();
+    try (HealthChecker checker = newHealthChecker(uris, 1, 1)) {
+      enqueue(200);
+      checker.probeAll().join();
+      assertThat(checker.healthyHosts()).containsExactly(uris.get(0));
+    }
+  }
+
+  @Test
+  public void testListener_receivesSnapshotsOnChange() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris, 1, 1)) {
+      List<ImmutableSet<URI>> snapshots = new ArrayList<>();
+      checker.addListener(snapshots::add);
+
+      enqueue(200, 503);
+      checker.probeAll().join();
+      // No change, no new snapshot
+      enqueue(200, 503);
+      checker.probeAll().join();
+
+      assertThat(snapshots)
+          .containsExactly(ImmutableSet.copyOf(uris), ImmutableSet.of(uris.get(0)))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testProbeListener_isToldEveryProbe() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris, 1, 1)) {
+      List<String> probes = new ArrayList<>();
+      checker.addProbeListener((uri, success) -> probes.add(uri + " " + success));
+
+      enqueue(200, 503);
+      checker.probeAll().join();
+
+      assertThat(probes).containsExactly(uris.get(0) + " true", uris.get(1) + " false");
+    }
+  }
+
+  @Test
+  public void testMembershipChange_probesNewHostsAndForgetsOldOnes() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris.subList(0, 1), 1, 1)) {
+      checker.onMembershipChanged(ImmutableList.of(HostSpec.of(uris.get(1))));
+      // Hosts join healthy
+      assertThat(checker.healthyHosts()).containsExactly(uris.get(1));
+
+      servers.get(1).enqueue(new MockResponse().setResponseCode(503));
+      checker.probeAll().join();
+
+      assertThat(checker.healthyHosts()).isEmpty();
+      assertThat(servers.get(0).getRequestCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testWarmUp_settlesHealthAndOpensConnections() throws Exception {
+    List<URI> uris = setupMockServers(2);
+    try (HealthChecker checker = newHealthChecker(uris, 2, 3)) {
+      for (int i = 0; i < 3; ++i) {
+        enqueue(200, 503);
+      }
+      checker.warmUp(3, Duration.ofSeconds(5)).join();
+
+      // Neither threshold applies to warm-up.
+      assertThat(checker.healthyHosts()).containsExactly(uris.get(0));
+      int connections = 0;
+      for (int i = 0; i < 3; ++i) {
+        if (servers.get(0).takeRequest(1, TimeUnit.SECONDS).getSequenceNumber() == 0) {
+          ++connections;
+        }
+      }
+      assertThat(connections).isEqualTo(3);
+    }
+  }
+
+  private HealthChecker newHealthChecker(
+      List<URI> uris, int healthyThreshold, int unhealthyThreshold) {
+    return new HealthChecker(
+        uris, Duration.ofMinutes(1), Duration.ofSeconds(1), healthyThreshold, unhealthyThreshold);
+  }
+
+  private List<URI> setupMockServers(int numServers) throws IOException {
+    ImmutableList.Builder<URI> uris = ImmutableList.builder();
+    for (int i = 0; i < numServers; ++i) {
+      MockWebServer server = new MockWebServer();
+      server.start();
+      servers.add(server);
+      uris.add(server.url("/").uri());
+    }
+    return uris.build();
+  }
+
+  /** Schedules one health check response per server, in order. */
+  private void enqueue(int... statusCodes) {
+    for (int i = 0; i < statusCodes.length; ++i) {
+      servers.get(i).enqueue(new MockResponse().setResponseCode(statusCodes[i]));
+    }
+  }
+}
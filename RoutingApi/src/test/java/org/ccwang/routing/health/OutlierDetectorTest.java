@@ -0,0 +1,131 @@
+package org.ccwang.routing.health;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
+
+public class OutlierDetectorTest {
+  private static final URI HOST_1 = URI.create("http://host1");
+  private static final URI HOST_2 = URI.create("http://host2");
+  private static final URI HOST_3 = URI.create("http://host3");
+  private static final List<URI> HOSTS = List.of(HOST_1, HOST_2, HOST_3);
+
+  @Test
+  public void testEjectsAfterConsecutiveFailures() {
+    try (OutlierDetector detector = newDetector(Duration.ofMinutes(1), 100)) {
+      AtomicReference<ImmutableSet<URI>> published = new AtomicReference<>();
+      detector.addListener(published::set);
+
+      detector.onRequestOutcome(HOST_2, false);
+      detector.onRequestOutcome(HOST_2, false);
+      // A success resets the count
+      detector.onRequestOutcome(HOST_2, true);
+      detector.onRequestOutcome(HOST_2, false);
+      detector.onRequestOutcome(HOST_2, false);
+      assertThat(published.get()).containsExactly(HOST_1, HOST_2, HOST_3).inOrder();
+
+      detector.onRequestOutcome(HOST_2, false);
+      assertThat(published.get()).containsExactly(HOST_1, HOST_3).inOrder();
+    }
+  }
+
+  @Test
+  public void testHalfOpen_successReadmits() throws Exception {
+    try (OutlierDetector detector = newDetector(Duration.ofMillis(50), 100)) {
+      eject(detector, HOST_1);
+      assertThat(detector.healthyHosts()).doesNotContain(HOST_1);
+
+      awaitHealthy(detector, HOST_1);
+      detector.onRequestOutcome(HOST_1, true);
+      // Once readmitted, a single failure is tolerated again
+      detector.onRequestOutcome(HOST_1, false);
+      assertThat(detector.healthyHosts()).contains(HOST_1);
+    }
+  }
+
+  @Test
+  public void testHalfOpen_failureEjectsAgainForLonger() throws Exception {
+    try (OutlierDetector detector = newDetector(Duration.ofMillis(100), 100)) {
+      eject(detector, HOST_1);
+      long firstEjectionNanos = awaitHealthy(detector, HOST_1);
+
+      // A single failure while half-open is enough
+      detector.onRequestOutcome(HOST_1, false);
+      assertThat(detector.healthyHosts()).doesNotContain(HOST_1);
+      long secondEjectionNanos = awaitHealthy(detector, HOST_1);
+      assertThat(secondEjectionNanos).isGreaterThan(firstEjectionNanos);
+      // Twice the base ejection, less what elapsed before the clock started
+      assertThat(Duration.ofNanos(secondEjectionNanos)).isAtLeast(Duration.ofMillis(150));
+    }
+  }
+
+  @Test
+  public void testCapsEjectedPercentage() {
+    try (OutlierDetector detector = newDetector(Duration.ofMinutes(1), 50)) {
+      eject(detector, HOST_1);
+      eject(detector, HOST_2);
+      eject(detector, HOST_3);
+
+      // Only one of three hosts fits in 50%
+      assertThat(detector.healthyHosts()).containsExactly(HOST_2, HOST_3).inOrder();
+    }
+  }
+
+  @Test
+  public void testPublishesOnlyActivelyHealthyHosts() {
+    try (OutlierDetector detector = newDetector(Duration.ofMinutes(1), 100)) {
+      detector.onHealthyHostsChanged(ImmutableSet.of(HOST_1, HOST_2));
+      eject(detector, HOST_1);
+
+      assertThat(detector.healthyHosts()).containsExactly(HOST_2);
+    }
+  }
+
+  @Test
+  public void testMembershipChange() {
+    try (OutlierDetector detector = newDetector(Duration.ofMinutes(1), 100)) {
+      URI host4 = URI.create("http://host4");
+      eject(detector, HOST_1);
+
+      detector.onMembershipChanged(
+          ImmutableList.of(HostSpec.of(HOST_1), HostSpec.of(HOST_3), HostSpec.of(host4)));
+      // Joins once actively healthy too, and ejections are kept for hosts that stay
+      assertThat(detector.healthyHosts()).containsExactly(HOST_3);
+      detector.onHealthyHostsChanged(ImmutableSet.of(HOST_1, HOST_3, host4));
+      assertThat(detector.healthyHosts()).containsExactly(HOST_3, host4).inOrder();
+
+      // Outcomes of hosts that left are ignored
+      eject(detector, HOST_2);
+      eject(detector, host4);
+      assertThat(detector.healthyHosts()).containsExactly(HOST_3);
+    }
+  }
+
+  private OutlierDetector newDetector(Duration baseEjection, int maxEjectionPercent) {
+    return new OutlierDetector(HOSTS, 3, baseEjection, Duration.ofMinutes(1), maxEjectionPercent);
+  }
+
+  private void eject(OutlierDetector detector, URI uri) {
+    for (int i = 0; i < 3; ++i) {
+      detector.onRequestOutcome(uri, false);
+    }
+  }
+
+  /** Waits for the host to be let back in, returns how long that took. */
+  private long awaitHealthy(OutlierDetector detector, URI uri) throws InterruptedException {
+    long startNanos = System.nanoTime();
+    while (!detector.healthyHosts().contains(uri)) {
+      long waitedNanos = System.nanoTime() - startNanos;
+      assertThat(Duration.ofNanos(waitedNanos)).isLessThan(Duration.ofSeconds(5));
+      Thread.sleep(5);
+    }
+    return System.nanoTime() - startNanos;
+  }
+}
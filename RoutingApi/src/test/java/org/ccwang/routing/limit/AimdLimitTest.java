@@ -0,0 +1,33 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class AimdLimitTest {
+  @Test
+  public void testGrowsByOneWhileUsed() {
+    AimdLimit limit = new AimdLimit(10, 12);
+
+    limit.onSample(1000, 10, false);
+    limit.onSample(1000, 4, false);
+    assertThat(limit.limit()).isEqualTo(11);
+
+    limit.onSample(1000, 11, false);
+    limit.onSample(1000, 12, false);
+    assertThat(limit.limit()).isEqualTo(12);
+  }
+
+  @Test
+  public void testBacksOffOnDroppedRequests() {
+    AimdLimit limit = new AimdLimit(10, 100);
+
+    limit.onSample(1000, 10, true);
+    assertThat(limit.limit()).isEqualTo(9);
+
+    for (int i = 0; i < 100; ++i) {
+      limit.onSample(1000, 1, true);
+    }
+    assertThat(limit.limit()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,168 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.ccwang.routing.limit.ConcurrencyLimiter.Permit;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimiterTest {
+  @Test
+  public void testTurnsAwayRequestsOverTheLimit() {
+    FixedLimit limit = new FixedLimit(2);
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+
+    Permit first = limiter.tryAcquire().orElseThrow();
+    limiter.tryAcquire().orElseThrow();
+    assertThat(limiter.tryAcquire().isPresent()).isFalse();
+    assertThat(limiter.acquire().join().isPresent()).isFalse();
+
+    first.onSuccess();
+    assertThat(limiter.inFlight()).isEqualTo(1);
+    assertThat(limiter.tryAcquire().isPresent()).isTrue();
+  }
+
+  @Test
+  public void testReleasingTwiceIsIgnored() {
+    FixedLimit limit = new FixedLimit(2);
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+    limiter.tryAcquire().orElseThrow();
+    Permit permit = limiter.tryAcquire().orElseThrow();
+
+    permit.onDropped();
+    permit.onSuccess();
+    permit.onIgnore();
+
+    assertThat(limiter.inFlight()).isEqualTo(1);
+    assertThat(limit.samples).isEqualTo(1);
+    assertThat(limit.dropped).isEqualTo(1);
+  }
+
+  @Test
+  public void testIgnoredPermitIsNotSampled() {
+    FixedLimit limit = new FixedLimit(1);
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+
+    limiter.tryAcquire().orElseThrow().onIgnore();
+
+    assertThat(limiter.inFlight()).isEqualTo(0);
+    assertThat(limit.samples).isEqualTo(0);
+  }
+
+  @Test
+  public void testQueueIsServedNewestFirst() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new FixedLimit(1), 2, Duration.ofSeconds(10));
+    Permit permit = limiter.tryAcquire().orElseThrow();
+
+    CompletableFuture<Optional<Permit>> older = limiter.acquire();
+    CompletableFuture<Optional<Permit>> newer = limiter.acquire();
+    // The queue is full.
+    assertThat(limiter.acquire().join().isPresent()).isFalse();
+    assertThat(older.isDone()).isFalse();
+    assertThat(newer.isDone()).isFalse();
+
+    permit.onSuccess();
+    assertThat(older.isDone()).isFalse();
+    newer.join().orElseThrow().onSuccess();
+    assertThat(older.join().isPresent()).isTrue();
+  }
+
+  @Test
+  public void testQueuedRequestTimesOut() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new FixedLimit(1), 1, Duration.ofMillis(20));
+    Permit permit = limiter.tryAcquire().orElseThrow();
+
+    assertThat(limiter.acquire().join().isPresent()).isFalse();
+
+    // The timed out waiter neither holds a place in the queue nor gets the permit.
+    CompletableFuture<Optional<Permit>> waiter = limiter.acquire();
+    permit.onSuccess();
+    assertThat(waiter.join().isPresent()).isTrue();
+    assertThat(limiter.inFlight()).isEqualTo(1);
+  }
+
+  @Test
+  public void testQueueIsSharedFairlyBetweenTenants() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new FixedLimit(1), 20, Duration.ofSeconds(10));
+    Permit permit = limiter.tryAcquire().orElseThrow();
+    Map<CompletableFuture<Optional<Permit>>, String> waiters = new LinkedHashMap<>();
+    // The noisy tenant's burst is queued first.
+    for (int i = 0; i < 10; ++i) {
+      waiters.put(limiter.acquire("noisy", 1), "noisy");
+    }
+    for (int i = 0; i < 3; ++i) {
+      waiters.put(limiter.acquire("gold", 2), "gold");
+      waiters.put(limiter.acquire("quiet", 1), "quiet");
+    }
+
+    List<String> served = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      permit.onSuccess();
+      var next = waiters.keySet().stream().filter(CompletableFuture::isDone).findFirst();
+      served.add(waiters.remove(next.orElseThrow()));
+      permit = next.get().join().orElseThrow();
+    }
+
+    // Gold gets twice the share of the others, and no one waits for the whole burst.
+    assertThat(served)
+        .containsExactly("noisy", "gold", "quiet", "gold", "noisy", "gold", "quiet", "noisy")
+        .inOrder();
+  }
+
+  @Test
+  public void testFullQueueDisplacesTheLongestTenantQueue() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new FixedLimit(1), 3, Duration.ofSeconds(10));
+    Permit permit = limiter.tryAcquire().orElseThrow();
+    CompletableFuture<Optional<Permit>> oldest = limiter.acquire("noisy", 1);
+    CompletableFuture<Optional<Permit>> older = limiter.acquire("noisy", 1);
+    CompletableFuture<Optional<Permit>> newest = limiter.acquire("noisy", 1);
+
+    // The noisy tenant cannot take another place, but another tenant can take one of its places.
+    assertThat(limiter.acquire("noisy", 1).join().isPresent()).isFalse();
+    CompletableFuture<Optional<Permit>> quiet = limiter.acquire("quiet", 1);
+    assertThat(oldest.join().isPresent()).isFalse();
+    CompletableFuture<Optional<Permit>> other = limiter.acquire("other", 1);
+    assertThat(older.join().isPresent()).isFalse();
+    // Once every tenant has as many places as a newcomer would, newcomers are turned away.
+    assertThat(limiter.acquire("third", 1).join().isPresent()).isFalse();
+
+    permit.onSuccess();
+    newest.join().orElseThrow().onSuccess();
+    quiet.join().orElseThrow().onSuccess();
+    assertThat(other.join().isPresent()).isTrue();
+  }
+
+  /** A limit that never changes, counting the samples it is given. */
+  private static class FixedLimit implements AdaptiveLimit {
+    private final int limit;
+    private int samples;
+    private int dropped;
+
+    FixedLimit(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public int limit() {
+      return limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+      ++samples;
+      if (dropped) {
+        ++this.dropped;
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class GradientLimitTest {
+  private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Test
+  public void testGrowsWhileLatencyStaysFlat() {
+    GradientLimit limit = new GradientLimit(20, 100);
+
+    for (int i = 0; i < 100; ++i) {
+      limit.onSample(RTT_NANOS, limit.limit(), false);
+    }
+
+    assertThat(limit.limit()).isEqualTo(100);
+  }
+
+  @Test
+  public void testShrinksOnceLatencyRises() {
+    GradientLimit limit = new GradientLimit(50, 100);
+    for (int i = 0; i < 100; ++i) {
+      limit.onSample(RTT_NANOS, limit.limit(), false);
+    }
+
+    for (int i = 0; i < 50; ++i) {
+      limit.onSample(RTT_NANOS * 10, limit.limit(), false);
+    }
+
+    assertThat(limit.limit()).isLessThan(20);
+  }
+
+  @Test
+  public void testShrinksOnDroppedRequests() {
+    GradientLimit limit = new GradientLimit(50, 100);
+
+    for (int i = 0; i < 20; ++i) {
+      limit.onSample(RTT_NANOS, 1, true);
+    }
+
+    assertThat(limit.limit()).isLessThan(20);
+    assertThat(limit.limit()).isAtLeast(1);
+  }
+
+  @Test
+  public void testDroppedRequestHalvesTheLimitAtOnce() {
+    GradientLimit limit = new GradientLimit(100, 100);
+
+    limit.onSample(RTT_NANOS, 100, true);
+    assertThat(limit.limit()).isEqualTo(50);
+    limit.onSample(RTT_NANOS, 50, true);
+    assertThat(limit.limit()).isEqualTo(25);
+  }
+
+  @Test
+  public void testIgnoresLightLoad() {
+    GradientLimit limit = new GradientLimit(50, 100);
+
+    for (int i = 0; i < 100; ++i) {
+      limit.onSample(RTT_NANOS * (i % 2 == 0 ? 1 : 100), 10, false);
+    }
+
+    assertThat(limit.limit()).isEqualTo(50);
+  }
+}
@@ -0,0 +1,17 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class LimitAlgorithmTest {
+  @Test
+  public void testFromFlag() {
+    assertThat(LimitAlgorithm.fromFlag("gradient")).isEqualTo(Optional.of(LimitAlgorithm.GRADIENT));
+    assertThat(LimitAlgorithm.fromFlag("aimd")).isEqualTo(Optional.of(LimitAlgorithm.AIMD));
+    assertThat(LimitAlgorithm.fromFlag("none").isPresent()).isFalse();
+    assertThrows(IllegalArgumentException.class, () -> LimitAlgorithm.fromFlag("fixed"));
+  }
+}
@@ -0,0 +1,62 @@
+package org.ccwang.routing.limit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures what a {@link TenantRateLimiter} adds to each request while several threads take
+ * tokens, either all from one tenant's bucket or spread over many tenants. Run {@link #main} for
+ * the time and allocation per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TenantRateLimiterBenchmark {
+  @Param({"1", "10000"})
+  public int tenants;
+
+  private TenantRateLimiter limiter;
+  private String[] keys;
+
+  @Setup
+  public void setup() {
+    limiter = new TenantRateLimiter(1000, 100, 100_000);
+    keys = new String[tenants];
+    for (int i = 0; i < tenants; ++i) {
+      keys[i] = "tenant-" + i;
+    }
+  }
+
+  @Benchmark
+  public long tryAcquire() {
+    return limiter.tryAcquire(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(TenantRateLimiterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
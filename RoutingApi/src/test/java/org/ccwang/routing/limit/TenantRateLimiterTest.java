@@ -0,0 +1,69 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.testing.FakeTicker;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TenantRateLimiterTest {
+  private FakeTicker ticker;
+  private TenantRateLimiter limiter;
+
+  @BeforeEach
+  public void setUp() {
+    ticker = new FakeTicker();
+    // A token every 100ms, 3 at once.
+    limiter = new TenantRateLimiter(10, 3, 100, ticker);
+  }
+
+  @Test
+  public void testBurstThenRate() {
+    for (int i = 0; i < 3; ++i) {
+      assertThat(limiter.tryAcquire("noisy")).isEqualTo(0);
+    }
+    assertThat(limiter.tryAcquire("noisy")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+    ticker.advance(60, TimeUnit.MILLISECONDS);
+    assertThat(limiter.tryAcquire("noisy")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+    ticker.advance(40, TimeUnit.MILLISECONDS);
+    assertThat(limiter.tryAcquire("noisy")).isEqualTo(0);
+    assertThat(limiter.tryAcquire("noisy")).isGreaterThan(0);
+  }
+
+  @Test
+  public void testTenantsHaveTheirOwnBuckets() {
+    for (int i = 0; i < 3; ++i) {
+      limiter.tryAcquire("noisy");
+    }
+    assertThat(limiter.tryAcquire("noisy")).isGreaterThan(0);
+
+    assertThat(limiter.tryAcquire("quiet")).isEqualTo(0);
+  }
+
+  @Test
+  public void testIdleTenantsAreEvicted() {
+    limiter.tryAcquire("noisy");
+    limiter.tryAcquire("quiet");
+    assertThat(limiter.tenants()).isEqualTo(2);
+
+    ticker.advance(200, TimeUnit.MILLISECONDS);
+    limiter.tryAcquire("noisy");
+    ticker.advance(200, TimeUnit.MILLISECONDS);
+    assertThat(limiter.tenants()).isEqualTo(1);
+
+    // The evicted tenant gets a full bucket, as it would have had by now.
+    for (int i = 0; i < 3; ++i) {
+      assertThat(limiter.tryAcquire("quiet")).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testNumberOfTenantsIsBounded() {
+    for (int i = 0; i < 1000; ++i) {
+      limiter.tryAcquire("10.0." + i / 256 + "." + i % 256);
+    }
+    assertThat(limiter.tenants()).isAtMost(100);
+  }
+}
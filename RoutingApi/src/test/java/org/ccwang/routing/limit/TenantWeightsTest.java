@@ -0,0 +1,26 @@
+package org.ccwang.routing.limit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class TenantWeightsTest {
+  @Test
+  public void testUnlistedTenantsHaveWeightOne() {
+    TenantWeights weights = TenantWeights.parse("gold-key=4, silver-key=2");
+
+    assertThat(weights.weight("gold-key")).isEqualTo(4);
+    assertThat(weights.weight("silver-key")).isEqualTo(2);
+    assertThat(weights.weight("10.0.0.1")).isEqualTo(1);
+    assertThat(TenantWeights.NONE.weight("gold-key")).isEqualTo(1);
+  }
+
+  @Test
+  public void testParse_malformed() {
+    assertThrows(IllegalArgumentException.class, () -> TenantWeights.parse("gold-key"));
+    assertThrows(IllegalArgumentException.class, () -> TenantWeights.parse("=4"));
+    assertThrows(IllegalArgumentException.class, () -> TenantWeights.parse("gold-key=0"));
+    assertThrows(IllegalArgumentException.class, () -> TenantWeights.parse("a=1,a=2"));
+  }
+}
@@ -0,0 +1,118 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashSchemeTest {
+  private static final int NUM_KEYS = 10000;
+
+  @Test
+  public void testSameKey_alwaysGoesToTheSameHost() {
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts(5));
+    URI host = scheme.getNextHost("user-42", 0).get();
+    for (int i = 0; i < 10; ++i) {
+      assertThat(scheme.getNextHost("user-42", 0)).isEqualTo(Optional.of(host));
+    }
+  }
+
+  @Test
+  public void testKeys_spreadOverAllHosts() {
+    List<HostSpec> hosts = hosts(5);
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts);
+    Map<URI, Integer> counts = new HashMap<>();
+    for (int i = 0; i < NUM_KEYS; ++i) {
+      counts.merge(scheme.getNextHost("key-" + i, 0).get(), 1, Integer::sum);
+    }
+    for (HostSpec host : hosts) {
+      // Within 30% of the fair share of 2000 keys.
+      assertThat(counts.get(host.uri())).isIn(Range.closed(1400, 2600));
+    }
+  }
+
+  @Test
+  public void testUnhealthyHost_onlyRemapsItsOwnKeys() {
+    List<HostSpec> hosts = hosts(5);
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts);
+    Map<String, URI> before = assign(scheme);
+
+    URI removed = hosts.get(2).uri();
+    scheme.onHealthyHostsChanged(
+        HostSpec.uris(hosts).stream()
+            .filter(uri -> !uri.equals(removed))
+            .collect(ImmutableSet.toImmutableSet()));
+    Map<String, URI> after = assign(scheme);
+
+    int moved = 0;
+    for (var entry : before.entrySet()) {
+      URI host = after.get(entry.getKey());
+      assertThat(host).isNotEqualTo(removed);
+      if (!host.equals(entry.getValue())) {
+        // Only keys of the removed host may move
+        assertThat(entry.getValue()).isEqualTo(removed);
+        moved++;
+      }
+    }
+    assertThat(moved).isLessThan(NUM_KEYS * 3 / 10);
+
+    // Recovery moves exactly those keys back
+    scheme.onHealthyHostsChanged(ImmutableSet.copyOf(HostSpec.uris(hosts)));
+    assertThat(assign(scheme)).isEqualTo(before);
+  }
+
+  @Test
+  public void testRetries_goToDistinctHosts() {
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts(3));
+    Set<URI> tried = new HashSet<>();
+    for (int attempt = 0; attempt < 3; ++attempt) {
+      tried.add(scheme.getNextHost("user-42", attempt).get());
+    }
+    assertThat(tried).hasSize(3);
+  }
+
+  @Test
+  public void testMissingKey_fallsBackToRoundRobin() {
+    List<HostSpec> hosts = hosts(3);
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts);
+    Set<URI> picked = new HashSet<>();
+    for (int i = 0; i < 3; ++i) {
+      picked.add(scheme.getNextHost(null, 0).get());
+    }
+    assertThat(picked).containsExactlyElementsIn(HostSpec.uris(hosts));
+  }
+
+  @Test
+  public void testNoHealthyHosts_returnsEmpty() {
+    ConsistentHashScheme scheme = new ConsistentHashScheme(hosts(3));
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost("user-42", 0)).isEqualTo(Optional.empty());
+    assertThat(scheme.getNextHost(null, 0)).isEqualTo(Optional.empty());
+  }
+
+  private static List<HostSpec> hosts(int count) {
+    ImmutableList.Builder<HostSpec> hosts = ImmutableList.builder();
+    for (int i = 0; i < count; ++i) {
+      hosts.add(HostSpec.of(URI.create("http://localhost:" + (8081 + i))));
+    }
+    return hosts.build();
+  }
+
+  private static Map<String, URI> assign(ConsistentHashScheme scheme) {
+    Map<String, URI> assignment = new HashMap<>();
+    for (int i = 0; i < NUM_KEYS; ++i) {
+      assignment.put("key-" + i, scheme.getNextHost("key-" + i, 0).get());
+    }
+    return assignment;
+  }
+}
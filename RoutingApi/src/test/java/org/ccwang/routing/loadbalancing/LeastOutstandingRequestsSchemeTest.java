@@ -0,0 +1,69 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
+
+public class LeastOutstandingRequestsSchemeTest {
+  private static final URI A = URI.create("http://localhost:8081");
+  private static final URI B = URI.create("http://localhost:8082");
+  private static final URI C = URI.create("http://localhost:8083");
+
+  @Test
+  public void testIdleHosts_takeTurns() {
+    LeastOutstandingRequestsScheme scheme = new LeastOutstandingRequestsScheme(List.of(A, B, C));
+    assertThat(
+            List.of(
+                scheme.getNextHost().get(), scheme.getNextHost().get(), scheme.getNextHost().get()))
+        .containsExactly(A, B, C);
+  }
+
+  @Test
+  public void testPicksHostWithFewestRequestsInFlight() {
+    LeastOutstandingRequestsScheme scheme = new LeastOutstandingRequestsScheme(List.of(A, B, C));
+    scheme.onRequestStart(A);
+    scheme.onRequestStart(A);
+    scheme.onRequestStart(B);
+    scheme.onRequestStart(C);
+    scheme.onRequestStart(C);
+    for (int i = 0; i < 3; ++i) {
+      assertThat(scheme.getNextHost()).isEqualTo(Optional.of(B));
+    }
+
+    // Once A drains it becomes the least loaded host
+    scheme.onRequestFinish(A, 0, true);
+    scheme.onRequestFinish(A, 0, true);
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(A));
+  }
+
+  @Test
+  public void testUnhealthyHost_isSkippedEvenWhenIdle() {
+    LeastOutstandingRequestsScheme scheme = new LeastOutstandingRequestsScheme(List.of(A, B));
+    scheme.onRequestStart(B);
+    scheme.onHealthyHostsChanged(ImmutableSet.of(B));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(B));
+
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void testHostThatLeavesAndComesBack_keepsItsLoad() {
+    LeastOutstandingRequestsScheme scheme = new LeastOutstandingRequestsScheme(List.of(A, B));
+    scheme.onRequestStart(A);
+    scheme.onMembershipChanged(ImmutableList.of(HostSpec.of(B)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(B));
+
+    scheme.onMembershipChanged(ImmutableList.of(HostSpec.of(A), HostSpec.of(B)));
+    scheme.onRequestStart(B);
+    scheme.onRequestStart(B);
+    // A still has its request from before it left
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(A));
+  }
+}
@@ -0,0 +1,82 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.HostSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures picking a host with every {@link SchemeType} while several threads contend for the same
+ * scheme. Each operation also reports the request's start and finish, which is where the load-aware
+ * schemes do their bookkeeping. Run {@link #main} for throughput, latency percentiles and
+ * allocation per pick.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoadBalancingSchemeBenchmark {
+  @Param({
+    "ROUND_ROBIN",
+    "WEIGHTED_ROUND_ROBIN",
+    "LEAST_OUTSTANDING_REQUESTS",
+    "POWER_OF_TWO_CHOICES",
+    "PEAK_EWMA",
+    "CONSISTENT_HASH"
+  })
+  public SchemeType scheme;
+
+  private LoadBalancingScheme loadBalancingScheme;
+  private String[] routingKeys;
+
+  @Setup
+  public void setup() {
+    ImmutableList.Builder<HostSpec> hosts = ImmutableList.builder();
+    for (int i = 0; i < 8; ++i) {
+      hosts.add(new HostSpec(URI.create("http://localhost:" + (8081 + i)), 1 + i % 3));
+    }
+    loadBalancingScheme = scheme.create(hosts.build());
+    routingKeys = new String[1024];
+    for (int i = 0; i < routingKeys.length; ++i) {
+      routingKeys[i] = "user-" + i;
+    }
+  }
+
+  @Benchmark
+  public Optional<URI> getNextHost() {
+    String routingKey = routingKeys[ThreadLocalRandom.current().nextInt(routingKeys.length)];
+    Optional<URI> uri = loadBalancingScheme.getNextHost(routingKey, 0);
+    loadBalancingScheme.onRequestStart(uri.get());
+    loadBalancingScheme.onRequestFinish(uri.get(), 1_000_000, true);
+    return uri;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(LoadBalancingSchemeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
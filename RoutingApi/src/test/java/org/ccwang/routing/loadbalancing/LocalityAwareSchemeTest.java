@@ -0,0 +1,179 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
+
+public class LocalityAwareSchemeTest {
+  private static final int REQUESTS = 10000;
+
+  private static final HostSpec LOCAL_1 = host(8081, "a", 0);
+  private static final HostSpec LOCAL_2 = host(8082, "a", 0);
+  private static final HostSpec LOCAL_3 = host(8083, "a", 0);
+  private static final HostSpec LOCAL_4 = host(8087, "a", 0);
+  private static final HostSpec REMOTE_1 = host(8084, "b", 0);
+  private static final HostSpec REMOTE_2 = host(8085, "b", 0);
+  private static final HostSpec BACKUP = host(8086, "a", 1);
+
+  @Test
+  public void testDistribute() {
+    assertShares(new double[] {1, 1}, 1, 0);
+    assertShares(new double[] {0.7, 1}, 0.7, 0.3);
+    // Health that adds up to less than 1 is scaled up
+    assertShares(new double[] {0.2, 0.2}, 0.5, 0.5);
+    assertShares(new double[] {0, 0}, 0, 0);
+  }
+
+  @Test
+  public void testStaysInLocalZoneWhileHealthy() {
+    LocalityAwareScheme scheme =
+        scheme(List.of(LOCAL_1, LOCAL_2, LOCAL_3, LOCAL_4, REMOTE_1, REMOTE_2));
+    // 3 of 4 local hosts healthy, times 1.4, still covers all traffic.
+    scheme.onHealthyHostsChanged(uris(LOCAL_1, LOCAL_2, LOCAL_3, REMOTE_1, REMOTE_2));
+
+    assertThat(shareOf(scheme, LOCAL_1, LOCAL_2, LOCAL_3)).isEqualTo(1);
+  }
+
+  @Test
+  public void testSpillsOverToOtherZonesInProportion() {
+    LocalityAwareScheme scheme = scheme(List.of(LOCAL_1, LOCAL_2, LOCAL_3, REMOTE_1, REMOTE_2));
+    // 1 of 3 local hosts healthy: the local zone keeps 1/3 * 1.4 of the traffic.
+    scheme.onHealthyHostsChanged(uris(LOCAL_1, REMOTE_1, REMOTE_2));
+
+    assertThat(shareOf(scheme, LOCAL_1)).isWithin(0.03).of(1.4 / 3);
+    assertThat(shareOf(scheme, REMOTE_1, REMOTE_2)).isWithin(0.03).of(1 - 1.4 / 3);
+  }
+
+  @Test
+  public void testFailsOverToLowerPriority() {
+    LocalityAwareScheme scheme = scheme(List.of(LOCAL_1, LOCAL_2, REMOTE_1, REMOTE_2, BACKUP));
+    assertThat(shareOf(scheme, BACKUP)).isEqualTo(0);
+
+    // A quarter of the first priority healthy, times 1.4, leaves 65% to the backup.
+    scheme.onHealthyHostsChanged(uris(LOCAL_1, BACKUP));
+    assertThat(shareOf(scheme, LOCAL_1)).isWithin(0.03).of(0.35);
+    assertThat(shareOf(scheme, BACKUP)).isWithin(0.03).of(0.65);
+
+    scheme.onHealthyHostsChanged(uris(BACKUP));
+    assertThat(shareOf(scheme, BACKUP)).isEqualTo(1);
+
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void testWithoutLocalZone_treatsZonesAlike() {
+    LocalityAwareScheme scheme =
+        new LocalityAwareScheme(
+            SchemeType.ROUND_ROBIN, List.of(LOCAL_1, REMOTE_1), Optional.empty(), 1.4);
+
+    assertThat(shareOf(scheme, LOCAL_1)).isWithin(0.01).of(0.5);
+  }
+
+  @Test
+  public void testMembershipChange_addsTiers() {
+    LocalityAwareScheme scheme = scheme(List.of(REMOTE_1));
+    assertThat(shareOf(scheme, REMOTE_1)).isEqualTo(1);
+
+    scheme.onMembershipChanged(ImmutableList.of(LOCAL_1, REMOTE_1));
+    assertThat(shareOf(scheme, LOCAL_1)).isEqualTo(1);
+
+    scheme.onMembershipChanged(ImmutableList.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void testFinishOfDrainedHost_reachesTheSchemeThatSawItStart() {
+    LocalityAwareScheme scheme =
+        new LocalityAwareScheme(
+            SchemeType.LEAST_OUTSTANDING_REQUESTS,
+            List.of(LOCAL_1, LOCAL_2),
+            Optional.of("a"),
+            1.4);
+    scheme.onRequestStart(LOCAL_1.uri());
+    scheme.onRequestStart(LOCAL_2.uri());
+
+    // Drained mid-request, then finishing and coming back.
+    scheme.onMembershipChanged(ImmutableList.of(LOCAL_2));
+    scheme.onRequestFinish(LOCAL_1.uri(), 1000, true);
+    scheme.onMembershipChanged(ImmutableList.of(LOCAL_1, LOCAL_2));
+
+    // Had the finish been lost, both hosts would have a request in flight and take turns.
+    assertThat(shareOf(scheme, LOCAL_1)).isEqualTo(1);
+  }
+
+  @Test
+  public void testFinishOfHostThatChangedTier_reachesTheSchemeThatSawItStart() {
+    HostSpec moved = host(LOCAL_1.uri().getPort(), "b", 0);
+    LocalityAwareScheme scheme =
+        new LocalityAwareScheme(
+            SchemeType.LEAST_OUTSTANDING_REQUESTS,
+            List.of(LOCAL_1, LOCAL_2, REMOTE_1),
+            Optional.of("a"),
+            1.4);
+    scheme.onRequestStart(LOCAL_1.uri());
+    scheme.onRequestStart(LOCAL_2.uri());
+
+    // Moves to the remote tier mid-request, and back once the request finished.
+    scheme.onMembershipChanged(ImmutableList.of(moved, LOCAL_2, REMOTE_1));
+    scheme.onRequestStart(LOCAL_1.uri());
+    scheme.onRequestFinish(LOCAL_1.uri(), 1000, true);
+    scheme.onRequestFinish(LOCAL_1.uri(), 1000, true);
+    scheme.onMembershipChanged(ImmutableList.of(LOCAL_1, LOCAL_2, REMOTE_1));
+
+    assertThat(shareOf(scheme, LOCAL_1)).isEqualTo(1);
+  }
+
+  @Test
+  public void testRoutingKey_sticksToHost() {
+    LocalityAwareScheme scheme =
+        new LocalityAwareScheme(
+            SchemeType.CONSISTENT_HASH,
+            List.of(LOCAL_1, LOCAL_2, REMOTE_1, REMOTE_2),
+            Optional.of("a"),
+            1.4);
+    // Half of each zone healthy: traffic is split between the zones.
+    scheme.onHealthyHostsChanged(uris(LOCAL_1, REMOTE_1));
+
+    for (int i = 0; i < 100; ++i) {
+      URI uri = scheme.getNextHost("user-" + i, 0).get();
+      assertThat(scheme.getNextHost("user-" + i, 0).get()).isEqualTo(uri);
+    }
+  }
+
+  private static void assertShares(double[] health, double... shares) {
+    assertThat(LocalityAwareScheme.distribute(health))
+        .usingTolerance(1e-9)
+        .containsExactly(shares)
+        .inOrder();
+  }
+
+  private static LocalityAwareScheme scheme(List<HostSpec> hosts) {
+    return new LocalityAwareScheme(SchemeType.ROUND_ROBIN, hosts, Optional.of("a"), 1.4);
+  }
+
+  private static double shareOf(LoadBalancingScheme scheme, HostSpec... hosts) {
+    ImmutableSet<URI> uris = uris(hosts);
+    int count = 0;
+    for (int i = 0; i < REQUESTS; ++i) {
+      if (uris.contains(scheme.getNextHost().get())) {
+        ++count;
+      }
+    }
+    return (double) count / REQUESTS;
+  }
+
+  private static ImmutableSet<URI> uris(HostSpec... hosts) {
+    return ImmutableSet.copyOf(HostSpec.uris(List.of(hosts)));
+  }
+
+  private static HostSpec host(int port, String zone, int priority) {
+    return new HostSpec(URI.create("http://localhost:" + port), 1, Optional.of(zone), priority);
+  }
+}
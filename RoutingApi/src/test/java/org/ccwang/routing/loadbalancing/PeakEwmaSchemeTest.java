@@ -0,0 +1,81 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.testing.FakeTicker;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PeakEwmaSchemeTest {
+  private static final URI FAST = URI.create("http://localhost:8081");
+  private static final URI SLOW = URI.create("http://localhost:8082");
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private FakeTicker ticker;
+  private PeakEwmaScheme scheme;
+
+  @BeforeEach
+  public void setup() {
+    ticker = new FakeTicker();
+    scheme =
+        new PeakEwmaScheme(
+            List.of(FAST, SLOW), Duration.ofSeconds(10), Duration.ofSeconds(1), ticker);
+  }
+
+  @Test
+  public void testSlowHost_losesTraffic() {
+    respond(FAST, 10 * MILLIS, true);
+    respond(SLOW, 100 * MILLIS, true);
+    for (int i = 0; i < 10; ++i) {
+      assertThat(scheme.getNextHost()).isEqualTo(Optional.of(FAST));
+    }
+  }
+
+  @Test
+  public void testPendingRequests_addToTheCost() {
+    respond(FAST, 10 * MILLIS, true);
+    respond(SLOW, 30 * MILLIS, true);
+    // 10ms * (3 + 1) in flight is costlier than 30ms * (0 + 1)
+    for (int i = 0; i < 3; ++i) {
+      scheme.onRequestStart(FAST);
+    }
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(SLOW));
+  }
+
+  @Test
+  public void testFailedRequest_isPenalized() {
+    respond(FAST, 10 * MILLIS, true);
+    respond(SLOW, 100 * MILLIS, true);
+    // Fails fast, but counts as taking the full error penalty
+    respond(FAST, MILLIS, false);
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(SLOW));
+  }
+
+  @Test
+  public void testLatencySpike_isTakenImmediatelyAndDecays() {
+    respond(FAST, 10 * MILLIS, true);
+    respond(SLOW, 50 * MILLIS, true);
+    ticker.advance(100, TimeUnit.MILLISECONDS);
+    respond(SLOW, 20 * MILLIS, true);
+    respond(FAST, 500 * MILLIS, true);
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(SLOW));
+
+    // The spike fades out as faster samples are blended in over the decay time.
+    for (int i = 0; i < 10; ++i) {
+      ticker.advance(10, TimeUnit.SECONDS);
+      respond(FAST, 10 * MILLIS, true);
+      respond(SLOW, 20 * MILLIS, true);
+    }
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(FAST));
+  }
+
+  private void respond(URI uri, long latencyNanos, boolean success) {
+    scheme.onRequestStart(uri);
+    scheme.onRequestFinish(uri, latencyNanos, success);
+  }
+}
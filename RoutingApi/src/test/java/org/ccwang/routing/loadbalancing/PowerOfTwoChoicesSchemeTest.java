@@ -0,0 +1,49 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class PowerOfTwoChoicesSchemeTest {
+  private static final URI A = URI.create("http://localhost:8081");
+  private static final URI B = URI.create("http://localhost:8082");
+  private static final URI C = URI.create("http://localhost:8083");
+
+  @Test
+  public void testBusyHost_isNeverPickedOverIdleOne() {
+    PowerOfTwoChoicesScheme scheme = new PowerOfTwoChoicesScheme(List.of(A, B));
+    scheme.onRequestStart(A);
+    // With two hosts both are always sampled, so the idle one must win.
+    for (int i = 0; i < 100; ++i) {
+      assertThat(scheme.getNextHost()).isEqualTo(Optional.of(B));
+    }
+  }
+
+  @Test
+  public void testBusiestHost_isNeverPicked() {
+    PowerOfTwoChoicesScheme scheme = new PowerOfTwoChoicesScheme(List.of(A, B, C));
+    scheme.onRequestStart(C);
+    scheme.onRequestStart(C);
+    Set<URI> picked = new HashSet<>();
+    for (int i = 0; i < 100; ++i) {
+      picked.add(scheme.getNextHost().get());
+    }
+    assertThat(picked).containsExactly(A, B);
+  }
+
+  @Test
+  public void testOnlyHealthyHostsArePicked() {
+    PowerOfTwoChoicesScheme scheme = new PowerOfTwoChoicesScheme(List.of(A, B, C));
+    scheme.onHealthyHostsChanged(ImmutableSet.of(C));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(C));
+
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
+}
@@ -0,0 +1,84 @@
+package org.ccwang.routing.loadbalancing;
+
+import com.google.common.collect.ImmutableList;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link RoundRobinScheme#getNextHost()} under contention against the previous
+ * synchronized implementation. Run {@link #main} to sweep from 1 to 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundRobinSchemeBenchmark {
+  private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+  private RoundRobinScheme lockFree;
+  private SynchronizedRoundRobinScheme synchronizedBaseline;
+
+  @Setup
+  public void setup() {
+    ImmutableList.Builder<URI> uris = ImmutableList.builder();
+    for (int i = 0; i < 8; ++i) {
+      uris.add(URI.create("http://localhost:" + (8081 + i)));
+    }
+    lockFree = new RoundRobinScheme(uris.build());
+    synchronizedBaseline = new SynchronizedRoundRobinScheme(uris.build());
+  }
+
+  @Benchmark
+  public Optional<URI> lockFree() {
+    return lockFree.getNextHost();
+  }
+
+  @Benchmark
+  public Optional<URI> synchronizedBaseline() {
+    return synchronizedBaseline.getNextHost();
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int threads : THREAD_COUNTS) {
+      new Runner(
+              new OptionsBuilder()
+                  .include(RoundRobinSchemeBenchmark.class.getSimpleName())
+                  .threads(threads)
+                  .build())
+          .run();
+    }
+  }
+
+  /** The scheme as it was before it went lock-free, with the health lookup already removed. */
+  static class SynchronizedRoundRobinScheme implements LoadBalancingScheme {
+    private final ImmutableList<URI> uris;
+    private final AtomicInteger counter;
+
+    SynchronizedRoundRobinScheme(List<URI> uris) {
+      this.uris = ImmutableList.copyOf(uris);
+      this.counter = new AtomicInteger();
+    }
+
+    @Override
+    public synchronized Optional<URI> getNextHost() {
+      return Optional.of(uris.get(Math.floorMod(counter.getAndIncrement(), uris.size())));
+    }
+  }
+}
@@ -2,104 +2,105 @@ package org.ccwang.routing.loadbalancing;
 
 import static com.google.common.truth.Truth.assertThat;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
-import com.google.common.testing.FakeTicker;
-import java.io.IOException;
+import com.google.common.collect.ImmutableSet;
 import java.net.URI;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import okhttp3.mockwebserver.MockResponse;
-import okhttp3.mockwebserver.MockWebServer;
-import okhttp3.mockwebserver.RecordedRequest;
-import org.ccwang.routing.HealthCheckCacheLoader;
-import org.junit.Before;
-import org.junit.Test;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
 
 public class RoundRobinSchemeTest {
-  private FakeTicker ticker;
-  private LoadingCache<URI, Integer> cache;
+  private static final List<URI> URIS =
+      List.of(
+          URI.create("http://localhost:8081"),
+          URI.create("http://localhost:8082"),
+          URI.create("http://localhost:8083"));
 
-  @Before
-  public void setup() {
-    ticker = new FakeTicker();
-    this.cache =
-        CacheBuilder.newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(1, TimeUnit.MINUTES)
-            .ticker(ticker)
-            .build(new HealthCheckCacheLoader());
+  @Test
+  public void testAllServersAvailable_returnsTheNextOne() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS);
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(0)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(1)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(2)));
+    // Wraps around to the first host
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(0)));
   }
 
   @Test
-  public void testAllServersAvailable_returnsTheNextOne() throws Exception {
-    List<MockWebServer> servers = setupMockServers(List.of(200, 200, 200));
-    List<URI> uris = servers.stream().map(server -> server.url("/healthz").uri()).toList();
-    RoundRobinScheme scheme = new RoundRobinScheme(uris, cache);
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(0)));
-    RecordedRequest request1 = servers.get(0).takeRequest();
-    assertThat(request1.getRequestUrl()).isEqualTo(servers.get(0).url("/healthz"));
-
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(1)));
-    RecordedRequest request2 = servers.get(1).takeRequest();
-    assertThat(request2.getRequestUrl()).isEqualTo(servers.get(1).url("/healthz"));
-
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(2)));
-    RecordedRequest request3 = servers.get(2).takeRequest();
-    assertThat(request3.getRequestUrl()).isEqualTo(servers.get(2).url("/healthz"));
-
-    // The next call should hit the cache
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(0)));
-    // Server should not be hit again
-    RecordedRequest request4 = servers.get(0).takeRequest(100, TimeUnit.MILLISECONDS);
-    assertThat(request4).isNull();
+  public void testSomeServersUnavailable_skipsUnavailableOnes() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS);
+    scheme.onHealthyHostsChanged(ImmutableSet.of(URIS.get(0), URIS.get(2)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(0)));
+    // Should skip the second host
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(2)));
   }
 
   @Test
-  public void testSomeServersUnavailable_skipsUnavailableOnes() throws Exception {
-    List<MockWebServer> servers = setupMockServers(List.of(200, 503, 200));
-    List<URI> uris = servers.stream().map(server -> server.url("/healthz").uri()).toList();
-    RoundRobinScheme scheme = new RoundRobinScheme(uris, cache);
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(0)));
-    // Should skip the second host
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(2)));
+  public void testServerUnavailable_comesBackAfterHealthyAgain() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS.subList(0, 2));
+    scheme.onHealthyHostsChanged(ImmutableSet.of(URIS.get(0)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(0)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(0)));
+
+    scheme.onHealthyHostsChanged(ImmutableSet.of(URIS.get(0), URIS.get(1)));
+    // Both hosts take turns again
+    assertThat(List.of(scheme.getNextHost().get(), scheme.getNextHost().get()))
+        .containsExactly(URIS.get(0), URIS.get(1));
   }
 
   @Test
-  public void testServerUnavailable_comesBackAfterCacheExpiration() throws Exception {
-    List<MockWebServer> servers = setupMockServers(List.of(200, 503));
-    List<URI> uris = servers.stream().map(server -> server.url("/healthz").uri()).toList();
-    RoundRobinScheme scheme = new RoundRobinScheme(uris, cache);
+  public void testMembershipChange_keepsHealthSnapshot() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS.subList(0, 2));
+    scheme.onHealthyHostsChanged(ImmutableSet.copyOf(URIS.subList(1, 3)));
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(URIS.get(1)));
 
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(0)));
-    RecordedRequest request1 = servers.get(0).takeRequest();
-    assertThat(request1.getRequestUrl()).isEqualTo(servers.get(0).url("/healthz"));
+    scheme.onMembershipChanged(
+        ImmutableList.of(HostSpec.of(URIS.get(1)), HostSpec.of(URIS.get(2))));
+    assertThat(List.of(scheme.getNextHost().get(), scheme.getNextHost().get()))
+        .containsExactly(URIS.get(1), URIS.get(2));
+  }
 
-    // Should skip the second host
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(0)));
-    RecordedRequest request2 = servers.get(1).takeRequest();
-    assertThat(request2.getRequestUrl()).isEqualTo(servers.get(1).url("/healthz"));
+  @Test
+  public void testNoServersAvailable_returnsEmpty() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS);
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
 
-    // Advance ticker to expire cache entry
-    ticker.advance(1, TimeUnit.MINUTES);
-    servers.get(1).enqueue(new MockResponse().setResponseCode(200));
-    assertThat(scheme.getNextHost()).isEqualTo(Optional.of(uris.get(1)));
-    // Verifies the second server was hit
-    RecordedRequest request3 = servers.get(1).takeRequest();
-    assertThat(request3.getRequestUrl()).isEqualTo(servers.get(1).url("/healthz"));
+  @Test
+  public void testCounterOverflow_keepsRotating() {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS, Long.MAX_VALUE - 1);
+    for (int i = 0; i < 2 * URIS.size(); ++i) {
+      assertThat(scheme.getNextHost().get()).isIn(URIS);
+    }
   }
 
-  private List<MockWebServer> setupMockServers(List<Integer> statusCodes) throws IOException {
-    ImmutableList.Builder<MockWebServer> servers = ImmutableList.builder();
-    for (int statusCode : statusCodes) {
-      MockWebServer server = new MockWebServer();
-      servers.add(server);
-      // Schedule 2 responses.
-      server.enqueue(new MockResponse().setResponseCode(statusCode));
-      server.start();
+  @Test
+  public void testConcurrentCallers_spreadRequestsEvenly() throws Exception {
+    RoundRobinScheme scheme = new RoundRobinScheme(URIS);
+    ConcurrentMap<URI, AtomicLong> counts = new ConcurrentHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; ++i) {
+      executor.execute(
+          () -> {
+            for (int j = 0; j < 3000; ++j) {
+              URI uri = scheme.getNextHost().get();
+              counts.computeIfAbsent(uri, key -> new AtomicLong()).incrementAndGet();
+            }
+          });
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    for (URI uri : URIS) {
+      assertThat(counts.get(uri).get()).isEqualTo(8000);
     }
-    return servers.build();
   }
 }
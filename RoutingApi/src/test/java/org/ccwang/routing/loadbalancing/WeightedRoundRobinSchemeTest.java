@@ -0,0 +1,57 @@
+package org.ccwang.routing.loadbalancing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.ccwang.routing.HostSpec;
+import org.junit.jupiter.api.Test;
+
+public class WeightedRoundRobinSchemeTest {
+  private static final URI A = URI.create("http://localhost:8081");
+  private static final URI B = URI.create("http://localhost:8082");
+  private static final URI C = URI.create("http://localhost:8083");
+
+  @Test
+  public void testWeights_interleaveSmoothly() {
+    WeightedRoundRobinScheme scheme =
+        new WeightedRoundRobinScheme(
+            List.of(new HostSpec(A, 5), new HostSpec(B, 1), new HostSpec(C, 1)));
+    // The classic nginx example: the heavy host never takes more than 3 requests in a row.
+    assertThat(nextHosts(scheme, 7)).containsExactly(A, A, B, A, C, A, A).inOrder();
+    // And the period repeats
+    assertThat(nextHosts(scheme, 7)).containsExactly(A, A, B, A, C, A, A).inOrder();
+  }
+
+  @Test
+  public void testWeights_withCommonDivisorGiveTheSameSequence() {
+    WeightedRoundRobinScheme scheme =
+        new WeightedRoundRobinScheme(
+            List.of(new HostSpec(A, 50), new HostSpec(B, 10), new HostSpec(C, 10)));
+    assertThat(nextHosts(scheme, 7)).containsExactly(A, A, B, A, C, A, A).inOrder();
+    assertThat(nextHosts(scheme, 7)).containsExactly(A, A, B, A, C, A, A).inOrder();
+  }
+
+  @Test
+  public void testUnhealthyHost_isSkipped() {
+    WeightedRoundRobinScheme scheme =
+        new WeightedRoundRobinScheme(
+            List.of(new HostSpec(A, 2), new HostSpec(B, 1), new HostSpec(C, 1)));
+    scheme.onHealthyHostsChanged(ImmutableSet.of(B, C));
+    assertThat(nextHosts(scheme, 4)).containsExactly(B, C, B, C).inOrder();
+
+    scheme.onHealthyHostsChanged(ImmutableSet.of());
+    assertThat(scheme.getNextHost()).isEqualTo(Optional.empty());
+  }
+
+  private static List<URI> nextHosts(LoadBalancingScheme scheme, int count) {
+    List<URI> hosts = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      hosts.add(scheme.getNextHost().get());
+    }
+    return hosts;
+  }
+}
@@ -0,0 +1,64 @@
+package org.ccwang.routing.metrics;
+
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.metrics.RouterMetrics.UpstreamResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures what {@link RouterMetrics} adds to the dispatch path for one request with one attempt,
+ * while several threads record into the same metrics. Run {@link #main} for the time and
+ * allocation per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RouterMetricsBenchmark {
+  private RouterMetrics metrics;
+  private URI[] hosts;
+
+  @Setup
+  public void setup() {
+    metrics = new RouterMetrics();
+    hosts = new URI[8];
+    for (int i = 0; i < hosts.length; ++i) {
+      hosts[i] = URI.create("http://localhost:" + (8081 + i));
+    }
+  }
+
+  @Benchmark
+  public void recordRequest() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    URI host = hosts[random.nextInt(hosts.length)];
+    metrics.onRequest();
+    metrics.onUpstreamStart(host);
+    metrics.onUpstreamFinish(host, random.nextLong(100_000_000), UpstreamResult.SUCCESS);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(RouterMetricsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,127 @@
+package org.ccwang.routing.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.ccwang.routing.metrics.RouterMetrics.CacheResult;
+import org.ccwang.routing.metrics.RouterMetrics.Unavailable;
+import org.ccwang.routing.metrics.RouterMetrics.UpstreamResult;
+import org.junit.jupiter.api.Test;
+
+public class RouterMetricsTest {
+  private static final URI HOST_1 = URI.create("http://localhost:8081");
+  private static final URI HOST_2 = URI.create("http://localhost:8082");
+
+  @Test
+  public void testCounters() {
+    RouterMetrics metrics = new RouterMetrics();
+    metrics.onRequest();
+    metrics.onRequest();
+    metrics.onRetry();
+    metrics.onHedge();
+    metrics.onUnavailable(Unavailable.NO_HOSTS);
+    metrics.onCacheLookup(CacheResult.HIT);
+    metrics.onRejected();
+    metrics.onConcurrencyLimit(42);
+
+    String scrape = metrics.scrape();
+    assertThat(scrape)
+        .contains(
+            "# HELP router_requests_total Requests received.\n"
+                + "# TYPE router_requests_total counter\n"
+                + "router_requests_total 2\n");
+    assertThat(scrape).contains("router_retries_total 1\n");
+    assertThat(scrape).contains("router_hedges_total 1\n");
+    assertThat(scrape).contains("router_unavailable_total{reason=\"no_hosts\"} 1\n");
+    assertThat(scrape).contains("router_unavailable_total{reason=\"retry_budget\"} 0\n");
+    assertThat(scrape).contains("router_cache_lookups_total{result=\"hit\"} 1\n");
+    assertThat(scrape).contains("router_cache_lookups_total{result=\"coalesced\"} 0\n");
+    assertThat(scrape).contains("router_rejected_total 1\n");
+    assertThat(scrape).contains("router_concurrency_limit{pool=\"default\"} 42\n");
+  }
+
+  @Test
+  public void testUpstreamLatencyHistogram() {
+    RouterMetrics metrics = new RouterMetrics();
+    metrics.onUpstreamStart(HOST_1);
+    metrics.onUpstreamStart(HOST_1);
+    metrics.onUpstreamStart(HOST_1);
+    metrics.onUpstreamFinish(HOST_1, TimeUnit.MILLISECONDS.toNanos(3), UpstreamResult.SUCCESS);
+    metrics.onUpstreamFinish(HOST_1, TimeUnit.SECONDS.toNanos(20), UpstreamResult.EXCEPTION);
+
+    String scrape = metrics.scrape();
+    String host = "host=\"http://localhost:8081\"";
+    assertThat(scrape).contains("router_upstream_in_flight{" + host + "} 1\n");
+    assertThat(scrape)
+        .contains(
+            "router_upstream_latency_seconds_bucket{" + host + ",le=\"0.0025\"} 0\n"
+                + "router_upstream_latency_seconds_bucket{" + host + ",le=\"0.005\"} 1\n");
+    assertThat(scrape)
+        .contains(
+            "router_upstream_latency_seconds_bucket{" + host + ",le=\"10.0\"} 1\n"
+                + "router_upstream_latency_seconds_bucket{" + host + ",le=\"+Inf\"} 2\n"
+                + "router_upstream_latency_seconds_sum{" + host + "} 20.003\n"
+                + "router_upstream_latency_seconds_count{" + host + "} 2\n");
+  }
+
+  @Test
+  public void testCancelledAttemptsAreCountedButNotTimed() {
+    RouterMetrics metrics = new RouterMetrics();
+    metrics.onUpstreamStart(HOST_1);
+    metrics.onUpstreamFinish(HOST_1, 1_000, UpstreamResult.CANCELLED);
+
+    String scrape = metrics.scrape();
+    String host = "host=\"http://localhost:8081\"";
+    assertThat(scrape)
+        .contains("router_upstream_responses_total{" + host + ",result=\"cancelled\"} 1\n");
+    assertThat(scrape).contains("router_upstream_latency_seconds_count{" + host + "} 0\n");
+  }
+
+  @Test
+  public void testHealth() {
+    RouterMetrics metrics = new RouterMetrics();
+    metrics.onProbe(HOST_1, true);
+    metrics.onProbe(HOST_2, false);
+    metrics.onHealthyHostsChanged(ImmutableSet.of(HOST_1, HOST_2));
+    metrics.onHealthyHostsChanged(ImmutableSet.of(HOST_1));
+
+    String scrape = metrics.scrape();
+    assertThat(scrape).contains("router_healthy_hosts_changes_total 2\n");
+    assertThat(scrape).contains("router_healthy_hosts{pool=\"default\"} 1\n");
+    String probes = "router_health_probes_total{host=";
+    assertThat(scrape)
+        .contains(
+            probes + "\"http://localhost:8081\",result=\"success\"} 1\n"
+                + probes + "\"http://localhost:8081\",result=\"failure\"} 0\n"
+                + probes + "\"http://localhost:8082\",result=\"success\"} 0\n"
+                + probes + "\"http://localhost:8082\",result=\"failure\"} 1\n");
+  }
+
+  @Test
+  public void testPoolsKeepTheirOwnGauges() {
+    RouterMetrics metrics = new RouterMetrics();
+    RouterMetrics users = metrics.forPool("users");
+    RouterMetrics orders = metrics.forPool("orders");
+    users.onHealthyHostsChanged(ImmutableSet.of(HOST_1, HOST_2));
+    orders.onHealthyHostsChanged(ImmutableSet.of(HOST_1));
+    users.onConcurrencyLimit(20);
+    orders.onConcurrencyLimit(10);
+    users.onRequest();
+    orders.onRequest();
+
+    String scrape = metrics.scrape();
+    assertThat(scrape).isEqualTo(users.scrape());
+    assertThat(scrape).contains("router_requests_total 2\n");
+    assertThat(scrape).contains("router_healthy_hosts_changes_total 2\n");
+    assertThat(scrape)
+        .contains(
+            "router_healthy_hosts{pool=\"orders\"} 1\n"
+                + "router_healthy_hosts{pool=\"users\"} 2\n");
+    assertThat(scrape)
+        .contains(
+            "router_concurrency_limit{pool=\"orders\"} 10\n"
+                + "router_concurrency_limit{pool=\"users\"} 20\n");
+  }
+}
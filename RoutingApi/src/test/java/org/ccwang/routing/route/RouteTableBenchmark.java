@@ -0,0 +1,75 @@
+package org.ccwang.routing.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link RouteTable#match} with more and more routes, which should cost about the same
+ * regardless. Every service has an exact route with a parameter and a prefix route; lookups go to
+ * services spread over the whole table. Run {@link #main} for the time and allocation per lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteTableBenchmark {
+  private static final int PATHS = 1024;
+
+  @Param({"10", "1000", "10000"})
+  public int routes;
+
+  private RouteTable table;
+  private String[] paths;
+  private int next;
+
+  @Setup
+  public void setup() {
+    List<Route> list = new ArrayList<>();
+    for (int i = 0; i < routes / 2; ++i) {
+      list.add(Route.of("/svc" + i + "/v1/items/:id", "pool" + i));
+      list.add(Route.of("/svc" + i + "/static/**", "pool" + i));
+    }
+    table = new RouteTable(list);
+    paths = new String[PATHS];
+    for (int i = 0; i < PATHS; ++i) {
+      int service = (int) ((long) i * 7919 % (routes / 2));
+      paths[i] =
+          i % 2 == 0
+              ? "/svc" + service + "/v1/items/" + i
+              : "/svc" + service + "/static/js/app" + i + ".js";
+    }
+  }
+
+  @Benchmark
+  public Optional<Route> match() {
+    next = (next + 1) & (PATHS - 1);
+    return table.match("GET", paths[next], "example.com");
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .include(RouteTableBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,129 @@
+package org.ccwang.routing.route;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class RouteTableTest {
+  @Test
+  public void testMatch_exactAndPrefix() {
+    RouteTable table =
+        new RouteTable(
+            List.of(Route.of("/users/**", "users"), Route.of("/users/search", "search")));
+
+    assertThat(pool(table, "GET", "/users/search", null)).isEqualTo("search");
+    assertThat(pool(table, "GET", "/users/42/orders", null)).isEqualTo("users");
+    // A prefix route matches the prefix itself too.
+    assertThat(pool(table, "GET", "/users", null)).isEqualTo("users");
+    assertThat(table.match("GET", "/orders", null).isPresent()).isFalse();
+  }
+
+  @Test
+  public void testMatch_headGoesWhereGetDoes() {
+    RouteTable table =
+        new RouteTable(
+            List.of(
+                new Route(
+                    Optional.of("GET"),
+                    "/users/**",
+                    Optional.empty(),
+                    "users",
+                    Optional.empty())));
+
+    assertThat(pool(table, "HEAD", "/users/42", null)).isEqualTo("users");
+    assertThat(table.match("OPTIONS", "/users/42", null).isPresent()).isFalse();
+  }
+
+  @Test
+  public void testMatch_deepestWins() {
+    RouteTable table =
+        new RouteTable(
+            List.of(
+                Route.of("/**", "fallback"),
+                Route.of("/api/**", "api"),
+                Route.of("/api/v2/**", "v2")));
+
+    assertThat(pool(table, "GET", "/api/v2/items", null)).isEqualTo("v2");
+    assertThat(pool(table, "GET", "/api/v1/items", null)).isEqualTo("api");
+    assertThat(pool(table, "GET", "/static/app.js", null)).isEqualTo("fallback");
+    assertThat(pool(table, "GET", "/", null)).isEqualTo("fallback");
+  }
+
+  @Test
+  public void testMatch_literalBeforeWildcard() {
+    RouteTable table =
+        new RouteTable(
+            List.of(
+                Route.of("/users/:id/orders", "orders"),
+                Route.of("/users/me/orders", "mine"),
+                Route.of("/users/*", "user")));
+
+    assertThat(pool(table, "GET", "/users/me/orders", null)).isEqualTo("mine");
+    assertThat(pool(table, "GET", "/users/42/orders", null)).isEqualTo("orders");
+    assertThat(pool(table, "GET", "/users/42", null)).isEqualTo("user");
+    assertThat(table.match("GET", "/users/42/items", null).isPresent()).isFalse();
+  }
+
+  @Test
+  public void testMatch_backtracksFromLiteralToWildcard() {
+    RouteTable table =
+        new RouteTable(List.of(Route.of("/users/me", "me"), Route.of("/users/*/orders", "orders")));
+
+    assertThat(pool(table, "GET", "/users/me/orders", null)).isEqualTo("orders");
+  }
+
+  @Test
+  public void testMatch_methodAndHost() {
+    RouteTable table =
+        new RouteTable(
+            List.of(
+                Route.of("/items", "any"),
+                new Route(
+                    Optional.of("POST"),
+                    "/items",
+                    Optional.empty(),
+                    "writes",
+                    Optional.empty()),
+                new Route(
+                    Optional.empty(),
+                    "/items",
+                    Optional.of("Beta.Example.com"),
+                    "beta",
+                    Optional.empty())));
+
+    assertThat(pool(table, "GET", "/items", "example.com")).isEqualTo("any");
+    assertThat(pool(table, "POST", "/items", "example.com")).isEqualTo("writes");
+    // A route for the host beats one for the method, whatever the order they were given in.
+    assertThat(pool(table, "POST", "/items", "beta.example.com:8080")).isEqualTo("beta");
+    assertThat(pool(table, "GET", "/items", null)).isEqualTo("any");
+  }
+
+  @Test
+  public void testMatch_tiesGoToFirstRoute() {
+    RouteTable table =
+        new RouteTable(List.of(Route.of("/items/:id", "first"), Route.of("/items/*", "second")));
+
+    assertThat(pool(table, "GET", "/items/1", null)).isEqualTo("first");
+  }
+
+  @Test
+  public void testMatch_ignoresEmptySegments() {
+    RouteTable table = new RouteTable(List.of(Route.of("/a/b", "ab")));
+
+    assertThat(pool(table, "GET", "/a//b/", null)).isEqualTo("ab");
+  }
+
+  @Test
+  public void testHostName() {
+    assertThat(RouteTable.hostName("Example.com:8080")).isEqualTo("example.com");
+    assertThat(RouteTable.hostName("example.com")).isEqualTo("example.com");
+    assertThat(RouteTable.hostName("[::1]:8080")).isEqualTo("[::1]");
+    assertThat(RouteTable.hostName("[::1]")).isEqualTo("[::1]");
+  }
+
+  private static String pool(RouteTable table, String method, String path, String host) {
+    return table.match(method, path, host).orElseThrow().pool();
+  }
+}
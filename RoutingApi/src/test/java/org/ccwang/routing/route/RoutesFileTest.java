@@ -0,0 +1,94 @@
+package org.ccwang.routing.route;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.ccwang.routing.HostSpec;
+import org.ccwang.routing.RouterConfig;
+import org.junit.jupiter.api.Test;
+
+public class RoutesFileTest {
+  @Test
+  public void testParse() {
+    RoutesFile file =
+        RoutesFile.parse(
+            List.of(
+                "# Pools",
+                "pool users http://localhost:8081 http://localhost:8082;weight=2"
+                    + " --upstream-timeout-ms=500",
+                "",
+                "route GET /users/:id users",
+                "route * /legacy/** default host=old.example.com rewrite=/echo"));
+
+    assertThat(file.pools()).hasSize(1);
+    RoutesFile.PoolSpec pool = file.pools().get(0);
+    assertThat(pool.name()).isEqualTo("users");
+    assertThat(pool.hosts())
+        .containsExactly(
+            HostSpec.of(URI.create("http://localhost:8081")),
+            new HostSpec(URI.create("http://localhost:8082"), 2))
+        .inOrder();
+    assertThat(pool.config(RouterConfig.defaults()).upstreamTimeout())
+        .isEqualTo(Duration.ofMillis(500));
+    assertThat(file.routes())
+        .containsExactly(
+            new Route(
+                Optional.of("GET"), "/users/:id", Optional.empty(), "users", Optional.empty()),
+            new Route(
+                Optional.empty(),
+                "/legacy/**",
+                Optional.of("old.example.com"),
+                "default",
+                Optional.of("/echo")))
+        .inOrder();
+  }
+
+  @Test
+  public void testPoolFlagsOverrideOnlyWhatTheyName() {
+    RoutesFile file =
+        RoutesFile.parse(List.of("pool slow http://localhost:8081 --max-retries=0"));
+    RouterConfig base = RouterConfig.builder().setAsyncDispatch(true).build();
+
+    RouterConfig config = file.pools().get(0).config(base);
+
+    assertThat(config.maxRetries()).isEqualTo(0);
+    assertThat(config.asyncDispatch()).isTrue();
+  }
+
+  @Test
+  public void testParse_rejectsMalformedLines() {
+    assertThrows(IllegalArgumentException.class, () -> RoutesFile.parse(List.of("pool users")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RoutesFile.parse(List.of("pool users http://localhost:8081 --no-such-flag=1")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RoutesFile.parse(List.of("pool default http://localhost:8081")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RoutesFile.parse(
+                List.of("pool a http://localhost:8081", "pool a http://localhost:8082")));
+    assertThrows(IllegalArgumentException.class, () -> RoutesFile.parse(List.of("route GET /")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RoutesFile.parse(List.of("route GET users default")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RoutesFile.parse(List.of("route GET / default weight=2")));
+    assertThrows(IllegalArgumentException.class, () -> RoutesFile.parse(List.of("upstream a")));
+  }
+
+  @Test
+  public void testParse_rejectsUnknownPool() {
+    var e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> RoutesFile.parse(List.of("route GET /users users")));
+    assertThat(e).hasMessageThat().contains("users");
+  }
+}
@@ -0,0 +1,37 @@
+package org.ccwang.routing.trace;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gson.Gson;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileSpanExporterTest {
+  @TempDir Path dir;
+
+  @Test
+  public void testAppendsOneJsonObjectPerSpan() throws Exception {
+    Path file = dir.resolve("traces.jsonl");
+    SpanData root =
+        new SpanData("4bf92f3577b34da6a3ce929d0e0e4736", "a1", null, "POST /", 10, 30, Map.of());
+    SpanData child =
+        new SpanData(
+            "4bf92f3577b34da6a3ce929d0e0e4736", "b2", "a1", "select", 12, 13, Map.of("k", "v"));
+
+    FileSpanExporter exporter = new FileSpanExporter(file, 10);
+    exporter.export(List.of(child, root));
+    exporter.close();
+
+    List<String> lines = Files.readAllLines(file);
+    assertThat(lines).hasSize(2);
+    Gson gson = new Gson();
+    assertThat(gson.fromJson(lines.get(0), SpanData.class)).isEqualTo(child);
+    assertThat(gson.fromJson(lines.get(1), SpanData.class)).isEqualTo(root);
+    assertThat(lines.get(1)).doesNotContain("parentSpanId");
+    assertThat(exporter.dropped()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,48 @@
+package org.ccwang.routing.trace;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class TraceContextTest {
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  private static final String SPAN_ID = "00f067aa0ba902b7";
+
+  @Test
+  public void testParse() {
+    assertThat(TraceContext.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-01"))
+        .isEqualTo(Optional.of(new TraceContext(TRACE_ID, SPAN_ID, true)));
+    assertThat(TraceContext.parse("00-" + TRACE_ID + "-" + SPAN_ID + "-00"))
+        .isEqualTo(Optional.of(new TraceContext(TRACE_ID, SPAN_ID, false)));
+    // Later versions may append fields, which are ignored.
+    assertThat(TraceContext.parse("01-" + TRACE_ID + "-" + SPAN_ID + "-03-extra"))
+        .isEqualTo(Optional.of(new TraceContext(TRACE_ID, SPAN_ID, true)));
+  }
+
+  @Test
+  public void testParse_malformed() {
+    List<String> malformed =
+        List.of(
+            "00-" + TRACE_ID + "-" + SPAN_ID,
+            "00-" + TRACE_ID.toUpperCase() + "-" + SPAN_ID + "-01",
+            "00-" + TRACE_ID + "-" + SPAN_ID + "-01-extra",
+            "ff-" + TRACE_ID + "-" + SPAN_ID + "-01",
+            "00-" + "0".repeat(32) + "-" + SPAN_ID + "-01",
+            "00-" + TRACE_ID + "-" + "0".repeat(16) + "-01");
+    for (String traceparent : malformed) {
+      assertThat(TraceContext.parse(traceparent).isPresent()).isFalse();
+    }
+  }
+
+  @Test
+  public void testNewIdsRoundTrip() {
+    String traceparent =
+        TraceContext.traceparent(TraceContext.newTraceId(), TraceContext.newSpanId(), true);
+
+    TraceContext context = TraceContext.parse(traceparent).orElseThrow();
+    assertThat(TraceContext.traceparent(context.traceId(), context.spanId(), context.sampled()))
+        .isEqualTo(traceparent);
+  }
+}
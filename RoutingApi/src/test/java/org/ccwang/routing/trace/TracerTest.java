@@ -0,0 +1,64 @@
+package org.ccwang.routing.trace;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Range;
+import io.javalin.http.Context;
+import org.junit.jupiter.api.Test;
+
+public class TracerTest {
+  private static final String SAMPLED = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+  private static final String UNSAMPLED =
+      "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00";
+
+  private final Context ctx = mock(Context.class);
+
+  @Test
+  public void testZeroSampleRate_onlyPassesTraceparentOn() {
+    assertThat(Tracer.NONE.start(ctx)).isSameInstanceAs(RequestTrace.NONE);
+
+    when(ctx.header("traceparent")).thenReturn(SAMPLED);
+    RequestTrace trace = Tracer.NONE.start(ctx);
+    assertThat(trace.sampled()).isFalse();
+    assertThat(trace.traceparent(trace.startSpan("upstream"))).isEqualTo(SAMPLED);
+  }
+
+  @Test
+  public void testFollowsParentsSamplingDecision() {
+    Tracer tracer = new Tracer(0.5, SpanExporter.NONE);
+
+    when(ctx.header("traceparent")).thenReturn(SAMPLED);
+    RequestTrace sampled = tracer.start(ctx);
+    assertThat(sampled.sampled()).isTrue();
+    Span span = sampled.startSpan("upstream");
+    assertThat(sampled.traceparent(span))
+        .isEqualTo("00-4bf92f3577b34da6a3ce929d0e0e4736-" + span.id() + "-01");
+
+    when(ctx.header("traceparent")).thenReturn(UNSAMPLED);
+    assertThat(tracer.start(ctx).sampled()).isFalse();
+  }
+
+  @Test
+  public void testSamplesAtTheRate() {
+    assertThat(new Tracer(1, SpanExporter.NONE).start(ctx).sampled()).isTrue();
+
+    Tracer tracer = new Tracer(0.25, SpanExporter.NONE);
+    int sampled = 0;
+    for (int i = 0; i < 10_000; ++i) {
+      if (tracer.start(ctx).sampled()) {
+        ++sampled;
+      }
+    }
+    assertThat(sampled).isIn(Range.open(2000, 3000));
+  }
+
+  @Test
+  public void testMalformedTraceparent_startsNewTrace() {
+    when(ctx.header("traceparent")).thenReturn("garbage");
+    RequestTrace trace = new Tracer(1, SpanExporter.NONE).start(ctx);
+
+    assertThat(trace.traceparent(trace.startSpan("upstream"))).doesNotContain("garbage");
+  }
+}